@@ -0,0 +1,419 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.demo;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import marm.src.ana.result.ResultCache;
+
+/**
+ * A long-running process serving analyses on a loopback port.
+ * The JVM stays warm between requests, the analyzers are configured once per distinct request and the metric values
+ * of every file are kept in a ResultCache, so only new or changed files are read again. A file counts as changed if
+ * its size or modification time is different.
+ * Only clients of the same user are served: the daemon writes a random token to a file readable by its owner only, and
+ * every request has to start with a line containing this token. A request is one UTF-8 line with the working
+ * directory of the client and the command line arguments, separated by tabs. The response contains the printed
+ * output and, as last line, "status" and the exit status. The request "--shutdown" stops the daemon. Requests are
+ * handled one after another. Options writing files or starting processes are rejected.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+final class Daemon
+{
+	/**
+	 * The request stopping the daemon.
+	 */
+	static final String SHUTDOWN = "--shutdown";
+	/**
+	 * The maximum number of configured sessions kept.
+	 */
+	private static final int MAX_SESSIONS = 16;
+	/**
+	 * The time in milliseconds a client has to send its request.
+	 */
+	private static final int REQUEST_TIMEOUT = 30000;
+	/**
+	 * Saves the server socket.
+	 */
+	private final ServerSocket server;
+	/**
+	 * Saves the cache shared by all sessions.
+	 */
+	private final ResultCache cache;
+	/**
+	 * Saves the configured sessions by request, the least recently used first.
+	 */
+	private final Map<String, Session> sessions;
+	/**
+	 * Saves the token a client has to send.
+	 */
+	private final byte[] token;
+	/**
+	 * Saves the file containing the token.
+	 */
+	private final File tokenFile;
+
+	/**
+	 * Creates a new daemon listening on the loopback address and writes its token file.
+	 *
+	 * @param port the port or 0 for any free port.
+	 * @param tokenDir the directory of the token file, usually the home directory.
+	 * @throws IOException if the port can't be bound or the token file can't be written.
+	 */
+	Daemon(int port, File tokenDir) throws IOException
+	{
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		token = newToken();
+		tokenFile = tokenFile(tokenDir, getPort());
+		try
+		{
+			writeToken(tokenFile.toPath(), token);
+		}
+		catch(IOException e)
+		{
+			server.close();
+			throw e;
+		}
+		cache = new ResultCache();
+		sessions = new LinkedHashMap<String, Session>(MAX_SESSIONS, 0.75f, true)
+		{
+			/**
+			 * Serial version UID.
+			 */
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Session> eldest)
+			{
+				return size()>MAX_SESSIONS;
+			}
+		};
+	}
+
+	/**
+	 * Returns the port the daemon listens on.
+	 *
+	 * @return the port.
+	 */
+	int getPort()
+	{
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Returns the token file of a daemon.
+	 *
+	 * @param tokenDir the directory of the token file.
+	 * @param port the port of the daemon.
+	 * @return the file.
+	 */
+	static File tokenFile(File tokenDir, int port)
+	{
+		return new File(tokenDir, ".tools-src-ana-daemon-"+port);
+	}
+
+	/**
+	 * Creates a random token.
+	 *
+	 * @return the token as hexadecimal digits.
+	 */
+	private static byte[] newToken()
+	{
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder hex = new StringBuilder();
+		for(byte b : random)
+		{
+			hex.append(String.format("%02x", b&0xff));
+		}
+		return hex.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a token to a new file that only its owner can read and write. An existing file is replaced.
+	 *
+	 * @param file the file.
+	 * @param token the token.
+	 * @throws IOException if the file can't be written or protected.
+	 */
+	private static void writeToken(Path file, byte[] token) throws IOException
+	{
+		Files.deleteIfExists(file);
+		if(Files.getFileStore(file.getParent()).supportsFileAttributeView("posix"))
+		{
+			Files.createFile(file, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ,
+					PosixFilePermission.OWNER_WRITE)));
+		}
+		else
+		{
+			File f = Files.createFile(file).toFile();
+			if(!f.setReadable(false, false)||!f.setReadable(true, true)||!f.setWritable(false, false)
+					||!f.setWritable(true, true))
+			{
+				Files.delete(file);
+				throw new IOException("can't protect the token file: "+file);
+			}
+		}
+		Files.write(file, token);
+	}
+
+	/**
+	 * Returns the cache shared by all requests.
+	 *
+	 * @return the cache.
+	 */
+	ResultCache getCache()
+	{
+		return cache;
+	}
+
+	/**
+	 * Handles requests until a shutdown request is received.
+	 *
+	 * @throws IOException if accepting a connection fails.
+	 */
+	void serve() throws IOException
+	{
+		try
+		{
+			boolean running = true;
+			while(running)
+			{
+				Socket socket = server.accept();
+				try
+				{
+					socket.setSoTimeout(REQUEST_TIMEOUT);
+					running = handle(socket);
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+				finally
+				{
+					socket.close();
+				}
+			}
+		}
+		finally
+		{
+			server.close();
+			Files.deleteIfExists(tokenFile.toPath());
+		}
+	}
+
+	/**
+	 * Handles one request.
+	 *
+	 * @param socket the connection.
+	 * @return false if the daemon shall stop. true otherwise.
+	 * @throws IOException if reading or writing fails.
+	 */
+	private boolean handle(Socket socket) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		String sent = in.readLine();
+		OutputStream out = socket.getOutputStream();
+		if(sent==null||!MessageDigest.isEqual(sent.getBytes(StandardCharsets.UTF_8), token))
+		{
+			out.write("error: invalid token\nstatus 2\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			return true;
+		}
+		String request = in.readLine();
+		if(request==null)
+		{
+			return true;
+		}
+		if(request.equals(SHUTDOWN))
+		{
+			out.write("status 0\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			return false;
+		}
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream print = new PrintStream(buffer, true, "UTF-8");
+		int status = execute(request, print);
+		print.println("status "+status);
+		buffer.writeTo(out);
+		out.flush();
+		return true;
+	}
+
+	/**
+	 * Runs the analysis of a request.
+	 *
+	 * @param request the request.
+	 * @param out the stream for the output and errors.
+	 * @return the exit status.
+	 */
+	private int execute(String request, PrintStream out)
+	{
+		Session session = sessions.get(request);
+		if(session==null)
+		{
+			String[] fields = request.split("\t", -1);
+			String[] args = fields.length==2&&fields[1].isEmpty() ? new String[0]
+					: Arrays.copyOfRange(fields, 1, fields.length);
+			try
+			{
+				Options options = Options.parse(args, new File(fields[0]));
+				if(options.help)
+				{
+					out.println(Options.USAGE);
+					return 0;
+				}
+				if(options.output!=null||options.result!=null||options.workers!=0||options.claims!=null)
+				{
+					throw new IllegalArgumentException("--output, --result, --workers and --claims aren't supported"
+							+" by the daemon");
+				}
+				session = new Session(options, cache);
+			}
+			catch(IllegalArgumentException e)
+			{
+				return Main.usageError(e, out);
+			}
+			sessions.put(request, session);
+		}
+		return Main.run(session, out, out);
+	}
+
+	/**
+	 * Sends a request to a daemon and prints the response.
+	 *
+	 * @param port the port of the daemon.
+	 * @param tokenDir the directory of the token file of the daemon.
+	 * @param base the working directory of the client.
+	 * @param args the command line arguments. They must not contain tabs or line breaks.
+	 * @param out the stream for the output.
+	 * @return the exit status sent by the daemon.
+	 * @throws IOException if the daemon isn't reachable.
+	 */
+	static int request(int port, File tokenDir, File base, String[] args, PrintStream out) throws IOException
+	{
+		StringBuilder request = new StringBuilder(base.getAbsolutePath());
+		for(String arg : args)
+		{
+			request.append('\t').append(arg);
+		}
+		return send(port, tokenDir, request.toString(), out);
+	}
+
+	/**
+	 * Stops a daemon.
+	 *
+	 * @param port the port of the daemon.
+	 * @param tokenDir the directory of the token file of the daemon.
+	 * @return the exit status sent by the daemon.
+	 * @throws IOException if the daemon isn't reachable.
+	 */
+	static int shutdown(int port, File tokenDir) throws IOException
+	{
+		return send(port, tokenDir, SHUTDOWN, new PrintStream(new ByteArrayOutputStream(), false, "UTF-8"));
+	}
+
+	/**
+	 * Sends the token of a daemon and a request line and prints the response.
+	 *
+	 * @param port the port of the daemon.
+	 * @param tokenDir the directory of the token file of the daemon.
+	 * @param request the request line.
+	 * @param out the stream for the output.
+	 * @return the exit status sent by the daemon.
+	 * @throws IOException if the token can't be read, the daemon isn't reachable or the response is incomplete.
+	 */
+	private static int send(int port, File tokenDir, String request, PrintStream out) throws IOException
+	{
+		String sent = new String(Files.readAllBytes(tokenFile(tokenDir, port).toPath()), StandardCharsets.UTF_8);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try
+		{
+			OutputStream os = socket.getOutputStream();
+			os.write((sent.trim()+"\n"+request+"\n").getBytes(StandardCharsets.UTF_8));
+			os.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					StandardCharsets.UTF_8));
+			String previous = null;
+			String line = in.readLine();
+			while(line!=null)
+			{
+				if(previous!=null)
+				{
+					out.println(previous);
+				}
+				previous = line;
+				line = in.readLine();
+			}
+			out.flush();
+			return status(previous);
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	/**
+	 * Parses the last line of a response.
+	 *
+	 * @param line the line or null.
+	 * @return the exit status.
+	 * @throws IOException if the line isn't a status line.
+	 */
+	private static int status(String line) throws IOException
+	{
+		if(line==null||!line.startsWith("status "))
+		{
+			throw new IOException("incomplete response");
+		}
+		try
+		{
+			return Integer.parseInt(line.substring(7));
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("invalid status: "+line);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,109 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.demo;
+
+import marm.src.ana.internal.LanguageDescriptor;
+import marm.src.ana.internal.SrcCounter;
+import marm.src.ana.internal.SrcCounterJC;
+import marm.src.ana.internal.SrcCounterLang;
+import marm.src.ana.internal.SrcCounterXML;
+import marm.src.ana.internal.SrcMetrics;
+import marm.src.ana.MultiExtensionSupportFileHandler;
+
+/**
+ * Creates handlers by name for the command line interface.
+ * A handler class is only loaded and initialized when a handler of its name is created, so a run doesn't pay for
+ * handlers it doesn't use.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class HandlerRegistry
+{
+	/**
+	 * Names of all handlers with a short description.
+	 */
+	static final String[][] HANDLERS = {
+		{"count", "counts files, lines and digits"},
+		{"count-jc", "counts source lines of Java and C-like files in addition"},
+		{"count-xml", "counts source lines of XML files in addition"},
+		{"lang", "counts source, comment and blank lines of a built-in language"},
+		{"metrics", "computes lines, complexity, tokens and nesting of a built-in language"}};
+
+	/**
+	 * Private constructor because there are only static methods.
+	 */
+	private HandlerRegistry()
+	{
+	}
+
+	/**
+	 * Creates a handler.
+	 *
+	 * @param name the name of the handler.
+	 * @param extension the extension the handler is used for.
+	 * @return the handler.
+	 * @throws IllegalArgumentException if the name is unknown or the handler needs a built-in language and there is
+	 * none for the extension.
+	 */
+	static MultiExtensionSupportFileHandler create(String name, String extension)
+	{
+		if(name.equals("count"))
+		{
+			return new SrcCounter();
+		}
+		else if(name.equals("count-jc"))
+		{
+			return new SrcCounterJC();
+		}
+		else if(name.equals("count-xml"))
+		{
+			return new SrcCounterXML();
+		}
+		else if(name.equals("lang"))
+		{
+			return new SrcCounterLang(language(extension));
+		}
+		else if(name.equals("metrics"))
+		{
+			return new SrcMetrics(language(extension), SrcMetrics.defaultMetrics());
+		}
+		throw new IllegalArgumentException("unknown handler: "+name);
+	}
+
+	/**
+	 * Returns the built-in language for an extension.
+	 *
+	 * @param extension the extension.
+	 * @return the language.
+	 * @throws IllegalArgumentException if there is no built-in language for the extension.
+	 */
+	private static LanguageDescriptor language(String extension)
+	{
+		LanguageDescriptor language = LanguageDescriptor.forExtension(extension);
+		if(language==null)
+		{
+			throw new IllegalArgumentException("no built-in language for extension: "+extension);
+		}
+		return language;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,221 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import marm.src.ana.result.ResultCache;
+
+/**
+ * The command line interface of the source code analyzer.
+ * It analyzes directories with the selected handlers, prints the metric totals of every handler and optionally
+ * exports the results of single files. The classes needed by a run are few and loaded lazily, so the start-up time
+ * is small and can be reduced further with a class data sharing archive (see the appcds profile of this module).
+ * For many runs, a daemon keeps a warm JVM with the configured analyzers and the results of unchanged files, and the
+ * command line interface passes the arguments to it.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public final class Main
+{
+	/**
+	 * Private constructor because there are only static methods.
+	 */
+	private Main()
+	{
+	}
+
+	/**
+	 * Runs the command line interface.
+	 *
+	 * @param args the command line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		int status;
+		if(args.length==2&&args[0].equals("--daemon"))
+		{
+			status = serve(args[1], System.err);
+		}
+		else if(args.length>=2&&args[0].equals("--connect"))
+		{
+			status = connect(args[1], Arrays.copyOfRange(args, 2, args.length), System.out, System.err);
+		}
+		else
+		{
+			status = run(args, new File(".").getAbsoluteFile(), null, System.out, System.err);
+		}
+		if(status!=0)
+		{
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * Runs the command line interface without exiting the JVM.
+	 *
+	 * @param args the command line arguments.
+	 * @param out the stream for the results.
+	 * @param err the stream for errors.
+	 * @return the exit status: 0 for success, 1 if the export failed and 2 for invalid arguments.
+	 */
+	static int run(String[] args, PrintStream out, PrintStream err)
+	{
+		return run(args, null, null, out, err);
+	}
+
+	/**
+	 * Runs one analysis.
+	 *
+	 * @param args the command line arguments.
+	 * @param base the directory relative paths are resolved against or null for the working directory.
+	 * @param cache the cache for the results of unchanged files or null.
+	 * @param out the stream for the results.
+	 * @param err the stream for errors.
+	 * @return the exit status: 0 for success, 1 if the export failed and 2 for invalid arguments.
+	 */
+	static int run(String[] args, File base, ResultCache cache, PrintStream out, PrintStream err)
+	{
+		Session session;
+		try
+		{
+			Options options = Options.parse(args, base);
+			if(options.help)
+			{
+				out.println(Options.USAGE);
+				return 0;
+			}
+			session = new Session(options, cache);
+		}
+		catch(IllegalArgumentException e)
+		{
+			return usageError(e, err);
+		}
+		return run(session, out, err);
+	}
+
+	/**
+	 * Runs a session.
+	 *
+	 * @param session the session.
+	 * @param out the stream for the results.
+	 * @param err the stream for errors.
+	 * @return the exit status: 0 for success and 1 if the export failed.
+	 */
+	static int run(Session session, PrintStream out, PrintStream err)
+	{
+		try
+		{
+			session.run(out);
+			return 0;
+		}
+		catch(IOException e)
+		{
+			err.println("error: "+e.getMessage());
+			return 1;
+		}
+	}
+
+	/**
+	 * Prints an error for invalid arguments and the usage.
+	 *
+	 * @param e the error.
+	 * @param err the stream for errors.
+	 * @return the exit status 2.
+	 */
+	static int usageError(IllegalArgumentException e, PrintStream err)
+	{
+		err.println("error: "+e.getMessage());
+		err.println(Options.USAGE);
+		return 2;
+	}
+
+	/**
+	 * Runs a daemon until it receives a shutdown request.
+	 *
+	 * @param port the port.
+	 * @param err the stream for errors.
+	 * @return the exit status.
+	 */
+	private static int serve(String port, PrintStream err)
+	{
+		try
+		{
+			Daemon daemon = new Daemon(Integer.parseInt(port), tokenDir());
+			err.println("listening on port "+daemon.getPort());
+			daemon.serve();
+			return 0;
+		}
+		catch(NumberFormatException e)
+		{
+			return usageError(new IllegalArgumentException("not a number: "+port), err);
+		}
+		catch(IOException e)
+		{
+			err.println("error: "+e.getMessage());
+			return 1;
+		}
+	}
+
+	/**
+	 * Passes the arguments to a daemon and prints its response or stops the daemon.
+	 *
+	 * @param port the port of the daemon.
+	 * @param args the arguments.
+	 * @param out the stream for the results.
+	 * @param err the stream for errors.
+	 * @return the exit status of the analysis.
+	 */
+	private static int connect(String port, String[] args, PrintStream out, PrintStream err)
+	{
+		try
+		{
+			if(args.length==1&&args[0].equals(Daemon.SHUTDOWN))
+			{
+				return Daemon.shutdown(Integer.parseInt(port), tokenDir());
+			}
+			return Daemon.request(Integer.parseInt(port), tokenDir(), new File(".").getAbsoluteFile(), args, out);
+		}
+		catch(NumberFormatException e)
+		{
+			return usageError(new IllegalArgumentException("not a number: "+port), err);
+		}
+		catch(IOException e)
+		{
+			err.println("error: no daemon on port "+port+": "+e.getMessage());
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the directory of the token files of daemons.
+	 *
+	 * @return the home directory of the user.
+	 */
+	private static File tokenDir()
+	{
+		return new File(System.getProperty("user.home"));
+	}
+}
\ No newline at end of file
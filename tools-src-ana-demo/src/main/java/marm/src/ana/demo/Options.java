@@ -0,0 +1,404 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.demo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import marm.src.ana.Scheduling;
+
+/**
+ * The parsed command line options.
+ *
+ * @author Martin Armbruster
+ * @version 1.9
+ * @since 2.1
+ */
+final class Options
+{
+	/**
+	 * Description of all options.
+	 */
+	static final String USAGE = "Usage: java -jar tools-src-ana-demo.jar [options] <directory>...\n"
+			+"       java -jar tools-src-ana-demo.jar --daemon <port>\n"
+			+"       java -jar tools-src-ana-demo.jar --connect <port> [options] <directory>...\n"
+			+"       java -jar tools-src-ana-demo.jar --connect <port> --shutdown\n"
+			+"Options:\n"
+			+"  -H, --handler <name>[:<ext>,...]  analyze files with the extensions by a handler, default count\n"
+			+"  -i, --include <regex>             analyze only files matching the expression\n"
+			+"  -x, --ignore <regex>              ignore directories and files matching the expression\n"
+			+"      --ignore-first                ignore files both included and ignored\n"
+			+"      --include-binary              pass binary files to all handlers\n"
+			+"      --detect-languages            select handlers of files without extension or .h by their content\n"
+			+"  -j, --parallelism <n>             analyze files with n threads, default 1\n"
+			+"      --schedule order|largest|streaming\n"
+			+"                                    order of the files for several threads, default largest\n"
+			+"      --timing                      print makespan, idle time and tail of several threads\n"
+			+"      --physical-order <n>          read batches of n files by inode number, e. g. for cold disks\n"
+			+"      --prefetch <n>                read up to n files ahead while analyzing with one thread\n"
+			+"  -f, --format text|json|csv        export the results of single files as JSON Lines or CSV\n"
+			+"  -o, --output <file>               file for the export, default results.jsonl or results.csv\n"
+			+"      --gzip                        compress the export\n"
+			+"      --workers <n>                 analyze the directories with n processes and merge their results\n"
+			+"      --shard <i>/<n>               analyze only shard i of n, e. g. for an external scheduler\n"
+			+"      --claims <dir>                steal unclaimed entries of other shards using a shared directory\n"
+			+"      --result <file>               write the totals to a result file for merging\n"
+			+"      --compare <dir>               print the differences from an older version of the directory\n"
+			+"  -h, --help                        print this help\n"
+			+"      --daemon <port>               serve analyses to the same user on a loopback port and cache\n"
+			+"                                    unchanged files\n"
+			+"      --connect <port>              let the daemon on a loopback port run the analysis, except\n"
+			+"                                    -o, --workers, --claims and --result\n"
+			+"      --shutdown                    stop the daemon (only after --connect)\n"
+			+"Handlers: count, count-jc, count-xml, lang, metrics";
+	/**
+	 * Saves the directories to analyze.
+	 */
+	final List<File> roots = new ArrayList<File>();
+	/**
+	 * Saves the expressions for included files.
+	 */
+	final List<String> includes = new ArrayList<String>();
+	/**
+	 * Saves the expressions for ignored files.
+	 */
+	final List<String> ignores = new ArrayList<String>();
+	/**
+	 * Saves the handler specifications as handler name and extensions.
+	 */
+	final List<String[]> handlers = new ArrayList<String[]>();
+	/**
+	 * Indicates if files both included and ignored are ignored.
+	 */
+	boolean ignoreFirst;
+	/**
+	 * Indicates if binary files are passed to all handlers.
+	 */
+	boolean includeBinary;
+	/**
+	 * Indicates if the languages of files without extension or with an ambiguous one are detected.
+	 */
+	boolean detectLanguages;
+	/**
+	 * Saves the number of threads.
+	 */
+	int parallelism = 1;
+	/**
+	 * Saves the order of the files for several threads.
+	 */
+	Scheduling scheduling = Scheduling.LARGEST_FIRST;
+	/**
+	 * Indicates if the timing of several threads is printed.
+	 */
+	boolean timing;
+	/**
+	 * Saves the number of files read by inode number or 0 for the traversal order.
+	 */
+	int physicalBatch;
+	/**
+	 * Saves the number of files read ahead or 0 for no read-ahead.
+	 */
+	int prefetch;
+	/**
+	 * Saves the export format.
+	 */
+	String format = "text";
+	/**
+	 * Saves the export file or null for the default file.
+	 */
+	File output;
+	/**
+	 * Indicates if the export is compressed.
+	 */
+	boolean gzip;
+	/**
+	 * Indicates if the help is requested.
+	 */
+	boolean help;
+	/**
+	 * Saves the number of worker processes or 0 if the analysis runs in this process.
+	 */
+	int workers;
+	/**
+	 * Saves the index of the analyzed shard.
+	 */
+	int shardIndex;
+	/**
+	 * Saves the number of shards or 0 if the directories are analyzed completely.
+	 */
+	int shardCount;
+	/**
+	 * Saves the directory for claiming entries of other shards or null.
+	 */
+	File claims;
+	/**
+	 * Saves the file for the totals or null.
+	 */
+	File result;
+	/**
+	 * Saves the directory of the older version to compare with or null.
+	 */
+	File compare;
+	/**
+	 * Saves the directory relative paths are resolved against or null for the working directory.
+	 */
+	File base;
+	/**
+	 * Saves the parsed arguments.
+	 */
+	final List<String> arguments = new ArrayList<String>();
+
+	/**
+	 * Parses the command line arguments.
+	 *
+	 * @param args the arguments.
+	 * @param base the directory relative paths are resolved against or null for the working directory.
+	 * @return the options.
+	 * @throws IllegalArgumentException if the arguments are invalid.
+	 */
+	static Options parse(String[] args, File base)
+	{
+		Options options = new Options();
+		options.base = base;
+		options.arguments.addAll(Arrays.asList(args));
+		int i = 0;
+		while(i<args.length)
+		{
+			String arg = args[i++];
+			if(!arg.startsWith("-"))
+			{
+				options.roots.add(resolve(base, arg));
+			}
+			else if(arg.equals("-h")||arg.equals("--help"))
+			{
+				options.help = true;
+			}
+			else if(arg.equals("--ignore-first"))
+			{
+				options.ignoreFirst = true;
+			}
+			else if(arg.equals("--include-binary"))
+			{
+				options.includeBinary = true;
+			}
+			else if(arg.equals("--detect-languages"))
+			{
+				options.detectLanguages = true;
+			}
+			else if(arg.equals("--timing"))
+			{
+				options.timing = true;
+			}
+			else if(arg.equals("--gzip"))
+			{
+				options.gzip = true;
+			}
+			else
+			{
+				options.parseValue(arg, value(args, i++, arg), base);
+			}
+		}
+		if(options.handlers.isEmpty())
+		{
+			options.handlers.add(new String[] {"count", ""});
+		}
+		if(options.roots.isEmpty()&&!options.help)
+		{
+			throw new IllegalArgumentException("no directory given");
+		}
+		if(options.workers>0&&options.shardCount>0)
+		{
+			throw new IllegalArgumentException("--workers and --shard can't be combined");
+		}
+		if(options.claims!=null&&options.shardCount==0)
+		{
+			throw new IllegalArgumentException("--claims requires --shard");
+		}
+		if(options.compare!=null&&(options.roots.size()!=1||options.workers>0||options.shardCount>0))
+		{
+			throw new IllegalArgumentException("--compare requires one directory and no shards");
+		}
+		return options;
+	}
+
+	/**
+	 * Parses an option with a value.
+	 *
+	 * @param option the option.
+	 * @param value the value.
+	 * @param base the directory relative paths are resolved against or null for the working directory.
+	 * @throws IllegalArgumentException if the option or the value is invalid.
+	 */
+	private void parseValue(String option, String value, File base)
+	{
+		if(option.equals("-H")||option.equals("--handler"))
+		{
+			int colon = value.indexOf(':');
+			String name = colon<0 ? value : value.substring(0, colon);
+			String[] extensions = colon<0 ? new String[] {""} : value.substring(colon+1).split(",");
+			String[] spec = new String[extensions.length+1];
+			spec[0] = name;
+			System.arraycopy(extensions, 0, spec, 1, extensions.length);
+			handlers.add(spec);
+		}
+		else if(option.equals("-i")||option.equals("--include"))
+		{
+			includes.add(value);
+		}
+		else if(option.equals("-x")||option.equals("--ignore"))
+		{
+			ignores.add(value);
+		}
+		else if(option.equals("-j")||option.equals("--parallelism"))
+		{
+			parallelism = number(value);
+		}
+		else if(option.equals("--schedule"))
+		{
+			scheduling = scheduling(value);
+		}
+		else if(option.equals("--physical-order"))
+		{
+			physicalBatch = number(value);
+		}
+		else if(option.equals("--prefetch"))
+		{
+			prefetch = number(value);
+		}
+		else if(option.equals("--workers"))
+		{
+			workers = number(value);
+		}
+		else if(option.equals("--shard"))
+		{
+			int slash = value.indexOf('/');
+			shardIndex = number(slash<0 ? value : value.substring(0, slash));
+			shardCount = slash<0 ? 0 : number(value.substring(slash+1));
+			if(shardCount<1||shardIndex<0||shardIndex>=shardCount)
+			{
+				throw new IllegalArgumentException("invalid shard: "+value);
+			}
+		}
+		else if(option.equals("--claims"))
+		{
+			claims = resolve(base, value);
+		}
+		else if(option.equals("--result"))
+		{
+			result = resolve(base, value);
+		}
+		else if(option.equals("--compare"))
+		{
+			compare = resolve(base, value);
+		}
+		else if(option.equals("-f")||option.equals("--format"))
+		{
+			if(!value.equals("text")&&!value.equals("json")&&!value.equals("csv"))
+			{
+				throw new IllegalArgumentException("unknown format: "+value);
+			}
+			format = value;
+		}
+		else if(option.equals("-o")||option.equals("--output"))
+		{
+			output = resolve(base, value);
+		}
+		else
+		{
+			throw new IllegalArgumentException("unknown option: "+option);
+		}
+	}
+
+	/**
+	 * Parses a scheduling policy.
+	 *
+	 * @param value the value.
+	 * @return the policy.
+	 * @throws IllegalArgumentException if the policy is unknown.
+	 */
+	private static Scheduling scheduling(String value)
+	{
+		if(value.equals("order"))
+		{
+			return Scheduling.TRAVERSAL_ORDER;
+		}
+		else if(value.equals("largest"))
+		{
+			return Scheduling.LARGEST_FIRST;
+		}
+		else if(value.equals("streaming"))
+		{
+			return Scheduling.STREAMING_LARGEST_FIRST;
+		}
+		throw new IllegalArgumentException("unknown scheduling: "+value);
+	}
+
+	/**
+	 * Parses a number.
+	 *
+	 * @param value the value.
+	 * @return the number.
+	 * @throws IllegalArgumentException if the value isn't a number.
+	 */
+	private static int number(String value)
+	{
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IllegalArgumentException("not a number: "+value);
+		}
+	}
+
+	/**
+	 * Resolves a path.
+	 *
+	 * @param base the directory relative paths are resolved against or null for the working directory.
+	 * @param path the path.
+	 * @return the file.
+	 */
+	private static File resolve(File base, String path)
+	{
+		File f = new File(path);
+		return base==null||f.isAbsolute() ? f : new File(base, path);
+	}
+
+	/**
+	 * Returns the value of an option.
+	 *
+	 * @param args the arguments.
+	 * @param index the index of the value.
+	 * @param option the option.
+	 * @return the value.
+	 * @throws IllegalArgumentException if the value is missing.
+	 */
+	private static String value(String[] args, int index, String option)
+	{
+		if(index>=args.length)
+		{
+			throw new IllegalArgumentException("missing value for "+option);
+		}
+		return args[index];
+	}
+}
\ No newline at end of file
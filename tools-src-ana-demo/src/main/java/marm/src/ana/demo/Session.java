@@ -0,0 +1,431 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.demo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import marm.src.ana.AnalysisSession;
+import marm.src.ana.AnalyzerConfiguration;
+import marm.src.ana.FileResultListener;
+import marm.src.ana.LanguageDetector;
+import marm.src.ana.MetricHandler;
+import marm.src.ana.result.CsvExporter;
+import marm.src.ana.result.JsonLinesExporter;
+import marm.src.ana.result.ResultCache;
+import marm.src.ana.result.ResultStore;
+import marm.src.ana.Shard;
+import marm.src.ana.SourceAnalyzer;
+import marm.src.ana.SrcFileHandler;
+
+/**
+ * A configured analysis that can be run repeatedly, e. g. by the daemon.
+ * The configuration with its compiled filters and handler prototypes is created once. Every run analyzes all
+ * directories in a new AnalysisSession and prints its totals, so runs don't share counters. Several directories are
+ * analyzed in one pass, and nested ones only once. A comparison with an older version prints the differences of the
+ * changed files instead.
+ * With several workers, the same arguments are passed to worker processes, each analyzing one shard and stealing
+ * unclaimed entries of the others. Their result files are merged into the AnalysisSession of the run.
+ *
+ * @author Martin Armbruster
+ * @version 1.9
+ * @since 2.1
+ */
+final class Session
+{
+	/**
+	 * Saves the options.
+	 */
+	private final Options options;
+	/**
+	 * Saves the configuration of the analyses.
+	 */
+	private final AnalyzerConfiguration configuration;
+	/**
+	 * Saves a label for every registered handler.
+	 */
+	private final List<String> labels;
+
+	/**
+	 * Creates a new session.
+	 *
+	 * @param options the options.
+	 * @param cache the cache for the results of unchanged files or null.
+	 * @throws IllegalArgumentException if a handler or a directory is invalid.
+	 */
+	Session(Options options, ResultCache cache)
+	{
+		this.options = options;
+		SourceAnalyzer ana = new SourceAnalyzer();
+		labels = new ArrayList<String>();
+		for(File root : options.roots)
+		{
+			if(!root.isDirectory())
+			{
+				throw new IllegalArgumentException("not a directory: "+root);
+			}
+		}
+		configureSelection(ana);
+		ana.setParallelism(options.parallelism);
+		ana.setScheduling(options.scheduling);
+		ana.setPhysicalOrder(options.physicalBatch);
+		ana.setPrefetch(options.prefetch, options.prefetch);
+		ana.setResultCache(cache);
+		if(options.shardCount>0)
+		{
+			ana.setShard(new Shard(options.shardIndex, options.shardCount, options.claims));
+		}
+		for(String[] spec : options.handlers)
+		{
+			for(int e=1; e<spec.length; e++)
+			{
+				ana.addSrcFileHandler(HandlerRegistry.create(spec[0], spec[e]), spec[e]);
+				labels.add(spec[0]+" "+(spec[e].isEmpty() ? "*" : spec[e]));
+			}
+		}
+		configuration = new AnalyzerConfiguration(ana);
+	}
+
+	/**
+	 * Configures which files are analyzed by which handlers.
+	 *
+	 * @param ana the analyzer to configure.
+	 */
+	private void configureSelection(SourceAnalyzer ana)
+	{
+		for(String include : options.includes)
+		{
+			ana.addIncludeFile(include);
+		}
+		for(String ignore : options.ignores)
+		{
+			ana.addIgnoreFile(ignore);
+		}
+		ana.setIncludeBeforeIgnore(!options.ignoreFirst);
+		ana.setDetectBinaryFiles(!options.includeBinary);
+		if(options.detectLanguages)
+		{
+			ana.setLanguageDetector(new LanguageDetector());
+		}
+	}
+
+	/**
+	 * Analyzes all directories, exports the results of single files if requested and prints the totals.
+	 *
+	 * @param out the stream for the totals.
+	 * @throws IOException if the export fails.
+	 */
+	void run(PrintStream out) throws IOException
+	{
+		AnalysisSession ana = configuration.newSession();
+		if(options.compare!=null)
+		{
+			compare(ana, out);
+			return;
+		}
+		if(options.workers>1)
+		{
+			runWorkers(ana);
+			printSummary(ana, out);
+			return;
+		}
+		Closeable exporter = null;
+		if(options.format.equals("json"))
+		{
+			exporter = new JsonLinesExporter(output(), options.gzip);
+		}
+		else if(options.format.equals("csv"))
+		{
+			exporter = new CsvExporter(output(), options.gzip, metricNames(ana));
+		}
+		if(exporter!=null)
+		{
+			ana.addFileResultListener((FileResultListener)exporter);
+		}
+		try
+		{
+			if(options.roots.size()==1)
+			{
+				ana.analyze(options.roots.get(0));
+			}
+			else
+			{
+				List<Path> roots = new ArrayList<Path>();
+				for(File root : options.roots)
+				{
+					roots.add(root.toPath());
+				}
+				ana.analyze(roots);
+			}
+		}
+		finally
+		{
+			if(exporter!=null)
+			{
+				ana.removeFileResultListener((FileResultListener)exporter);
+				exporter.close();
+			}
+		}
+		if(options.result!=null)
+		{
+			ana.writeResult(options.result);
+		}
+		printSummary(ana, out);
+	}
+
+	/**
+	 * Compares the directory with its older version and prints the differences of every changed file and in total.
+	 *
+	 * @param ana the session.
+	 * @param out the stream.
+	 */
+	private void compare(AnalysisSession ana, PrintStream out)
+	{
+		ResultStore store = new ResultStore(metricNames(ana));
+		ana.setResultStore(store);
+		int unchanged = ana.compare(options.compare, options.roots.get(0));
+		StringBuilder deltas = new StringBuilder();
+		deltas.append("unchanged: ").append(unchanged).append('\n');
+		String[] names = store.getMetricNames();
+		long[] values = new long[names.length];
+		for(int row=0; row<store.getRowCount(); row++)
+		{
+			for(int m=0; m<names.length; m++)
+			{
+				values[m] = store.getValue(row, m);
+			}
+			appendDeltas(deltas.append(store.getPath(row)).append(':'), names, values);
+		}
+		appendDeltas(deltas.append("total:"), names, store.rollup(""));
+		out.print(deltas);
+		out.flush();
+	}
+
+	/**
+	 * Appends the differences of the metric values as one line.
+	 *
+	 * @param line the builder of the output.
+	 * @param names the metric names.
+	 * @param deltas the differences in the order of the names.
+	 */
+	private static void appendDeltas(StringBuilder line, String[] names, long[] deltas)
+	{
+		for(int m=0; m<names.length; m++)
+		{
+			line.append(' ').append(names[m]).append('=').append(deltas[m]>0 ? "+" : "").append(deltas[m]);
+		}
+		line.append('\n');
+	}
+
+	/**
+	 * Analyzes the directories with worker processes and merges their results.
+	 *
+	 * @param ana the session receiving the results.
+	 * @throws IOException if a worker can't be started or fails.
+	 */
+	private void runWorkers(AnalysisSession ana) throws IOException
+	{
+		File dir = Files.createTempDirectory("tools-src-ana-shards").toFile();
+		File claims = new File(dir, "claims");
+		Process[] workers = new Process[options.workers];
+		try
+		{
+			if(!claims.mkdir())
+			{
+				throw new IOException("can't create "+claims);
+			}
+			for(int w=0; w<workers.length; w++)
+			{
+				workers[w] = startWorker(w, dir, claims);
+			}
+			for(int w=0; w<workers.length; w++)
+			{
+				int status = workers[w].waitFor();
+				if(status!=0)
+				{
+					throw new IOException("worker "+w+" failed with status "+status);
+				}
+				ana.mergeResult(new File(dir, "result"+w));
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for the workers");
+		}
+		finally
+		{
+			for(Process worker : workers)
+			{
+				if(worker!=null)
+				{
+					worker.destroy();
+				}
+			}
+			delete(dir);
+		}
+	}
+
+	/**
+	 * Starts a worker process with the arguments of this session.
+	 *
+	 * @param index the index of the worker and its shard.
+	 * @param dir the directory for the files of the workers.
+	 * @param claims the directory for the claims.
+	 * @return the process.
+	 * @throws IOException if the process can't be started.
+	 */
+	private Process startWorker(int index, File dir, File claims) throws IOException
+	{
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin"+File.separator+"java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Main.class.getName());
+		for(int i=0; i<options.arguments.size(); i++)
+		{
+			if(options.arguments.get(i).equals("--workers"))
+			{
+				i++;
+			}
+			else
+			{
+				command.add(options.arguments.get(i));
+			}
+		}
+		command.addAll(Arrays.asList("--shard", index+"/"+options.workers, "--claims", claims.getAbsolutePath(),
+				"--result", new File(dir, "result"+index).getAbsolutePath()));
+		if(!options.format.equals("text"))
+		{
+			command.addAll(Arrays.asList("-o", output().getAbsolutePath()+"."+index));
+		}
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.directory(options.base);
+		builder.redirectOutput(new File(dir, "output"+index));
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/**
+	 * Deletes a directory with all its content.
+	 *
+	 * @param f the directory or file.
+	 */
+	private static void delete(File f)
+	{
+		File[] files = f.listFiles();
+		if(files!=null)
+		{
+			for(File file : files)
+			{
+				delete(file);
+			}
+		}
+		if(!f.delete())
+		{
+			f.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Returns the export file.
+	 *
+	 * @return the file.
+	 */
+	private File output()
+	{
+		if(options.output!=null)
+		{
+			return options.output;
+		}
+		String name = options.format.equals("json") ? "results.jsonl" : "results.csv";
+		return new File(options.gzip ? name+".gz" : name);
+	}
+
+	/**
+	 * Returns the metric names of all registered MetricHandlers.
+	 *
+	 * @param ana the session.
+	 * @return the distinct names in registration order.
+	 */
+	private String[] metricNames(AnalysisSession ana)
+	{
+		LinkedHashSet<String> names = new LinkedHashSet<String>();
+		for(SrcFileHandler handler : ana.getFileHandlers())
+		{
+			if(handler instanceof MetricHandler)
+			{
+				for(String name : ((MetricHandler)handler).getMetricNames())
+				{
+					names.add(name);
+				}
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Prints the number of files, the number of files of every directory analyzed in one pass and the metric totals
+	 * of every MetricHandler.
+	 *
+	 * @param ana the session.
+	 * @param out the stream.
+	 */
+	private void printSummary(AnalysisSession ana, PrintStream out)
+	{
+		StringBuilder summary = new StringBuilder();
+		summary.append("files: ").append(ana.getCounter()).append('\n');
+		for(Map.Entry<Path, Integer> root : ana.getRootCounters().entrySet())
+		{
+			summary.append("root ").append(root.getKey()).append(": files=").append(root.getValue()).append('\n');
+		}
+		List<SrcFileHandler> handlers = ana.getFileHandlers();
+		for(int h=0; h<handlers.size(); h++)
+		{
+			if(handlers.get(h) instanceof MetricHandler)
+			{
+				MetricHandler handler = (MetricHandler)handlers.get(h);
+				String[] names = handler.getMetricNames();
+				long[] values = handler.getMetricValues();
+				summary.append(labels.get(h)).append(':');
+				for(int m=0; m<names.length; m++)
+				{
+					summary.append(' ').append(names[m]).append('=').append(values[m]);
+				}
+				summary.append('\n');
+			}
+		}
+		if(options.timing&&ana.getScheduleStatistics()!=null)
+		{
+			summary.append("schedule: ").append(ana.getScheduleStatistics()).append('\n');
+		}
+		out.print(summary);
+		out.flush();
+	}
+}
\ No newline at end of file
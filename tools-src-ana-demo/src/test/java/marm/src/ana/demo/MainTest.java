@@ -0,0 +1,229 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.demo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the command line interface.
+ *
+ * @author Martin Armbruster
+ * @version 1.5
+ * @since 2.1
+ */
+public class MainTest
+{
+	/**
+	 * Temporary directory for the exported files.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	/**
+	 * Saves the path of the directory with the source code files for the counter tests.
+	 */
+	private final String sources = ".."+File.separator+"tools-src-ana"+File.separator+"src"+File.separator+"test"
+			+File.separator+"resources"+File.separator+"testSrcCounter";
+	/**
+	 * Saves the output of the last run.
+	 */
+	private ByteArrayOutputStream out = new ByteArrayOutputStream();
+	/**
+	 * Saves the error output of the last run.
+	 */
+	private ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	/**
+	 * Tests printing the totals of the selected handlers.
+	 */
+	@Test
+	public void testSummary()
+	{
+		assertEquals(0, run("-H", "count:.h,.java", "-H", "lang:.java", "-x", ".*\\.cs", "-j", "2", sources));
+		String[] lines = out.toString().split("\n");
+		assertEquals("files: 6", lines[0]);
+		assertEquals("count .h: files=2 lines=74 digits=", lines[1].substring(0, lines[1].lastIndexOf('=')+1));
+		assertTrue(lines[2].startsWith("count .java: files=1 lines=46 "));
+		assertTrue(lines[3].startsWith("lang .java: files=1 lines=46 "));
+		assertEquals(0, run("-H", "count:.java", sources, sources+File.separator+"."));
+		lines = out.toString().split("\n");
+		assertEquals("files: 7", lines[0]);
+		assertTrue(lines[1].startsWith("root ")&&lines[1].endsWith("testSrcCounter: files=7"));
+		assertTrue(lines[2].startsWith("count .java: files=1 lines=46 "));
+	}
+
+	/**
+	 * Tests exporting the results of single files.
+	 *
+	 * @throws IOException if the export can't be read.
+	 */
+	@Test
+	public void testExport() throws IOException
+	{
+		File csv = new File(tmp.getRoot(), "results.csv");
+		assertEquals(0, run("-i", ".*\\.java", "-f", "csv", "-o", csv.getPath(), sources));
+		List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+		assertEquals(2, lines.size());
+		assertEquals("path,extension,handler,bytes,nanos,files,lines,digits", lines.get(0));
+		assertTrue(lines.get(1).startsWith("HelloWorldJava.java,.java,SrcCounter,"));
+	}
+
+	/**
+	 * Tests invalid arguments.
+	 */
+	@Test
+	public void testInvalidArguments()
+	{
+		assertEquals(2, run("-H", "unknown", sources));
+		assertTrue(err.toString().startsWith("error: unknown handler: unknown"));
+		assertEquals(2, run("-H", "lang:.xyz", sources));
+		assertEquals(2, run("-j"));
+		assertEquals(2, run("-f", "xml", sources));
+		assertEquals(2, run(sources+"-missing"));
+		assertEquals(0, run("--help"));
+		assertTrue(out.toString().startsWith("Usage:"));
+	}
+
+	/**
+	 * Tests running analyses in a daemon, which serves only clients knowing its token and rejects options writing
+	 * files or starting processes.
+	 *
+	 * @throws Exception if the daemon fails.
+	 */
+	@Test
+	public void testDaemon() throws Exception
+	{
+		File tokenDir = tmp.newFolder("tokens");
+		final Daemon daemon = new Daemon(0, tokenDir);
+		Thread thread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					daemon.serve();
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		};
+		thread.start();
+		File tokenFile = Daemon.tokenFile(tokenDir, daemon.getPort());
+		assertTrue(tokenFile.isFile());
+		if(Files.getFileStore(tokenFile.toPath()).supportsFileAttributeView("posix"))
+		{
+			assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+		}
+		assertEquals(0, run("-H", "count:.h,.java", sources));
+		String expected = out.toString();
+		File base = new File(".").getAbsoluteFile();
+		String[] args = {"-H", "count:.h,.java", sources};
+		for(int i=0; i<2; i++)
+		{
+			out = new ByteArrayOutputStream();
+			assertEquals(0, Daemon.request(daemon.getPort(), tokenDir, base, args, new PrintStream(out, true)));
+			assertEquals(expected, out.toString());
+		}
+		assertEquals(3, daemon.getCache().getHits());
+		out = new ByteArrayOutputStream();
+		assertEquals(2, Daemon.request(daemon.getPort(), tokenDir, base, new String[] {"-j"},
+				new PrintStream(out, true)));
+		assertTrue(out.toString().startsWith("error: "));
+		out = new ByteArrayOutputStream();
+		assertEquals(2, Daemon.request(daemon.getPort(), tokenDir, base, new String[] {"--result", "r.bin", sources},
+				new PrintStream(out, true)));
+		assertTrue(out.toString().startsWith("error: --output, --result"));
+		assertTrue(!new File(base, "r.bin").exists());
+		String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8);
+		Files.write(tokenFile.toPath(), "wrong".getBytes(StandardCharsets.UTF_8));
+		assertEquals(2, Daemon.shutdown(daemon.getPort(), tokenDir));
+		assertTrue(thread.isAlive());
+		Files.write(tokenFile.toPath(), token.getBytes(StandardCharsets.UTF_8));
+		assertEquals(0, Daemon.shutdown(daemon.getPort(), tokenDir));
+		thread.join(10000);
+		assertTrue(!thread.isAlive());
+		assertTrue(!tokenFile.exists());
+	}
+
+	/**
+	 * Tests analyzing shards with worker processes.
+	 */
+	@Test
+	public void testWorkers()
+	{
+		assertEquals(0, run("-H", "count:.h,.java", "-H", "lang:.java", sources));
+		String expected = out.toString();
+		assertEquals(0, run("--workers", "3", "-H", "count:.h,.java", "-H", "lang:.java", sources));
+		assertEquals(expected, out.toString());
+		assertEquals(2, run("--workers", "2", "--shard", "0/2", sources));
+		assertEquals(2, run("--shard", "2/2", sources));
+	}
+
+	/**
+	 * Tests printing the differences from an older version of a directory.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testCompare() throws IOException
+	{
+		File older = tmp.newFolder("old");
+		File newer = tmp.newFolder("new");
+		Files.write(new File(older, "a.c").toPath(), "int a;\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(newer, "a.c").toPath(), "int a;\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(newer, "b.c").toPath(), "int b;\nint c;\n".getBytes(StandardCharsets.UTF_8));
+		assertEquals(0, run("-H", "count:.c", "--compare", older.getPath(), newer.getPath()));
+		String[] lines = out.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertEquals("unchanged: 1", lines[0]);
+		assertTrue(lines[1].startsWith("b.c: files=+1 lines=+2 "));
+		assertTrue(lines[2].startsWith("total: files=+1 lines=+2 "));
+		assertEquals(2, run("--compare", older.getPath(), newer.getPath(), sources));
+	}
+
+	/**
+	 * Runs the command line interface.
+	 *
+	 * @param args the arguments.
+	 * @return the exit status.
+	 */
+	private int run(String... args)
+	{
+		out = new ByteArrayOutputStream();
+		err = new ByteArrayOutputStream();
+		return Main.run(args, new PrintStream(out, true), new PrintStream(err, true));
+	}
+}
\ No newline at end of file
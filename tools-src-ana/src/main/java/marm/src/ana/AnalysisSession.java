@@ -0,0 +1,229 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import marm.src.ana.result.ResultStore;
+
+/**
+ * One analysis with the settings of an AnalyzerConfiguration. A session owns its handlers and counters, so it's
+ * independent of all other sessions of the configuration. It's used by one thread, and its results grow with every
+ * analyzed directory until the session is discarded.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public final class AnalysisSession
+{
+	/**
+	 * Saves the configuration of the session.
+	 */
+	private final AnalyzerConfiguration configuration;
+	/**
+	 * Saves the analyzer owned by the session.
+	 */
+	private final SourceAnalyzer analyzer;
+
+	/**
+	 * Creates a new session.
+	 *
+	 * @param configuration the configuration.
+	 * @param analyzer the analyzer owned by the session.
+	 */
+	AnalysisSession(AnalyzerConfiguration configuration, SourceAnalyzer analyzer)
+	{
+		this.configuration = configuration;
+		this.analyzer = analyzer;
+	}
+
+	/**
+	 * Returns the configuration of the session.
+	 *
+	 * @return the configuration.
+	 */
+	public AnalyzerConfiguration getConfiguration()
+	{
+		return configuration;
+	}
+
+	/**
+	 * Searches for source code files in a given directory and analyzes them.
+	 *
+	 * @param f the directory.
+	 */
+	public void analyze(File f)
+	{
+		analyzer.analyze(f);
+	}
+
+	/**
+	 * Searches for source code files in several directories and analyzes them in one pass. Nested and duplicate
+	 * directories are analyzed once.
+	 *
+	 * @param roots the directories.
+	 */
+	public void analyze(Collection<Path> roots)
+	{
+		analyzer.analyze(roots);
+	}
+
+	/**
+	 * Compares two versions of a directory and analyzes only the files that differ. The ResultStore of the session
+	 * receives the differences of their metric values.
+	 *
+	 * @param older the directory of the older version.
+	 * @param newer the directory of the newer version.
+	 * @return the number of skipped files contained unchanged in both versions.
+	 */
+	public int compare(File older, File newer)
+	{
+		return analyzer.compare(older, newer);
+	}
+
+	/**
+	 * Returns the number of files found in every directory analyzed by analyze(Collection) in this session.
+	 *
+	 * @return the number of files by the canonical path of the directory.
+	 */
+	public Map<Path, Integer> getRootCounters()
+	{
+		return analyzer.getRootCounters();
+	}
+
+	/**
+	 * Adds a listener receiving the metric values of every analyzed file of this session.
+	 *
+	 * @param listener the listener.
+	 */
+	public void addFileResultListener(FileResultListener listener)
+	{
+		analyzer.addFileResultListener(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener the listener.
+	 */
+	public void removeFileResultListener(FileResultListener listener)
+	{
+		analyzer.removeFileResultListener(listener);
+	}
+
+	/**
+	 * Sets the store keeping the metric values of every analyzed file of this session.
+	 *
+	 * @param store the store or null.
+	 */
+	public void setResultStore(ResultStore store)
+	{
+		analyzer.setResultStore(store);
+	}
+
+	/**
+	 * Returns the number of files found by this session.
+	 *
+	 * @return the number of files.
+	 */
+	public int getCounter()
+	{
+		return analyzer.getCounter();
+	}
+
+	/**
+	 * Returns the number of binary files found by this session.
+	 *
+	 * @return the number of binary files.
+	 */
+	public int getBinaryCounter()
+	{
+		return analyzer.getBinaryCounter();
+	}
+
+	/**
+	 * Returns the groups of files with equal content found by this session.
+	 *
+	 * @return the groups.
+	 */
+	public List<List<File>> getDuplicateGroups()
+	{
+		return analyzer.getDuplicateGroups();
+	}
+
+	/**
+	 * Returns the timing of the threads of the last parallel analysis of this session.
+	 *
+	 * @return the statistics or null if no parallel analysis ran.
+	 */
+	public ScheduleStatistics getScheduleStatistics()
+	{
+		return analyzer.getScheduleStatistics();
+	}
+
+	/**
+	 * Returns the first handler of this session looking for an extension.
+	 *
+	 * @param extension the extension.
+	 * @return the handler or null if no handler looks for the extension.
+	 */
+	public SrcFileHandler getFileHandler(String extension)
+	{
+		return analyzer.getFileHandler(extension);
+	}
+
+	/**
+	 * Returns all handlers of this session.
+	 *
+	 * @return the handlers in the registration order of the configuration.
+	 */
+	public List<SrcFileHandler> getFileHandlers()
+	{
+		return analyzer.getFileHandlers();
+	}
+
+	/**
+	 * Writes the metric totals of the handlers of this session to a result file.
+	 *
+	 * @param resultFile the result file.
+	 * @throws IOException if the file can't be written.
+	 */
+	public void writeResult(File resultFile) throws IOException
+	{
+		analyzer.writeResult(resultFile);
+	}
+
+	/**
+	 * Adds the metric totals of a result file to the handlers of this session.
+	 *
+	 * @param resultFile the result file.
+	 * @throws IOException if the file can't be read or doesn't match the handlers.
+	 */
+	public void mergeResult(File resultFile) throws IOException
+	{
+		analyzer.mergeResult(resultFile);
+	}
+}
\ No newline at end of file
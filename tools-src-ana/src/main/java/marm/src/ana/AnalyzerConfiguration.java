@@ -0,0 +1,78 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An immutable snapshot of the settings and handlers of a SourceAnalyzer for running many analyses at the same time.
+ * The compiled filters, the options and prototypes of the handlers are taken from a configured SourceAnalyzer, and
+ * later changes of that instance don't affect the configuration. Every AnalysisSession gets its own copies of the
+ * handlers and its own counters, so sessions can run concurrently without a reset and without locking.
+ * The copies of handlers sharing state with their clones, e. g. the stages of a HandlerChain, share new state within
+ * a session only. Handlers that can't be copied are rejected, e. g. a TrigramIndexer and every handler that isn't a
+ * MultiExtensionSupportFileHandler like ReplaceJava2 or an anonymous SrcFileHandler. Only the thread-safe
+ * ResultCache, LanguageDetector and Shard are shared by all sessions. Because every entry is claimed only once, a
+ * configuration with a Shard using a claim directory creates only one session.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public final class AnalyzerConfiguration
+{
+	/**
+	 * Saves the analyzer holding the settings and the handler prototypes. It's never used for an analysis.
+	 */
+	private final SourceAnalyzer prototype;
+	/**
+	 * Indicates if a session was created.
+	 */
+	private final AtomicBoolean created = new AtomicBoolean();
+
+	/**
+	 * Creates a new configuration with the settings of an analyzer. FileResultListeners and the ResultStore are
+	 * registered per session.
+	 *
+	 * @param template the configured analyzer.
+	 * @throws IllegalArgumentException if a handler isn't a MultiExtensionSupportFileHandler that can be copied.
+	 */
+	public AnalyzerConfiguration(SourceAnalyzer template)
+	{
+		prototype = new SourceAnalyzer(template);
+	}
+
+	/**
+	 * Creates a new session for one analysis. This method can be called by several threads at the same time.
+	 *
+	 * @return the session with new handlers and empty results.
+	 * @throws IllegalStateException if the shard uses a claim directory and a session was already created.
+	 */
+	public AnalysisSession newSession()
+	{
+		if(created.getAndSet(true)&&prototype.isClaiming())
+		{
+			throw new IllegalStateException("A configuration with a claim directory creates only one session because "
+					+"every entry is claimed once");
+		}
+		return new AnalysisSession(this, new SourceAnalyzer(prototype));
+	}
+}
\ No newline at end of file
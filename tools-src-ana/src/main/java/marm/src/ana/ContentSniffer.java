@@ -0,0 +1,130 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Recognizes binary files by the first block of their content.
+ * A file is binary if the block contains a NUL byte, or if more than a third of its bytes are control characters or
+ * don't belong to valid UTF-8 sequences. Text in a legacy single-byte encoding like ISO-8859-1 stays well below this
+ * ratio.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class ContentSniffer
+{
+	/**
+	 * The number of bytes checked.
+	 */
+	static final int BLOCK_SIZE = 4096;
+
+	/**
+	 * Private constructor because there are only static methods.
+	 */
+	private ContentSniffer()
+	{
+	}
+
+	/**
+	 * Reads the first block of a file.
+	 *
+	 * @param f the file.
+	 * @return the first bytes of the file. The array is empty if the file can't be read.
+	 */
+	static byte[] readBlock(File f)
+	{
+		byte[] block = new byte[BLOCK_SIZE];
+		int length = 0;
+		try
+		{
+			InputStream in = new FileInputStream(f);
+			try
+			{
+				int read = in.read(block);
+				while(read>0)
+				{
+					length += read;
+					read = in.read(block, length, block.length-length);
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return new byte[0];
+		}
+		return length<block.length ? Arrays.copyOf(block, length) : block;
+	}
+
+	/**
+	 * Checks if a block of content is binary.
+	 *
+	 * @param block the block.
+	 * @return true if the block is binary. false if it's text.
+	 */
+	static boolean isBinary(byte[] block)
+	{
+		int length = block.length;
+		int suspicious = 0;
+		int i = 0;
+		while(i<length)
+		{
+			int b = block[i]&0xff;
+			if(b==0)
+			{
+				return true;
+			}
+			int continuation = b<0x80 ? 0 : b>=0xc2&&b<0xe0 ? 1 : b>=0xe0&&b<0xf0 ? 2 : b>=0xf0&&b<0xf5 ? 3 : -1;
+			if(continuation<0||b<0x20&&b!='\t'&&b!='\n'&&b!='\r'&&b!='\f'&&b!=0x1b)
+			{
+				suspicious++;
+				i++;
+				continue;
+			}
+			int valid = 1;
+			while(valid<=continuation&&i+valid<length&&(block[i+valid]&0xc0)==0x80)
+			{
+				valid++;
+			}
+			if(valid<=continuation&&i+valid<length)
+			{
+				suspicious++;
+				i++;
+			}
+			else
+			{
+				i += valid;
+			}
+		}
+		return suspicious*3>length;
+	}
+}
\ No newline at end of file
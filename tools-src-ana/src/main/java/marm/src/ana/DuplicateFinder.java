@@ -0,0 +1,375 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds files with equal content.
+ * The files are grouped by their sizes first, which are known from the directory traversal. Only files whose size
+ * collides with another file are read: first, the hash of the first 4 KB is computed, and only files whose head hash
+ * collides, too, are hashed completely. The hashes are computed over full blocks, so they don't depend on how many
+ * bytes a single read returns. Files with equal hashes are compared byte by byte before they're considered equal.
+ * Empty files are never grouped, because they don't share any content.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+final class DuplicateFinder
+{
+	/**
+	 * Number of bytes hashed in the first stage.
+	 */
+	private static final int HEAD_SIZE = 4096;
+	/**
+	 * Multiplier of the hash function.
+	 */
+	private static final long PRIME = 0x9e3779b97f4a7c15L;
+	/**
+	 * Saves the files in traversal order.
+	 */
+	private final File[] files;
+	/**
+	 * Saves the sizes of the files.
+	 */
+	private final long[] sizes;
+	/**
+	 * Saves for every file the index of the first file with equal content or -1 if it's the first one.
+	 */
+	private final int[] firstCopy;
+	/**
+	 * Saves the found groups of files with equal content.
+	 */
+	private final ArrayList<List<File>> groups;
+	/**
+	 * Saves the buffer for reading files.
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * Saves the buffer for reading the file compared with the file in buffer.
+	 */
+	private final ByteBuffer other;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param files the files in traversal order.
+	 * @param sizes the sizes of the files.
+	 */
+	DuplicateFinder(File[] files, long[] sizes)
+	{
+		this.files = files;
+		this.sizes = sizes;
+		firstCopy = new int[files.length];
+		Arrays.fill(firstCopy, -1);
+		groups = new ArrayList<List<File>>();
+		buffer = ByteBuffer.allocate(1<<16).order(ByteOrder.LITTLE_ENDIAN);
+		other = ByteBuffer.allocate(1<<16);
+	}
+
+	/**
+	 * Searches all groups of files with equal content.
+	 */
+	void find()
+	{
+		Integer[] order = new Integer[files.length];
+		for(int i=0; i<order.length; i++)
+		{
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i1, Integer i2)
+			{
+				int result = Long.compare(sizes[i1], sizes[i2]);
+				return result!=0 ? result : Integer.compare(i1, i2);
+			}
+		});
+		int start = 0;
+		while(start<order.length)
+		{
+			int end = start+1;
+			while(end<order.length&&sizes[order[end]]==sizes[order[start]])
+			{
+				end++;
+			}
+			if(end-start>1&&sizes[order[start]]>0)
+			{
+				Integer[] bucket = Arrays.copyOfRange(order, start, end);
+				long size = sizes[bucket[0]];
+				if(size<=HEAD_SIZE)
+				{
+					group(bucket, size);
+				}
+				else
+				{
+					for(Integer[] sub : split(bucket, HEAD_SIZE))
+					{
+						group(sub, size);
+					}
+				}
+			}
+			start = end;
+		}
+		Collections.sort(groups, new Comparator<List<File>>()
+		{
+			@Override
+			public int compare(List<File> g1, List<File> g2)
+			{
+				return g1.get(0).getPath().compareTo(g2.get(0).getPath());
+			}
+		});
+	}
+
+	/**
+	 * Hashes the files of a bucket completely and records the groups of files with equal content. Files with equal
+	 * hashes are compared with the first file of every group found so far.
+	 *
+	 * @param bucket the indices of the files in traversal order.
+	 * @param size the size of the files.
+	 */
+	private void group(Integer[] bucket, long size)
+	{
+		for(Integer[] sub : split(bucket, size))
+		{
+			ArrayList<ArrayList<Integer>> equal = new ArrayList<ArrayList<Integer>>();
+			for(int index : sub)
+			{
+				ArrayList<Integer> match = null;
+				for(int i=0; i<equal.size()&&match==null; i++)
+				{
+					if(isEqual(files[equal.get(i).get(0)], files[index]))
+					{
+						match = equal.get(i);
+					}
+				}
+				if(match==null)
+				{
+					match = new ArrayList<Integer>();
+					equal.add(match);
+				}
+				match.add(index);
+			}
+			for(ArrayList<Integer> indices : equal)
+			{
+				if(indices.size()>1)
+				{
+					ArrayList<File> group = new ArrayList<File>();
+					for(int index : indices)
+					{
+						firstCopy[index] = index==indices.get(0) ? -1 : indices.get(0);
+						group.add(files[index]);
+					}
+					groups.add(Collections.unmodifiableList(group));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares the content of two files with equal sizes.
+	 *
+	 * @param f1 the first file.
+	 * @param f2 the second file.
+	 * @return true if the contents are equal. false otherwise or if a file can't be read.
+	 */
+	private boolean isEqual(File f1, File f2)
+	{
+		try(FileChannel c1 = FileChannel.open(f1.toPath(), StandardOpenOption.READ);
+				FileChannel c2 = FileChannel.open(f2.toPath(), StandardOpenOption.READ))
+		{
+			while(true)
+			{
+				buffer.clear();
+				other.clear();
+				int read = fill(c1, buffer);
+				if(read!=fill(c2, other))
+				{
+					return false;
+				}
+				if(read==0)
+				{
+					return true;
+				}
+				buffer.flip();
+				other.flip();
+				if(!buffer.equals(other))
+				{
+					return false;
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Reads from a channel until the buffer is full or the end of the channel is reached.
+	 *
+	 * @param channel the channel.
+	 * @param target the buffer.
+	 * @return the number of read bytes.
+	 * @throws IOException if the channel can't be read.
+	 */
+	private static int fill(FileChannel channel, ByteBuffer target) throws IOException
+	{
+		int total = 0;
+		while(target.hasRemaining())
+		{
+			int read = channel.read(target);
+			if(read<0)
+			{
+				break;
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Splits a bucket by the hashes of the first bytes of the files.
+	 *
+	 * @param bucket the indices of the files in traversal order.
+	 * @param limit the number of hashed bytes.
+	 * @return the sub-buckets with at least two files, each in traversal order.
+	 */
+	private List<Integer[]> split(Integer[] bucket, long limit)
+	{
+		final long[] hashes = new long[bucket.length];
+		Integer[] positions = new Integer[bucket.length];
+		for(int i=0; i<bucket.length; i++)
+		{
+			hashes[i] = hash(files[bucket[i]], limit);
+			positions[i] = i;
+		}
+		Arrays.sort(positions, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer p1, Integer p2)
+			{
+				int result = Long.compare(hashes[p1], hashes[p2]);
+				return result!=0 ? result : Integer.compare(p1, p2);
+			}
+		});
+		ArrayList<Integer[]> result = new ArrayList<Integer[]>();
+		int start = 0;
+		while(start<positions.length)
+		{
+			int end = start+1;
+			while(end<positions.length&&hashes[positions[end]]==hashes[positions[start]])
+			{
+				end++;
+			}
+			if(end-start>1&&hashes[positions[start]]!=0)
+			{
+				Integer[] sub = new Integer[end-start];
+				for(int i=start; i<end; i++)
+				{
+					sub[i-start] = bucket[positions[i]];
+				}
+				result.add(sub);
+			}
+			start = end;
+		}
+		return result;
+	}
+
+	/**
+	 * Hashes the first bytes of a file.
+	 *
+	 * @param f the file.
+	 * @param limit the number of hashed bytes.
+	 * @return the hash or 0 if the file can't be read, so it's never grouped.
+	 */
+	private long hash(File f, long limit)
+	{
+		long h = limit;
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ))
+		{
+			long remaining = limit;
+			while(remaining>0)
+			{
+				buffer.clear();
+				buffer.limit((int)Math.min(buffer.capacity(), remaining));
+				int read = fill(channel, buffer);
+				if(read==0)
+				{
+					break;
+				}
+				remaining -= read;
+				buffer.flip();
+				while(buffer.remaining()>=8)
+				{
+					h = Long.rotateLeft((h^buffer.getLong())*PRIME, 31);
+				}
+				while(buffer.hasRemaining())
+				{
+					h = Long.rotateLeft((h^buffer.get())*PRIME, 31);
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return 0;
+		}
+		h ^= h>>>33;
+		h *= PRIME;
+		h ^= h>>>29;
+		return h==0 ? 1 : h;
+	}
+
+	/**
+	 * Returns the index of the first file with the same content as a file.
+	 *
+	 * @param index the index of the file in traversal order.
+	 * @return the index of the first copy or -1 if the file is the first one.
+	 */
+	int getFirstCopy(int index)
+	{
+		return firstCopy[index];
+	}
+
+	/**
+	 * Returns the groups of files with equal content.
+	 *
+	 * @return the groups, each in traversal order.
+	 */
+	List<List<File>> getGroups()
+	{
+		return groups;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,154 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+/**
+ * An estimated total of a metric with a confidence interval. A metric that isn't additive, e. g. a maximum, has no
+ * total, so its value and both bounds are the maximum over the analyzed files.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+public final class Estimate
+{
+	/**
+	 * Saves the name of the metric.
+	 */
+	private final String metric;
+	/**
+	 * Saves the estimated total.
+	 */
+	private final double value;
+	/**
+	 * Saves the lower bound of the confidence interval.
+	 */
+	private final double lower;
+	/**
+	 * Saves the upper bound of the confidence interval.
+	 */
+	private final double upper;
+	/**
+	 * Saves the number of analyzed files.
+	 */
+	private final int sampledFiles;
+	/**
+	 * Saves the number of files the estimate is about.
+	 */
+	private final int totalFiles;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param metric the name of the metric.
+	 * @param value the estimated total.
+	 * @param lower the lower bound of the confidence interval.
+	 * @param upper the upper bound of the confidence interval.
+	 * @param sampledFiles the number of analyzed files.
+	 * @param totalFiles the number of files the estimate is about.
+	 */
+	Estimate(String metric, double value, double lower, double upper, int sampledFiles, int totalFiles)
+	{
+		this.metric = metric;
+		this.value = value;
+		this.lower = lower;
+		this.upper = upper;
+		this.sampledFiles = sampledFiles;
+		this.totalFiles = totalFiles;
+	}
+
+	/**
+	 * Returns the name of the metric.
+	 *
+	 * @return the name.
+	 */
+	public String getMetric()
+	{
+		return metric;
+	}
+
+	/**
+	 * Returns the estimated total.
+	 *
+	 * @return the estimated total.
+	 */
+	public double getValue()
+	{
+		return value;
+	}
+
+	/**
+	 * Returns the lower bound of the confidence interval. It's never smaller than the total of the analyzed files.
+	 *
+	 * @return the lower bound.
+	 */
+	public double getLower()
+	{
+		return lower;
+	}
+
+	/**
+	 * Returns the upper bound of the confidence interval.
+	 *
+	 * @return the upper bound.
+	 */
+	public double getUpper()
+	{
+		return upper;
+	}
+
+	/**
+	 * Returns the number of analyzed files.
+	 *
+	 * @return the number of analyzed files.
+	 */
+	public int getSampledFiles()
+	{
+		return sampledFiles;
+	}
+
+	/**
+	 * Returns the number of files the estimate is about.
+	 *
+	 * @return the number of files.
+	 */
+	public int getTotalFiles()
+	{
+		return totalFiles;
+	}
+
+	/**
+	 * Checks if the estimate is exact because all files were analyzed.
+	 *
+	 * @return true if it's exact.
+	 */
+	public boolean isExact()
+	{
+		return sampledFiles==totalFiles;
+	}
+
+	@Override
+	public String toString()
+	{
+		return metric+": "+Math.round(value)+" ["+Math.round(lower)+", "+Math.round(upper)+"] ("+sampledFiles+"/"
+				+totalFiles+" files)";
+	}
+}
\ No newline at end of file
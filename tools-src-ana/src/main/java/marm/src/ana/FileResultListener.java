@@ -0,0 +1,47 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+/**
+ * Receives the results of every file analyzed by a handler while the SourceAnalyzer traverses a directory.
+ * A file handled by several handlers is passed once per handler.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+public interface FileResultListener
+{
+	/**
+	 * Receives the results of one file and one handler.
+	 *
+	 * @param path the path of the file relative to the analyzed directory with '/' as separator.
+	 * @param handler the handler that analyzed the file.
+	 * @param metricNames the names of the metrics of the handler. The array is empty if the handler isn't a
+	 * MetricHandler.
+	 * @param values the metric values of the file in the order of the names. Metrics that aren't additive, e. g. a
+	 * maximum, have the value of this file alone.
+	 * @param size the size of the file in bytes.
+	 * @param duration the duration of the analysis in nanoseconds.
+	 */
+	void fileHandled(String path, SrcFileHandler handler, String[] metricNames, long[] values, long size,
+			long duration);
+}
\ No newline at end of file
@@ -0,0 +1,344 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file handler that reads a file once and passes its content through several stages in memory.
+ * First, all SrcTransformer stages transform the content one after another. Then, all SrcContentHandler stages analyze
+ * the transformed content. Optionally, the transformed content is written back to the file as the last stage.
+ * The content is passed with its original line separators, so writing it back only changes the transformed parts.
+ * The stages are shared by all clones of a chain, so e. g. a counter stage counts the files of all extensions.
+ * Every thread of a parallel analysis gets clones of the stages, whose metric values are added to the stages
+ * afterwards. Stages that can't be cloned are shared and locked while they handle a file. A copy for an independent
+ * analysis gets copies of the stages, which are available via getTransformers and getContentHandlers.
+ *
+ * @author Martin Armbruster
+ * @version 1.3
+ * @since 2.1
+ */
+public class HandlerChain extends MultiExtensionSupportFileHandler
+{
+	/**
+	 * Saves the transforming stages.
+	 */
+	private ArrayList<SrcTransformer> transformers;
+	/**
+	 * Saves the analyzing stages.
+	 */
+	private ArrayList<SrcContentHandler> contentHandlers;
+	/**
+	 * Indicates if the transformed content is written back to the file.
+	 */
+	private boolean writeBack;
+
+	/**
+	 * Creates a new instance without stages.
+	 *
+	 * @param writeBack true if the transformed content is written back to the file. false otherwise.
+	 */
+	public HandlerChain(boolean writeBack)
+	{
+		this.writeBack = writeBack;
+		transformers = new ArrayList<SrcTransformer>();
+		contentHandlers = new ArrayList<SrcContentHandler>();
+	}
+
+	/**
+	 * Adds a transforming stage. It's applied after all previously added transforming stages.
+	 *
+	 * @param transformer the stage.
+	 * @return this instance.
+	 */
+	public HandlerChain addTransformer(SrcTransformer transformer)
+	{
+		transformers.add(transformer);
+		return this;
+	}
+
+	/**
+	 * Adds an analyzing stage. It receives the content after all transformations.
+	 *
+	 * @param handler the stage.
+	 * @return this instance.
+	 */
+	public HandlerChain addContentHandler(SrcContentHandler handler)
+	{
+		contentHandlers.add(handler);
+		return this;
+	}
+
+	/**
+	 * Returns the transforming stages in the order they're applied.
+	 *
+	 * @return an unmodifiable view of the stages.
+	 */
+	public List<SrcTransformer> getTransformers()
+	{
+		return Collections.unmodifiableList(transformers);
+	}
+
+	/**
+	 * Returns the analyzing stages.
+	 *
+	 * @return an unmodifiable view of the stages.
+	 */
+	public List<SrcContentHandler> getContentHandlers()
+	{
+		return Collections.unmodifiableList(contentHandlers);
+	}
+
+	/**
+	 * Resets all stages.
+	 */
+	@Override
+	public void reset()
+	{
+		for(SrcTransformer t : transformers)
+		{
+			t.reset();
+		}
+		for(SrcContentHandler h : contentHandlers)
+		{
+			h.reset();
+		}
+	}
+
+	/**
+	 * Reads a file and passes its content with the original line separators through all stages.
+	 *
+	 * @param f the file.
+	 */
+	@Override
+	public void handleFile(File f)
+	{
+		String original;
+		try
+		{
+			Reader reader = new FileReader(f);
+			StringBuilder builder = new StringBuilder();
+			char[] buffer = new char[8192];
+			for(int n=reader.read(buffer); n>=0; n=reader.read(buffer))
+			{
+				builder.append(buffer, 0, n);
+			}
+			reader.close();
+			original = builder.toString();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+		CharSequence content = original;
+		for(SrcTransformer t : transformers)
+		{
+			synchronized(t)
+			{
+				content = t.transform(f, content);
+			}
+			if(content==null)
+			{
+				return;
+			}
+		}
+		for(SrcContentHandler h : contentHandlers)
+		{
+			synchronized(h)
+			{
+				h.handleContent(f, content);
+			}
+		}
+		if(writeBack&&!original.contentEquals(content))
+		{
+			write(f, content);
+		}
+	}
+
+	/**
+	 * Writes the transformed content back to a file.
+	 *
+	 * @param f the file.
+	 * @param content the transformed content.
+	 */
+	private void write(File f, CharSequence content)
+	{
+		try
+		{
+			BufferedWriter writer = new BufferedWriter(new FileWriter(f));
+			writer.append(content);
+			writer.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Creates a copy with copies of the stages. The copies of all clones of a chain share the copied stages.
+	 *
+	 * @param copies maps the shared stages to their copies.
+	 * @return the copy.
+	 * @throws IllegalArgumentException if a stage isn't a MultiExtensionSupportFileHandler that can be copied.
+	 */
+	@Override
+	public HandlerChain copy(Map<Object, Object> copies)
+	{
+		HandlerChain copy = new HandlerChain(writeBack);
+		for(SrcTransformer t : transformers)
+		{
+			copy.transformers.add(copyStage(t, copies));
+		}
+		for(SrcContentHandler h : contentHandlers)
+		{
+			copy.contentHandlers.add(copyStage(h, copies));
+		}
+		return copy;
+	}
+
+	/**
+	 * Creates a clone for one thread of a parallel analysis with clones of the stages. The clones of all chains of a
+	 * thread sharing a stage share the cloned stage. Stages that can't be cloned are shared with this instance.
+	 *
+	 * @param clones maps the stages to their clones for the thread.
+	 * @return the clone.
+	 */
+	HandlerChain cloneStages(Map<Object, Object> clones)
+	{
+		HandlerChain copy = new HandlerChain(writeBack);
+		for(SrcTransformer t : transformers)
+		{
+			copy.transformers.add(cloneStage(t, clones));
+		}
+		for(SrcContentHandler h : contentHandlers)
+		{
+			copy.contentHandlers.add(cloneStage(h, clones));
+		}
+		return copy;
+	}
+
+	/**
+	 * Adds the metric values of the cloned stages of a thread to the stages of this instance.
+	 *
+	 * @param copy the clone created by cloneStages.
+	 * @param merged the stages already added, so a stage shared by several chains is added once.
+	 */
+	void mergeStages(HandlerChain copy, Set<Object> merged)
+	{
+		for(int i=0; i<transformers.size(); i++)
+		{
+			mergeStage(transformers.get(i), copy.transformers.get(i), merged);
+		}
+		for(int i=0; i<contentHandlers.size(); i++)
+		{
+			mergeStage(contentHandlers.get(i), copy.contentHandlers.get(i), merged);
+		}
+	}
+
+	/**
+	 * Clones a stage once for all chains of a thread.
+	 *
+	 * @param stage the stage.
+	 * @param clones maps the stages to their clones for the thread.
+	 * @param <T> the type of the stage.
+	 * @return the clone of the stage or the stage itself if it can't be cloned.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T cloneStage(T stage, Map<Object, Object> clones)
+	{
+		Object cloned = clones.get(stage);
+		if(cloned==null)
+		{
+			cloned = stage instanceof MultiExtensionSupportFileHandler
+					? ((MultiExtensionSupportFileHandler)stage).clone() : null;
+			if(cloned==null)
+			{
+				cloned = stage;
+			}
+			clones.put(stage, cloned);
+		}
+		return (T)cloned;
+	}
+
+	/**
+	 * Adds the metric values of a cloned stage to the stage once.
+	 *
+	 * @param stage the stage.
+	 * @param clone the clone of the stage.
+	 * @param merged the clones already added.
+	 */
+	private static void mergeStage(Object stage, Object clone, Set<Object> merged)
+	{
+		if(clone!=stage&&stage instanceof MetricHandler&&merged.add(clone))
+		{
+			((MetricHandler)stage).addMetricValues(((MetricHandler)clone).getMetricValues());
+		}
+	}
+
+	/**
+	 * Copies a stage once for all clones of a chain.
+	 *
+	 * @param stage the stage.
+	 * @param copies maps the shared stages to their copies.
+	 * @param <T> the type of the stage.
+	 * @return the copy of the stage.
+	 * @throws IllegalArgumentException if the stage isn't a MultiExtensionSupportFileHandler that can be copied.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T copyStage(T stage, Map<Object, Object> copies)
+	{
+		Object copied = copies.get(stage);
+		if(copied==null)
+		{
+			copied = stage instanceof MultiExtensionSupportFileHandler
+					? ((MultiExtensionSupportFileHandler)stage).copy(copies) : null;
+			if(copied==null)
+			{
+				throw new IllegalArgumentException("The stage of a HandlerChain can't be copied for an independent "
+						+"analysis because it isn't a MultiExtensionSupportFileHandler with a copy: "
+						+stage.getClass().getName());
+			}
+			copies.put(stage, copied);
+		}
+		return (T)copied;
+	}
+
+	@Override
+	public HandlerChain clone()
+	{
+		HandlerChain copy = new HandlerChain(writeBack);
+		copy.transformers = transformers;
+		copy.contentHandlers = contentHandlers;
+		return copy;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,267 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Detects the language of files whose extension is missing or ambiguous.
+ * Well-known file names like Makefile are recognized by their name only. The content is checked for files without an
+ * extension and for headers with the extension ".h": a shebang line names the interpreter, a modeline of Emacs or Vim
+ * names the language, and C++ keywords distinguish C++ headers from C headers. Only the first block of a file is read.
+ * The result is an extension like ".py". The SourceAnalyzer appends it to the path of the file when the handlers are
+ * selected, so the handlers registered for this extension analyze the file. The results are cached per path and
+ * modification time.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public class LanguageDetector
+{
+	/**
+	 * The number of bytes checked for a modeline.
+	 */
+	private static final int MODELINE_RANGE = 512;
+	/**
+	 * Pattern for an Emacs modeline.
+	 */
+	private static final Pattern EMACS = Pattern.compile("-\\*-(?:.*?mode:\\s*([\\w+#-]+)|\\s*([\\w+#-]+)\\s*-\\*-)");
+	/**
+	 * Pattern for a Vim modeline.
+	 */
+	private static final Pattern VIM = Pattern.compile("\\b(?:vim?|ex):.*?\\b(?:ft|filetype|syntax)=([\\w+#-]+)");
+	/**
+	 * Pattern for C++ constructs in a header.
+	 */
+	private static final Pattern CPP = Pattern.compile("(?m)^\\s*(?:class|namespace|template\\s*<)\\b|\\b(?:public|"
+			+"private|protected)\\s*:|\\bstd::|#include\\s*<(?:iostream|string|vector|map|memory)>");
+	/**
+	 * Saves the extensions of well-known file names.
+	 */
+	private final HashMap<String, String> fileNames;
+	/**
+	 * Saves the extensions of interpreters and language names.
+	 */
+	private final HashMap<String, String> languages;
+	/**
+	 * Saves the detected extensions by path.
+	 */
+	private final ConcurrentHashMap<String, Verdict> verdicts;
+
+	/**
+	 * Creates a new detector knowing common file names, interpreters and languages.
+	 */
+	public LanguageDetector()
+	{
+		fileNames = new HashMap<String, String>();
+		languages = new HashMap<String, String>();
+		verdicts = new ConcurrentHashMap<String, Verdict>();
+		for(String name : new String[] {"Makefile", "makefile", "GNUmakefile"})
+		{
+			addFileName(name, ".mk");
+		}
+		for(String name : new String[] {"Rakefile", "Gemfile", "Vagrantfile"})
+		{
+			addFileName(name, ".rb");
+		}
+		addFileName("Dockerfile", ".dockerfile");
+		addFileName("CMakeLists.txt", ".cmake");
+		addFileName("Jenkinsfile", ".groovy");
+		addFileName("BUILD", ".bzl");
+		addFileName("WORKSPACE", ".bzl");
+		String[][] defaults = {{"python", ".py"}, {"ruby", ".rb"}, {"perl", ".pl"}, {"sh", ".sh"}, {"bash", ".sh"},
+			{"zsh", ".sh"}, {"ksh", ".sh"}, {"dash", ".sh"}, {"node", ".js"}, {"nodejs", ".js"}, {"javascript", ".js"},
+			{"php", ".php"}, {"lua", ".lua"}, {"tclsh", ".tcl"}, {"tcl", ".tcl"}, {"groovy", ".groovy"},
+			{"rscript", ".r"}, {"awk", ".awk"}, {"gawk", ".awk"}, {"make", ".mk"}, {"makefile", ".mk"}, {"c", ".c"},
+			{"cpp", ".cpp"}, {"c++", ".cpp"}, {"java", ".java"}, {"cmake", ".cmake"}, {"dockerfile", ".dockerfile"}};
+		for(String[] language : defaults)
+		{
+			addLanguage(language[0], language[1]);
+		}
+	}
+
+	/**
+	 * Adds a well-known file name.
+	 *
+	 * @param name the complete file name, e. g. "Makefile".
+	 * @param extension the extension of files with this name, e. g. ".mk".
+	 */
+	public void addFileName(String name, String extension)
+	{
+		fileNames.put(name, extension);
+	}
+
+	/**
+	 * Adds an interpreter or a language name used in modelines.
+	 *
+	 * @param name the name of the interpreter without version, e. g. "python", or the language. It's compared case
+	 * insensitively.
+	 * @param extension the extension of files in this language, e. g. ".py".
+	 */
+	public void addLanguage(String name, String extension)
+	{
+		languages.put(name.toLowerCase(Locale.ROOT), extension);
+	}
+
+	/**
+	 * Checks if the content of a file is needed to detect its language.
+	 *
+	 * @param fileName the file name.
+	 * @return true if the file has no extension or the extension ".h" and no well-known name. false otherwise.
+	 */
+	public boolean needsContent(String fileName)
+	{
+		return !fileNames.containsKey(fileName)&&(fileName.lastIndexOf('.')<=0||fileName.endsWith(".h"));
+	}
+
+	/**
+	 * Detects the language of a file.
+	 *
+	 * @param fileName the file name.
+	 * @param head the first bytes of the file or null if the content isn't needed.
+	 * @return the extension of the detected language or null if the extension of the file name is used.
+	 */
+	public String detect(String fileName, byte[] head)
+	{
+		String extension = fileNames.get(fileName);
+		if(extension!=null||head==null||!needsContent(fileName))
+		{
+			return extension;
+		}
+		String text = new String(head, StandardCharsets.ISO_8859_1);
+		if(text.startsWith("#!"))
+		{
+			extension = interpreter(text);
+		}
+		if(extension==null)
+		{
+			extension = modeline(text.substring(0, Math.min(text.length(), MODELINE_RANGE)));
+		}
+		if(extension==null&&fileName.endsWith(".h")&&CPP.matcher(text).find())
+		{
+			extension = ".hpp";
+		}
+		return extension;
+	}
+
+	/**
+	 * Returns the cached result for a file.
+	 *
+	 * @param path the absolute path of the file.
+	 * @param modified the modification time of the file.
+	 * @return the extension, an empty String if none was detected, or null if there's no valid result.
+	 */
+	String lookup(String path, long modified)
+	{
+		Verdict verdict = verdicts.get(path);
+		return verdict==null||verdict.modified!=modified ? null : verdict.extension;
+	}
+
+	/**
+	 * Caches the result for a file.
+	 *
+	 * @param path the absolute path of the file.
+	 * @param modified the modification time of the file.
+	 * @param extension the extension or an empty String if none was detected.
+	 */
+	void remember(String path, long modified, String extension)
+	{
+		verdicts.put(path, new Verdict(modified, extension));
+	}
+
+	/**
+	 * Returns the extension of the interpreter named in a shebang line.
+	 *
+	 * @param text the content starting with the shebang.
+	 * @return the extension or null if the interpreter is unknown.
+	 */
+	private String interpreter(String text)
+	{
+		int end = text.indexOf('\n');
+		String[] tokens = text.substring(2, end<0 ? text.length() : end).trim().split("\\s+");
+		int t = 0;
+		String program = tokens[0].substring(tokens[0].lastIndexOf('/')+1);
+		if(program.equals("env"))
+		{
+			t++;
+			while(t<tokens.length&&(tokens[t].startsWith("-")||tokens[t].contains("=")))
+			{
+				t++;
+			}
+			program = t<tokens.length ? tokens[t] : "";
+		}
+		return languages.get(program.replaceFirst("[0-9.]+$", "").toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Returns the extension of the language named in a modeline.
+	 *
+	 * @param text the beginning of the content.
+	 * @return the extension or null if there's no modeline with a known language.
+	 */
+	private String modeline(String text)
+	{
+		Matcher m = EMACS.matcher(text);
+		if(m.find())
+		{
+			String extension = languages.get((m.group(1)!=null ? m.group(1) : m.group(2)).toLowerCase(Locale.ROOT));
+			if(extension!=null)
+			{
+				return extension;
+			}
+		}
+		m = VIM.matcher(text);
+		return m.find() ? languages.get(m.group(1).toLowerCase(Locale.ROOT)) : null;
+	}
+
+	/**
+	 * The detected extension of a file with the modification time it's valid for.
+	 */
+	private static final class Verdict
+	{
+		/**
+		 * Saves the modification time of the file.
+		 */
+		private final long modified;
+		/**
+		 * Saves the extension or an empty String.
+		 */
+		private final String extension;
+
+		/**
+		 * Creates a new verdict.
+		 *
+		 * @param modified the modification time of the file.
+		 * @param extension the extension or an empty String.
+		 */
+		Verdict(long modified, String extension)
+		{
+			this.modified = modified;
+			this.extension = extension;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+/**
+ * A SrcFileHandler whose results are a vector of named metrics, e. g. numbers of lines.
+ * The vector allows the SourceAnalyzer to compute per-file results, estimates and merged results without knowing the
+ * concrete handler.
+ * Most metrics are additive, i. e. the value for several files is the sum of the values of the files. Other metrics,
+ * e. g. a maximum, are merged by addMetricValues in their own way.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+public interface MetricHandler extends SrcFileHandler
+{
+	/**
+	 * Returns the names of all metrics.
+	 *
+	 * @return the names in the order of the values.
+	 */
+	String[] getMetricNames();
+
+	/**
+	 * Returns the values of all metrics for all handled files.
+	 *
+	 * @return the values in the order of the names.
+	 */
+	long[] getMetricValues();
+
+	/**
+	 * Returns the values of all metrics for the last handled file.
+	 *
+	 * @return the values in the order of the names.
+	 */
+	long[] getFileMetricValues();
+
+	/**
+	 * Indicates if a metric is additive.
+	 *
+	 * @param metric the index of the metric in the order of the names.
+	 * @return true if the value for several files is the sum of the values of the files. false otherwise.
+	 */
+	boolean isAdditive(int metric);
+
+	/**
+	 * Adds metric values to the values of this handler, e. g. to merge the results of several handlers.
+	 *
+	 * @param values the values in the order of the names.
+	 */
+	void addMetricValues(long[] values);
+}
\ No newline at end of file
@@ -20,13 +20,17 @@
 
 package marm.src.ana;
 
+import java.util.Map;
+
 /**
  * An abstract FileHandler for supporting multiple extensions.
  * For subclasses, it's not recommended to override the getExtension method because it's handled by this class.
  * Instead, overriding the clone method is necessary.
+ * Clones may share their results, e. g. the clones for several extensions. An independent analysis, e. g. an
+ * AnalysisSession, uses copies instead, which don't share any results with the original instance.
  * 
  * @author Martin Armbruster
- * @version 1.0
+ * @version 1.2
  * @since 1.2
  */
 public abstract class MultiExtensionSupportFileHandler implements SrcFileHandler, Cloneable
@@ -52,6 +56,21 @@ public abstract class MultiExtensionSupportFileHandler implements SrcFileHandler
 		return extension;
 	}
 	
+	/**
+	 * Creates a copy of this instance that doesn't share any results with it. Instances sharing state, e. g. the clones
+	 * for several extensions, get the same map of copies, so their copies share the copied state again.
+	 * The default implementation returns a clone, which is sufficient if clones don't share any state. Subclasses
+	 * whose clones share state have to override this method.
+	 * 
+	 * @param copies maps the shared state of the copied instances to the state of their copies.
+	 * @return the copy or null if this instance can't be copied.
+	 * @throws IllegalArgumentException if this instance can't be copied for a reason given by the message.
+	 */
+	public MultiExtensionSupportFileHandler copy(Map<Object, Object> copies)
+	{
+		return clone();
+	}
+	
 	/**
 	 * Clones this instance and returns a copy.
 	 * Subclasses should override this method because it always returns null.
@@ -0,0 +1,414 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the next files asynchronously while the current file is analyzed, so reading and analyzing overlap with one
+ * thread. Small files are read with one asynchronous read into a direct buffer of a pool, and the buffer is reused
+ * after the file was taken. Larger files are mapped into memory when they're taken. Files are taken in the order they
+ * were submitted, and their content is decoded with the default charset like a FileReader does. The first block of
+ * the bytes is kept, so binary files and languages are detected without reading the file again.
+ * An instance is used by one thread.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+final class Prefetcher
+{
+	/**
+	 * The size of the pooled buffers. Larger files are mapped.
+	 */
+	static final int BUFFER_SIZE = 256*1024;
+	/**
+	 * The maximum size of mapped files. Larger files aren't prefetched.
+	 */
+	static final long MAX_MAPPED_SIZE = 64L*1024*1024;
+	/**
+	 * Saves the maximum number of submitted files not yet taken.
+	 */
+	private final int depth;
+	/**
+	 * Saves the number of pooled buffers.
+	 */
+	private final int buffers;
+	/**
+	 * Saves the free buffers.
+	 */
+	private final ArrayDeque<ByteBuffer> pool;
+	/**
+	 * Saves all submitted files not yet taken in submission order.
+	 */
+	private final ArrayDeque<Read> reads;
+	/**
+	 * Saves the decoder for the content.
+	 */
+	private final CharsetDecoder decoder;
+	/**
+	 * Saves the number of submitted files whose read is started.
+	 */
+	private int started;
+	/**
+	 * Saves the first block of the last taken file or null if it wasn't read.
+	 */
+	private byte[] head;
+
+	/**
+	 * Creates a new prefetcher.
+	 *
+	 * @param depth the maximum number of files read ahead.
+	 * @param buffers the number of pooled buffers.
+	 */
+	Prefetcher(int depth, int buffers)
+	{
+		this.depth = Math.max(1, depth);
+		this.buffers = Math.max(1, buffers);
+		pool = new ArrayDeque<ByteBuffer>();
+		for(int b=0; b<this.buffers; b++)
+		{
+			pool.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+		}
+		reads = new ArrayDeque<Read>();
+		decoder = Charset.defaultCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Returns the maximum number of files read ahead.
+	 *
+	 * @return the depth.
+	 */
+	int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * Returns the number of pooled buffers.
+	 *
+	 * @return the number of buffers.
+	 */
+	int getBuffers()
+	{
+		return buffers;
+	}
+
+	/**
+	 * Submits a file. Its read starts as soon as a buffer is free.
+	 *
+	 * @param f the file.
+	 * @param size the size of the file.
+	 */
+	void submit(File f, long size)
+	{
+		reads.add(new Read(f, size));
+		startReads();
+	}
+
+	/**
+	 * Takes the content of the oldest submitted file and waits until it's read.
+	 *
+	 * @param f the file. It must be the oldest submitted file.
+	 * @return the content or null if the file is too large or couldn't be read.
+	 * @throws IllegalStateException if the file isn't the oldest submitted file.
+	 */
+	CharSequence take(File f)
+	{
+		head = null;
+		Read read = reads.poll();
+		if(read==null||!read.file.equals(f))
+		{
+			throw new IllegalStateException("The file wasn't submitted next: "+f);
+		}
+		if(read.started)
+		{
+			started--;
+		}
+		try
+		{
+			if(!read.started)
+			{
+				return null;
+			}
+			if(read.size>BUFFER_SIZE)
+			{
+				return read.size<=MAX_MAPPED_SIZE ? map(read.file) : null;
+			}
+			return read.finish();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+		finally
+		{
+			if(read.buffer!=null)
+			{
+				read.buffer.clear();
+				pool.add(read.buffer);
+			}
+			startReads();
+		}
+	}
+
+	/**
+	 * Returns the first block of the last taken file.
+	 *
+	 * @return the first ContentSniffer.BLOCK_SIZE bytes or fewer if the file is smaller. null if the content of the
+	 * file wasn't read.
+	 */
+	byte[] getHead()
+	{
+		return head;
+	}
+
+	/**
+	 * Discards all submitted files and waits for their reads.
+	 */
+	void cancel()
+	{
+		while(!reads.isEmpty())
+		{
+			Read read = reads.poll();
+			read.close();
+			if(read.buffer!=null)
+			{
+				read.buffer.clear();
+				pool.add(read.buffer);
+			}
+		}
+		started = 0;
+	}
+
+	/**
+	 * Starts the reads of submitted files while the depth allows it and buffers are free.
+	 */
+	private void startReads()
+	{
+		for(Read read : reads)
+		{
+			if(started>=depth)
+			{
+				return;
+			}
+			if(read.started)
+			{
+				continue;
+			}
+			if(read.size<=BUFFER_SIZE)
+			{
+				if(pool.isEmpty())
+				{
+					return;
+				}
+				read.start(pool.poll());
+			}
+			read.started = true;
+			started++;
+		}
+	}
+
+	/**
+	 * Maps a file into memory and decodes it.
+	 *
+	 * @param f the file.
+	 * @return the content.
+	 * @throws IOException if the file can't be read.
+	 */
+	private CharSequence map(File f) throws IOException
+	{
+		FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+		try
+		{
+			return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Decodes bytes and keeps their first block.
+	 *
+	 * @param bytes the bytes.
+	 * @return the characters.
+	 * @throws CharacterCodingException never because malformed input is replaced.
+	 */
+	private CharBuffer decode(ByteBuffer bytes) throws CharacterCodingException
+	{
+		head = new byte[Math.min(bytes.remaining(), ContentSniffer.BLOCK_SIZE)];
+		bytes.duplicate().get(head);
+		decoder.reset();
+		return decoder.decode(bytes);
+	}
+
+	/**
+	 * The read of one submitted file.
+	 */
+	private final class Read
+	{
+		/**
+		 * Saves the file.
+		 */
+		private final File file;
+		/**
+		 * Saves the size of the file.
+		 */
+		private final long size;
+		/**
+		 * Indicates if the read is started or the file is mapped when it's taken.
+		 */
+		private boolean started;
+		/**
+		 * Saves the buffer or null.
+		 */
+		private ByteBuffer buffer;
+		/**
+		 * Saves the channel of an asynchronous read or null.
+		 */
+		private AsynchronousFileChannel channel;
+		/**
+		 * Saves the result of the asynchronous read or null.
+		 */
+		private Future<Integer> result;
+
+		/**
+		 * Creates a new read.
+		 *
+		 * @param file the file.
+		 * @param size the size of the file.
+		 */
+		Read(File file, long size)
+		{
+			this.file = file;
+			this.size = size;
+		}
+
+		/**
+		 * Starts the asynchronous read. If the file can't be opened, it's read when it's taken.
+		 *
+		 * @param target the buffer.
+		 */
+		void start(ByteBuffer target)
+		{
+			buffer = target;
+			try
+			{
+				channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+				result = channel.read(buffer, 0);
+			}
+			catch(IOException e)
+			{
+				close();
+			}
+		}
+
+		/**
+		 * Waits for the read, reads the rest of the file if the read was short and decodes the content.
+		 *
+		 * @return the content or null if the file grew larger than the buffer.
+		 * @throws IOException if the file can't be read.
+		 */
+		CharSequence finish() throws IOException
+		{
+			try
+			{
+				if(result==null)
+				{
+					throw new IOException("The file couldn't be opened: "+file);
+				}
+				int read = result.get();
+				while(read>=0&&buffer.position()<size&&buffer.hasRemaining())
+				{
+					read = channel.read(buffer, buffer.position()).get();
+				}
+				if(!buffer.hasRemaining()&&channel.size()>buffer.capacity())
+				{
+					return null;
+				}
+				buffer.flip();
+				return decode(buffer);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading "+file);
+			}
+			catch(ExecutionException e)
+			{
+				throw new IOException("The file couldn't be read: "+file, e.getCause());
+			}
+			finally
+			{
+				close();
+			}
+		}
+
+		/**
+		 * Waits for a started read and closes the channel.
+		 */
+		void close()
+		{
+			if(channel==null)
+			{
+				return;
+			}
+			try
+			{
+				if(result!=null&&!result.isDone())
+				{
+					result.get();
+				}
+				channel.close();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch(ExecutionException e)
+			{
+				e.printStackTrace();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+			channel = null;
+		}
+	}
+}
\ No newline at end of file
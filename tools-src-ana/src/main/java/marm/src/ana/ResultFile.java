@@ -0,0 +1,144 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads and writes the files with the number of found files and the metric totals of all handlers of an analysis,
+ * e. g. for merging the results of several shards.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class ResultFile
+{
+	/**
+	 * The first four bytes of a result file.
+	 */
+	private static final int MAGIC = 0x53524152;
+
+	/**
+	 * Prevents instances.
+	 */
+	private ResultFile()
+	{
+	}
+
+	/**
+	 * Writes the number of found files and the metric totals of handlers to a file.
+	 *
+	 * @param resultFile the file.
+	 * @param files the number of found files.
+	 * @param handlers the handlers.
+	 * @throws IOException if the file can't be written.
+	 */
+	static void write(File resultFile, int files, List<SrcFileHandler> handlers) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(resultFile)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(files);
+			out.writeInt(handlers.size());
+			for(SrcFileHandler handler : handlers)
+			{
+				out.writeUTF(handler.getClass().getName());
+				out.writeUTF(handler.getExtension());
+				long[] values = handler instanceof MetricHandler ? ((MetricHandler)handler).getMetricValues()
+						: new long[0];
+				out.writeInt(values.length);
+				for(long value : values)
+				{
+					out.writeLong(value);
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Adds the metric totals of a result file to handlers. The file must have been written for handlers of the same
+	 * types and extensions in the same order.
+	 *
+	 * @param resultFile the file.
+	 * @param handlers the handlers.
+	 * @return the number of found files saved in the file.
+	 * @throws IOException if the file can't be read or doesn't match the handlers.
+	 */
+	static int merge(File resultFile, List<SrcFileHandler> handlers) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(resultFile)));
+		try
+		{
+			if(in.readInt()!=MAGIC)
+			{
+				throw new IOException("Not a result file: "+resultFile);
+			}
+			int files = in.readInt();
+			if(in.readInt()!=handlers.size())
+			{
+				throw new IOException("The result doesn't match the registered handlers: "+resultFile);
+			}
+			long[][] values = new long[handlers.size()][];
+			for(int h=0; h<values.length; h++)
+			{
+				SrcFileHandler handler = handlers.get(h);
+				boolean matching = in.readUTF().equals(handler.getClass().getName());
+				matching &= in.readUTF().equals(handler.getExtension());
+				int expected = handler instanceof MetricHandler ? ((MetricHandler)handler).getMetricNames().length : 0;
+				if(!matching||in.readInt()!=expected)
+				{
+					throw new IOException("The result doesn't match the registered handlers: "+resultFile);
+				}
+				values[h] = new long[expected];
+				for(int m=0; m<values[h].length; m++)
+				{
+					values[h][m] = in.readLong();
+				}
+			}
+			for(int h=0; h<values.length; h++)
+			{
+				if(values[h].length>0)
+				{
+					((MetricHandler)handlers.get(h)).addMetricValues(values[h]);
+				}
+			}
+			return files;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+/**
+ * Timing of the threads of a parallel analysis, e. g. for comparing scheduling policies.
+ * The makespan is the time from the start of the threads until the last one finished. The idle time is the time all
+ * threads spent waiting instead of analyzing files within the makespan, and the tail is the time between the first and
+ * the last thread finishing.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public final class ScheduleStatistics
+{
+	/**
+	 * Saves the makespan in nanoseconds.
+	 */
+	private final long makespan;
+	/**
+	 * Saves the time every thread analyzed files in nanoseconds.
+	 */
+	private final long[] busy;
+	/**
+	 * Saves the time every thread finished, relative to the start, in nanoseconds.
+	 */
+	private final long[] finish;
+
+	/**
+	 * Creates new statistics.
+	 *
+	 * @param makespan the makespan in nanoseconds.
+	 * @param busy the time every thread analyzed files in nanoseconds.
+	 * @param finish the time every thread finished, relative to the start, in nanoseconds.
+	 */
+	ScheduleStatistics(long makespan, long[] busy, long[] finish)
+	{
+		this.makespan = makespan;
+		this.busy = busy.clone();
+		this.finish = finish.clone();
+	}
+
+	/**
+	 * Returns the number of threads.
+	 *
+	 * @return the number of threads.
+	 */
+	public int getThreads()
+	{
+		return busy.length;
+	}
+
+	/**
+	 * Returns the makespan.
+	 *
+	 * @return the time from the start of the threads until the last one finished in nanoseconds.
+	 */
+	public long getMakespanNanos()
+	{
+		return makespan;
+	}
+
+	/**
+	 * Returns the time a thread analyzed files.
+	 *
+	 * @param thread the index of the thread.
+	 * @return the time in nanoseconds.
+	 */
+	public long getBusyNanos(int thread)
+	{
+		return busy[thread];
+	}
+
+	/**
+	 * Returns the total idle time of all threads within the makespan.
+	 *
+	 * @return the time in nanoseconds.
+	 */
+	public long getIdleNanos()
+	{
+		long idle = 0;
+		for(long b : busy)
+		{
+			idle += makespan-b;
+		}
+		return idle;
+	}
+
+	/**
+	 * Returns the tail of the analysis.
+	 *
+	 * @return the time between the first and the last thread finishing in nanoseconds.
+	 */
+	public long getTailNanos()
+	{
+		long first = makespan;
+		for(long f : finish)
+		{
+			first = Math.min(first, f);
+		}
+		return makespan-first;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "threads="+getThreads()+" makespan="+makespan/1000000+"ms idle="+getIdleNanos()/1000000+"ms tail="
+				+getTailNanos()/1000000+"ms";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+/**
+ * The order in which several threads of a SourceAnalyzer analyze the found files.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public enum Scheduling
+{
+	/**
+	 * All files are found first and analyzed in traversal order.
+	 */
+	TRAVERSAL_ORDER,
+	/**
+	 * All files are found first and analyzed from the largest to the smallest one, so no large file is left for the
+	 * end of the analysis while the other threads are idle.
+	 */
+	LARGEST_FIRST,
+	/**
+	 * Files are analyzed while the directory is traversed. Every thread takes the largest file found but not yet
+	 * analyzed. The threads start earlier, but a large file found late can still extend the analysis. If files with
+	 * equal content are detected, all files are found first as with LARGEST_FIRST.
+	 */
+	STREAMING_LARGEST_FIRST
+}
\ No newline at end of file
@@ -0,0 +1,176 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+
+/**
+ * A part of a directory analyzed by one of several processes.
+ * The entries directly below the analyzed directory are the units of work. Every entry is owned by the shard with the
+ * index of the hash code of its name modulo the number of shards, so the partitioning only depends on the names and is
+ * equal in every process. Without a claim directory, a shard analyzes exactly its own entries, e. g. when an external
+ * scheduler starts the processes.
+ * With a claim directory shared by all processes, every entry is claimed by creating a file in it before it's
+ * analyzed. The creation is atomic, so every entry is analyzed by exactly one process. A shard claims its own entries
+ * first and then steals the entries not yet claimed by slower shards, which balances skewed trees. If a claim file
+ * can't be created, e. g. because the claim directory isn't writable, the entry is analyzed by its owner.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+public final class Shard
+{
+	/**
+	 * Saves the index of this shard.
+	 */
+	private final int index;
+	/**
+	 * Saves the number of shards.
+	 */
+	private final int count;
+	/**
+	 * Saves the directory for the claims or null if only own entries are analyzed.
+	 */
+	private final File claimDirectory;
+
+	/**
+	 * Creates a shard analyzing exactly its own entries.
+	 *
+	 * @param index the index of the shard, starting with 0.
+	 * @param count the number of shards.
+	 * @throws IllegalArgumentException if the index is out of range.
+	 */
+	public Shard(int index, int count)
+	{
+		this(index, count, null);
+	}
+
+	/**
+	 * Creates a shard claiming entries in a shared directory.
+	 *
+	 * @param index the index of the shard, starting with 0.
+	 * @param count the number of shards.
+	 * @param claimDirectory the existing directory shared by all shards or null to analyze exactly the own entries.
+	 * @throws IllegalArgumentException if the index is out of range.
+	 */
+	public Shard(int index, int count, File claimDirectory)
+	{
+		if(count<1||index<0||index>=count)
+		{
+			throw new IllegalArgumentException("invalid shard "+index+"/"+count);
+		}
+		this.index = index;
+		this.count = count;
+		this.claimDirectory = claimDirectory;
+	}
+
+	/**
+	 * Returns the index of this shard.
+	 *
+	 * @return the index.
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return the number of shards.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the shard owning an entry.
+	 *
+	 * @param name the name of the entry directly below the analyzed directory.
+	 * @return the index of the owning shard.
+	 */
+	public int owner(String name)
+	{
+		return (name.hashCode()&Integer.MAX_VALUE)%count;
+	}
+
+	/**
+	 * Claims an entry for this shard.
+	 *
+	 * @param root the absolute path of the analyzed directory.
+	 * @param name the name of the entry directly below the analyzed directory.
+	 * @return true if this shard analyzes the entry. false if another shard does it.
+	 * If the claim file can't be created, only the owner of the entry analyzes it.
+	 */
+	boolean claim(String root, String name)
+	{
+		if(claimDirectory==null)
+		{
+			return owner(name)==index;
+		}
+		try
+		{
+			Files.createFile(new File(claimDirectory, claimName(root+File.separatorChar+name)).toPath());
+			return true;
+		}
+		catch(FileAlreadyExistsException e)
+		{
+			return false;
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return owner(name)==index;
+		}
+	}
+
+	/**
+	 * Checks if this shard steals entries of other shards.
+	 *
+	 * @return true if there is a claim directory. false otherwise.
+	 */
+	boolean isStealing()
+	{
+		return claimDirectory!=null;
+	}
+
+	/**
+	 * Returns the name of the claim file of an entry.
+	 *
+	 * @param path the absolute path of the entry.
+	 * @return the 64 bit FNV-1a hash of the path in hexadecimal notation.
+	 */
+	private static String claimName(String path)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for(int i=0; i<path.length(); i++)
+		{
+			hash ^= path.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return Long.toHexString(hash);
+	}
+}
\ No newline at end of file
@@ -21,26 +21,79 @@
 package marm.src.ana;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.Files;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.Set;
+import marm.src.ana.result.ResultCache;
+import marm.src.ana.result.ResultStore;
 
 /**
  * Searches for source code files in a given directory and analyzes them with special handlers.
+ * Optionally, files with equal content are detected. Then, all files are collected with their sizes during the
+ * traversal first, and handlers of selected types analyze only the first file of every group of equal files.
+ * For a quick overview of large directories, the metric totals of MetricHandlers can be estimated from a stratified
+ * random sample of the files instead of analyzing all of them.
+ * The metric values of every single file can be kept in a ResultStore for breakdowns by directory or extension, or
+ * passed to FileResultListeners, e. g. for exporting them. Files can be analyzed by several threads, by default from
+ * the largest to the smallest file, and the results of unchanged files can be taken from a ResultCache. For cold
+ * caches on spinning disks, one thread can read batches of files in the order of their inode numbers, and it can read
+ * the next files asynchronously while it analyzes the current one.
+ * Large directories can be split into shards analyzed by several processes. Every process writes the metric totals of
+ * its handlers to a result file, and the result files are merged into one analyzer configured equally.
+ * Binary files are recognized by the first block of their content before any handler reads them and are passed only
+ * to BinaryFileHandlers. Optionally, a LanguageDetector selects the handlers of files without extension or with an
+ * ambiguous one by their names and the same block.
+ * Several directories can be analyzed in one pass. Nested and duplicate directories are analyzed once, and the
+ * number of files is reported for every directory. Two versions of a directory can be compared, e. g. two checkouts.
+ * Then, only files that differ are analyzed, and the ResultStore receives the differences of their metric values.
+ * An instance analyzes one directory at a time. For concurrent analyses with the same settings, an
+ * AnalyzerConfiguration is created from a configured instance, and every analysis runs in its own AnalysisSession.
  * 
  * @author Martin Armbruster
- * @version 1.3
+ * @version 1.27
  * @since 1.0
  */
 public class SourceAnalyzer
 {
 	/**
-	 * Saves all regular expressions to identify directories and files for ignoring.
+	 * Empty metric names for handlers without metrics.
 	 */
-	private ArrayList<String> ignoredFiles;
+	private static final String[] NO_NAMES = new String[0];
 	/**
-	 * Saves all regular expressions to identify files for exclusive analysis.
+	 * Empty metric values for handlers without metrics.
 	 */
-	private ArrayList<String> includedFiles;
+	private static final long[] NO_VALUES = new long[0];
+	/**
+	 * Saves all compiled regular expressions to identify directories and files for ignoring.
+	 */
+	private ArrayList<Pattern> ignoredFiles;
+	/**
+	 * Saves all compiled regular expressions to identify files for exclusive analysis.
+	 */
+	private ArrayList<Pattern> includedFiles;
 	/**
 	 * Indicates the behavior for a file considered to be ignored and included for analysis.
 	 * When it's true, the file is included. When it's false, the file is ignored. 
@@ -54,19 +107,195 @@ public class SourceAnalyzer
 	 * Counter for all found files in the given directory.
 	 */
 	private int fileCounter;
+	/**
+	 * Indicates if files with equal content are detected.
+	 */
+	private boolean detectDuplicates;
+	/**
+	 * Saves the types of handlers analyzing only the first file of every group of equal files.
+	 */
+	private ArrayList<Class<? extends SrcFileHandler>> skipDuplicateTypes;
+	/**
+	 * Saves the groups of files with equal content found since the last reset.
+	 */
+	private ArrayList<List<File>> duplicateGroups;
+	/**
+	 * Saves the files found during the traversal if they're analyzed afterwards, or null if they're analyzed
+	 * immediately.
+	 */
+	private ArrayList<File> foundFiles;
+	/**
+	 * Saves the sizes of the found files.
+	 */
+	private long[] foundSizes;
+	/**
+	 * Saves the modification times of the found files.
+	 */
+	private long[] foundModified;
+	/**
+	 * Saves the sampler the found files are passed to in the approximate mode, or null.
+	 */
+	private StratifiedSampler sampler;
+	/**
+	 * Saves the store for the metric values of every file or null.
+	 */
+	private ResultStore resultStore;
+	/**
+	 * Saves the cache for the metric values of unchanged files or null.
+	 */
+	private ResultCache resultCache;
+	/**
+	 * Saves the absolute path of the directory currently analyzed.
+	 */
+	private String rootPath;
+	/**
+	 * Saves all listeners receiving the results of single files.
+	 */
+	private ArrayList<FileResultListener> resultListeners;
+	/**
+	 * Saves the number of threads analyzing files.
+	 */
+	private int parallelism;
+	/**
+	 * Saves the shard analyzed by this instance or null if directories are analyzed completely.
+	 */
+	private Shard shard;
+	/**
+	 * Indicates if binary files are recognized and passed only to BinaryFileHandlers.
+	 */
+	private boolean detectBinaryFiles;
+	/**
+	 * Counter for the binary files found.
+	 */
+	private AtomicInteger binaryCounter;
+	/**
+	 * Saves the detector for the languages of files without extension or with an ambiguous one, or null.
+	 */
+	private LanguageDetector languageDetector;
+	/**
+	 * Saves the order in which several threads analyze the files.
+	 */
+	private Scheduling scheduling;
+	/**
+	 * Saves the queue the found files are passed to while the threads analyze them, or null.
+	 */
+	private PriorityBlockingQueue<Task> taskQueue;
+	/**
+	 * Saves the timing of the threads of the last parallel analysis or null.
+	 */
+	private ScheduleStatistics scheduleStatistics;
+	/**
+	 * Saves the number of files sorted by inode number before they're read, or 0 for the traversal order.
+	 */
+	private int physicalBatch;
+	/**
+	 * Saves the files of the current batch.
+	 */
+	private File[] batchFiles;
+	/**
+	 * Saves the sizes of the files of the current batch.
+	 */
+	private long[] batchSizes;
+	/**
+	 * Saves the modification times of the files of the current batch.
+	 */
+	private long[] batchModified;
+	/**
+	 * Saves the number of files in the current batch.
+	 */
+	private int batchCount;
+	/**
+	 * Saves the canonical paths of the directories of the current multi-root analysis, each with a trailing
+	 * separator, or null.
+	 */
+	private String[] rootPrefixes;
+	/**
+	 * Saves the number of files found in every directory of the current multi-root analysis.
+	 */
+	private int[] rootFiles;
+	/**
+	 * Saves the number of files found in every directory of all multi-root analyses since the last reset.
+	 */
+	private LinkedHashMap<Path, Integer> rootCounters;
+	/**
+	 * Saves the factor of the values added to the ResultStore. It's -1 while the older version of a comparison is
+	 * analyzed.
+	 */
+	private int storeSign;
+	/**
+	 * Saves the maxima of non-additive metrics of both versions by row and column while comparing, or null.
+	 */
+	private HashMap<Long, long[]> comparedMaxima;
+	/**
+	 * Saves the prefetcher reading the next files for one thread or null.
+	 */
+	private Prefetcher prefetcher;
+	/**
+	 * Saves the files submitted to the prefetcher and not yet analyzed.
+	 */
+	private ArrayDeque<Task> prefetched;
 	
 	/**
 	 * Creates a new instance of the SourceAnalyzer without registered handlers.
 	 */
 	public SourceAnalyzer()
 	{
-		ignoredFiles = new ArrayList<String>();
-		includedFiles = new ArrayList<String>();
+		ignoredFiles = new ArrayList<Pattern>();
+		includedFiles = new ArrayList<Pattern>();
 		includeBeforeIgnore = true;
 		handlers = new ArrayList<SrcFileHandler>();
+		skipDuplicateTypes = new ArrayList<Class<? extends SrcFileHandler>>();
+		duplicateGroups = new ArrayList<List<File>>();
+		resultListeners = new ArrayList<FileResultListener>();
+		parallelism = 1;
+		scheduling = Scheduling.LARGEST_FIRST;
+		detectBinaryFiles = true;
+		binaryCounter = new AtomicInteger();
+		rootCounters = new LinkedHashMap<Path, Integer>();
+		storeSign = 1;
 		reset();
 	}
 	
+	/**
+	 * Creates a new instance with the settings of another instance and copies of its handlers. The copies don't
+	 * share any results with the handlers of the other instance. The FileResultListeners, the ResultStore and the
+	 * results of the other instance aren't taken over.
+	 * 
+	 * @param template the other instance.
+	 * @throws IllegalArgumentException if a handler isn't a MultiExtensionSupportFileHandler that can be copied.
+	 */
+	SourceAnalyzer(SourceAnalyzer template)
+	{
+		this();
+		ignoredFiles.addAll(template.ignoredFiles);
+		includedFiles.addAll(template.includedFiles);
+		includeBeforeIgnore = template.includeBeforeIgnore;
+		detectDuplicates = template.detectDuplicates;
+		skipDuplicateTypes.addAll(template.skipDuplicateTypes);
+		handlers.addAll(template.cloneHandlers());
+		parallelism = template.parallelism;
+		scheduling = template.scheduling;
+		setPhysicalOrder(template.physicalBatch);
+		if(template.prefetcher!=null)
+		{
+			setPrefetch(template.prefetcher.getDepth(), template.prefetcher.getBuffers());
+		}
+		detectBinaryFiles = template.detectBinaryFiles;
+		languageDetector = template.languageDetector;
+		shard = template.shard;
+		resultCache = template.resultCache;
+	}
+	
+	/**
+	 * Indicates if the shard of this instance claims entries in a claim directory.
+	 * 
+	 * @return true if entries are claimed. false otherwise.
+	 */
+	boolean isClaiming()
+	{
+		return shard!=null&&shard.isStealing();
+	}
+	
 	/**
 	 * Adds and registers a new SrcFileHandler instance to this SourceAnalyzer. 
 	 * 
@@ -101,7 +330,7 @@ public class SourceAnalyzer
 	 */
 	public void addIgnoreFile(String regex)
 	{
-		ignoredFiles.add(regex);
+		ignoredFiles.add(Pattern.compile(".*"+regex));
 	}
 	
 	/**
@@ -113,7 +342,7 @@ public class SourceAnalyzer
 	 */
 	public void addIncludeFile(String regex)
 	{
-		includedFiles.add(regex);
+		includedFiles.add(Pattern.compile(".*"+regex));
 	}
 	
 	/**
@@ -128,6 +357,188 @@ public class SourceAnalyzer
 		includeBeforeIgnore = s;
 	}
 	
+	/**
+	 * Activates or deactivates the detection of files with equal content.
+	 * 
+	 * @param detect true if files with equal content are detected. false otherwise.
+	 */
+	public void setDetectDuplicates(boolean detect)
+	{
+		detectDuplicates = detect;
+	}
+	
+	/**
+	 * Lets all handlers of a type analyze only the first file of every group of files with equal content, e. g. to
+	 * count vendored copies of a file only once. This activates the detection of files with equal content.
+	 * 
+	 * @param type the type of the handlers.
+	 */
+	public void skipDuplicates(Class<? extends SrcFileHandler> type)
+	{
+		detectDuplicates = true;
+		skipDuplicateTypes.add(type);
+	}
+	
+	/**
+	 * Sets a store receiving the metric values of every file analyzed by a MetricHandler. The files are saved with
+	 * their paths relative to the analyzed directory and with '/' as separator. Values of metrics missing in the store
+	 * are dropped, and values of metrics with the same name from several handlers are added.
+	 * 
+	 * @param store the store or null to save no values of single files.
+	 */
+	public void setResultStore(ResultStore store)
+	{
+		resultStore = store;
+	}
+	
+	/**
+	 * Sets the number of threads analyzing the found files. With more than one thread, all files are collected during
+	 * the traversal first. Every thread analyzes them with its own clones of the MultiExtensionSupportFileHandlers, and
+	 * the metric values of cloned MetricHandlers are added to the registered handlers afterwards. Therefore, clones of
+	 * MetricHandlers have to start without results. Other handlers are shared by all threads and called by one thread
+	 * at a time. FileResultListeners are called concurrently.
+	 * 
+	 * @param threads the number of threads. Default is 1.
+	 */
+	public void setParallelism(int threads)
+	{
+		parallelism = Math.max(1, threads);
+	}
+	
+	/**
+	 * Sets the order in which several threads analyze the files. The default is Scheduling.LARGEST_FIRST.
+	 * 
+	 * @param scheduling the order.
+	 */
+	public void setScheduling(Scheduling scheduling)
+	{
+		this.scheduling = scheduling;
+	}
+	
+	/**
+	 * Returns the timing of the threads of the last analysis with several threads.
+	 * 
+	 * @return the statistics or null if no analysis since the last reset used several threads.
+	 */
+	public ScheduleStatistics getScheduleStatistics()
+	{
+		return scheduleStatistics;
+	}
+	
+	/**
+	 * Sets if files analyzed by one thread are read in the physical order of a file system instead of the traversal
+	 * order. Then, batches of found files are sorted by their inode numbers before they're analyzed, which reduces the
+	 * seeks on spinning disks with cold caches. Larger batches give longer sequential runs but delay the analysis. It's
+	 * ignored by several threads, which analyze the files in the order of the scheduling policy, and by file systems
+	 * without inode numbers.
+	 * 
+	 * @param batchSize the number of files per batch or 0 for the traversal order.
+	 */
+	public void setPhysicalOrder(int batchSize)
+	{
+		physicalBatch = FileSystems.getDefault().supportedFileAttributeViews().contains("unix") ? batchSize : 0;
+		batchFiles = physicalBatch>0 ? new File[physicalBatch] : null;
+		batchSizes = physicalBatch>0 ? new long[physicalBatch] : null;
+		batchModified = physicalBatch>0 ? new long[physicalBatch] : null;
+		batchCount = 0;
+	}
+	
+	/**
+	 * Sets if files analyzed by one thread are read ahead asynchronously. While a file is analyzed, the reads of the
+	 * next files are in progress, so waiting for the disk and analyzing overlap. Files up to 256 KB are read with one
+	 * read into a pooled buffer, and files up to 64 MB are mapped. SrcContentHandlers get the content read ahead,
+	 * decoded with the default charset, and other handlers read the files themselves from the warm cache.
+	 * It's ignored by several threads.
+	 * 
+	 * @param depth the maximum number of files read ahead or 0 for no read-ahead.
+	 * @param buffers the number of pooled buffers of 256 KB.
+	 */
+	public void setPrefetch(int depth, int buffers)
+	{
+		prefetcher = depth>0 ? new Prefetcher(depth, buffers) : null;
+		prefetched = depth>0 ? new ArrayDeque<Task>() : null;
+	}
+	
+	/**
+	 * Sets if binary files are recognized. Then, the first block of every file analyzed by at least one handler is
+	 * read once. Files containing NUL bytes or mostly invalid UTF-8 are passed only to BinaryFileHandlers, so other
+	 * handlers don't decode them. It's enabled by default.
+	 * 
+	 * @param detect true for recognizing binary files. false for passing them to all handlers.
+	 */
+	public void setDetectBinaryFiles(boolean detect)
+	{
+		detectBinaryFiles = detect;
+	}
+	
+	/**
+	 * Sets a detector for the languages of files without extension or with an ambiguous one. The extension it detects
+	 * is appended to the path of a file when the handlers are selected, e. g. a script starting with
+	 * "#!/usr/bin/env python" is analyzed by the handlers registered for ".py", and a C++ header with the extension
+	 * ".h" by those registered for ".hpp" instead of ".h".
+	 * 
+	 * @param detector the detector or null to select the handlers by the file names only.
+	 */
+	public void setLanguageDetector(LanguageDetector detector)
+	{
+		languageDetector = detector;
+	}
+	
+	/**
+	 * Sets the shard analyzed by this instance. Only the entries directly below an analyzed directory are split, so
+	 * files with equal content are only detected within a shard.
+	 * 
+	 * @param shard the shard or null to analyze directories completely.
+	 */
+	public void setShard(Shard shard)
+	{
+		this.shard = shard;
+	}
+	
+	/**
+	 * Sets a cache for the metric values of single files, e. g. for analyzing the same directory repeatedly in one
+	 * process. A file is only analyzed again by a MetricHandler if its size or modification time changed. Otherwise,
+	 * the cached values are added to the handler. The values are cached per handler type and extension, so all cached
+	 * handlers of the same type and extension have to be configured equally.
+	 * 
+	 * @param cache the cache or null to analyze every file.
+	 */
+	public void setResultCache(ResultCache cache)
+	{
+		resultCache = cache;
+	}
+	
+	/**
+	 * Removes a listener receiving the results of single files.
+	 * 
+	 * @param listener the listener.
+	 */
+	public void removeFileResultListener(FileResultListener listener)
+	{
+		resultListeners.remove(listener);
+	}
+	
+	/**
+	 * Adds a listener receiving the results of every file analyzed by a handler, e. g. to export them while the
+	 * directory is traversed.
+	 * 
+	 * @param listener the listener.
+	 */
+	public void addFileResultListener(FileResultListener listener)
+	{
+		resultListeners.add(listener);
+	}
+	
+	/**
+	 * Returns the groups of files with equal content found since the last reset.
+	 * 
+	 * @return the groups. The files of a group are in traversal order.
+	 */
+	public List<List<File>> getDuplicateGroups()
+	{
+		return Collections.unmodifiableList(duplicateGroups);
+	}
+	
 	/**
 	 * Resets this SourceAnalyzer instance and all registered handlers to the state after instantiation.
 	 * Between two analyzes, it's necessary to call this method.
@@ -136,6 +547,10 @@ public class SourceAnalyzer
 	public void reset()
 	{
 		fileCounter = 0;
+		binaryCounter.set(0);
+		duplicateGroups.clear();
+		rootCounters.clear();
+		scheduleStatistics = null;
 		for(SrcFileHandler handler : handlers)
 		{
 			handler.reset();
@@ -153,135 +568,1405 @@ public class SourceAnalyzer
 	 */
 	public void analyze(File f)
 	{
-		File[] files = f.listFiles();
-		if(files==null)
-		{
-			return;
-		}
-		loop: for(int i=0; i<files.length; i++)
+		rootPath = f.getAbsolutePath();
+		analyzeRoots(new File[] {f});
+	}
+	
+	/**
+	 * Searches for source code files in several directories and analyzes them in one pass with one pool of threads.
+	 * The directories are canonicalized first. Directories contained in other ones and duplicates are traversed only
+	 * as part of the outer directory, so no file is analyzed twice. The paths passed to the ResultStore and the
+	 * FileResultListeners are relative to the deepest directory containing all directories, which may be the root of
+	 * a file system, so the metric values of one directory are the rollup of its relative path. Only directories on
+	 * different file system roots are passed with absolute paths. The number of files of every directory is available
+	 * by getRootCounters(). Directories that can't be resolved are skipped.
+	 * 
+	 * @param roots the directories that will be searched.
+	 */
+	public void analyze(Collection<Path> roots)
+	{
+		ArrayList<Path> canonical = new ArrayList<Path>();
+		for(Path root : roots)
 		{
-			boolean shouldInclude = false;
-			if(includedFiles.size()==0)
-			{
-				shouldInclude = true;
-			}
-			for(int j=0; j<includedFiles.size(); j++)
+			try
 			{
-				if(files[i].getAbsolutePath().matches(".*"+includedFiles.get(j)))
+				Path real = root.toRealPath();
+				if(!canonical.contains(real))
 				{
-					shouldInclude = true;
-					break;
+					canonical.add(real);
 				}
 			}
-			if(!shouldInclude)
+			catch(IOException e)
 			{
-				continue loop;
+				e.printStackTrace();
 			}
-			if(shouldInclude&&includeBeforeIgnore)
+		}
+		ArrayList<File> outermost = new ArrayList<File>();
+		Path common = canonical.isEmpty() ? null : canonical.get(0);
+		rootPrefixes = new String[canonical.size()];
+		rootFiles = new int[canonical.size()];
+		for(int r=0; r<canonical.size(); r++)
+		{
+			Path root = canonical.get(r);
+			String prefix = root.toString();
+			rootPrefixes[r] = prefix.endsWith(File.separator) ? prefix : prefix+File.separatorChar;
+			if(!isNested(root, canonical))
 			{
-				for(int j=0; j<ignoredFiles.size(); j++)
-				{
-					if(files[i].getAbsolutePath().matches(".*"+ignoredFiles.get(j)))
-					{
-						continue loop;
-					}
-				}
+				outermost.add(root.toFile());
 			}
-			if(files[i].isFile())
+			while(common!=null&&!root.startsWith(common))
 			{
-				handleFile(files[i]);
+				common = common.getParent();
 			}
-			else if(files[i].isDirectory())
+		}
+		rootPath = common==null ? null : common.toString();
+		try
+		{
+			analyzeRoots(outermost.toArray(new File[outermost.size()]));
+		}
+		finally
+		{
+			for(int r=0; r<canonical.size(); r++)
 			{
-				analyze(files[i]);
+				Integer counter = rootCounters.get(canonical.get(r));
+				rootCounters.put(canonical.get(r), (counter==null ? 0 : counter)+rootFiles[r]);
 			}
+			rootPrefixes = null;
+			rootFiles = null;
 		}
 	}
 	
 	/**
-	 * Handles a real file. If it's identified as a source code file, it will be analyzed.
+	 * Checks if a directory is contained in another one.
 	 * 
-	 * @param f the file.
+	 * @param root the canonical path of the directory.
+	 * @param roots the canonical paths of all directories without duplicates.
+	 * @return true if another directory contains it. false otherwise.
 	 */
-	private void handleFile(File f)
+	private static boolean isNested(Path root, List<Path> roots)
 	{
-		fileCounter++;
-		for(int i=0; i<handlers.size(); i++)
+		for(Path other : roots)
 		{
-			SrcFileHandler cur = handlers.get(i);
-			if(f.getAbsolutePath().endsWith(cur.getExtension()))
+			if(!other.equals(root)&&root.startsWith(other))
 			{
-				cur.handleFile(f);
+				return true;
 			}
 		}
+		return false;
 	}
 	
 	/**
-	 * Returns the number of total files found in the directory.
+	 * Returns the number of files found in every directory analyzed by analyze(Collection) since the last reset.
+	 * Files of nested directories are counted for the inner and the outer directory.
 	 * 
-	 * @return the number of total files found.
+	 * @return the number of files by the canonical path of the directory in the order of the first analysis.
 	 */
-	public int getCounter()
+	public Map<Path, Integer> getRootCounters()
 	{
-		return fileCounter;
+		return Collections.unmodifiableMap(rootCounters);
 	}
 	
 	/**
-	 * Returns a registered SrcFileHandler instance that looks for a special extension.
-	 * If two or more instances look for the extension, the first found instance will be returned.
+	 * Searches for source code files in directories and analyzes them.
 	 * 
-	 * @param extension the extension for that the SrcFileHandler instance is looking.
-	 * @return the first found registered SrcFileHandler that looks for the extension or null if no instance is found.
+	 * @param roots the directories that don't contain each other.
 	 */
-	public SrcFileHandler getFileHandler(String extension)
+	private void analyzeRoots(File[] roots)
 	{
-		for(int i=0; i<handlers.size(); i++)
+		if(!detectDuplicates&&parallelism<=1)
 		{
-			SrcFileHandler h = handlers.get(i);
-			if(h.getExtension().equals(extension))
+			try
 			{
-				return h;
+				traverse(roots);
+				handleBatch();
+				handlePrefetched(0);
+			}
+			finally
+			{
+				discardPending();
 			}
+			return;
+		}
+		if(!detectDuplicates&&scheduling==Scheduling.STREAMING_LARGEST_FIRST)
+		{
+			analyzeStreaming(roots);
+			return;
+		}
+		foundFiles = new ArrayList<File>();
+		foundSizes = new long[64];
+		foundModified = new long[64];
+		try
+		{
+			traverse(roots);
+			handleFound();
+		}
+		finally
+		{
+			foundFiles = null;
+			foundSizes = null;
+			foundModified = null;
+			discardPending();
 		}
-		return null;
 	}
 	
 	/**
-	 * Returns registered SrcFileHandler instances looking exactly for a special extension.
-	 * 
-	 * @param extension the extension for which the SrcFileHandler instances are searched.
-	 * @return all registered SrcFileHandler instances looking exactly for the extension. When no instance is found,
-	 * the collection is empty.
+	 * Analyzes the collected files with one or several threads. Files with equal content are detected before if
+	 * necessary.
 	 */
-	public Collection<SrcFileHandler> getExactFileHandlers(String extension)
+	private void handleFound()
 	{
-		ArrayList<SrcFileHandler> result = new ArrayList<SrcFileHandler>();
-		for(SrcFileHandler h : handlers)
+		File[] files = foundFiles.toArray(new File[foundFiles.size()]);
+		boolean[] duplicates = new boolean[files.length];
+		if(detectDuplicates)
 		{
-			if(h.getExtension().equals(extension))
+			DuplicateFinder finder = new DuplicateFinder(files, foundSizes);
+			finder.find();
+			duplicateGroups.addAll(finder.getGroups());
+			for(int i=0; i<files.length; i++)
 			{
-				result.add(h);
+				duplicates[i] = finder.getFirstCopy(i)>=0;
 			}
 		}
-		return result;
+		if(parallelism<=1)
+		{
+			fileCounter += files.length;
+			handleInPhysicalOrder(files, foundSizes, foundModified, duplicates, files.length);
+			handlePrefetched(0);
+		}
+		else
+		{
+			handleParallel(files, duplicates);
+		}
 	}
 	
 	/**
-	 * Returns registered SrcFileHandler instances looking for extensions ending with a special extension.
+	 * Compares two versions of a directory, e. g. two checkouts, and analyzes only the files that differ.
+	 * Both directories are traversed together in sorted order of the names. Files with equal relative paths, equal
+	 * sizes and equal modification times or equal content are skipped. The other files of the older version are
+	 * analyzed with their values subtracted in the ResultStore, and the files of the newer version with their values
+	 * added. So, the ResultStore receives the difference of every changed, added and removed file, and its rollups
+	 * are the differences of the directories. The handlers count the analyzed files of both versions, and
+	 * FileResultListeners receive the values of both versions unchanged.
 	 * 
-	 * @param extension the special extension.
-	 * @return all registered SrcFileHandler instances looking for extensions ending with extension.
+	 * @param older the directory of the older version.
+	 * @param newer the directory of the newer version.
+	 * @return the number of skipped files contained unchanged in both versions.
 	 */
-	public Collection<SrcFileHandler> getFileHandlers(String extension)
+	public int compare(File older, File newer)
 	{
-		ArrayList<SrcFileHandler> result = new ArrayList<SrcFileHandler>();
-		for(SrcFileHandler h : handlers)
+		ArrayList<File> olderFiles = new ArrayList<File>();
+		ArrayList<File> newerFiles = new ArrayList<File>();
+		int unchanged = compare(older, newer, olderFiles, newerFiles);
+		try
 		{
-			if(h.getExtension().endsWith(extension))
+			comparedMaxima = new HashMap<Long, long[]>();
+			storeSign = -1;
+			analyzeFiles(older, olderFiles);
+			storeSign = 1;
+			analyzeFiles(newer, newerFiles);
+			for(Map.Entry<Long, long[]> entry : comparedMaxima.entrySet())
 			{
-				result.add(h);
+				resultStore.addValue((int)(entry.getKey()>>>32), entry.getKey().intValue(),
+						entry.getValue()[1]-entry.getValue()[0]);
 			}
 		}
-		return result;
+		finally
+		{
+			storeSign = 1;
+			comparedMaxima = null;
+		}
+		return unchanged;
+	}
+	
+	/**
+	 * Traverses two versions of a directory together and collects the files that differ.
+	 * 
+	 * @param older the directory of the older version or null if it doesn't exist.
+	 * @param newer the directory of the newer version or null if it doesn't exist.
+	 * @param olderFiles the files of the older version to analyze.
+	 * @param newerFiles the files of the newer version to analyze.
+	 * @return the number of files contained unchanged in both versions.
+	 */
+	private int compare(File older, File newer, List<File> olderFiles, List<File> newerFiles)
+	{
+		String[] a = older==null ? null : older.list();
+		String[] b = newer==null ? null : newer.list();
+		a = a==null ? new String[0] : a;
+		b = b==null ? new String[0] : b;
+		Arrays.sort(a);
+		Arrays.sort(b);
+		int unchanged = 0;
+		int i = 0;
+		int j = 0;
+		while(i<a.length||j<b.length)
+		{
+			int c = i==a.length ? 1 : j==b.length ? -1 : a[i].compareTo(b[j]);
+			File o = c<=0 ? new File(older, a[i++]) : null;
+			File n = c>=0 ? new File(newer, b[j++]) : null;
+			BasicFileAttributes oa = o==null ? null : select(o);
+			BasicFileAttributes na = n==null ? null : select(n);
+			boolean oDir = oa!=null&&oa.isDirectory();
+			boolean nDir = na!=null&&na.isDirectory();
+			if(oDir||nDir)
+			{
+				unchanged += compare(oDir ? o : null, nDir ? n : null, olderFiles, newerFiles);
+			}
+			boolean oFile = oa!=null&&oa.isRegularFile();
+			boolean nFile = na!=null&&na.isRegularFile();
+			if(oFile&&nFile&&isUnchanged(o, oa, n, na))
+			{
+				unchanged++;
+				continue;
+			}
+			if(oFile)
+			{
+				olderFiles.add(o);
+			}
+			if(nFile)
+			{
+				newerFiles.add(n);
+			}
+		}
+		return unchanged;
+	}
+	
+	/**
+	 * Checks if two versions of a file are equal by their sizes and modification times or by their content.
+	 * 
+	 * @param older the older version.
+	 * @param olderAttributes the attributes of the older version.
+	 * @param newer the newer version.
+	 * @param newerAttributes the attributes of the newer version.
+	 * @return true if both versions are equal. false otherwise.
+	 */
+	private static boolean isUnchanged(File older, BasicFileAttributes olderAttributes, File newer,
+			BasicFileAttributes newerAttributes)
+	{
+		long size = olderAttributes.size();
+		if(size!=newerAttributes.size())
+		{
+			return false;
+		}
+		if(size==0||olderAttributes.lastModifiedTime().equals(newerAttributes.lastModifiedTime()))
+		{
+			return true;
+		}
+		DuplicateFinder finder = new DuplicateFinder(new File[] {older, newer}, new long[] {size, size});
+		finder.find();
+		return finder.getFirstCopy(1)==0;
+	}
+	
+	/**
+	 * Analyzes the collected files of one version of a compared directory.
+	 * 
+	 * @param root the directory of the version.
+	 * @param files the files.
+	 */
+	private void analyzeFiles(File root, List<File> files)
+	{
+		rootPath = root.getAbsolutePath();
+		foundFiles = new ArrayList<File>();
+		foundSizes = new long[64];
+		foundModified = new long[64];
+		try
+		{
+			for(File f : files)
+			{
+				visit(f);
+			}
+			handleFound();
+		}
+		finally
+		{
+			foundFiles = null;
+			foundSizes = null;
+			foundModified = null;
+			discardPending();
+		}
+	}
+	
+	/**
+	 * Analyzes collected files with several threads in the order of the scheduling policy.
+	 * 
+	 * @param files the files.
+	 * @param duplicates the duplicate flags of the files.
+	 */
+	private void handleParallel(File[] files, boolean[] duplicates)
+	{
+		fileCounter += files.length;
+		final Task[] tasks = new Task[files.length];
+		for(int i=0; i<files.length; i++)
+		{
+			tasks[i] = new Task(files[i], foundSizes[i], foundModified[i], duplicates[i]);
+		}
+		if(scheduling!=Scheduling.TRAVERSAL_ORDER)
+		{
+			Arrays.sort(tasks);
+		}
+		final AtomicInteger next = new AtomicInteger();
+		runWorkers(new TaskSource()
+		{
+			@Override
+			public Task next()
+			{
+				int i = next.getAndIncrement();
+				return i<tasks.length ? tasks[i] : null;
+			}
+		}, null);
+	}
+	
+	/**
+	 * Analyzes files with several threads while the directory is traversed. The threads take the largest file found
+	 * but not yet analyzed.
+	 * 
+	 * @param roots the directories.
+	 */
+	private void analyzeStreaming(final File[] roots)
+	{
+		final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<Task>();
+		taskQueue = queue;
+		try
+		{
+			runWorkers(new TaskSource()
+			{
+				@Override
+				public Task next() throws InterruptedException
+				{
+					Task task = queue.take();
+					return task.file==null ? null : task;
+				}
+			}, new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						traverse(roots);
+					}
+					finally
+					{
+						taskQueue = null;
+						for(int w=0; w<parallelism; w++)
+						{
+							queue.add(new Task(null, -1, 0, false));
+						}
+					}
+				}
+			});
+		}
+		finally
+		{
+			taskQueue = null;
+		}
+	}
+	
+	/**
+	 * Runs the threads analyzing files and measures their timing. Every thread uses its own clones of all
+	 * MultiExtensionSupportFileHandlers. Other handlers are shared and called by one thread at a time. After the
+	 * analysis, the metric values of the cloned MetricHandlers are added to the registered handlers.
+	 * 
+	 * @param source the source of the files.
+	 * @param producer a task run by the calling thread while the threads analyze files or null.
+	 */
+	private void runWorkers(final TaskSource source, Runnable producer)
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		ArrayList<List<SrcFileHandler>> workers = new ArrayList<List<SrcFileHandler>>();
+		ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+		final long[] busy = new long[parallelism];
+		final long[] finish = new long[parallelism];
+		final long start = System.nanoTime();
+		try
+		{
+			for(int w=0; w<parallelism; w++)
+			{
+				final List<SrcFileHandler> local = workerHandlers();
+				final int worker = w;
+				workers.add(local);
+				results.add(pool.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws InterruptedException
+					{
+						try
+						{
+							for(Task task=source.next(); task!=null; task=source.next())
+							{
+								long begin = System.nanoTime();
+								handleFile(local, task.file, task.size, task.modified, task.duplicate, null, null);
+								busy[worker] += System.nanoTime()-begin;
+							}
+							return null;
+						}
+						finally
+						{
+							finish[worker] = System.nanoTime()-start;
+						}
+					}
+				}));
+			}
+			if(producer!=null)
+			{
+				producer.run();
+			}
+			awaitAll(results);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		scheduleStatistics = new ScheduleStatistics(System.nanoTime()-start, busy, finish);
+		for(List<SrcFileHandler> local : workers)
+		{
+			Set<Object> merged = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			for(int h=0; h<handlers.size(); h++)
+			{
+				SrcFileHandler copy = local.get(h);
+				if(copy instanceof HandlerChain)
+				{
+					((HandlerChain)handlers.get(h)).mergeStages((HandlerChain)copy, merged);
+				}
+				else if(copy!=handlers.get(h)&&copy instanceof MetricHandler)
+				{
+					((MetricHandler)handlers.get(h)).addMetricValues(((MetricHandler)copy).getMetricValues());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Creates the handlers of one thread.
+	 * 
+	 * @return clones of the MultiExtensionSupportFileHandlers and the other registered handlers in registration order.
+	 * The clones of HandlerChains share clones of their stages.
+	 */
+	private List<SrcFileHandler> workerHandlers()
+	{
+		ArrayList<SrcFileHandler> local = new ArrayList<SrcFileHandler>(handlers.size());
+		IdentityHashMap<Object, Object> stages = new IdentityHashMap<Object, Object>();
+		for(SrcFileHandler handler : handlers)
+		{
+			SrcFileHandler copy = handler;
+			if(handler instanceof MultiExtensionSupportFileHandler)
+			{
+				MultiExtensionSupportFileHandler clone = handler instanceof HandlerChain
+						? ((HandlerChain)handler).cloneStages(stages)
+						: ((MultiExtensionSupportFileHandler)handler).clone();
+				if(clone!=null)
+				{
+					clone.setExtension(handler.getExtension());
+					copy = clone;
+				}
+			}
+			local.add(copy);
+		}
+		return local;
+	}
+	
+	/**
+	 * Copies all registered handlers for an independent analysis. The copies don't share any results with the
+	 * registered handlers, but handlers sharing state among each other share the copied state again.
+	 * 
+	 * @return the copies in registration order.
+	 * @throws IllegalArgumentException if a handler can't be copied.
+	 */
+	private List<SrcFileHandler> cloneHandlers()
+	{
+		List<SrcFileHandler> copies = new ArrayList<SrcFileHandler>(handlers.size());
+		IdentityHashMap<Object, Object> shared = new IdentityHashMap<Object, Object>();
+		for(SrcFileHandler handler : handlers)
+		{
+			if(!(handler instanceof MultiExtensionSupportFileHandler))
+			{
+				throw new IllegalArgumentException("Only a MultiExtensionSupportFileHandler can be copied for an "
+						+"independent analysis, but the handler is "+describe(handler));
+			}
+			MultiExtensionSupportFileHandler copy = ((MultiExtensionSupportFileHandler)handler).copy(shared);
+			if(copy==null)
+			{
+				throw new IllegalArgumentException("The handler doesn't support a copy for an independent analysis: "
+						+describe(handler));
+			}
+			copy.setExtension(handler.getExtension());
+			copies.add(copy);
+		}
+		return copies;
+	}
+	
+	/**
+	 * Describes the class of a handler for an error message.
+	 * 
+	 * @param handler the handler.
+	 * @return the name of the class, marked if the class is anonymous.
+	 */
+	private static String describe(SrcFileHandler handler)
+	{
+		Class<?> type = handler.getClass();
+		return type.isAnonymousClass() ? "an anonymous class "+type.getName() : type.getName();
+	}
+	
+	/**
+	 * Waits until all tasks are finished.
+	 * 
+	 * @param results the results of the tasks.
+	 */
+	private static void awaitAll(List<Future<?>> results)
+	{
+		for(Future<?> result : results)
+		{
+			try
+			{
+				result.get();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch(ExecutionException e)
+			{
+				throw new IllegalStateException("A file couldn't be analyzed.", e.getCause());
+			}
+		}
+	}
+	
+	/**
+	 * Estimates the metric totals of all registered MetricHandlers without analyzing every file.
+	 * The directory is traversed completely, but only the metadata of the files is read. Then, the files are divided
+	 * into strata by extension and size, and random samples of the strata are analyzed until the half widths of the
+	 * confidence intervals of all totals are at most the relative error or all files are analyzed.
+	 * Only the files of the current shard are sampled, and the sampled files are handled like analyzed files, so
+	 * languages are detected and binary files are skipped. Other handlers are not called. Afterwards, the registered
+	 * MetricHandlers contain the results of the analyzed files only.
+	 * 
+	 * @param f the directory that will be searched.
+	 * @param relativeError the target for the half width of the confidence intervals relative to the estimated totals,
+	 * e. g. 0.05 for 5 percent.
+	 * @param confidence the confidence level of the intervals, e. g. 0.95.
+	 * @param seed the seed for drawing the samples, so estimates can be reproduced.
+	 * @return the estimates of all metrics for every registered MetricHandler in registration order.
+	 */
+	public Map<MetricHandler, List<Estimate>> estimate(File f, double relativeError, double confidence, long seed)
+	{
+		ArrayList<MetricHandler> metricHandlers = new ArrayList<MetricHandler>();
+		for(SrcFileHandler handler : handlers)
+		{
+			if(handler instanceof MetricHandler)
+			{
+				metricHandlers.add((MetricHandler)handler);
+			}
+		}
+		rootPath = f.getAbsolutePath();
+		sampler = new StratifiedSampler(this, metricHandlers, relativeError, confidence, new Random(seed));
+		try
+		{
+			traverse(f);
+			return sampler.run();
+		}
+		finally
+		{
+			sampler = null;
+		}
+	}
+	
+	/**
+	 * Searches all analyzed directories one after another.
+	 * 
+	 * @param roots the directories.
+	 */
+	private void traverse(File[] roots)
+	{
+		for(File root : roots)
+		{
+			traverse(root);
+		}
+	}
+	
+	/**
+	 * Searches an analyzed directory completely or the part of the current shard.
+	 * 
+	 * @param f the directory.
+	 */
+	private void traverse(File f)
+	{
+		if(shard==null)
+		{
+			walk(f);
+			return;
+		}
+		File[] files = f.listFiles();
+		if(files==null)
+		{
+			return;
+		}
+		Arrays.sort(files);
+		String root = f.getAbsolutePath();
+		for(File entry : files)
+		{
+			if(shard.owner(entry.getName())==shard.getIndex()&&shard.claim(root, entry.getName()))
+			{
+				visit(entry);
+			}
+		}
+		if(shard.isStealing())
+		{
+			int offset = (int)((long)files.length*shard.getIndex()/shard.getCount());
+			for(int i=0; i<files.length; i++)
+			{
+				File entry = files[(offset+i)%files.length];
+				if(shard.owner(entry.getName())!=shard.getIndex()&&shard.claim(root, entry.getName()))
+				{
+					visit(entry);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Searches a directory recursively. Found files are analyzed immediately or collected.
+	 * 
+	 * @param f the directory.
+	 */
+	private void walk(File f)
+	{
+		File[] files = f.listFiles();
+		if(files==null)
+		{
+			return;
+		}
+		for(int i=0; i<files.length; i++)
+		{
+			visit(files[i]);
+		}
+	}
+	
+	/**
+	 * Handles a file or directory found during the search if it's included and not ignored.
+	 * 
+	 * @param file the file or directory.
+	 */
+	private void visit(File file)
+	{
+		BasicFileAttributes attributes = select(file);
+		if(attributes==null)
+		{
+			return;
+		}
+		if(attributes.isRegularFile())
+		{
+			found(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+		}
+		else if(attributes.isDirectory())
+		{
+			walk(file);
+		}
+	}
+	
+	/**
+	 * Checks if a file or directory is included and not ignored and reads its attributes.
+	 * 
+	 * @param file the file or directory.
+	 * @return the attributes or null if it's not selected or can't be read.
+	 */
+	private BasicFileAttributes select(File file)
+	{
+		boolean shouldInclude = false;
+		if(includedFiles.size()==0)
+		{
+			shouldInclude = true;
+		}
+		for(int j=0; j<includedFiles.size(); j++)
+		{
+			if(includedFiles.get(j).matcher(file.getAbsolutePath()).matches())
+			{
+				shouldInclude = true;
+				break;
+			}
+		}
+		if(!shouldInclude)
+		{
+			return null;
+		}
+		if(shouldInclude&&includeBeforeIgnore)
+		{
+			for(int j=0; j<ignoredFiles.size(); j++)
+			{
+				if(ignoredFiles.get(j).matcher(file.getAbsolutePath()).matches())
+				{
+					return null;
+				}
+			}
+		}
+		BasicFileAttributes attributes;
+		try
+		{
+			attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+		return attributes;
+	}
+	
+	/**
+	 * Analyzes a found file immediately or collects it for a later analysis or for sampling.
+	 * 
+	 * @param f the file.
+	 * @param size the size of the file.
+	 * @param modified the modification time of the file in milliseconds.
+	 */
+	private void found(File f, long size, long modified)
+	{
+		if(rootPrefixes!=null)
+		{
+			countRoots(f);
+		}
+		if(sampler!=null)
+		{
+			fileCounter++;
+			sampler.add(f, size, modified, detectedName(f, modified, null));
+			return;
+		}
+		if(taskQueue!=null)
+		{
+			fileCounter++;
+			taskQueue.add(new Task(f, size, modified, false));
+			return;
+		}
+		if(foundFiles==null&&physicalBatch>0)
+		{
+			fileCounter++;
+			batchFiles[batchCount] = f;
+			batchSizes[batchCount] = size;
+			batchModified[batchCount] = modified;
+			batchCount++;
+			if(batchCount==physicalBatch)
+			{
+				handleBatch();
+			}
+			return;
+		}
+		if(foundFiles==null)
+		{
+			fileCounter++;
+			dispatch(f, size, modified, false);
+			return;
+		}
+		if(foundFiles.size()==foundSizes.length)
+		{
+			foundSizes = Arrays.copyOf(foundSizes, foundSizes.length*2);
+			foundModified = Arrays.copyOf(foundModified, foundModified.length*2);
+		}
+		foundSizes[foundFiles.size()] = size;
+		foundModified[foundFiles.size()] = modified;
+		foundFiles.add(f);
+	}
+	
+	/**
+	 * Analyzes the files of the current batch in physical order.
+	 */
+	private void handleBatch()
+	{
+		if(batchCount>0)
+		{
+			int count = batchCount;
+			batchCount = 0;
+			handleInPhysicalOrder(batchFiles, batchSizes, batchModified, null, count);
+			Arrays.fill(batchFiles, null);
+		}
+	}
+	
+	/**
+	 * Analyzes files with the current thread. If physical order is set, the files are sorted by their inode numbers
+	 * in batches first.
+	 * 
+	 * @param files the files.
+	 * @param sizes the sizes of the files.
+	 * @param modified the modification times of the files.
+	 * @param duplicates the duplicate flags of the files or null if there are no duplicates.
+	 * @param count the number of files.
+	 */
+	private void handleInPhysicalOrder(File[] files, long[] sizes, long[] modified, boolean[] duplicates, int count)
+	{
+		if(physicalBatch<=0)
+		{
+			for(int i=0; i<count; i++)
+			{
+				dispatch(files[i], sizes[i], modified[i], duplicates!=null&&duplicates[i]);
+			}
+			return;
+		}
+		for(int from=0; from<count; from+=physicalBatch)
+		{
+			int length = Math.min(physicalBatch, count-from);
+			Integer[] order = new Integer[length];
+			final long[] inodes = new long[length];
+			for(int i=0; i<length; i++)
+			{
+				order[i] = from+i;
+				inodes[i] = inode(files[from+i]);
+			}
+			final int offset = from;
+			Arrays.sort(order, new Comparator<Integer>()
+			{
+				@Override
+				public int compare(Integer a, Integer b)
+				{
+					return Long.compare(inodes[a-offset], inodes[b-offset]);
+				}
+			});
+			for(int i : order)
+			{
+				dispatch(files[i], sizes[i], modified[i], duplicates!=null&&duplicates[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Counts a found file for every directory of the current multi-root analysis containing it.
+	 * 
+	 * @param f the file.
+	 */
+	private void countRoots(File f)
+	{
+		String path = f.getPath();
+		for(int r=0; r<rootPrefixes.length; r++)
+		{
+			if(path.startsWith(rootPrefixes[r]))
+			{
+				rootFiles[r]++;
+			}
+		}
+	}
+	
+	/**
+	 * Analyzes a file with the current thread immediately or after it's read ahead.
+	 * 
+	 * @param f the file.
+	 * @param size the size of the file.
+	 * @param modified the modification time of the file.
+	 * @param duplicate true if the file has the same content as a previously handled file.
+	 */
+	private void dispatch(File f, long size, long modified, boolean duplicate)
+	{
+		if(prefetcher==null||!isWanted(f))
+		{
+			handleFile(handlers, f, size, modified, duplicate, null, null);
+			return;
+		}
+		prefetched.add(new Task(f, size, modified, duplicate));
+		prefetcher.submit(f, size);
+		handlePrefetched(prefetcher.getDepth());
+	}
+	
+	/**
+	 * Checks if a file may be analyzed by a handler, so it's worth reading it ahead.
+	 * 
+	 * @param f the file.
+	 * @return true if a handler may analyze the file. false otherwise.
+	 */
+	private boolean isWanted(File f)
+	{
+		String name = f.getAbsolutePath();
+		for(SrcFileHandler handler : handlers)
+		{
+			if(name.endsWith(handler.getExtension()))
+			{
+				return true;
+			}
+		}
+		return languageDetector!=null&&languageDetector.needsContent(f.getName());
+	}
+	
+	/**
+	 * Analyzes the oldest files read ahead.
+	 * 
+	 * @param keep the number of files left reading.
+	 */
+	private void handlePrefetched(int keep)
+	{
+		while(prefetched!=null&&prefetched.size()>keep)
+		{
+			Task task = prefetched.poll();
+			CharSequence content = prefetcher.take(task.file);
+			handleFile(handlers, task.file, task.size, task.modified, task.duplicate, content, prefetcher.getHead());
+		}
+	}
+	
+	/**
+	 * Discards the files of the current batch and the files read ahead that weren't analyzed, e. g. after an error.
+	 */
+	private void discardPending()
+	{
+		batchCount = 0;
+		if(batchFiles!=null)
+		{
+			Arrays.fill(batchFiles, null);
+		}
+		if(prefetcher!=null)
+		{
+			prefetched.clear();
+			prefetcher.cancel();
+		}
+	}
+	
+	/**
+	 * Returns the inode number of a file.
+	 * 
+	 * @param f the file.
+	 * @return the inode number or 0 if it can't be read.
+	 */
+	private static long inode(File f)
+	{
+		try
+		{
+			return ((Number)Files.getAttribute(f.toPath(), "unix:ino")).longValue();
+		}
+		catch(IOException e)
+		{
+			return 0;
+		}
+	}
+	
+	/**
+	 * Handles a real file. If it's identified as a source code file, it will be analyzed.
+	 * Every handler is locked while it analyzes the file, so shared handlers are called by one thread at a time.
+	 * A binary file is passed only to BinaryFileHandlers. The first block of the file is read at most once for
+	 * detecting binary files and languages, and not at all if it was read ahead. A handler whose result is taken from
+	 * the result cache doesn't need the detection, because binary files are never cached.
+	 * 
+	 * @param list the handlers.
+	 * @param f the file.
+	 * @param size the size of the file.
+	 * @param modified the modification time of the file in milliseconds.
+	 * @param duplicate true if the file has the same content as a previously handled file.
+	 * @param content the content read ahead for SrcContentHandlers or null.
+	 * @param block the first block of the file read ahead or null.
+	 */
+	private void handleFile(List<SrcFileHandler> list, File f, long size, long modified, boolean duplicate,
+			CharSequence content, byte[] block)
+	{
+		String path = null;
+		Boolean binary = null;
+		byte[] head = block;
+		if(head==null&&languageDetector!=null&&languageDetector.lookup(f.getAbsolutePath(), modified)==null
+				&&languageDetector.needsContent(f.getName()))
+		{
+			head = ContentSniffer.readBlock(f);
+		}
+		String name = detectedName(f, modified, head);
+		for(int i=0; i<list.size(); i++)
+		{
+			SrcFileHandler cur = list.get(i);
+			if(name.endsWith(cur.getExtension())&&!(duplicate&&isSkipped(cur)))
+			{
+				long[] cached = resultCache!=null&&cur instanceof MetricHandler
+						? resultCache.get(cacheKey((MetricHandler)cur, f), size, modified) : null;
+				if(cached==null&&detectBinaryFiles&&!(cur instanceof BinaryFileHandler))
+				{
+					if(binary==null)
+					{
+						binary = ContentSniffer.isBinary(head!=null ? head : ContentSniffer.readBlock(f));
+						if(binary)
+						{
+							binaryCounter.incrementAndGet();
+						}
+					}
+					if(binary)
+					{
+						continue;
+					}
+				}
+				if(resultStore==null&&resultListeners.isEmpty()&&resultCache==null)
+				{
+					synchronized(cur)
+					{
+						analyze(cur, f, content);
+					}
+					continue;
+				}
+				if(path==null)
+				{
+					path = relativePath(f);
+				}
+				synchronized(cur)
+				{
+					handleMeasured(cur, f, path, size, modified, content, cached);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Handles a file of the sample of the approximate mode like a found file.
+	 * 
+	 * @param list the handlers.
+	 * @param f the file.
+	 * @param size the size of the file.
+	 * @param modified the modification time of the file in milliseconds.
+	 */
+	void handleSample(List<SrcFileHandler> list, File f, long size, long modified)
+	{
+		handleFile(list, f, size, modified, false, null, null);
+	}
+	
+	/**
+	 * Returns the name handlers are selected by. If languages are detected, the extension of the detected language is
+	 * appended to the path of the file.
+	 * 
+	 * @param f the file.
+	 * @param modified the modification time of the file in milliseconds.
+	 * @param head the first block of the file or null if it's read only if needed.
+	 * @return the name.
+	 */
+	private String detectedName(File f, long modified, byte[] head)
+	{
+		String name = f.getAbsolutePath();
+		if(languageDetector==null)
+		{
+			return name;
+		}
+		String extension = languageDetector.lookup(name, modified);
+		if(extension==null)
+		{
+			byte[] block = head==null&&languageDetector.needsContent(f.getName()) ? ContentSniffer.readBlock(f) : head;
+			extension = languageDetector.detect(f.getName(), block);
+			extension = extension==null ? "" : extension;
+			languageDetector.remember(name, modified, extension);
+		}
+		return name+extension;
+	}
+	
+	/**
+	 * Analyzes a file with a handler, measures the duration and the metric values of the file and passes them to the
+	 * result store and all result listeners. The metric values of an unchanged file are taken from the result
+	 * cache instead.
+	 * 
+	 * @param handler the handler.
+	 * @param f the file.
+	 * @param path the path of the file relative to the analyzed directory.
+	 * @param size the size of the file.
+	 * @param modified the modification time of the file in milliseconds.
+	 * @param content the content read ahead for SrcContentHandlers or null.
+	 * @param cached the metric values of the file from the result cache or null.
+	 */
+	private void handleMeasured(SrcFileHandler handler, File f, String path, long size, long modified,
+			CharSequence content, long[] cached)
+	{
+		MetricHandler metrics = handler instanceof MetricHandler ? (MetricHandler)handler : null;
+		String[] names = metrics==null ? NO_NAMES : metrics.getMetricNames();
+		long[] values = cached;
+		long duration = 0;
+		if(values!=null)
+		{
+			metrics.addMetricValues(values);
+		}
+		else
+		{
+			long start = System.nanoTime();
+			analyze(handler, f, content);
+			duration = System.nanoTime()-start;
+			values = metrics==null ? NO_VALUES : metrics.getFileMetricValues();
+			if(resultCache!=null&&metrics!=null)
+			{
+				resultCache.put(cacheKey(metrics, f), size, modified, values);
+			}
+		}
+		if(resultStore!=null&&metrics!=null)
+		{
+			synchronized(resultStore)
+			{
+				int row = resultStore.add(path);
+				for(int m=0; m<names.length; m++)
+				{
+					int column = resultStore.indexOf(names[m]);
+					if(column>=0)
+					{
+						storeValue(row, column, values[m], metrics.isAdditive(m));
+					}
+				}
+			}
+		}
+		for(FileResultListener listener : resultListeners)
+		{
+			listener.fileHandled(path, handler, names, values, size, duration);
+		}
+	}
+	
+	/**
+	 * Stores the value of a metric of a file. The values of additive metrics are added. For other metrics, the maximum
+	 * of all handlers is stored. While two versions are compared, the maxima of both versions are collected and their
+	 * difference is stored afterwards.
+	 * 
+	 * @param row the row of the file in the ResultStore.
+	 * @param column the column of the metric.
+	 * @param value the value.
+	 * @param additive true if the metric is additive. false otherwise.
+	 */
+	private void storeValue(int row, int column, long value, boolean additive)
+	{
+		if(additive)
+		{
+			resultStore.addValue(row, column, storeSign*value);
+			return;
+		}
+		resultStore.setMaximum(column);
+		if(comparedMaxima==null)
+		{
+			resultStore.maxValue(row, column, value);
+			return;
+		}
+		Long key = (long)row<<32|column;
+		long[] maxima = comparedMaxima.get(key);
+		if(maxima==null)
+		{
+			maxima = new long[2];
+			comparedMaxima.put(key, maxima);
+		}
+		int version = storeSign<0 ? 0 : 1;
+		maxima[version] = Math.max(maxima[version], value);
+	}
+	
+	/**
+	 * Returns the key of the result of a file and a handler in the result cache.
+	 * 
+	 * @param handler the handler.
+	 * @param f the file.
+	 * @return the key.
+	 */
+	private static String cacheKey(MetricHandler handler, File f)
+	{
+		return ResultCache.key(f.getAbsolutePath(), handler.getClass().getName(), handler.getExtension(),
+				handler.getMetricNames());
+	}
+	
+	/**
+	 * Writes the number of found files and the metric totals of all registered MetricHandlers to a file, e. g. for
+	 * merging the results of several shards.
+	 * 
+	 * @param resultFile the file.
+	 * @throws IOException if the file can't be written.
+	 */
+	public void writeResult(File resultFile) throws IOException
+	{
+		ResultFile.write(resultFile, fileCounter, handlers);
+	}
+	
+	/**
+	 * Adds the number of found files and the metric totals of a result file to this instance. The file must have been
+	 * written by an instance with handlers of the same types and extensions in the same order.
+	 * 
+	 * @param resultFile the file.
+	 * @throws IOException if the file can't be read or doesn't match the registered handlers.
+	 */
+	public void mergeResult(File resultFile) throws IOException
+	{
+		fileCounter += ResultFile.merge(resultFile, handlers);
+	}
+	
+	/**
+	 * Analyzes a file with a handler. SrcContentHandlers get the content read ahead if there is one.
+	 * 
+	 * @param handler the handler.
+	 * @param f the file.
+	 * @param content the content read ahead or null.
+	 */
+	private static void analyze(SrcFileHandler handler, File f, CharSequence content)
+	{
+		if(content!=null&&handler instanceof SrcContentHandler)
+		{
+			((SrcContentHandler)handler).handleContent(f, content);
+		}
+		else
+		{
+			handler.handleFile(f);
+		}
+	}
+	
+	/**
+	 * Returns the path of a file relative to the analyzed directory.
+	 * 
+	 * @param f the file.
+	 * @return the relative path with '/' as separator.
+	 */
+	private String relativePath(File f)
+	{
+		String path = f.getAbsolutePath();
+		String prefix = rootPath==null||rootPath.endsWith(File.separator) ? rootPath : rootPath+File.separatorChar;
+		if(prefix!=null&&path.startsWith(prefix))
+		{
+			path = path.substring(prefix.length());
+		}
+		return path.replace(File.separatorChar, '/');
+	}
+	
+	/**
+	 * Checks if a handler analyzes only the first file of every group of files with equal content.
+	 * 
+	 * @param handler the handler.
+	 * @return true if it skips duplicates. false otherwise.
+	 */
+	private boolean isSkipped(SrcFileHandler handler)
+	{
+		for(Class<? extends SrcFileHandler> type : skipDuplicateTypes)
+		{
+			if(type.isInstance(handler))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the number of total files found in the directory.
+	 * 
+	 * @return the number of total files found.
+	 */
+	public int getCounter()
+	{
+		return fileCounter;
+	}
+	
+	/**
+	 * Returns the number of binary files found since the last reset. Only files that at least one handler other than
+	 * a BinaryFileHandler would have analyzed are checked.
+	 * 
+	 * @return the number of binary files.
+	 */
+	public int getBinaryCounter()
+	{
+		return binaryCounter.get();
+	}
+	
+	/**
+	 * Returns a registered SrcFileHandler instance that looks for a special extension.
+	 * If two or more instances look for the extension, the first found instance will be returned.
+	 * 
+	 * @param extension the extension for that the SrcFileHandler instance is looking.
+	 * @return the first found registered SrcFileHandler that looks for the extension or null if no instance is found.
+	 */
+	public SrcFileHandler getFileHandler(String extension)
+	{
+		for(int i=0; i<handlers.size(); i++)
+		{
+			SrcFileHandler h = handlers.get(i);
+			if(h.getExtension().equals(extension))
+			{
+				return h;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns all registered SrcFileHandler instances.
+	 * 
+	 * @return the handlers in registration order. Handlers added for several extensions are contained once per
+	 * extension.
+	 */
+	public List<SrcFileHandler> getFileHandlers()
+	{
+		return Collections.unmodifiableList(handlers);
+	}
+	
+	/**
+	 * Returns registered SrcFileHandler instances looking exactly for a special extension.
+	 * 
+	 * @param extension the extension for which the SrcFileHandler instances are searched.
+	 * @return all registered SrcFileHandler instances looking exactly for the extension. When no instance is found,
+	 * the collection is empty.
+	 */
+	public Collection<SrcFileHandler> getExactFileHandlers(String extension)
+	{
+		ArrayList<SrcFileHandler> result = new ArrayList<SrcFileHandler>();
+		for(SrcFileHandler h : handlers)
+		{
+			if(h.getExtension().equals(extension))
+			{
+				result.add(h);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns registered SrcFileHandler instances looking for extensions ending with a special extension.
+	 * 
+	 * @param extension the special extension.
+	 * @return all registered SrcFileHandler instances looking for extensions ending with extension.
+	 */
+	public Collection<SrcFileHandler> getFileHandlers(String extension)
+	{
+		ArrayList<SrcFileHandler> result = new ArrayList<SrcFileHandler>();
+		for(SrcFileHandler h : handlers)
+		{
+			if(h.getExtension().endsWith(extension))
+			{
+				result.add(h);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Provides the files for the threads analyzing them.
+	 */
+	private interface TaskSource
+	{
+		/**
+		 * Returns the next file to analyze.
+		 * 
+		 * @return the file or null if all files are analyzed.
+		 * @throws InterruptedException if the thread is interrupted while waiting.
+		 */
+		Task next() throws InterruptedException;
+	}
+	
+	/**
+	 * A found file to analyze. Larger files are ordered first.
+	 */
+	private static final class Task implements Comparable<Task>
+	{
+		/**
+		 * Saves the file or null for the end of the files.
+		 */
+		private final File file;
+		/**
+		 * Saves the size of the file.
+		 */
+		private final long size;
+		/**
+		 * Saves the modification time of the file.
+		 */
+		private final long modified;
+		/**
+		 * Indicates if the file has the same content as a previously handled file.
+		 */
+		private final boolean duplicate;
+		
+		/**
+		 * Creates a new task.
+		 * 
+		 * @param file the file or null for the end of the files.
+		 * @param size the size of the file.
+		 * @param modified the modification time of the file.
+		 * @param duplicate true if the file has the same content as a previously handled file.
+		 */
+		Task(File file, long size, long modified, boolean duplicate)
+		{
+			this.file = file;
+			this.size = size;
+			this.modified = modified;
+			this.duplicate = duplicate;
+		}
+		
+		@Override
+		public int compareTo(Task other)
+		{
+			return Long.compare(other.size, size);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,436 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Estimates the metric totals of MetricHandlers by analyzing only a sample of the files.
+ * The files are divided into strata by extension and by the binary logarithm of their size, because files of the same
+ * kind and a similar size have similar metric values. Every stratum starts with a small sample, and the samples of all
+ * strata with unknown or non-zero variance are doubled until the confidence intervals of all totals are narrow enough
+ * or all files are analyzed. The totals are estimated with the stratified mean and its variance including the finite
+ * population correction, and the intervals use the normal approximation. Metrics that aren't additive can't be
+ * extrapolated, so their maximum over the sample is reported, which is a lower bound of the maximum of all files.
+ * The sampled files are handled by the SourceAnalyzer like analyzed files.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+final class StratifiedSampler
+{
+	/**
+	 * Saves the size of the first sample of every stratum.
+	 */
+	private static final int PILOT_SIZE = 8;
+	/**
+	 * Saves the analyzer handling the sampled files.
+	 */
+	private final SourceAnalyzer analyzer;
+	/**
+	 * Saves the handlers.
+	 */
+	private final List<MetricHandler> handlers;
+	/**
+	 * Saves the handlers as list of SrcFileHandlers for the analyzer.
+	 */
+	private final List<SrcFileHandler> fileHandlers;
+	/**
+	 * Saves the target for the half width of the confidence intervals relative to the estimated totals.
+	 */
+	private final double relativeError;
+	/**
+	 * Saves the quantile of the standard normal distribution for the confidence level.
+	 */
+	private final double z;
+	/**
+	 * Saves the random generator for drawing the samples.
+	 */
+	private final Random random;
+	/**
+	 * Saves the strata by extension and size class in the order they're found.
+	 */
+	private final LinkedHashMap<String, Stratum> strata;
+	/**
+	 * Saves the number of files handled by every handler.
+	 */
+	private final int[] totalFiles;
+	/**
+	 * Saves the number of analyzed files handled by every handler.
+	 */
+	private final int[] sampledFiles;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param analyzer the analyzer handling the sampled files.
+	 * @param handlers the handlers.
+	 * @param relativeError the target for the half width of the confidence intervals relative to the estimated totals.
+	 * @param confidence the confidence level, e. g. 0.95.
+	 * @param random the random generator for drawing the samples.
+	 */
+	StratifiedSampler(SourceAnalyzer analyzer, List<MetricHandler> handlers, double relativeError, double confidence,
+			Random random)
+	{
+		if(relativeError<=0||confidence<=0||confidence>=1)
+		{
+			throw new IllegalArgumentException("invalid error target or confidence level");
+		}
+		this.analyzer = analyzer;
+		this.handlers = handlers;
+		fileHandlers = new ArrayList<SrcFileHandler>(handlers);
+		this.relativeError = relativeError;
+		this.random = random;
+		z = inverseNormal(0.5+confidence/2);
+		strata = new LinkedHashMap<String, Stratum>();
+		totalFiles = new int[handlers.size()];
+		sampledFiles = new int[handlers.size()];
+	}
+
+	/**
+	 * Adds a file to its stratum. Files not handled by any handler are ignored.
+	 *
+	 * @param f the file.
+	 * @param size the size of the file.
+	 * @param modified the modification time of the file in milliseconds.
+	 * @param name the path of the file with the extension of its detected language, which selects the handlers.
+	 */
+	void add(File f, long size, long modified, String name)
+	{
+		boolean handled = false;
+		for(int h=0; h<handlers.size(); h++)
+		{
+			if(name.endsWith(handlers.get(h).getExtension()))
+			{
+				totalFiles[h]++;
+				handled = true;
+			}
+		}
+		if(!handled)
+		{
+			return;
+		}
+		int dot = name.lastIndexOf('.');
+		String key = (dot<name.lastIndexOf(File.separatorChar) ? "" : name.substring(dot))+"/"
+				+(64-Long.numberOfLeadingZeros(size));
+		Stratum stratum = strata.get(key);
+		if(stratum==null)
+		{
+			stratum = new Stratum();
+			strata.put(key, stratum);
+		}
+		stratum.files.add(new Sample(f, size, modified, name));
+	}
+
+	/**
+	 * Analyzes samples until the error target is reached and estimates the totals.
+	 *
+	 * @return the estimates of all metrics for every handler.
+	 */
+	Map<MetricHandler, List<Estimate>> run()
+	{
+		for(Stratum stratum : strata.values())
+		{
+			Collections.shuffle(stratum.files, random);
+			stratum.target = Math.min(PILOT_SIZE, stratum.files.size());
+		}
+		while(true)
+		{
+			for(Stratum stratum : strata.values())
+			{
+				while(stratum.sampled<stratum.target)
+				{
+					analyze(stratum, stratum.files.get(stratum.sampled++));
+				}
+			}
+			Map<MetricHandler, List<Estimate>> estimates = estimate();
+			if(isPrecise(estimates)||!enlargeSamples())
+			{
+				return estimates;
+			}
+		}
+	}
+
+	/**
+	 * Analyzes a file with all handlers handling it and adds the metric values of the file to its stratum.
+	 * The values of metrics that aren't additive are left out.
+	 *
+	 * @param stratum the stratum of the file.
+	 * @param sample the file.
+	 */
+	private void analyze(Stratum stratum, Sample sample)
+	{
+		long[][] before = new long[handlers.size()][];
+		for(int h=0; h<handlers.size(); h++)
+		{
+			before[h] = handlers.get(h).getMetricValues();
+		}
+		analyzer.handleSample(fileHandlers, sample.file, sample.size, sample.modified);
+		for(int h=0; h<handlers.size(); h++)
+		{
+			MetricHandler handler = handlers.get(h);
+			if(sample.name.endsWith(handler.getExtension()))
+			{
+				long[] after = handler.getMetricValues();
+				for(int m=0; m<after.length; m++)
+				{
+					if(!handler.isAdditive(m))
+					{
+						after[m] = before[h][m];
+					}
+				}
+				sampledFiles[h]++;
+				stratum.add(h, before[h], after);
+			}
+		}
+	}
+
+	/**
+	 * Doubles the samples of all strata that aren't analyzed completely and whose variance is unknown or not zero.
+	 *
+	 * @return true if a sample was enlarged. false if nothing is left to analyze.
+	 */
+	private boolean enlargeSamples()
+	{
+		boolean enlarged = false;
+		for(Stratum stratum : strata.values())
+		{
+			if(stratum.sampled<stratum.files.size()&&(stratum.sampled<2||stratum.hasVariance()))
+			{
+				stratum.target = Math.min(stratum.files.size(), stratum.sampled*2);
+				enlarged = true;
+			}
+		}
+		return enlarged;
+	}
+
+	/**
+	 * Checks if the confidence intervals of all estimates meet the error target.
+	 *
+	 * @param estimates the estimates.
+	 * @return true if the target is met. false otherwise.
+	 */
+	private boolean isPrecise(Map<MetricHandler, List<Estimate>> estimates)
+	{
+		for(List<Estimate> list : estimates.values())
+		{
+			for(Estimate e : list)
+			{
+				if(e.getUpper()-e.getValue()>relativeError*e.getValue())
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Estimates the totals of all metrics from the current samples.
+	 *
+	 * @return the estimates of all metrics for every handler.
+	 */
+	private Map<MetricHandler, List<Estimate>> estimate()
+	{
+		Map<MetricHandler, List<Estimate>> estimates = new LinkedHashMap<MetricHandler, List<Estimate>>();
+		for(int h=0; h<handlers.size(); h++)
+		{
+			MetricHandler handler = handlers.get(h);
+			String[] names = handler.getMetricNames();
+			long[] values = handler.getMetricValues();
+			List<Estimate> list = new ArrayList<Estimate>(names.length);
+			for(int m=0; m<names.length; m++)
+			{
+				if(!handler.isAdditive(m))
+				{
+					list.add(new Estimate(names[m], values[m], values[m], values[m], sampledFiles[h], totalFiles[h]));
+					continue;
+				}
+				double total = 0;
+				double variance = 0;
+				double observed = 0;
+				for(Stratum stratum : strata.values())
+				{
+					double[] sums = stratum.sums.get(h);
+					if(sums==null)
+					{
+						continue;
+					}
+					double n = stratum.sampled;
+					double size = stratum.files.size();
+					double mean = sums[2*m]/n;
+					double sampleVariance = n<2 ? 0 : (sums[2*m+1]-n*mean*mean)/(n-1);
+					total += size*mean;
+					variance += size*size*(1-n/size)*Math.max(0, sampleVariance)/n;
+					observed += sums[2*m];
+				}
+				double halfWidth = z*Math.sqrt(variance);
+				list.add(new Estimate(names[m], total, Math.max(observed, total-halfWidth), total+halfWidth,
+						sampledFiles[h], totalFiles[h]));
+			}
+			estimates.put(handler, list);
+		}
+		return estimates;
+	}
+
+	/**
+	 * Computes the quantile function of the standard normal distribution with the rational approximation by Peter J.
+	 * Acklam. The relative error is below 1.15e-9.
+	 *
+	 * @param p the probability between 0 and 1.
+	 * @return the quantile.
+	 */
+	static double inverseNormal(double p)
+	{
+		final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+			1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+		final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+			6.680131188771972e+01, -1.328068155288572e+01};
+		final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+			-2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+		final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+			3.754408661907416e+00};
+		double low = 0.02425;
+		if(p<low||p>1-low)
+		{
+			double q = Math.sqrt(-2*Math.log(p<low ? p : 1-p));
+			double x = (((((c[0]*q+c[1])*q+c[2])*q+c[3])*q+c[4])*q+c[5])/((((d[0]*q+d[1])*q+d[2])*q+d[3])*q+1);
+			return p<low ? x : -x;
+		}
+		double q = p-0.5;
+		double r = q*q;
+		return (((((a[0]*r+a[1])*r+a[2])*r+a[3])*r+a[4])*r+a[5])*q
+				/(((((b[0]*r+b[1])*r+b[2])*r+b[3])*r+b[4])*r+1);
+	}
+
+	/**
+	 * A file found for sampling.
+	 */
+	private static final class Sample
+	{
+		/**
+		 * Saves the file.
+		 */
+		private final File file;
+		/**
+		 * Saves the size of the file.
+		 */
+		private final long size;
+		/**
+		 * Saves the modification time of the file in milliseconds.
+		 */
+		private final long modified;
+		/**
+		 * Saves the path of the file with the extension of its detected language.
+		 */
+		private final String name;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param file the file.
+		 * @param size the size of the file.
+		 * @param modified the modification time of the file in milliseconds.
+		 * @param name the path of the file with the extension of its detected language.
+		 */
+		Sample(File file, long size, long modified, String name)
+		{
+			this.file = file;
+			this.size = size;
+			this.modified = modified;
+			this.name = name;
+		}
+	}
+
+	/**
+	 * A group of files of the same extension and size class with the metric sums of its sample.
+	 */
+	private static final class Stratum
+	{
+		/**
+		 * Saves the files in random order. The first files form the sample.
+		 */
+		private final ArrayList<Sample> files = new ArrayList<Sample>();
+		/**
+		 * Saves for every handler index the sums and sums of squares of all metrics, interleaved.
+		 */
+		private final HashMap<Integer, double[]> sums = new HashMap<Integer, double[]>();
+		/**
+		 * Saves the number of analyzed files.
+		 */
+		private int sampled;
+		/**
+		 * Saves the number of files the sample should contain.
+		 */
+		private int target;
+
+		/**
+		 * Adds the metric values of an analyzed file.
+		 *
+		 * @param handler the index of the handler.
+		 * @param before the metric values before the file was analyzed.
+		 * @param after the metric values after the file was analyzed.
+		 */
+		void add(int handler, long[] before, long[] after)
+		{
+			double[] s = sums.get(handler);
+			if(s==null)
+			{
+				s = new double[2*after.length];
+				sums.put(handler, s);
+			}
+			for(int m=0; m<after.length; m++)
+			{
+				double delta = after[m]-before[m];
+				s[2*m] += delta;
+				s[2*m+1] += delta*delta;
+			}
+		}
+
+		/**
+		 * Checks if any metric of the sample varies.
+		 *
+		 * @return true if a metric varies. false if all analyzed files have the same values.
+		 */
+		boolean hasVariance()
+		{
+			for(double[] s : sums.values())
+			{
+				for(int m=0; m<s.length; m+=2)
+				{
+					if(s[m+1]*sampled-s[m]*s[m]>1e-9*s[m+1]*sampled)
+					{
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+}
\ No newline at end of file
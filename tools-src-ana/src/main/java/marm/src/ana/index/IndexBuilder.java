@@ -0,0 +1,769 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/**
+ * Collects the trigrams of files and writes them as a new index file.
+ * The trigrams are buffered as packed (trigram, file id) pairs. When the buffer is full, it's sorted and spilled to a
+ * temporary run file, so the memory needed is bounded by the buffer size. Writing the index merges all runs and the
+ * still valid posting lists of the previous index.
+ * All methods are synchronized, so one builder can be shared by clones running in parallel. A file added twice is
+ * indexed only once.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+final class IndexBuilder
+{
+	/**
+	 * Default number of buffered (trigram, file id) pairs before a run is spilled to disk.
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 1<<22;
+	/**
+	 * Saves the index file to write.
+	 */
+	private final File target;
+	/**
+	 * Saves the number of pairs buffered before spilling.
+	 */
+	private int bufferSize;
+	/**
+	 * Saves the previous index or null if there is none.
+	 */
+	private TrigramIndex previous;
+	/**
+	 * Indicates whether the previous index is already opened.
+	 */
+	private boolean previousOpened;
+	/**
+	 * Maps the ids of the previous index to the new ids of unchanged files. Removed or changed files are mapped to -1.
+	 */
+	private int[] previousToNew;
+	/**
+	 * Saves the UTF-8 encoded paths of all files of the new index.
+	 */
+	private ArrayList<byte[]> paths;
+	/**
+	 * Saves the paths of all files added since the last clear.
+	 */
+	private HashSet<String> added;
+	/**
+	 * Saves the sizes of all files of the new index.
+	 */
+	private long[] sizes;
+	/**
+	 * Saves the modification times of all files of the new index.
+	 */
+	private long[] modified;
+	/**
+	 * Saves the buffered (trigram, file id) pairs.
+	 */
+	private long[] pairs;
+	/**
+	 * Saves the number of buffered pairs.
+	 */
+	private int pairCount;
+	/**
+	 * Saves all spilled runs.
+	 */
+	private ArrayList<File> runs;
+	/**
+	 * Bit set of the trigrams already seen in the current file.
+	 */
+	private final long[] seen;
+	/**
+	 * Saves the trigrams of the current file to clear the bit set afterwards.
+	 */
+	private int[] fileTrigrams;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param target the index file to write. When it exists, it's used for the incremental update.
+	 */
+	IndexBuilder(File target)
+	{
+		this.target = target;
+		bufferSize = DEFAULT_BUFFER_SIZE;
+		seen = new long[(1<<24)/64];
+		fileTrigrams = new int[1024];
+		clear();
+	}
+
+	/**
+	 * Sets the number of (trigram, file id) pairs buffered in memory before they're spilled to disk.
+	 *
+	 * @param size the number of pairs.
+	 */
+	synchronized void setBufferSize(int size)
+	{
+		bufferSize = Math.max(1, size);
+	}
+
+	/**
+	 * Discards everything collected so far.
+	 */
+	synchronized void clear()
+	{
+		deleteRuns();
+		paths = new ArrayList<byte[]>();
+		added = new HashSet<String>();
+		sizes = new long[16];
+		modified = new long[16];
+		pairs = new long[16];
+		pairCount = 0;
+		runs = new ArrayList<File>();
+		previousToNew = null;
+	}
+
+	/**
+	 * Adds a file to the index. If it's unchanged since the previous index was written, its content isn't read. If
+	 * it was already added, it's ignored.
+	 *
+	 * @param f the file.
+	 * @throws IOException if the file cannot be read.
+	 */
+	synchronized void addFile(File f) throws IOException
+	{
+		String path = f.getAbsolutePath();
+		if(!added.add(path))
+		{
+			return;
+		}
+		openPrevious();
+		long size = f.length();
+		long lastModified = f.lastModified();
+		int id = paths.size();
+		if(previous!=null)
+		{
+			int oldId = previous.findFile(path);
+			if(oldId>=0&&previous.getSize(oldId)==size&&previous.getLastModified(oldId)==lastModified)
+			{
+				addEntry(path, size, lastModified);
+				previousToNew[oldId] = id;
+				return;
+			}
+		}
+		int count = readTrigrams(f);
+		addEntry(path, size, lastModified);
+		for(int i=0; i<count; i++)
+		{
+			addPair((long)fileTrigrams[i]<<32|id);
+		}
+	}
+
+	/**
+	 * Writes the index file. Afterwards, this builder is empty.
+	 *
+	 * @throws IOException if the index cannot be written.
+	 */
+	synchronized void write() throws IOException
+	{
+		openPrevious();
+		File tmp = new File(target.getPath()+".tmp");
+		spill();
+		PostingWriter out = new PostingWriter(tmp, paths.size());
+		try
+		{
+			mergePostings(out);
+			out.finish(paths, sizes, modified);
+		}
+		finally
+		{
+			out.close();
+		}
+		if(previous!=null)
+		{
+			previous.close();
+		}
+		Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		previous = null;
+		previousOpened = false;
+		clear();
+	}
+
+	/**
+	 * Opens the previous index on first use.
+	 */
+	private void openPrevious()
+	{
+		if(!previousOpened)
+		{
+			previousOpened = true;
+			if(target.isFile())
+			{
+				try
+				{
+					previous = TrigramIndex.open(target);
+				}
+				catch(IOException e)
+				{
+					// A damaged index is rebuilt completely.
+					e.printStackTrace();
+				}
+			}
+		}
+		if(previous!=null&&previousToNew==null)
+		{
+			previousToNew = new int[previous.getFileCount()];
+			Arrays.fill(previousToNew, -1);
+		}
+	}
+
+	/**
+	 * Reads a file and collects its distinct trigrams.
+	 *
+	 * @param f the file.
+	 * @return the number of distinct trigrams. They're saved in fileTrigrams.
+	 * @throws IOException if the file cannot be read.
+	 */
+	private int readTrigrams(File f) throws IOException
+	{
+		int count = 0;
+		byte[] buffer = new byte[1<<16];
+		InputStream in = new FileInputStream(f);
+		try
+		{
+			int window = 0;
+			long read = 0;
+			int n = in.read(buffer);
+			while(n>=0)
+			{
+				for(int i=0; i<n; i++)
+				{
+					window = (window<<8|buffer[i]&0xff)&0xffffff;
+					read++;
+					if(read>=3&&(seen[window>>>6]&1L<<window)==0)
+					{
+						seen[window>>>6] |= 1L<<window;
+						if(count==fileTrigrams.length)
+						{
+							fileTrigrams = Arrays.copyOf(fileTrigrams, count*2);
+						}
+						fileTrigrams[count++] = window;
+					}
+				}
+				n = in.read(buffer);
+			}
+		}
+		finally
+		{
+			in.close();
+			for(int i=0; i<count; i++)
+			{
+				seen[fileTrigrams[i]>>>6] = 0;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds a file to the file table of the new index.
+	 *
+	 * @param path the absolute path.
+	 * @param size the size.
+	 * @param lastModified the modification time.
+	 */
+	private void addEntry(String path, long size, long lastModified)
+	{
+		int id = paths.size();
+		if(id==sizes.length)
+		{
+			sizes = Arrays.copyOf(sizes, id*2);
+			modified = Arrays.copyOf(modified, id*2);
+		}
+		paths.add(path.getBytes(StandardCharsets.UTF_8));
+		sizes[id] = size;
+		modified[id] = lastModified;
+	}
+
+	/**
+	 * Buffers a (trigram, file id) pair and spills the buffer when it's full.
+	 *
+	 * @param pair the packed pair.
+	 * @throws IOException if the buffer cannot be spilled.
+	 */
+	private void addPair(long pair) throws IOException
+	{
+		if(pairCount==pairs.length)
+		{
+			if(pairCount>=bufferSize)
+			{
+				spill();
+			}
+			else
+			{
+				pairs = Arrays.copyOf(pairs, Math.min(bufferSize, pairCount*2));
+			}
+		}
+		pairs[pairCount++] = pair;
+	}
+
+	/**
+	 * Sorts the buffered pairs and writes them to a new run file.
+	 *
+	 * @throws IOException if the run cannot be written.
+	 */
+	private void spill() throws IOException
+	{
+		if(pairCount==0)
+		{
+			return;
+		}
+		Arrays.sort(pairs, 0, pairCount);
+		File run = File.createTempFile("trigrams", ".run", target.getAbsoluteFile().getParentFile());
+		runs.add(run);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1<<16));
+		try
+		{
+			out.writeInt(pairCount);
+			for(int i=0; i<pairCount; i++)
+			{
+				out.writeLong(pairs[i]);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		pairCount = 0;
+	}
+
+	/**
+	 * Merges the runs and the previous index and writes the posting lists in ascending trigram order.
+	 *
+	 * @param out the writer for the new index.
+	 * @throws IOException if reading or writing fails.
+	 */
+	private void mergePostings(PostingWriter out) throws IOException
+	{
+		RunMerger merger = new RunMerger(runs);
+		try
+		{
+			int slot = 0;
+			int previousTrigrams = previous==null ? 0 : previous.getTrigramCount();
+			int[] ids = new int[16];
+			while(merger.hasNext()||slot<previousTrigrams)
+			{
+				int trigram;
+				if(slot<previousTrigrams&&(!merger.hasNext()||previous.trigramAt(slot)<=merger.peekTrigram()))
+				{
+					trigram = previous.trigramAt(slot);
+				}
+				else
+				{
+					trigram = merger.peekTrigram();
+				}
+				int count = 0;
+				if(slot<previousTrigrams&&previous.trigramAt(slot)==trigram)
+				{
+					for(int oldId : previous.postingsAt(slot))
+					{
+						if(previousToNew[oldId]>=0)
+						{
+							ids = ensureCapacity(ids, count);
+							ids[count++] = previousToNew[oldId];
+						}
+					}
+					slot++;
+				}
+				while(merger.hasNext()&&merger.peekTrigram()==trigram)
+				{
+					ids = ensureCapacity(ids, count);
+					ids[count++] = merger.nextId();
+				}
+				Arrays.sort(ids, 0, count);
+				out.writePostings(trigram, ids, count);
+			}
+		}
+		finally
+		{
+			merger.close();
+			deleteRuns();
+		}
+	}
+
+	/**
+	 * Deletes all spilled runs.
+	 */
+	private void deleteRuns()
+	{
+		if(runs!=null)
+		{
+			for(File run : runs)
+			{
+				run.delete();
+			}
+			runs.clear();
+		}
+	}
+
+	/**
+	 * Grows an array if it has no room for another element.
+	 *
+	 * @param array the array.
+	 * @param size the number of used elements.
+	 * @return the array or a larger copy.
+	 */
+	private static int[] ensureCapacity(int[] array, int size)
+	{
+		return size<array.length ? array : Arrays.copyOf(array, size*2);
+	}
+
+	/**
+	 * Merges sorted run files.
+	 */
+	private static final class RunMerger
+	{
+		/**
+		 * Saves the readers of all runs.
+		 */
+		private final DataInputStream[] inputs;
+		/**
+		 * Saves the number of pairs left in every run.
+		 */
+		private final int[] remaining;
+		/**
+		 * Saves the current pair of every run.
+		 */
+		private final long[] heads;
+		/**
+		 * Saves the run with the smallest current pair or -1 if all runs are exhausted.
+		 */
+		private int min;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param runs the run files.
+		 * @throws IOException if a run cannot be opened.
+		 */
+		RunMerger(ArrayList<File> runs) throws IOException
+		{
+			inputs = new DataInputStream[runs.size()];
+			remaining = new int[runs.size()];
+			heads = new long[runs.size()];
+			for(int i=0; i<inputs.length; i++)
+			{
+				inputs[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)), 1<<16));
+				remaining[i] = inputs[i].readInt();
+				advance(i);
+			}
+			findMin();
+		}
+
+		/**
+		 * Checks if there are pairs left.
+		 *
+		 * @return true if there are pairs left.
+		 */
+		boolean hasNext()
+		{
+			return min>=0;
+		}
+
+		/**
+		 * Returns the trigram of the next pair.
+		 *
+		 * @return the trigram.
+		 */
+		int peekTrigram()
+		{
+			return (int)(heads[min]>>>32);
+		}
+
+		/**
+		 * Consumes the next pair.
+		 *
+		 * @return the file id of the pair.
+		 * @throws IOException if a run cannot be read.
+		 */
+		int nextId() throws IOException
+		{
+			int id = (int)heads[min];
+			advance(min);
+			findMin();
+			return id;
+		}
+
+		/**
+		 * Reads the next pair of a run.
+		 *
+		 * @param run the run.
+		 * @throws IOException if the run cannot be read.
+		 */
+		private void advance(int run) throws IOException
+		{
+			if(remaining[run]==0)
+			{
+				heads[run] = Long.MAX_VALUE;
+				return;
+			}
+			remaining[run]--;
+			heads[run] = inputs[run].readLong();
+		}
+
+		/**
+		 * Searches the run with the smallest current pair.
+		 */
+		private void findMin()
+		{
+			min = -1;
+			for(int i=0; i<heads.length; i++)
+			{
+				if(heads[i]!=Long.MAX_VALUE&&(min<0||heads[i]<heads[min]))
+				{
+					min = i;
+				}
+			}
+		}
+
+		/**
+		 * Closes all runs.
+		 */
+		void close()
+		{
+			for(DataInputStream in : inputs)
+			{
+				try
+				{
+					if(in!=null)
+					{
+						in.close();
+					}
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the sections of a new index file.
+	 */
+	private static final class PostingWriter
+	{
+		/**
+		 * Saves the stream for the index file.
+		 */
+		private final DataOutputStream out;
+		/**
+		 * Saves the index file.
+		 */
+		private final File file;
+		/**
+		 * Saves the current position in the index file.
+		 */
+		private long position;
+		/**
+		 * Saves the trigrams with at least one file.
+		 */
+		private int[] trigrams;
+		/**
+		 * Saves the number of files for each trigram.
+		 */
+		private int[] counts;
+		/**
+		 * Saves the position of the posting list for each trigram.
+		 */
+		private long[] offsets;
+		/**
+		 * Saves the number of written trigrams.
+		 */
+		private int trigramCount;
+		/**
+		 * Saves the number of files in the index.
+		 */
+		private final int fileCount;
+
+		/**
+		 * Creates a new instance and writes a placeholder for the header.
+		 *
+		 * @param file the index file.
+		 * @param fileCount the number of files in the index.
+		 * @throws IOException if the file cannot be written.
+		 */
+		PostingWriter(File file, int fileCount) throws IOException
+		{
+			this.file = file;
+			this.fileCount = fileCount;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+			out.write(new byte[TrigramIndex.HEADER_SIZE]);
+			position = TrigramIndex.HEADER_SIZE;
+			trigrams = new int[1024];
+			counts = new int[1024];
+			offsets = new long[1024];
+		}
+
+		/**
+		 * Writes the posting list of a trigram with delta-encoded ids.
+		 *
+		 * @param trigram the trigram.
+		 * @param ids the sorted file ids.
+		 * @param count the number of ids.
+		 * @throws IOException if the list cannot be written.
+		 */
+		void writePostings(int trigram, int[] ids, int count) throws IOException
+		{
+			if(count==0)
+			{
+				return;
+			}
+			if(trigramCount==trigrams.length)
+			{
+				trigrams = Arrays.copyOf(trigrams, trigramCount*2);
+				counts = Arrays.copyOf(counts, trigramCount*2);
+				offsets = Arrays.copyOf(offsets, trigramCount*2);
+			}
+			trigrams[trigramCount] = trigram;
+			counts[trigramCount] = count;
+			offsets[trigramCount] = position;
+			trigramCount++;
+			int last = 0;
+			for(int i=0; i<count; i++)
+			{
+				int delta = ids[i]-last;
+				last = ids[i];
+				while((delta&~0x7f)!=0)
+				{
+					out.write(delta&0x7f|0x80);
+					delta >>>= 7;
+					position++;
+				}
+				out.write(delta);
+				position++;
+			}
+		}
+
+		/**
+		 * Writes the trigram table, the path order and the file table and completes the header.
+		 *
+		 * @param paths the encoded paths of all files.
+		 * @param sizes the sizes of all files.
+		 * @param modified the modification times of all files.
+		 * @throws IOException if the index cannot be written.
+		 */
+		void finish(final ArrayList<byte[]> paths, long[] sizes, long[] modified) throws IOException
+		{
+			long trigramTable = position;
+			for(int i=0; i<trigramCount; i++)
+			{
+				out.writeInt(trigrams[i]);
+				out.writeInt(counts[i]);
+				out.writeLong(offsets[i]);
+			}
+			position += (long)trigramCount*TrigramIndex.TRIGRAM_ENTRY_SIZE;
+			long pathOrder = position;
+			Integer[] order = new Integer[fileCount];
+			for(int i=0; i<fileCount; i++)
+			{
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>()
+			{
+				@Override
+				public int compare(Integer a, Integer b)
+				{
+					return TrigramIndex.compare(paths.get(a), paths.get(b));
+				}
+			});
+			for(Integer id : order)
+			{
+				out.writeInt(id);
+			}
+			position += 4L*fileCount;
+			long fileTable = position;
+			long entry = fileTable+8L*fileCount;
+			for(int i=0; i<fileCount; i++)
+			{
+				out.writeLong(entry);
+				entry += 20+paths.get(i).length;
+			}
+			for(int i=0; i<fileCount; i++)
+			{
+				out.writeLong(sizes[i]);
+				out.writeLong(modified[i]);
+				out.writeInt(paths.get(i).length);
+				out.write(paths.get(i));
+			}
+			out.close();
+			writeHeader(trigramTable, pathOrder, fileTable);
+		}
+
+		/**
+		 * Writes the header at the beginning of the file.
+		 *
+		 * @param trigramTable the position of the trigram table.
+		 * @param pathOrder the position of the path order.
+		 * @param fileTable the position of the file table.
+		 * @throws IOException if the header cannot be written.
+		 */
+		private void writeHeader(long trigramTable, long pathOrder, long fileTable) throws IOException
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try
+			{
+				raf.writeInt(TrigramIndex.MAGIC);
+				raf.writeInt(TrigramIndex.VERSION);
+				raf.writeInt(fileCount);
+				raf.writeInt(trigramCount);
+				raf.writeLong(trigramTable);
+				raf.writeLong(pathOrder);
+				raf.writeLong(fileTable);
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+
+		/**
+		 * Closes the index file.
+		 *
+		 * @throws IOException if the file cannot be closed.
+		 */
+		void close() throws IOException
+		{
+			out.close();
+		}
+	}
+}
\ No newline at end of file
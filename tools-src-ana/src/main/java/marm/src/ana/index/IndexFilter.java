@@ -0,0 +1,70 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.index;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Decides with a TrigramIndex whether a file can contain at least one of several strings.
+ * Files that aren't indexed or changed since they were indexed can always contain the strings.
+ * File handlers use an instance of this class to skip files before reading them.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public class IndexFilter
+{
+	/**
+	 * Saves the used index.
+	 */
+	private final TrigramIndex index;
+	/**
+	 * Saves the absolute paths of all indexed candidate files or null if no file is excluded.
+	 */
+	private final Set<String> candidates;
+
+	/**
+	 * Creates a new instance. The candidates are looked up once here.
+	 *
+	 * @param index the used index.
+	 * @param keys the literal strings or regular expressions.
+	 * @param regex true if the keys are regular expressions. false if they are literal strings.
+	 */
+	public IndexFilter(TrigramIndex index, Collection<String> keys, boolean regex)
+	{
+		this.index = index;
+		candidates = index.getCandidatePaths(keys, regex);
+	}
+
+	/**
+	 * Checks if a file can contain at least one of the strings.
+	 *
+	 * @param f the file.
+	 * @return false if the file certainly contains none of the strings. true otherwise.
+	 */
+	public boolean canContain(File f)
+	{
+		return candidates==null||candidates.contains(f.getAbsolutePath())||!index.isUpToDate(f);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,167 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.nio.MappedByteBuffer;
+
+/**
+ * A read-only memory mapping of a whole file that may be larger than 2 GB.
+ * The file is mapped in segments of 1 GB. Values crossing a segment border are assembled byte by byte.
+ * All values are read in big-endian byte order.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class MappedFile
+{
+	/**
+	 * Number of bits used for addressing a byte within a segment.
+	 */
+	private static final int SEGMENT_BITS = 30;
+	/**
+	 * Size of a segment in bytes.
+	 */
+	private static final long SEGMENT_SIZE = 1L<<SEGMENT_BITS;
+	/**
+	 * Mask to get the position within a segment.
+	 */
+	private static final long SEGMENT_MASK = SEGMENT_SIZE-1;
+	/**
+	 * Saves the mapped segments.
+	 */
+	private MappedByteBuffer[] segments;
+	/**
+	 * Saves the length of the mapped file.
+	 */
+	private long length;
+
+	/**
+	 * Creates a new instance by mapping a file.
+	 *
+	 * @param f the file to map.
+	 * @throws IOException if the file cannot be mapped.
+	 */
+	MappedFile(File f) throws IOException
+	{
+		FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+		try
+		{
+			length = channel.size();
+			segments = new MappedByteBuffer[(int)((length+SEGMENT_SIZE-1)>>>SEGMENT_BITS)];
+			for(int i=0; i<segments.length; i++)
+			{
+				long start = (long)i<<SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length-start));
+			}
+		}
+		finally
+		{
+			// A mapping stays valid after its channel is closed.
+			channel.close();
+		}
+	}
+
+	/**
+	 * Returns the length of the mapped file.
+	 *
+	 * @return the length in bytes.
+	 */
+	long length()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the byte at a position.
+	 *
+	 * @param pos the position.
+	 * @return the byte.
+	 */
+	byte get(long pos)
+	{
+		return segments[(int)(pos>>>SEGMENT_BITS)].get((int)(pos&SEGMENT_MASK));
+	}
+
+	/**
+	 * Returns the int value at a position.
+	 *
+	 * @param pos the position.
+	 * @return the int value.
+	 */
+	int getInt(long pos)
+	{
+		int offset = (int)(pos&SEGMENT_MASK);
+		if(offset<=SEGMENT_SIZE-4)
+		{
+			return segments[(int)(pos>>>SEGMENT_BITS)].getInt(offset);
+		}
+		int result = 0;
+		for(int i=0; i<4; i++)
+		{
+			result = result<<8|get(pos+i)&0xff;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the long value at a position.
+	 *
+	 * @param pos the position.
+	 * @return the long value.
+	 */
+	long getLong(long pos)
+	{
+		int offset = (int)(pos&SEGMENT_MASK);
+		if(offset<=SEGMENT_SIZE-8)
+		{
+			return segments[(int)(pos>>>SEGMENT_BITS)].getLong(offset);
+		}
+		return (long)getInt(pos)<<32|getInt(pos+4)&0xffffffffL;
+	}
+
+	/**
+	 * Copies bytes starting at a position into an array.
+	 *
+	 * @param pos the position of the first byte.
+	 * @param dst the array receiving the bytes. It's filled completely.
+	 */
+	void get(long pos, byte[] dst)
+	{
+		for(int i=0; i<dst.length; i++)
+		{
+			dst[i] = get(pos+i);
+		}
+	}
+
+	/**
+	 * Releases the mapping. The mapped memory is freed by the garbage collector.
+	 */
+	void close()
+	{
+		segments = new MappedByteBuffer[0];
+		length = 0;
+	}
+}
\ No newline at end of file
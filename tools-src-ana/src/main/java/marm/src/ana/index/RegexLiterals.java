@@ -0,0 +1,348 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extracts literal strings from a regular expression that every match must contain.
+ * The extraction is conservative: it only considers the top level of the expression and gives up on alternations
+ * and embedded flags. In these cases, an empty list is returned so that no file is excluded.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+final class RegexLiterals
+{
+	/**
+	 * Saves the regular expression.
+	 */
+	private final String regex;
+	/**
+	 * Saves the found literals.
+	 */
+	private final List<String> literals;
+	/**
+	 * Saves the literal currently built.
+	 */
+	private final StringBuilder current;
+	/**
+	 * Saves the position of the next character to read.
+	 */
+	private int pos;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param regex the regular expression.
+	 */
+	private RegexLiterals(String regex)
+	{
+		this.regex = regex;
+		literals = new ArrayList<String>();
+		current = new StringBuilder();
+	}
+
+	/**
+	 * Returns the literals every match of a regular expression contains.
+	 *
+	 * @param regex the regular expression.
+	 * @return the literals. If nothing can be derived, the list is empty.
+	 */
+	static List<String> requiredLiterals(String regex)
+	{
+		RegexLiterals extractor = new RegexLiterals(regex);
+		if(!extractor.parse())
+		{
+			return Collections.emptyList();
+		}
+		return extractor.literals;
+	}
+
+	/**
+	 * Parses the regular expression.
+	 *
+	 * @return false if the expression contains constructs preventing the extraction. true otherwise.
+	 */
+	private boolean parse()
+	{
+		int depth = 0;
+		while(pos<regex.length())
+		{
+			char c = regex.charAt(pos++);
+			switch(c)
+			{
+				case '|':
+					return false;
+				case '\\':
+					if(!parseEscape(depth))
+					{
+						return false;
+					}
+					break;
+				case '[':
+					finish();
+					skipClass();
+					break;
+				case '(':
+					if(pos<regex.length()&&regex.charAt(pos)=='?'&&pos+1<regex.length()
+							&&Character.isLetter(regex.charAt(pos+1)))
+					{
+						// Embedded flags like (?i) change the meaning of all following literals.
+						return false;
+					}
+					finish();
+					depth++;
+					break;
+				case ')':
+					finish();
+					depth--;
+					break;
+				case '?':
+				case '*':
+				case '{':
+					dropLast();
+					if(c=='{')
+					{
+						skipTo('}');
+					}
+					skipQuantifierModifier();
+					break;
+				case '+':
+					repeatLast();
+					skipQuantifierModifier();
+					break;
+				case '.':
+				case '^':
+				case '$':
+					finish();
+					break;
+				default:
+					append(c, depth);
+			}
+		}
+		finish();
+		return true;
+	}
+
+	/**
+	 * Parses an escape sequence after the backslash.
+	 *
+	 * @param depth the current group depth.
+	 * @return false if the escape sequence prevents the extraction. true otherwise.
+	 */
+	private boolean parseEscape(int depth)
+	{
+		if(pos>=regex.length())
+		{
+			return false;
+		}
+		char c = regex.charAt(pos++);
+		if(c=='Q')
+		{
+			int end = regex.indexOf("\\E", pos);
+			String quoted = end<0 ? regex.substring(pos) : regex.substring(pos, end);
+			pos = end<0 ? regex.length() : end+2;
+			for(int i=0; i<quoted.length(); i++)
+			{
+				append(quoted.charAt(i), depth);
+			}
+		}
+		else if(Character.isLetterOrDigit(c))
+		{
+			// Character classes, back references, code points and control characters.
+			skipEscape(c);
+			finish();
+		}
+		else
+		{
+			append(c, depth);
+		}
+		return true;
+	}
+
+	/**
+	 * Skips the rest of an escape sequence starting with a letter or digit, e. g. the digits of "\x41" or the name of
+	 * "\k&lt;name&gt;", so it isn't taken for literal characters.
+	 *
+	 * @param c the character after the backslash.
+	 */
+	private void skipEscape(char c)
+	{
+		if(pos<regex.length()&&regex.charAt(pos)=='{'&&"xpPNb".indexOf(c)>=0)
+		{
+			skipTo('}');
+		}
+		else if(pos<regex.length()&&regex.charAt(pos)=='<'&&c=='k')
+		{
+			skipTo('>');
+		}
+		else if(c=='x')
+		{
+			skipDigits(2, 16);
+		}
+		else if(c=='u')
+		{
+			skipDigits(4, 16);
+		}
+		else if(c=='0')
+		{
+			skipDigits(3, 8);
+		}
+		else if(c>='1'&&c<='9')
+		{
+			skipDigits(Integer.MAX_VALUE, 10);
+		}
+		else if(c=='c'||c=='p'||c=='P')
+		{
+			pos = Math.min(pos+1, regex.length());
+		}
+	}
+
+	/**
+	 * Skips the digits of an escape sequence.
+	 *
+	 * @param max the maximum number of digits.
+	 * @param radix the radix of the digits.
+	 */
+	private void skipDigits(int max, int radix)
+	{
+		for(int i=0; i<max&&pos<regex.length()&&Character.digit(regex.charAt(pos), radix)>=0; i++)
+		{
+			pos++;
+		}
+	}
+
+	/**
+	 * Appends a literal character to the current literal if it's on the top level.
+	 *
+	 * @param c the character.
+	 * @param depth the current group depth.
+	 */
+	private void append(char c, int depth)
+	{
+		if(depth==0)
+		{
+			current.append(c);
+		}
+		else
+		{
+			finish();
+		}
+	}
+
+	/**
+	 * Removes the last character of the current literal because it's optional and finishes the literal.
+	 */
+	private void dropLast()
+	{
+		if(current.length()>0)
+		{
+			current.setLength(current.length()-1);
+		}
+		finish();
+	}
+
+	/**
+	 * Finishes the current literal and starts a new one with its last character because it's repeated.
+	 */
+	private void repeatLast()
+	{
+		if(current.length()==0)
+		{
+			return;
+		}
+		char last = current.charAt(current.length()-1);
+		finish();
+		current.append(last);
+	}
+
+	/**
+	 * Skips a lazy or possessive modifier after a quantifier.
+	 */
+	private void skipQuantifierModifier()
+	{
+		if(pos<regex.length()&&(regex.charAt(pos)=='?'||regex.charAt(pos)=='+'))
+		{
+			pos++;
+		}
+	}
+
+	/**
+	 * Skips a character class. The opening bracket is already read.
+	 */
+	private void skipClass()
+	{
+		if(pos<regex.length()&&regex.charAt(pos)=='^')
+		{
+			pos++;
+		}
+		if(pos<regex.length()&&regex.charAt(pos)==']')
+		{
+			pos++;
+		}
+		int depth = 1;
+		while(pos<regex.length()&&depth>0)
+		{
+			char c = regex.charAt(pos++);
+			if(c=='\\')
+			{
+				pos++;
+			}
+			else if(c=='[')
+			{
+				depth++;
+			}
+			else if(c==']')
+			{
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Skips all characters up to and including a character.
+	 *
+	 * @param end the character.
+	 */
+	private void skipTo(char end)
+	{
+		while(pos<regex.length()&&regex.charAt(pos++)!=end)
+		{
+			continue;
+		}
+	}
+
+	/**
+	 * Finishes the current literal.
+	 */
+	private void finish()
+	{
+		if(current.length()>0)
+		{
+			literals.add(current.toString());
+			current.setLength(0);
+		}
+	}
+}
\ No newline at end of file
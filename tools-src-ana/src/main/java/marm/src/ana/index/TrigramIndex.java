@@ -0,0 +1,526 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A persistent trigram index over the content of source code files.
+ * For every sequence of three bytes, the index stores the ids of all files containing it. It's used to find the
+ * files that can contain a literal string or a match of a regular expression without reading any file.
+ * The returned files are candidates: they contain all trigrams of the searched string, but not necessarily the string
+ * itself.
+ * <p>
+ * The index file is memory-mapped and not parsed when it's opened. It consists of a header, the posting lists with
+ * delta-encoded variable-length file ids, a table of all trigrams sorted for binary search, the file ids sorted by
+ * path and the file table with path, size and modification time of every file.
+ * Indexes are built and updated by the TrigramIndexer.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public final class TrigramIndex implements Closeable
+{
+	/**
+	 * Magic number at the beginning of every index file.
+	 */
+	static final int MAGIC = 0x53544958;
+	/**
+	 * Version of the index file format.
+	 */
+	static final int VERSION = 1;
+	/**
+	 * Size of the file header in bytes.
+	 */
+	static final int HEADER_SIZE = 40;
+	/**
+	 * Size of an entry in the trigram table in bytes.
+	 */
+	static final int TRIGRAM_ENTRY_SIZE = 16;
+	/**
+	 * Saves the mapped index file.
+	 */
+	private final MappedFile file;
+	/**
+	 * Saves the number of indexed files.
+	 */
+	private final int fileCount;
+	/**
+	 * Saves the number of distinct trigrams.
+	 */
+	private final int trigramCount;
+	/**
+	 * Saves the position of the file table.
+	 */
+	private final long fileTable;
+	/**
+	 * Saves the position of the file ids sorted by path.
+	 */
+	private final long pathOrder;
+	/**
+	 * Saves the position of the trigram table.
+	 */
+	private final long trigramTable;
+
+	/**
+	 * Creates a new instance for a mapped index file.
+	 *
+	 * @param file the mapped index file.
+	 * @throws IOException if the file is not a valid index.
+	 */
+	private TrigramIndex(MappedFile file) throws IOException
+	{
+		this.file = file;
+		if(file.length()<HEADER_SIZE||file.getInt(0)!=MAGIC||file.getInt(4)!=VERSION)
+		{
+			throw new IOException("Not a trigram index or an unsupported version.");
+		}
+		fileCount = file.getInt(8);
+		trigramCount = file.getInt(12);
+		trigramTable = file.getLong(16);
+		pathOrder = file.getLong(24);
+		fileTable = file.getLong(32);
+	}
+
+	/**
+	 * Opens an index file.
+	 *
+	 * @param indexFile the index file.
+	 * @return the opened index.
+	 * @throws IOException if the file cannot be read or is not a valid index.
+	 */
+	public static TrigramIndex open(File indexFile) throws IOException
+	{
+		return new TrigramIndex(new MappedFile(indexFile));
+	}
+
+	/**
+	 * Returns the number of indexed files.
+	 *
+	 * @return the number of indexed files.
+	 */
+	public int getFileCount()
+	{
+		return fileCount;
+	}
+
+	/**
+	 * Returns the number of distinct trigrams in the index.
+	 *
+	 * @return the number of distinct trigrams.
+	 */
+	public int getTrigramCount()
+	{
+		return trigramCount;
+	}
+
+	/**
+	 * Returns the absolute path of an indexed file.
+	 *
+	 * @param id the id of the file.
+	 * @return the absolute path.
+	 */
+	public String getPath(int id)
+	{
+		return new String(getPathBytes(id), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the size of an indexed file at the time it was indexed.
+	 *
+	 * @param id the id of the file.
+	 * @return the size in bytes.
+	 */
+	public long getSize(int id)
+	{
+		return file.getLong(entry(id));
+	}
+
+	/**
+	 * Returns the modification time of an indexed file at the time it was indexed.
+	 *
+	 * @param id the id of the file.
+	 * @return the modification time in milliseconds.
+	 */
+	public long getLastModified(int id)
+	{
+		return file.getLong(entry(id)+8);
+	}
+
+	/**
+	 * Searches for the id of an indexed file.
+	 *
+	 * @param path the absolute path of the file.
+	 * @return the id of the file or -1 if it's not indexed.
+	 */
+	public int findFile(String path)
+	{
+		byte[] key = path.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = fileCount-1;
+		while(low<=high)
+		{
+			int mid = (low+high)>>>1;
+			int id = file.getInt(pathOrder+4L*mid);
+			int cmp = compare(getPathBytes(id), key);
+			if(cmp<0)
+			{
+				low = mid+1;
+			}
+			else if(cmp>0)
+			{
+				high = mid-1;
+			}
+			else
+			{
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if a file is indexed and unchanged since it was indexed.
+	 *
+	 * @param f the file.
+	 * @return true if the index reflects the current content of the file. false otherwise.
+	 */
+	public boolean isUpToDate(File f)
+	{
+		int id = findFile(f.getAbsolutePath());
+		return id>=0&&getSize(id)==f.length()&&getLastModified(id)==f.lastModified();
+	}
+
+	/**
+	 * Returns all files that can contain a literal string.
+	 *
+	 * @param literal the literal string.
+	 * @return the candidate files.
+	 */
+	public Collection<File> getCandidates(String literal)
+	{
+		return toFiles(candidateIds(literal.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Returns all files that can contain a match of a regular expression.
+	 *
+	 * @param regex the regular expression.
+	 * @return the candidate files.
+	 */
+	public Collection<File> getRegexCandidates(String regex)
+	{
+		return toFiles(regexCandidateIds(regex));
+	}
+
+	/**
+	 * Returns the absolute paths of all files that can contain at least one of several strings.
+	 *
+	 * @param keys the literal strings or regular expressions.
+	 * @param regex true if the keys are regular expressions. false if they are literal strings.
+	 * @return the absolute paths of the candidate files or null if the keys don't exclude any file.
+	 */
+	public Set<String> getCandidatePaths(Collection<String> keys, boolean regex)
+	{
+		Set<String> result = new HashSet<String>();
+		for(String key : keys)
+		{
+			int[] ids = regex ? regexCandidateIds(key) : candidateIds(key.getBytes(StandardCharsets.UTF_8));
+			if(ids==null)
+			{
+				return null;
+			}
+			for(int id : ids)
+			{
+				result.add(getPath(id));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ids of all files containing every trigram of a byte sequence.
+	 *
+	 * @param literal the byte sequence.
+	 * @return the sorted ids or null if the sequence is too short to exclude any file.
+	 */
+	int[] candidateIds(byte[] literal)
+	{
+		if(literal.length<3)
+		{
+			return null;
+		}
+		int[] trigrams = new int[literal.length-2];
+		for(int i=0; i<trigrams.length; i++)
+		{
+			trigrams[i] = trigram(literal[i], literal[i+1], literal[i+2]);
+		}
+		Arrays.sort(trigrams);
+		// Intersecting the shortest posting lists first keeps the intermediate results small.
+		long[] byCount = new long[trigrams.length];
+		int distinct = 0;
+		for(int i=0; i<trigrams.length; i++)
+		{
+			if(i>0&&trigrams[i]==trigrams[i-1])
+			{
+				continue;
+			}
+			int slot = findTrigram(trigrams[i]);
+			if(slot<0)
+			{
+				return new int[0];
+			}
+			byCount[distinct++] = (long)file.getInt(trigramTable+(long)slot*TRIGRAM_ENTRY_SIZE+4)<<32|slot;
+		}
+		Arrays.sort(byCount, 0, distinct);
+		int[] result = postingsAt((int)byCount[0]);
+		for(int i=1; i<distinct&&result.length>0; i++)
+		{
+			result = intersect(result, postingsAt((int)byCount[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ids of all files that can contain a match of a regular expression.
+	 *
+	 * @param regex the regular expression.
+	 * @return the sorted ids or null if no file can be excluded.
+	 */
+	int[] regexCandidateIds(String regex)
+	{
+		int[] result = null;
+		for(String literal : RegexLiterals.requiredLiterals(regex))
+		{
+			int[] ids = candidateIds(literal.getBytes(StandardCharsets.UTF_8));
+			if(ids!=null)
+			{
+				result = result==null ? ids : intersect(result, ids);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the trigram at a position of the trigram table.
+	 *
+	 * @param slot the position in the trigram table.
+	 * @return the trigram.
+	 */
+	int trigramAt(int slot)
+	{
+		return file.getInt(trigramTable+(long)slot*TRIGRAM_ENTRY_SIZE);
+	}
+
+	/**
+	 * Decodes the posting list of a trigram.
+	 *
+	 * @param slot the position of the trigram in the trigram table.
+	 * @return the sorted file ids.
+	 */
+	int[] postingsAt(int slot)
+	{
+		long entry = trigramTable+(long)slot*TRIGRAM_ENTRY_SIZE;
+		int[] ids = new int[file.getInt(entry+4)];
+		long pos = file.getLong(entry+8);
+		int id = 0;
+		for(int i=0; i<ids.length; i++)
+		{
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do
+			{
+				b = file.get(pos++);
+				delta |= (b&0x7f)<<shift;
+				shift += 7;
+			}
+			while(b<0);
+			id += delta;
+			ids[i] = id;
+		}
+		return ids;
+	}
+
+	/**
+	 * Searches the trigram table for a trigram.
+	 *
+	 * @param trigram the trigram.
+	 * @return the position in the trigram table or -1 if the trigram doesn't occur in any file.
+	 */
+	private int findTrigram(int trigram)
+	{
+		int low = 0;
+		int high = trigramCount-1;
+		while(low<=high)
+		{
+			int mid = (low+high)>>>1;
+			int value = trigramAt(mid);
+			if(value<trigram)
+			{
+				low = mid+1;
+			}
+			else if(value>trigram)
+			{
+				high = mid-1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the file table entry for a file.
+	 *
+	 * @param id the id of the file.
+	 * @return the position of the entry.
+	 */
+	private long entry(int id)
+	{
+		return file.getLong(fileTable+8L*id);
+	}
+
+	/**
+	 * Returns the UTF-8 encoded path of a file.
+	 *
+	 * @param id the id of the file.
+	 * @return the encoded path.
+	 */
+	private byte[] getPathBytes(int id)
+	{
+		long pos = entry(id);
+		byte[] path = new byte[file.getInt(pos+16)];
+		file.get(pos+20, path);
+		return path;
+	}
+
+	/**
+	 * Converts file ids to files.
+	 *
+	 * @param ids the file ids or null for all files.
+	 * @return the files.
+	 */
+	private Collection<File> toFiles(final int[] ids)
+	{
+		return new AbstractList<File>()
+		{
+			@Override
+			public File get(int index)
+			{
+				return new File(getPath(ids==null ? index : ids[index]));
+			}
+
+			@Override
+			public int size()
+			{
+				return ids==null ? fileCount : ids.length;
+			}
+		};
+	}
+
+	/**
+	 * Closes this index. It must not be used afterwards.
+	 */
+	@Override
+	public void close()
+	{
+		file.close();
+	}
+
+	/**
+	 * Combines three bytes to a trigram.
+	 *
+	 * @param b1 the first byte.
+	 * @param b2 the second byte.
+	 * @param b3 the third byte.
+	 * @return the trigram.
+	 */
+	static int trigram(byte b1, byte b2, byte b3)
+	{
+		return (b1&0xff)<<16|(b2&0xff)<<8|b3&0xff;
+	}
+
+	/**
+	 * Compares two byte sequences lexicographically with unsigned bytes.
+	 *
+	 * @param a the first sequence.
+	 * @param b the second sequence.
+	 * @return a negative value, zero or a positive value if a is less than, equal to or greater than b.
+	 */
+	static int compare(byte[] a, byte[] b)
+	{
+		int n = Math.min(a.length, b.length);
+		for(int i=0; i<n; i++)
+		{
+			int cmp = (a[i]&0xff)-(b[i]&0xff);
+			if(cmp!=0)
+			{
+				return cmp;
+			}
+		}
+		return a.length-b.length;
+	}
+
+	/**
+	 * Intersects two sorted id lists.
+	 *
+	 * @param a the first list.
+	 * @param b the second list.
+	 * @return the sorted ids contained in both lists.
+	 */
+	static int[] intersect(int[] a, int[] b)
+	{
+		int[] result = new int[Math.min(a.length, b.length)];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while(i<a.length&&j<b.length)
+		{
+			if(a[i]<b[j])
+			{
+				i++;
+			}
+			else if(a[i]>b[j])
+			{
+				j++;
+			}
+			else
+			{
+				result[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import marm.src.ana.MultiExtensionSupportFileHandler;
+
+/**
+ * A file handler that builds or updates a TrigramIndex for all handled files.
+ * After the analysis, the index is written with {@link #write()}. If the index file already exists, only files
+ * changed since then are read again, and files not handled anymore are removed from the index.
+ * All instances created for multiple extensions and for parallel threads share one index, which is locked while a
+ * file is added. A file handled by several instances is added once. Because independent analyses would write the
+ * same index file, an instance can't be copied for them.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public class TrigramIndexer extends MultiExtensionSupportFileHandler
+{
+	/**
+	 * Saves the builder shared by all clones.
+	 */
+	private final IndexBuilder builder;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param indexFile the index file to build or update.
+	 */
+	public TrigramIndexer(File indexFile)
+	{
+		this(new IndexBuilder(indexFile));
+	}
+
+	/**
+	 * Creates a new instance sharing a builder.
+	 *
+	 * @param builder the builder.
+	 */
+	private TrigramIndexer(IndexBuilder builder)
+	{
+		this.builder = builder;
+	}
+
+	/**
+	 * Sets the number of (trigram, file) pairs kept in memory before they're spilled to a temporary file next to the
+	 * index file. Every pair needs 8 bytes.
+	 *
+	 * @param pairs the number of pairs.
+	 */
+	public void setBufferSize(int pairs)
+	{
+		builder.setBufferSize(pairs);
+	}
+
+	/**
+	 * Writes the index file with all files handled since the last reset.
+	 *
+	 * @throws IOException if the index cannot be written.
+	 */
+	public void write() throws IOException
+	{
+		builder.write();
+	}
+
+	/**
+	 * Adds a file to the index.
+	 *
+	 * @param f the file.
+	 */
+	@Override
+	public void handleFile(File f)
+	{
+		try
+		{
+			builder.addFile(f);
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Discards all files handled so far.
+	 */
+	@Override
+	public void reset()
+	{
+		builder.clear();
+	}
+
+	/**
+	 * Rejects a copy for an independent analysis because all copies would write the same index file.
+	 *
+	 * @param copies maps the shared state of the copied instances to the state of their copies.
+	 * @return never.
+	 * @throws IllegalArgumentException always.
+	 */
+	@Override
+	public TrigramIndexer copy(Map<Object, Object> copies)
+	{
+		throw new IllegalArgumentException("A TrigramIndexer can't be copied for an independent analysis because all "
+				+"copies would write the same index file");
+	}
+
+	@Override
+	public TrigramIndexer clone()
+	{
+		return new TrigramIndexer(builder);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.util.Arrays;
+
+/**
+ * An Aho-Corasick automaton over bytes.
+ * The failure links are resolved when the automaton is built, so matching needs exactly one table lookup per byte.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class ByteAutomaton
+{
+	/**
+	 * Saves the transitions. The next state for state s and byte b is at index s*256+b.
+	 */
+	private int[] delta;
+	/**
+	 * Saves for every state the keys ending in it or null if there are none.
+	 */
+	private int[][] outputs;
+	/**
+	 * Saves the lengths of all keys.
+	 */
+	private final int[] lengths;
+
+	/**
+	 * Creates a new automaton.
+	 *
+	 * @param keys the byte sequences to search for. Empty sequences are ignored.
+	 */
+	ByteAutomaton(byte[][] keys)
+	{
+		lengths = new int[keys.length];
+		delta = new int[256];
+		Arrays.fill(delta, -1);
+		outputs = new int[1][];
+		int states = 1;
+		for(int k=0; k<keys.length; k++)
+		{
+			lengths[k] = keys[k].length;
+			if(keys[k].length>0)
+			{
+				states = insert(keys[k], k, states);
+			}
+		}
+		resolveFailures(states);
+	}
+
+	/**
+	 * Inserts a key into the trie.
+	 *
+	 * @param key the key.
+	 * @param index the index of the key.
+	 * @param states the number of states before the insertion.
+	 * @return the number of states after the insertion.
+	 */
+	private int insert(byte[] key, int index, int states)
+	{
+		int count = states;
+		int state = 0;
+		for(byte b : key)
+		{
+			int transition = state<<8|b&0xff;
+			if(delta[transition]<0)
+			{
+				if(count<<8==delta.length)
+				{
+					int old = delta.length;
+					delta = Arrays.copyOf(delta, old*2);
+					Arrays.fill(delta, old, delta.length, -1);
+					outputs = Arrays.copyOf(outputs, count*2);
+				}
+				delta[transition] = count++;
+			}
+			state = delta[transition];
+		}
+		outputs[state] = add(outputs[state], index);
+		return count;
+	}
+
+	/**
+	 * Computes the failure links in breadth-first order and replaces missing transitions with the transitions of the
+	 * failure state.
+	 *
+	 * @param states the number of states.
+	 */
+	private void resolveFailures(int states)
+	{
+		int[] fail = new int[states];
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		for(int b=0; b<256; b++)
+		{
+			if(delta[b]<0)
+			{
+				delta[b] = 0;
+			}
+			else
+			{
+				fail[delta[b]] = 0;
+				queue[tail++] = delta[b];
+			}
+		}
+		while(head<tail)
+		{
+			int state = queue[head++];
+			for(int b=0; b<256; b++)
+			{
+				int index = state<<8|b;
+				int fallback = delta[fail[state]<<8|b];
+				if(delta[index]<0)
+				{
+					delta[index] = fallback;
+				}
+				else
+				{
+					int next = delta[index];
+					fail[next] = fallback;
+					int[] inherited = outputs[fallback];
+					if(inherited!=null)
+					{
+						for(int k : inherited)
+						{
+							outputs[next] = add(outputs[next], k);
+						}
+					}
+					queue[tail++] = next;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the next state.
+	 *
+	 * @param state the current state.
+	 * @param b the next byte.
+	 * @return the next state.
+	 */
+	int next(int state, byte b)
+	{
+		return delta[state<<8|b&0xff];
+	}
+
+	/**
+	 * Returns the keys ending in a state.
+	 *
+	 * @param state the state.
+	 * @return the indices of the keys or null if no key ends in the state.
+	 */
+	int[] matches(int state)
+	{
+		return outputs[state];
+	}
+
+	/**
+	 * Returns the length of a key.
+	 *
+	 * @param key the index of the key.
+	 * @return the length in bytes.
+	 */
+	int length(int key)
+	{
+		return lengths[key];
+	}
+
+	/**
+	 * Appends a value to an array.
+	 *
+	 * @param array the array or null.
+	 * @param value the value.
+	 * @return a new array with the value.
+	 */
+	private static int[] add(int[] array, int value)
+	{
+		if(array==null)
+		{
+			return new int[] {value};
+		}
+		int[] result = Arrays.copyOf(array, array.length+1);
+		result[array.length] = value;
+		return result;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,273 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts a large file in parallel chunks.
+ * The file is split into chunks ending at line breaks. Every chunk is memory-mapped, decoded and counted by its own
+ * clone of the counter in the common fork/join pool. All chunks except the first one start speculatively in the
+ * initial state of the counter. Afterwards, a chunk whose predecessor ended in another state is counted again with
+ * the right state. Finally, the metric values of all chunks are added to the counter.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+final class ChunkedCounting
+{
+	/**
+	 * Size of the buffer used for searching line breaks.
+	 */
+	private static final int SEARCH_BUFFER = 64*1024;
+
+	/**
+	 * Private constructor because this is a utility class.
+	 */
+	private ChunkedCounting()
+	{
+	}
+
+	/**
+	 * Counts a file in parallel chunks. The number of scanned files isn't changed.
+	 *
+	 * @param counter the counter receiving the results.
+	 * @param f the file.
+	 * @param chunkSize the approximate size of a chunk in bytes.
+	 * @return true if the file was counted. false if it has to be read sequentially.
+	 */
+	static boolean count(SrcCounter counter, File f, int chunkSize)
+	{
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ))
+		{
+			long[] bounds = split(channel, chunkSize);
+			if(bounds==null)
+			{
+				return false;
+			}
+			ArrayList<ChunkTask> tasks = new ArrayList<ChunkTask>();
+			for(int i=0; i+1<bounds.length; i++)
+			{
+				tasks.add(new ChunkTask(counter, channel, bounds[i], bounds[i+1], i==0 ? counter.getCarryState()
+						: counter.clone().getCarryState()));
+			}
+			ForkJoinTask.invokeAll(tasks);
+			SrcCounter[] results = new SrcCounter[tasks.size()];
+			for(int i=0; i<results.length; i++)
+			{
+				results[i] = tasks.get(i).join();
+				Object exitState = i==0 ? null : results[i-1].getCarryState();
+				if(i>0&&!equals(exitState, tasks.get(i).entryState))
+				{
+					results[i] = new ChunkTask(counter, channel, bounds[i], bounds[i+1], exitState).compute();
+				}
+				if(results[i]==null)
+				{
+					return false;
+				}
+			}
+			for(SrcCounter result : results)
+			{
+				counter.joinChunk(result);
+			}
+			return true;
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Splits a file into chunks ending after a line break.
+	 *
+	 * @param channel the channel of the file.
+	 * @param chunkSize the approximate size of a chunk in bytes.
+	 * @return the positions of all chunk borders including 0 and the file size or null if a chunk would be too large
+	 *         for a single mapping.
+	 * @throws IOException if the file can't be read.
+	 */
+	private static long[] split(FileChannel channel, int chunkSize) throws IOException
+	{
+		long size = channel.size();
+		ArrayList<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		ByteBuffer buffer = ByteBuffer.allocate(SEARCH_BUFFER);
+		long pos = chunkSize;
+		while(pos<size)
+		{
+			long border = nextLineStart(channel, buffer, pos);
+			if(border-bounds.get(bounds.size()-1)>Integer.MAX_VALUE)
+			{
+				return null;
+			}
+			if(border<size)
+			{
+				bounds.add(border);
+			}
+			pos = border+chunkSize;
+		}
+		if(size-bounds.get(bounds.size()-1)>Integer.MAX_VALUE)
+		{
+			return null;
+		}
+		bounds.add(size);
+		long[] result = new long[bounds.size()];
+		for(int i=0; i<result.length; i++)
+		{
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Searches the start of the next line.
+	 *
+	 * @param channel the channel of the file.
+	 * @param buffer the buffer used for reading.
+	 * @param from the position to start from.
+	 * @return the position after the next '\n' or the file size.
+	 * @throws IOException if the file can't be read.
+	 */
+	private static long nextLineStart(FileChannel channel, ByteBuffer buffer, long from) throws IOException
+	{
+		long pos = from;
+		while(true)
+		{
+			buffer.clear();
+			int read = channel.read(buffer, pos);
+			if(read<=0)
+			{
+				return channel.size();
+			}
+			for(int i=0; i<read; i++)
+			{
+				if(buffer.get(i)=='\n')
+				{
+					return pos+i+1;
+				}
+			}
+			pos += read;
+		}
+	}
+
+	/**
+	 * Compares two states.
+	 *
+	 * @param s1 the first state or null.
+	 * @param s2 the second state or null.
+	 * @return true if both states are equal.
+	 */
+	private static boolean equals(Object s1, Object s2)
+	{
+		return s1==null ? s2==null : s1.equals(s2);
+	}
+
+	/**
+	 * Counts one chunk with a new clone of the counter.
+	 */
+	private static final class ChunkTask extends RecursiveTask<SrcCounter>
+	{
+		/**
+		 * The serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * Saves the counter to clone.
+		 */
+		private final transient SrcCounter counter;
+		/**
+		 * Saves the channel of the file.
+		 */
+		private final transient FileChannel channel;
+		/**
+		 * Saves the start position of the chunk.
+		 */
+		private final long start;
+		/**
+		 * Saves the end position of the chunk.
+		 */
+		private final long end;
+		/**
+		 * Saves the state in which the counting of the chunk starts.
+		 */
+		private final transient Object entryState;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param counter the counter to clone.
+		 * @param channel the channel of the file.
+		 * @param start the start position of the chunk.
+		 * @param end the end position of the chunk.
+		 * @param entryState the state in which the counting starts.
+		 */
+		ChunkTask(SrcCounter counter, FileChannel channel, long start, long end, Object entryState)
+		{
+			this.counter = counter;
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.entryState = entryState;
+		}
+
+		/**
+		 * Counts the chunk.
+		 *
+		 * @return the clone with the results or null if the chunk can't be read.
+		 */
+		@Override
+		protected SrcCounter compute()
+		{
+			SrcCounter chunkCounter = counter.clone();
+			chunkCounter.setCarryState(entryState);
+			try
+			{
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end-start);
+				CharsetDecoder decoder = Charset.defaultCharset().newDecoder();
+				decoder.onMalformedInput(CodingErrorAction.REPLACE);
+				decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+				CharBuffer chars = decoder.decode(mapped);
+				chunkCounter.countLines(chars);
+				return chunkCounter;
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+				return null;
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,164 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+/**
+ * Estimates the cyclomatic complexity by counting decision points in code segments.
+ * Every file contributes 1 plus the number of found decision points. Decision points are keywords like "if" that are
+ * not part of a longer identifier, and operators like "&amp;&amp;".
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public class ComplexityMetric extends Metric
+{
+	/**
+	 * Saves the keywords and operators counted as decision points.
+	 */
+	private final String[] decisions;
+	/**
+	 * Saves for every ASCII character if a decision point starts with it.
+	 */
+	private final boolean[] firstChars;
+	/**
+	 * Saves the complexity of all scanned files.
+	 */
+	private long complexity;
+
+	/**
+	 * Creates a new instance counting if, for, while, case, catch, &amp;&amp; and ||.
+	 */
+	public ComplexityMetric()
+	{
+		this("if", "for", "while", "case", "catch", "&&", "||");
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param decisions the keywords and operators counted as decision points.
+	 */
+	public ComplexityMetric(String... decisions)
+	{
+		this.decisions = decisions.clone();
+		firstChars = new boolean[128];
+		for(String d : decisions)
+		{
+			char c = d.charAt(0);
+			if(c<firstChars.length)
+			{
+				firstChars[c] = true;
+			}
+		}
+	}
+
+	@Override
+	public String getName()
+	{
+		return "complexity";
+	}
+
+	@Override
+	public void beginFile()
+	{
+		complexity++;
+	}
+
+	@Override
+	public void segment(CharSequence line, int start, int end, int kind)
+	{
+		if(kind!=CODE)
+		{
+			return;
+		}
+		for(int i=start; i<end; i++)
+		{
+			char c = line.charAt(i);
+			if(c>=firstChars.length||firstChars[c])
+			{
+				for(String d : decisions)
+				{
+					if(matches(line, i, end, d))
+					{
+						complexity++;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if a decision point starts at a position. Keywords must not be part of a longer identifier.
+	 *
+	 * @param line the line.
+	 * @param i the position.
+	 * @param end the end of the segment.
+	 * @param d the decision point.
+	 * @return true if the decision point starts there.
+	 */
+	private static boolean matches(CharSequence line, int i, int end, String d)
+	{
+		int last = i+d.length();
+		if(last>end)
+		{
+			return false;
+		}
+		for(int j=0; j<d.length(); j++)
+		{
+			if(line.charAt(i+j)!=d.charAt(j))
+			{
+				return false;
+			}
+		}
+		if(!Character.isJavaIdentifierPart(d.charAt(0)))
+		{
+			return true;
+		}
+		return (i==0||!Character.isJavaIdentifierPart(line.charAt(i-1)))
+				&&(last==line.length()||!Character.isJavaIdentifierPart(line.charAt(last)));
+	}
+
+	@Override
+	public long getValue()
+	{
+		return complexity;
+	}
+
+	@Override
+	public void addValue(long value)
+	{
+		complexity += value;
+	}
+
+	@Override
+	public void reset()
+	{
+		complexity = 0;
+	}
+
+	@Override
+	public ComplexityMetric copy()
+	{
+		return new ComplexityMetric(decisions);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+/**
+ * A CharSequence that stops a regular expression when its time budget is exhausted.
+ * java.util.regex reads the input only via charAt, so checking the time there interrupts even a catastrophically
+ * backtracking match. The clock is only read every few thousand calls to keep the overhead low.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class DeadlineCharSequence implements CharSequence
+{
+	/**
+	 * Number of charAt calls between two checks of the clock minus one.
+	 */
+	private static final int CHECK_MASK = 4095;
+	/**
+	 * Saves the wrapped text.
+	 */
+	private final CharSequence text;
+	/**
+	 * Saves the deadline as value of System.nanoTime().
+	 */
+	private final long deadline;
+	/**
+	 * Counts the charAt calls.
+	 */
+	private int calls;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param text the wrapped text.
+	 * @param deadline the deadline as value of System.nanoTime().
+	 */
+	DeadlineCharSequence(CharSequence text, long deadline)
+	{
+		this.text = text;
+		this.deadline = deadline;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if((++calls&CHECK_MASK)==0&&System.nanoTime()-deadline>0)
+		{
+			throw new RegexTimeoutException();
+		}
+		return text.charAt(index);
+	}
+
+	@Override
+	public int length()
+	{
+		return text.length();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return text.subSequence(start, end);
+	}
+
+	@Override
+	public String toString()
+	{
+		return text.toString();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,471 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Collects the window hashes of all files handled by a SrcDuplicates instance and its clones.
+ * Every window is buffered as a record of its hash, the file id with the first line, and the last line in primitive
+ * arrays. When the buffer is full, it's sorted by hash and spilled as a run to a temporary file. For the report, all
+ * runs are merged, so records with equal hashes are adjacent. Thus, the heap usage is bounded by the buffer size.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+final class DuplicateCollector
+{
+	/**
+	 * Default number of buffered records before a run is spilled to disk.
+	 */
+	private static final int DEFAULT_BUFFER_SIZE = 1<<20;
+	/**
+	 * Saves the directory for the runs or null for the default temporary directory.
+	 */
+	private final File workDir;
+	/**
+	 * Saves the number of records buffered before spilling.
+	 */
+	private int bufferSize;
+	/**
+	 * Saves the paths of all files. The index is the file id.
+	 */
+	private ArrayList<String> files;
+	/**
+	 * Saves the hashes of the buffered records.
+	 */
+	private long[] hashes;
+	/**
+	 * Saves the file ids and first lines of the buffered records.
+	 */
+	private long[] positions;
+	/**
+	 * Saves the last lines of the buffered records.
+	 */
+	private int[] ends;
+	/**
+	 * Saves the number of buffered records.
+	 */
+	private int count;
+	/**
+	 * Saves all spilled runs.
+	 */
+	private ArrayList<File> runs;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param workDir the directory for the runs or null for the default temporary directory.
+	 */
+	DuplicateCollector(File workDir)
+	{
+		this.workDir = workDir;
+		bufferSize = DEFAULT_BUFFER_SIZE;
+		files = new ArrayList<String>();
+		runs = new ArrayList<File>();
+		clear();
+	}
+
+	/**
+	 * Sets the number of records buffered before spilling. Every record needs 20 bytes.
+	 *
+	 * @param records the number of records.
+	 */
+	synchronized void setBufferSize(int records)
+	{
+		bufferSize = Math.max(1, records);
+	}
+
+	/**
+	 * Creates a new empty instance with the same settings.
+	 *
+	 * @return the new instance.
+	 */
+	synchronized DuplicateCollector copySettings()
+	{
+		DuplicateCollector copy = new DuplicateCollector(workDir);
+		copy.setBufferSize(bufferSize);
+		return copy;
+	}
+
+	/**
+	 * Registers a file.
+	 *
+	 * @param f the file.
+	 * @return the id of the file.
+	 */
+	synchronized int addFile(File f)
+	{
+		files.add(f.getPath());
+		return files.size()-1;
+	}
+
+	/**
+	 * Adds the records of one file.
+	 *
+	 * @param fileId the id of the file.
+	 * @param windowHashes the hashes of the windows.
+	 * @param starts the first lines of the windows.
+	 * @param lasts the last lines of the windows.
+	 * @param n the number of windows.
+	 * @throws IOException if the buffer can't be spilled.
+	 */
+	synchronized void add(int fileId, long[] windowHashes, int[] starts, int[] lasts, int n) throws IOException
+	{
+		for(int i=0; i<n; i++)
+		{
+			if(count==hashes.length)
+			{
+				if(count>=bufferSize)
+				{
+					spill();
+				}
+				else
+				{
+					int size = Math.min(bufferSize, count*2);
+					hashes = Arrays.copyOf(hashes, size);
+					positions = Arrays.copyOf(positions, size);
+					ends = Arrays.copyOf(ends, size);
+				}
+			}
+			hashes[count] = windowHashes[i];
+			positions[count] = (long)fileId<<32|starts[i]&0xffffffffL;
+			ends[count] = lasts[i];
+			count++;
+		}
+	}
+
+	/**
+	 * Reports all groups of at least two records with equal hashes. Afterwards, all records are discarded.
+	 *
+	 * @param sink the sink receiving the groups.
+	 * @throws IOException if the runs can't be written or read.
+	 */
+	synchronized void report(DuplicateSink sink) throws IOException
+	{
+		spill();
+		RunMerger merger = new RunMerger(runs);
+		try
+		{
+			ArrayList<long[]> group = new ArrayList<long[]>();
+			while(merger.hasNext())
+			{
+				long hash = merger.peekHash();
+				group.clear();
+				while(merger.hasNext()&&merger.peekHash()==hash)
+				{
+					group.add(merger.next());
+				}
+				if(group.size()>1)
+				{
+					reportGroup(group, sink);
+				}
+			}
+		}
+		finally
+		{
+			merger.close();
+			deleteRuns();
+		}
+	}
+
+	/**
+	 * Passes a group to a sink.
+	 *
+	 * @param group the records of the group as pairs of position and last line.
+	 * @param sink the sink.
+	 */
+	private void reportGroup(ArrayList<long[]> group, DuplicateSink sink)
+	{
+		File[] groupFiles = new File[group.size()];
+		int[] starts = new int[groupFiles.length];
+		int[] lasts = new int[groupFiles.length];
+		for(int i=0; i<groupFiles.length; i++)
+		{
+			long[] record = group.get(i);
+			groupFiles[i] = new File(files.get((int)(record[0]>>>32)));
+			starts[i] = (int)record[0];
+			lasts[i] = (int)record[1];
+		}
+		sink.cloneGroup(groupFiles, starts, lasts);
+	}
+
+	/**
+	 * Discards all files and records.
+	 */
+	synchronized void clear()
+	{
+		deleteRuns();
+		files.clear();
+		hashes = new long[1024];
+		positions = new long[1024];
+		ends = new int[1024];
+		count = 0;
+	}
+
+	/**
+	 * Sorts the buffered records and writes them to a new run file.
+	 *
+	 * @throws IOException if the run can't be written.
+	 */
+	private void spill() throws IOException
+	{
+		if(count==0)
+		{
+			return;
+		}
+		sort(0, count-1);
+		File run = File.createTempFile("duplicates", ".run", workDir);
+		runs.add(run);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1<<16));
+		try
+		{
+			out.writeInt(count);
+			for(int i=0; i<count; i++)
+			{
+				out.writeLong(hashes[i]);
+				out.writeLong(positions[i]);
+				out.writeInt(ends[i]);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		count = 0;
+	}
+
+	/**
+	 * Sorts a range of the buffered records by hash with quicksort.
+	 *
+	 * @param low the first index of the range.
+	 * @param high the last index of the range.
+	 */
+	private void sort(int low, int high)
+	{
+		int lo = low;
+		int hi = high;
+		while(lo<hi)
+		{
+			long pivot = hashes[lo+(hi-lo)/2];
+			int i = lo;
+			int j = hi;
+			while(i<=j)
+			{
+				while(hashes[i]<pivot)
+				{
+					i++;
+				}
+				while(hashes[j]>pivot)
+				{
+					j--;
+				}
+				if(i<=j)
+				{
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if(j-lo<hi-i)
+			{
+				sort(lo, j);
+				lo = i;
+			}
+			else
+			{
+				sort(i, hi);
+				hi = j;
+			}
+		}
+	}
+
+	/**
+	 * Swaps two buffered records.
+	 *
+	 * @param i the index of the first record.
+	 * @param j the index of the second record.
+	 */
+	private void swap(int i, int j)
+	{
+		long hash = hashes[i];
+		hashes[i] = hashes[j];
+		hashes[j] = hash;
+		long position = positions[i];
+		positions[i] = positions[j];
+		positions[j] = position;
+		int end = ends[i];
+		ends[i] = ends[j];
+		ends[j] = end;
+	}
+
+	/**
+	 * Deletes all spilled runs.
+	 */
+	private void deleteRuns()
+	{
+		for(File run : runs)
+		{
+			run.delete();
+		}
+		runs.clear();
+	}
+
+	/**
+	 * Merges sorted run files.
+	 */
+	private static final class RunMerger
+	{
+		/**
+		 * Saves the readers of all runs.
+		 */
+		private final DataInputStream[] inputs;
+		/**
+		 * Saves the number of records left in every run.
+		 */
+		private final int[] remaining;
+		/**
+		 * Saves the current record of every run as hash, position and last line or null if the run is exhausted.
+		 */
+		private final long[][] heads;
+		/**
+		 * Saves the run with the smallest current hash or -1 if all runs are exhausted.
+		 */
+		private int min;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param runs the run files.
+		 * @throws IOException if a run can't be opened.
+		 */
+		RunMerger(ArrayList<File> runs) throws IOException
+		{
+			inputs = new DataInputStream[runs.size()];
+			remaining = new int[runs.size()];
+			heads = new long[runs.size()][];
+			for(int i=0; i<inputs.length; i++)
+			{
+				inputs[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)), 1<<16));
+				remaining[i] = inputs[i].readInt();
+				advance(i);
+			}
+			findMin();
+		}
+
+		/**
+		 * Checks if there are records left.
+		 *
+		 * @return true if there are records left.
+		 */
+		boolean hasNext()
+		{
+			return min>=0;
+		}
+
+		/**
+		 * Returns the hash of the next record.
+		 *
+		 * @return the hash.
+		 */
+		long peekHash()
+		{
+			return heads[min][0];
+		}
+
+		/**
+		 * Consumes the next record.
+		 *
+		 * @return the position and the last line of the record.
+		 * @throws IOException if a run can't be read.
+		 */
+		long[] next() throws IOException
+		{
+			long[] record = new long[] {heads[min][1], heads[min][2]};
+			advance(min);
+			findMin();
+			return record;
+		}
+
+		/**
+		 * Reads the next record of a run.
+		 *
+		 * @param run the run.
+		 * @throws IOException if the run can't be read.
+		 */
+		private void advance(int run) throws IOException
+		{
+			if(remaining[run]==0)
+			{
+				heads[run] = null;
+				return;
+			}
+			remaining[run]--;
+			heads[run] = new long[] {inputs[run].readLong(), inputs[run].readLong(), inputs[run].readInt()};
+		}
+
+		/**
+		 * Searches the run with the smallest current hash.
+		 */
+		private void findMin()
+		{
+			min = -1;
+			for(int i=0; i<heads.length; i++)
+			{
+				if(heads[i]!=null&&(min<0||heads[i][0]<heads[min][0]))
+				{
+					min = i;
+				}
+			}
+		}
+
+		/**
+		 * Closes all runs.
+		 */
+		void close()
+		{
+			for(DataInputStream in : inputs)
+			{
+				try
+				{
+					if(in!=null)
+					{
+						in.close();
+					}
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,292 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.util.Arrays;
+
+/**
+ * Splits java source code into identifiers, comments, string literals and everything else in one pass.
+ * The tokens are saved in primitive arrays, so no object is created per token. Every character belongs to exactly one
+ * token, and a token ends where the next one starts. Keywords are identifiers, character literals and text blocks are
+ * string literals, and numbers, operators and whitespaces are combined to other tokens.
+ * Unicode escapes are not translated.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public final class JavaLexer
+{
+	/**
+	 * The kinds of tokens.
+	 */
+	public enum TokenKind
+	{
+		/**
+		 * An identifier or keyword.
+		 */
+		IDENTIFIER,
+		/**
+		 * A line, block or Javadoc comment.
+		 */
+		COMMENT,
+		/**
+		 * A string literal, character literal or text block.
+		 */
+		STRING,
+		/**
+		 * Numbers, operators, separators and whitespaces.
+		 */
+		OTHER
+	}
+
+	/**
+	 * Saves all token kinds for the lookup by ordinal.
+	 */
+	private static final TokenKind[] KINDS = TokenKind.values();
+	/**
+	 * Saves the start positions of all tokens.
+	 */
+	private int[] starts;
+	/**
+	 * Saves the kinds of all tokens.
+	 */
+	private byte[] kinds;
+	/**
+	 * Saves the number of tokens.
+	 */
+	private int count;
+	/**
+	 * Saves the length of the tokenized text.
+	 */
+	private int length;
+
+	/**
+	 * Creates a new instance.
+	 */
+	public JavaLexer()
+	{
+		starts = new int[256];
+		kinds = new byte[256];
+	}
+
+	/**
+	 * Splits a text into tokens. The tokens of the previous text are discarded.
+	 *
+	 * @param text the java source code.
+	 */
+	public void tokenize(String text)
+	{
+		count = 0;
+		length = text.length();
+		int i = 0;
+		while(i<length)
+		{
+			int start = i;
+			char c = text.charAt(i);
+			TokenKind kind;
+			if(c=='/'&&i+1<length&&text.charAt(i+1)=='/')
+			{
+				kind = TokenKind.COMMENT;
+				i = lineEnd(text, i+2);
+			}
+			else if(c=='/'&&i+1<length&&text.charAt(i+1)=='*')
+			{
+				kind = TokenKind.COMMENT;
+				int end = text.indexOf("*/", i+2);
+				i = end<0 ? length : end+2;
+			}
+			else if(c=='"'&&text.startsWith("\"\"\"", i))
+			{
+				kind = TokenKind.STRING;
+				i = quotedEnd(text, i+3, "\"\"\"");
+			}
+			else if(c=='"'||c=='\'')
+			{
+				kind = TokenKind.STRING;
+				i = quotedEnd(text, i+1, c=='"' ? "\"" : "'");
+			}
+			else if(Character.isJavaIdentifierStart(c))
+			{
+				kind = TokenKind.IDENTIFIER;
+				i = identifierEnd(text, i+1, false);
+			}
+			else
+			{
+				kind = TokenKind.OTHER;
+				i = c>='0'&&c<='9' ? identifierEnd(text, i+1, true) : i+1;
+			}
+			add(start, kind);
+		}
+	}
+
+	/**
+	 * Returns the number of tokens.
+	 *
+	 * @return the number of tokens.
+	 */
+	public int getTokenCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the start position of a token.
+	 *
+	 * @param token the index of the token.
+	 * @return the position of its first character.
+	 */
+	public int getStart(int token)
+	{
+		return starts[token];
+	}
+
+	/**
+	 * Returns the end position of a token.
+	 *
+	 * @param token the index of the token.
+	 * @return the position after its last character.
+	 */
+	public int getEnd(int token)
+	{
+		return token+1<count ? starts[token+1] : length;
+	}
+
+	/**
+	 * Returns the kind of a token.
+	 *
+	 * @param token the index of the token.
+	 * @return the kind.
+	 */
+	public TokenKind getKind(int token)
+	{
+		return KINDS[kinds[token]];
+	}
+
+	/**
+	 * Searches the token containing a position.
+	 *
+	 * @param pos the position.
+	 * @param from the index of a token starting at or before the position. The search starts there.
+	 * @return the index of the token.
+	 */
+	public int findToken(int pos, int from)
+	{
+		int token = from;
+		while(getEnd(token)<=pos)
+		{
+			token++;
+		}
+		return token;
+	}
+
+	/**
+	 * Adds a token. Consecutive other tokens are combined.
+	 *
+	 * @param start the start position.
+	 * @param kind the kind.
+	 */
+	private void add(int start, TokenKind kind)
+	{
+		if(kind==TokenKind.OTHER&&count>0&&kinds[count-1]==TokenKind.OTHER.ordinal())
+		{
+			return;
+		}
+		if(count==starts.length)
+		{
+			starts = Arrays.copyOf(starts, count*2);
+			kinds = Arrays.copyOf(kinds, count*2);
+		}
+		starts[count] = start;
+		kinds[count] = (byte)kind.ordinal();
+		count++;
+	}
+
+	/**
+	 * Returns the position of the next line break.
+	 *
+	 * @param text the text.
+	 * @param from the position to start from.
+	 * @return the position of the line break or the text length.
+	 */
+	private static int lineEnd(String text, int from)
+	{
+		int i = from;
+		while(i<text.length()&&text.charAt(i)!='\n'&&text.charAt(i)!='\r')
+		{
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the end of a literal. Simple literals also end at a line break because they're not terminated.
+	 *
+	 * @param text the text.
+	 * @param from the position after the opening quote.
+	 * @param quote the closing quote.
+	 * @return the position after the closing quote.
+	 */
+	private static int quotedEnd(String text, int from, String quote)
+	{
+		boolean textBlock = quote.length()>1;
+		int i = from;
+		while(i<text.length())
+		{
+			char c = text.charAt(i);
+			if(c=='\\')
+			{
+				i += 2;
+			}
+			else if(text.startsWith(quote, i))
+			{
+				return i+quote.length();
+			}
+			else if(!textBlock&&(c=='\n'||c=='\r'))
+			{
+				return i;
+			}
+			else
+			{
+				i++;
+			}
+		}
+		return text.length();
+	}
+
+	/**
+	 * Returns the end of an identifier or a number.
+	 *
+	 * @param text the text.
+	 * @param from the position after the first character.
+	 * @param number true if a number is read.
+	 * @return the position after the last character.
+	 */
+	private static int identifierEnd(String text, int from, boolean number)
+	{
+		int i = from;
+		while(i<text.length()&&(Character.isJavaIdentifierPart(text.charAt(i))||number&&text.charAt(i)=='.'))
+		{
+			i++;
+		}
+		return i;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,467 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the comment and string syntax of a programming language declaratively.
+ * A descriptor consists of line comment tokens, block comment pairs which can be nested, and string delimiters.
+ * Simple strings end at the end of a line, multi-line strings can span several lines, and in both of them an escape
+ * character prevents the closing delimiter. Raw strings can span several lines and don't know an escape character.
+ * Every string ends with the delimiter that opened it.
+ * Descriptors are immutable: every with-method returns a changed copy. Built-in descriptors for common languages are
+ * available as constants.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public final class LanguageDescriptor
+{
+	/**
+	 * Descriptor for C.
+	 */
+	public static final LanguageDescriptor C = cStyle("C", ".c", ".h");
+	/**
+	 * Descriptor for C++.
+	 */
+	public static final LanguageDescriptor CPP = cStyle("C++", ".cpp", ".cc", ".cxx", ".hpp", ".hh", ".hxx");
+	/**
+	 * Descriptor for C#.
+	 */
+	public static final LanguageDescriptor CSHARP = cStyle("C#", ".cs");
+	/**
+	 * Descriptor for Java.
+	 */
+	public static final LanguageDescriptor JAVA = cStyle("Java", ".java").withMultiLineStrings("\"\"\"");
+	/**
+	 * Descriptor for JavaScript and TypeScript.
+	 */
+	public static final LanguageDescriptor JAVASCRIPT = cStyle("JavaScript", ".js", ".mjs", ".cjs", ".ts", ".tsx",
+			".jsx").withMultiLineStrings("`");
+	/**
+	 * Descriptor for Go.
+	 */
+	public static final LanguageDescriptor GO = cStyle("Go", ".go").withRawStrings("`");
+	/**
+	 * Descriptor for Rust. Character literals aren't strings because they can't be distinguished from lifetimes.
+	 */
+	public static final LanguageDescriptor RUST = new LanguageDescriptor("Rust", ".rs").withLineComments("//")
+			.withBlockComment("/*", "*/").withNestedBlockComments().withMultiLineStrings("\"");
+	/**
+	 * Descriptor for Kotlin.
+	 */
+	public static final LanguageDescriptor KOTLIN = cStyle("Kotlin", ".kt", ".kts").withNestedBlockComments()
+			.withRawStrings("\"\"\"");
+	/**
+	 * Descriptor for Scala.
+	 */
+	public static final LanguageDescriptor SCALA = cStyle("Scala", ".scala").withNestedBlockComments()
+			.withRawStrings("\"\"\"");
+	/**
+	 * Descriptor for Swift.
+	 */
+	public static final LanguageDescriptor SWIFT = new LanguageDescriptor("Swift", ".swift").withLineComments("//")
+			.withBlockComment("/*", "*/").withNestedBlockComments().withStrings("\"").withMultiLineStrings("\"\"\"");
+	/**
+	 * Descriptor for CSS.
+	 */
+	public static final LanguageDescriptor CSS = new LanguageDescriptor("CSS", ".css").withBlockComment("/*", "*/")
+			.withStrings("\"", "'");
+	/**
+	 * Descriptor for PHP.
+	 */
+	public static final LanguageDescriptor PHP = new LanguageDescriptor("PHP", ".php").withLineComments("//", "#")
+			.withBlockComment("/*", "*/").withMultiLineStrings("\"", "'");
+	/**
+	 * Descriptor for Python.
+	 */
+	public static final LanguageDescriptor PYTHON = new LanguageDescriptor("Python", ".py", ".pyw")
+			.withLineComments("#").withStrings("\"", "'").withMultiLineStrings("\"\"\"", "'''");
+	/**
+	 * Descriptor for shell scripts.
+	 */
+	public static final LanguageDescriptor SHELL = new LanguageDescriptor("Shell", ".sh", ".bash", ".zsh", ".ksh")
+			.withLineComments("#").withMultiLineStrings("\"").withRawStrings("'");
+	/**
+	 * Descriptor for Ruby.
+	 */
+	public static final LanguageDescriptor RUBY = new LanguageDescriptor("Ruby", ".rb").withLineComments("#")
+			.withMultiLineStrings("\"", "'");
+	/**
+	 * Descriptor for Perl.
+	 */
+	public static final LanguageDescriptor PERL = new LanguageDescriptor("Perl", ".pl", ".pm").withLineComments("#")
+			.withMultiLineStrings("\"", "'");
+	/**
+	 * Descriptor for SQL. Quotes inside strings are doubled, so no escape character is needed.
+	 */
+	public static final LanguageDescriptor SQL = new LanguageDescriptor("SQL", ".sql").withLineComments("--")
+			.withBlockComment("/*", "*/").withRawStrings("'", "\"");
+	/**
+	 * Descriptor for YAML.
+	 */
+	public static final LanguageDescriptor YAML = new LanguageDescriptor("YAML", ".yml", ".yaml")
+			.withLineComments("#").withMultiLineStrings("\"").withRawStrings("'");
+	/**
+	 * Descriptor for Lua.
+	 */
+	public static final LanguageDescriptor LUA = new LanguageDescriptor("Lua", ".lua").withLineComments("--")
+			.withBlockComment("--[[", "]]").withStrings("\"", "'");
+	/**
+	 * Descriptor for Haskell.
+	 */
+	public static final LanguageDescriptor HASKELL = new LanguageDescriptor("Haskell", ".hs").withLineComments("--")
+			.withBlockComment("{-", "-}").withNestedBlockComments().withStrings("\"");
+	/**
+	 * Descriptor for XML-based files.
+	 */
+	public static final LanguageDescriptor XML = new LanguageDescriptor("XML", ".xml", ".xsd", ".xsl", ".html",
+			".htm", ".xhtml", ".svg").withBlockComment("<!--", "-->");
+	/**
+	 * Saves all built-in descriptors.
+	 */
+	private static final List<LanguageDescriptor> BUILT_INS = Collections.unmodifiableList(Arrays.asList(C, CPP,
+			CSHARP, JAVA, JAVASCRIPT, GO, RUST, KOTLIN, SCALA, SWIFT, CSS, PHP, PYTHON, SHELL, RUBY, PERL, SQL, YAML,
+			LUA, HASKELL, XML));
+	/**
+	 * Saves the name of the language.
+	 */
+	private final String name;
+	/**
+	 * Saves the extensions of files written in the language.
+	 */
+	private final String[] extensions;
+	/**
+	 * Saves the tokens starting line comments.
+	 */
+	private String[] lineComments;
+	/**
+	 * Saves the pairs of tokens starting and ending block comments.
+	 */
+	private String[][] blockComments;
+	/**
+	 * Indicates if block comments can be nested.
+	 */
+	private boolean nestedBlockComments;
+	/**
+	 * Saves the delimiters of strings ending at the end of a line.
+	 */
+	private String[] strings;
+	/**
+	 * Saves the delimiters of strings that can span several lines.
+	 */
+	private String[] multiLineStrings;
+	/**
+	 * Saves the delimiters of strings that can span several lines and have no escape character.
+	 */
+	private String[] rawStrings;
+	/**
+	 * Saves the escape character or 0 if there is none.
+	 */
+	private char escape;
+
+	/**
+	 * Creates a new descriptor without comments and strings. The escape character is the backslash.
+	 *
+	 * @param name the name of the language.
+	 * @param extensions the extensions of files written in the language, e. g. ".py".
+	 */
+	public LanguageDescriptor(String name, String... extensions)
+	{
+		this.name = name;
+		this.extensions = extensions.clone();
+		lineComments = new String[0];
+		blockComments = new String[0][];
+		strings = new String[0];
+		multiLineStrings = new String[0];
+		rawStrings = new String[0];
+		escape = '\\';
+	}
+
+	/**
+	 * Creates a copy of a descriptor.
+	 *
+	 * @param other the descriptor to copy.
+	 */
+	private LanguageDescriptor(LanguageDescriptor other)
+	{
+		name = other.name;
+		extensions = other.extensions;
+		lineComments = other.lineComments;
+		blockComments = other.blockComments;
+		nestedBlockComments = other.nestedBlockComments;
+		strings = other.strings;
+		multiLineStrings = other.multiLineStrings;
+		rawStrings = other.rawStrings;
+		escape = other.escape;
+	}
+
+	/**
+	 * Returns a copy with additional line comment tokens.
+	 *
+	 * @param tokens the tokens starting a comment reaching until the end of the line.
+	 * @return the changed copy.
+	 */
+	public LanguageDescriptor withLineComments(String... tokens)
+	{
+		LanguageDescriptor copy = new LanguageDescriptor(this);
+		copy.lineComments = concat(lineComments, tokens);
+		return copy;
+	}
+
+	/**
+	 * Returns a copy with an additional block comment pair.
+	 *
+	 * @param open the token starting the comment.
+	 * @param close the token ending the comment.
+	 * @return the changed copy.
+	 */
+	public LanguageDescriptor withBlockComment(String open, String close)
+	{
+		LanguageDescriptor copy = new LanguageDescriptor(this);
+		copy.blockComments = Arrays.copyOf(blockComments, blockComments.length+1);
+		copy.blockComments[blockComments.length] = new String[] {open, close};
+		return copy;
+	}
+
+	/**
+	 * Returns a copy in which block comments can be nested.
+	 *
+	 * @return the changed copy.
+	 */
+	public LanguageDescriptor withNestedBlockComments()
+	{
+		LanguageDescriptor copy = new LanguageDescriptor(this);
+		copy.nestedBlockComments = true;
+		return copy;
+	}
+
+	/**
+	 * Returns a copy with additional delimiters of strings ending at the end of a line.
+	 *
+	 * @param delimiters the delimiters.
+	 * @return the changed copy.
+	 */
+	public LanguageDescriptor withStrings(String... delimiters)
+	{
+		LanguageDescriptor copy = new LanguageDescriptor(this);
+		copy.strings = concat(strings, delimiters);
+		return copy;
+	}
+
+	/**
+	 * Returns a copy with additional delimiters of strings that can span several lines.
+	 *
+	 * @param delimiters the delimiters.
+	 * @return the changed copy.
+	 */
+	public LanguageDescriptor withMultiLineStrings(String... delimiters)
+	{
+		LanguageDescriptor copy = new LanguageDescriptor(this);
+		copy.multiLineStrings = concat(multiLineStrings, delimiters);
+		return copy;
+	}
+
+	/**
+	 * Returns a copy with additional delimiters of strings that can span several lines and have no escape character.
+	 *
+	 * @param delimiters the delimiters.
+	 * @return the changed copy.
+	 */
+	public LanguageDescriptor withRawStrings(String... delimiters)
+	{
+		LanguageDescriptor copy = new LanguageDescriptor(this);
+		copy.rawStrings = concat(rawStrings, delimiters);
+		return copy;
+	}
+
+	/**
+	 * Returns a copy with another escape character.
+	 *
+	 * @param c the escape character or 0 if there is none.
+	 * @return the changed copy.
+	 */
+	public LanguageDescriptor withEscape(char c)
+	{
+		LanguageDescriptor copy = new LanguageDescriptor(this);
+		copy.escape = c;
+		return copy;
+	}
+
+	/**
+	 * Returns the name of the language.
+	 *
+	 * @return the name.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the extensions of files written in the language.
+	 *
+	 * @return the extensions.
+	 */
+	public String[] getExtensions()
+	{
+		return extensions.clone();
+	}
+
+	/**
+	 * Returns the tokens starting line comments.
+	 *
+	 * @return the tokens.
+	 */
+	String[] getLineComments()
+	{
+		return lineComments;
+	}
+
+	/**
+	 * Returns the block comment pairs.
+	 *
+	 * @return the pairs of start and end tokens.
+	 */
+	String[][] getBlockComments()
+	{
+		return blockComments;
+	}
+
+	/**
+	 * Checks if block comments can be nested.
+	 *
+	 * @return true if they can be nested. false otherwise.
+	 */
+	boolean hasNestedBlockComments()
+	{
+		return nestedBlockComments;
+	}
+
+	/**
+	 * Returns the delimiters of strings ending at the end of a line.
+	 *
+	 * @return the delimiters.
+	 */
+	String[] getStrings()
+	{
+		return strings;
+	}
+
+	/**
+	 * Returns the delimiters of strings that can span several lines.
+	 *
+	 * @return the delimiters.
+	 */
+	String[] getMultiLineStrings()
+	{
+		return multiLineStrings;
+	}
+
+	/**
+	 * Returns the delimiters of raw strings.
+	 *
+	 * @return the delimiters.
+	 */
+	String[] getRawStrings()
+	{
+		return rawStrings;
+	}
+
+	/**
+	 * Returns the escape character.
+	 *
+	 * @return the escape character or 0 if there is none.
+	 */
+	char getEscape()
+	{
+		return escape;
+	}
+
+	/**
+	 * Returns all built-in descriptors.
+	 *
+	 * @return the descriptors.
+	 */
+	public static List<LanguageDescriptor> getBuiltIns()
+	{
+		return BUILT_INS;
+	}
+
+	/**
+	 * Searches a built-in descriptor for a file extension.
+	 *
+	 * @param extension the extension, e. g. ".py".
+	 * @return the first built-in descriptor with the extension or null if there is none.
+	 */
+	public static LanguageDescriptor forExtension(String extension)
+	{
+		for(LanguageDescriptor d : BUILT_INS)
+		{
+			for(String ext : d.extensions)
+			{
+				if(ext.equalsIgnoreCase(extension))
+				{
+					return d;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+
+	/**
+	 * Creates a descriptor with the comments and strings of C.
+	 *
+	 * @param name the name of the language.
+	 * @param extensions the extensions.
+	 * @return the descriptor.
+	 */
+	private static LanguageDescriptor cStyle(String name, String... extensions)
+	{
+		return new LanguageDescriptor(name, extensions).withLineComments("//").withBlockComment("/*", "*/")
+				.withStrings("\"", "'");
+	}
+
+	/**
+	 * Concatenates two arrays.
+	 *
+	 * @param first the first array.
+	 * @param second the second array.
+	 * @return a new array with the elements of both arrays.
+	 */
+	private static String[] concat(String[] first, String[] second)
+	{
+		ArrayList<String> result = new ArrayList<String>(Arrays.asList(first));
+		result.addAll(Arrays.asList(second));
+		return result.toArray(new String[result.size()]);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,471 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Classifies the lines of a source code file according to a LanguageDescriptor.
+ * All tokens of the descriptor are put into a table indexed by their first character, so every character of a line
+ * is checked with one table lookup. An open block comment or string is carried to the next line.
+ * Optionally, every line is reported to a listener as a sequence of code, comment and string segments.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class LanguageScanner
+{
+	/**
+	 * Flag for lines containing code.
+	 */
+	static final int CODE = 1;
+	/**
+	 * Flag for lines containing comments.
+	 */
+	static final int COMMENT = 2;
+	/**
+	 * Kind of string segments.
+	 */
+	static final int STRING = 4;
+	/**
+	 * Kind of line comment tokens.
+	 */
+	private static final int LINE = 0;
+	/**
+	 * Kind of block comment tokens.
+	 */
+	private static final int BLOCK = 1;
+	/**
+	 * Kind of simple string delimiters.
+	 */
+	private static final int SIMPLE = 2;
+	/**
+	 * Kind of multi-line string delimiters.
+	 */
+	private static final int MULTI = 3;
+	/**
+	 * Kind of raw string delimiters.
+	 */
+	private static final int RAW = 4;
+	/**
+	 * Size of the lookup table for the first characters of tokens.
+	 */
+	private static final int TABLE_SIZE = 128;
+	/**
+	 * Saves all tokens. The id of a token is its index plus one.
+	 */
+	private final Token[] tokens;
+	/**
+	 * Saves for every ASCII character the tokens starting with it, the longest first, or null if there are none.
+	 */
+	private final Token[][] byFirstChar;
+	/**
+	 * Saves the tokens starting with other characters, the longest first.
+	 */
+	private final Token[] others;
+	/**
+	 * Indicates if block comments can be nested.
+	 */
+	private final boolean nested;
+	/**
+	 * Saves the escape character or 0 if there is none.
+	 */
+	private final char escape;
+	/**
+	 * Saves the id of the token that opened the current block comment or string or 0 if there is none.
+	 */
+	private int open;
+	/**
+	 * Saves the nesting depth of the current block comment.
+	 */
+	private int depth;
+	/**
+	 * Saves the flags of the current line.
+	 */
+	private int flags;
+	/**
+	 * Saves the segment kind of the last scanned characters.
+	 */
+	private int stepKind;
+	/**
+	 * Saves the listener receiving the segments or null if there is none.
+	 */
+	private SegmentListener listener;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param language the descriptor of the language.
+	 */
+	LanguageScanner(LanguageDescriptor language)
+	{
+		ArrayList<Token> all = new ArrayList<Token>();
+		add(all, language.getLineComments(), LINE);
+		for(String[] pair : language.getBlockComments())
+		{
+			all.add(new Token(pair[0], pair[1], BLOCK, all.size()+1));
+		}
+		add(all, language.getStrings(), SIMPLE);
+		add(all, language.getMultiLineStrings(), MULTI);
+		add(all, language.getRawStrings(), RAW);
+		tokens = all.toArray(new Token[all.size()]);
+		byFirstChar = new Token[TABLE_SIZE][];
+		others = buildTable();
+		nested = language.hasNestedBlockComments();
+		escape = language.getEscape();
+	}
+
+	/**
+	 * Fills the lookup table with all tokens, the longest first.
+	 *
+	 * @return the tokens not starting with an ASCII character.
+	 */
+	private Token[] buildTable()
+	{
+		Token[] sorted = tokens.clone();
+		Arrays.sort(sorted, new Comparator<Token>()
+		{
+			@Override
+			public int compare(Token t1, Token t2)
+			{
+				return Integer.compare(t2.text.length(), t1.text.length());
+			}
+		});
+		ArrayList<Token> other = new ArrayList<Token>();
+		for(Token t : sorted)
+		{
+			char first = t.text.charAt(0);
+			if(first<TABLE_SIZE)
+			{
+				Token[] old = byFirstChar[first];
+				byFirstChar[first] = old==null ? new Token[] {t} : Arrays.copyOf(old, old.length+1);
+				byFirstChar[first][byFirstChar[first].length-1] = t;
+			}
+			else
+			{
+				other.add(t);
+			}
+		}
+		return other.toArray(new Token[other.size()]);
+	}
+
+	/**
+	 * Scans a line.
+	 *
+	 * @param line the line without line break.
+	 * @return the flags CODE and COMMENT combined. 0 if the line contains whitespaces only.
+	 */
+	int scanLine(CharSequence line)
+	{
+		flags = 0;
+		int length = line.length();
+		int i = 0;
+		int segmentStart = 0;
+		int segmentKind = 0;
+		while(i<length)
+		{
+			int next;
+			if(open==0)
+			{
+				next = stepCode(line, i);
+			}
+			else if(tokens[open-1].kind==BLOCK)
+			{
+				next = stepBlock(line, i, tokens[open-1]);
+			}
+			else
+			{
+				next = stepString(line, i, tokens[open-1]);
+			}
+			if(listener!=null&&stepKind!=segmentKind)
+			{
+				if(segmentKind!=0)
+				{
+					listener.segment(line, segmentStart, i, segmentKind);
+				}
+				segmentStart = i;
+				segmentKind = stepKind;
+			}
+			i = next;
+		}
+		if(listener!=null&&segmentKind!=0)
+		{
+			listener.segment(line, segmentStart, Math.min(i, length), segmentKind);
+		}
+		if(open!=0&&tokens[open-1].kind==SIMPLE)
+		{
+			open = 0;
+		}
+		return flags;
+	}
+
+	/**
+	 * Scans a character outside of comments and strings.
+	 *
+	 * @param line the line.
+	 * @param i the position of the character.
+	 * @return the position of the next character to scan.
+	 */
+	private int stepCode(CharSequence line, int i)
+	{
+		char c = line.charAt(i);
+		stepKind = CODE;
+		if(Character.isWhitespace(c))
+		{
+			return i+1;
+		}
+		Token t = match(line, i, c);
+		if(t==null)
+		{
+			flags |= CODE;
+			return i+1;
+		}
+		if(t.kind==LINE)
+		{
+			flags |= COMMENT;
+			stepKind = COMMENT;
+			return line.length();
+		}
+		flags |= t.kind==BLOCK ? COMMENT : CODE;
+		stepKind = t.kind==BLOCK ? COMMENT : STRING;
+		open = t.id;
+		depth = 1;
+		return i+t.text.length();
+	}
+
+	/**
+	 * Scans a character inside a block comment.
+	 *
+	 * @param line the line.
+	 * @param i the position of the character.
+	 * @param t the token that opened the comment.
+	 * @return the position of the next character to scan.
+	 */
+	private int stepBlock(CharSequence line, int i, Token t)
+	{
+		stepKind = COMMENT;
+		if(!Character.isWhitespace(line.charAt(i)))
+		{
+			flags |= COMMENT;
+		}
+		if(nested&&startsWith(line, i, t.text))
+		{
+			depth++;
+			return i+t.text.length();
+		}
+		if(startsWith(line, i, t.close))
+		{
+			depth--;
+			if(depth==0)
+			{
+				open = 0;
+			}
+			return i+t.close.length();
+		}
+		return i+1;
+	}
+
+	/**
+	 * Scans a character inside a string.
+	 *
+	 * @param line the line.
+	 * @param i the position of the character.
+	 * @param t the token that opened the string.
+	 * @return the position of the next character to scan.
+	 */
+	private int stepString(CharSequence line, int i, Token t)
+	{
+		flags |= CODE;
+		stepKind = STRING;
+		if(t.kind!=RAW&&escape!=0&&line.charAt(i)==escape)
+		{
+			return i+2;
+		}
+		if(startsWith(line, i, t.close))
+		{
+			open = 0;
+			return i+t.close.length();
+		}
+		return i+1;
+	}
+
+	/**
+	 * Searches the longest token starting at a position.
+	 *
+	 * @param line the line.
+	 * @param i the position.
+	 * @param c the character at the position.
+	 * @return the token or null if no token starts there.
+	 */
+	private Token match(CharSequence line, int i, char c)
+	{
+		Token[] candidates = c<TABLE_SIZE ? byFirstChar[c] : others;
+		if(candidates!=null)
+		{
+			for(Token t : candidates)
+			{
+				if(startsWith(line, i, t.text))
+				{
+					return t;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the listener receiving the segments of every scanned line.
+	 *
+	 * @param l the listener or null.
+	 */
+	void setListener(SegmentListener l)
+	{
+		listener = l;
+	}
+
+	/**
+	 * Returns the state carried to the next line.
+	 *
+	 * @return the state.
+	 */
+	Object getState()
+	{
+		return depth<<16|open;
+	}
+
+	/**
+	 * Sets the state carried from the previous line.
+	 *
+	 * @param state a state returned by getState.
+	 */
+	void setState(Object state)
+	{
+		int s = (Integer)state;
+		open = s&0xffff;
+		depth = s>>>16;
+	}
+
+	/**
+	 * Resets the state, so the next line starts outside of comments and strings.
+	 */
+	void reset()
+	{
+		open = 0;
+		depth = 0;
+	}
+
+	/**
+	 * Checks if a token starts at a position.
+	 *
+	 * @param line the line.
+	 * @param i the position.
+	 * @param token the token.
+	 * @return true if the token starts at the position.
+	 */
+	private static boolean startsWith(CharSequence line, int i, String token)
+	{
+		if(i+token.length()>line.length())
+		{
+			return false;
+		}
+		for(int j=0; j<token.length(); j++)
+		{
+			if(line.charAt(i+j)!=token.charAt(j))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds tokens ending with themselves.
+	 *
+	 * @param all the list of all tokens.
+	 * @param texts the texts of the tokens.
+	 * @param kind the kind of the tokens.
+	 */
+	private static void add(ArrayList<Token> all, String[] texts, int kind)
+	{
+		for(String text : texts)
+		{
+			all.add(new Token(text, text, kind, all.size()+1));
+		}
+	}
+
+	/**
+	 * Receives the segments of scanned lines.
+	 */
+	interface SegmentListener
+	{
+		/**
+		 * Receives a segment. Consecutive segments of one line have different kinds.
+		 *
+		 * @param line the line.
+		 * @param start the position of the first character of the segment.
+		 * @param end the position after the last character of the segment.
+		 * @param kind the kind: CODE, COMMENT or STRING. Opening and closing tokens belong to the comment or string.
+		 */
+		void segment(CharSequence line, int start, int end, int kind);
+	}
+
+	/**
+	 * A token starting a comment or string.
+	 */
+	private static final class Token
+	{
+		/**
+		 * Saves the text of the token.
+		 */
+		private final String text;
+		/**
+		 * Saves the text ending the comment or string.
+		 */
+		private final String close;
+		/**
+		 * Saves the kind of the token.
+		 */
+		private final int kind;
+		/**
+		 * Saves the id of the token.
+		 */
+		private final int id;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param text the text of the token.
+		 * @param close the text ending the comment or string.
+		 * @param kind the kind of the token.
+		 * @param id the id of the token.
+		 */
+		Token(String text, String close, int kind, int id)
+		{
+			this.text = text;
+			this.close = close;
+			this.kind = kind;
+			this.id = id;
+		}
+	}
+}
\ No newline at end of file
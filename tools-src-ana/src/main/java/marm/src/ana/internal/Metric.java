@@ -0,0 +1,163 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+/**
+ * A metric computed by SrcMetrics while the lines of a file are scanned.
+ * A metric is a lightweight visitor: it receives the code, comment and string segments of every line from the shared
+ * scanner, so additional metrics don't need additional passes over the content. The default implementations of the
+ * visitor methods do nothing.
+ * If a metric keeps a state from one line to the next one, it has to expose it via getState and setState, so large
+ * files can still be counted in parallel chunks. A state that only shifts the results, e. g. a depth, can instead be
+ * applied when the chunks are joined.
+ * Metrics are additive by default, i. e. the value for several files is the sum of the values of the files.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+public abstract class Metric
+{
+	/**
+	 * Kind of code segments and flag for lines containing code.
+	 */
+	public static final int CODE = LanguageScanner.CODE;
+	/**
+	 * Kind of comment segments and flag for lines containing comments.
+	 */
+	public static final int COMMENT = LanguageScanner.COMMENT;
+	/**
+	 * Kind of string segments.
+	 */
+	public static final int STRING = LanguageScanner.STRING;
+
+	/**
+	 * Returns the name of the metric.
+	 *
+	 * @return the name.
+	 */
+	public abstract String getName();
+
+	/**
+	 * Called before the first line of a file.
+	 */
+	public void beginFile()
+	{
+	}
+
+	/**
+	 * Receives a segment of a line.
+	 *
+	 * @param line the line.
+	 * @param start the position of the first character of the segment.
+	 * @param end the position after the last character of the segment.
+	 * @param kind the kind of the segment: CODE, COMMENT or STRING.
+	 */
+	public void segment(CharSequence line, int start, int end, int kind)
+	{
+	}
+
+	/**
+	 * Called after all segments of a line.
+	 *
+	 * @param flags the flags CODE and COMMENT of the line combined. 0 for blank lines.
+	 */
+	public void endLine(int flags)
+	{
+	}
+
+	/**
+	 * Returns the value of the metric for all scanned files.
+	 *
+	 * @return the value.
+	 */
+	public abstract long getValue();
+
+	/**
+	 * Indicates if the value for several files is the sum of the values of the files. Metrics that aren't additive,
+	 * e. g. a maximum, have to override getFileValue.
+	 *
+	 * @return true if the metric is additive. false otherwise.
+	 */
+	public boolean isAdditive()
+	{
+		return true;
+	}
+
+	/**
+	 * Returns the value of the metric for the last scanned file. It's only used for metrics that aren't additive.
+	 *
+	 * @return the value.
+	 */
+	public long getFileValue()
+	{
+		return getValue();
+	}
+
+	/**
+	 * Merges the value of another instance into this one.
+	 *
+	 * @param value the value of the other instance.
+	 */
+	public abstract void addValue(long value);
+
+	/**
+	 * Resets the metric to the state after instantiation.
+	 */
+	public abstract void reset();
+
+	/**
+	 * Returns the state carried from one line to the next one.
+	 *
+	 * @return the state or null if there is none. States are compared with equals.
+	 */
+	public Object getState()
+	{
+		return null;
+	}
+
+	/**
+	 * Sets the state carried from one line to the next one.
+	 *
+	 * @param state a state returned by getState.
+	 */
+	public void setState(Object state)
+	{
+	}
+
+	/**
+	 * Joins the results of an instance that scanned the next chunk of the current file, starting with the state
+	 * returned by a new instance. By default, its value is merged. The state is taken over afterwards via setState.
+	 *
+	 * @param next the instance of the same type that scanned the next chunk.
+	 */
+	public void join(Metric next)
+	{
+		addValue(next.getValue());
+	}
+
+	/**
+	 * Creates a new instance with the same configuration and the state after instantiation.
+	 *
+	 * @return the new instance.
+	 */
+	public abstract Metric copy();
+}
\ No newline at end of file
@@ -0,0 +1,178 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+/**
+ * Determines the maximum nesting depth of brackets in code segments over all scanned files.
+ * By default, curly brackets are counted. Languages structured by indentation only aren't supported.
+ * The depth isn't a state that has to match when the chunks of a large file are joined: every chunk is scanned
+ * relative to its start, and its depths are shifted by the depth at the end of the previous chunk.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+public class NestingMetric extends Metric
+{
+	/**
+	 * Saves the opening bracket.
+	 */
+	private final char open;
+	/**
+	 * Saves the closing bracket.
+	 */
+	private final char close;
+	/**
+	 * Saves the depth relative to the start of the file or chunk without ignoring unmatched closing brackets.
+	 */
+	private long offset;
+	/**
+	 * Saves the lowest relative depth. The actual depth is the relative depth minus the lowest one.
+	 */
+	private long lowest;
+	/**
+	 * Saves the highest relative depth.
+	 */
+	private long highest;
+	/**
+	 * Saves the maximum depth in the current file.
+	 */
+	private long fileDepth;
+	/**
+	 * Saves the maximum depth.
+	 */
+	private long maxDepth;
+
+	/**
+	 * Creates a new instance counting curly brackets.
+	 */
+	public NestingMetric()
+	{
+		this('{', '}');
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param open the opening bracket.
+	 * @param close the closing bracket.
+	 */
+	public NestingMetric(char open, char close)
+	{
+		this.open = open;
+		this.close = close;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "maxNesting";
+	}
+
+	@Override
+	public void beginFile()
+	{
+		offset = 0;
+		lowest = 0;
+		highest = 0;
+		fileDepth = 0;
+	}
+
+	@Override
+	public void segment(CharSequence line, int start, int end, int kind)
+	{
+		if(kind!=CODE)
+		{
+			return;
+		}
+		for(int i=start; i<end; i++)
+		{
+			char c = line.charAt(i);
+			if(c==open)
+			{
+				offset++;
+				highest = Math.max(highest, offset);
+				fileDepth = Math.max(fileDepth, offset-lowest);
+				maxDepth = Math.max(maxDepth, fileDepth);
+			}
+			else if(c==close)
+			{
+				offset--;
+				lowest = Math.min(lowest, offset);
+			}
+		}
+	}
+
+	@Override
+	public long getValue()
+	{
+		return maxDepth;
+	}
+
+	@Override
+	public boolean isAdditive()
+	{
+		return false;
+	}
+
+	@Override
+	public long getFileValue()
+	{
+		return fileDepth;
+	}
+
+	@Override
+	public void addValue(long value)
+	{
+		maxDepth = Math.max(maxDepth, value);
+	}
+
+	/**
+	 * Joins the results of an instance that scanned the next chunk of the current file. Its depths are shifted by the
+	 * current depth. Closing brackets below depth 0 are still ignored.
+	 *
+	 * @param next the instance that scanned the next chunk.
+	 */
+	@Override
+	public void join(Metric next)
+	{
+		NestingMetric chunk = (NestingMetric)next;
+		long depth = offset-lowest;
+		fileDepth = Math.max(fileDepth, Math.max(depth+chunk.highest, chunk.fileDepth));
+		maxDepth = Math.max(maxDepth, fileDepth);
+		highest = Math.max(highest, offset+chunk.highest);
+		lowest = Math.min(lowest, offset+chunk.lowest);
+		offset += chunk.offset;
+	}
+
+	@Override
+	public void reset()
+	{
+		beginFile();
+		maxDepth = 0;
+	}
+
+	@Override
+	public NestingMetric copy()
+	{
+		return new NestingMetric(open, close);
+	}
+}
\ No newline at end of file
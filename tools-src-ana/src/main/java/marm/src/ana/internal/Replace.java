@@ -26,23 +26,50 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import marm.src.ana.index.IndexFilter;
+import marm.src.ana.index.TrigramIndex;
 import marm.src.ana.MultiExtensionSupportFileHandler;
+import marm.src.ana.SrcTransformer;
 
 /**
  * Provides an general class for replacing strings in source code files with other strings.
  * This implementation uses regular expressions for the strings and replaces every string one after another.
+ * The time for a single regular expression and for a whole file can be limited. A file exceeding one of the limits is
+ * reported and left unchanged, so a badly written regular expression can't stall the analysis.
+ * The mapping is copied and its regular expressions are compiled once. Later changes of the passed map don't take
+ * effect; a new mapping is set with setMapping instead, which applies to all clones.
  * 
  * @author Martin Armbruster
- * @version 1.1
+ * @version 1.6
  * @since 1.1
  */
-public class Replace extends MultiExtensionSupportFileHandler
+public class Replace extends MultiExtensionSupportFileHandler implements SrcTransformer
 {
 	/**
-	 * Stores the mapping between the strings to be replaced and the strings to be inserted.
+	 * Stores the compiled mapping and the filter. The reference is shared by all clones.
 	 */
-	private Map<String, String> replaceStrings;
+	private AtomicReference<Rules> rules;
+	/**
+	 * Saves the time limit for one regular expression in nanoseconds or 0 if there is no limit.
+	 */
+	private long ruleTimeout;
+	/**
+	 * Saves the time limit for all regular expressions in one file in nanoseconds or 0 if there is no limit.
+	 */
+	private long fileTimeout;
+	/**
+	 * Saves the files skipped because a time limit was exceeded. The list is shared by all clones.
+	 */
+	private List<File> timedOutFiles;
 	
 	/**
 	 * Creates a new instance.
@@ -51,9 +78,76 @@ public class Replace extends MultiExtensionSupportFileHandler
 	 */
 	public Replace(Map<String, String> regexReplaceMapping)
 	{
-		replaceStrings = regexReplaceMapping;
+		rules = new AtomicReference<Rules>(new Rules(regexReplaceMapping, null));
+		timedOutFiles = Collections.synchronizedList(new ArrayList<File>());
+	}
+	
+	/**
+	 * Creates a new instance sharing the configuration and the list of skipped files with another instance.
+	 * 
+	 * @param other the other instance.
+	 */
+	private Replace(Replace other)
+	{
+		rules = other.rules;
+		ruleTimeout = other.ruleTimeout;
+		fileTimeout = other.fileTimeout;
+		timedOutFiles = other.timedOutFiles;
+	}
+	
+	/**
+	 * Sets a trigram index used to skip files that can't contain a match of any regular expression.
+	 * 
+	 * @param index the index or null to read every file.
+	 */
+	public void setIndex(TrigramIndex index)
+	{
+		rules.set(new Rules(rules.get().mapping, index));
+	}
+	
+	/**
+	 * Sets a new mapping for this instance and all its clones. The regular expressions are compiled at once.
+	 * 
+	 * @param regexReplaceMapping the mapping between the strings to be replaced and the strings to be inserted.
+	 */
+	public void setMapping(Map<String, String> regexReplaceMapping)
+	{
+		rules.set(new Rules(regexReplaceMapping, rules.get().index));
 	}
 
+	/**
+	 * Sets the time limit for applying one regular expression to a file.
+	 * 
+	 * @param millis the limit in milliseconds or 0 for no limit.
+	 */
+	public void setRuleTimeout(long millis)
+	{
+		ruleTimeout = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+	
+	/**
+	 * Sets the time limit for applying all regular expressions to a file.
+	 * 
+	 * @param millis the limit in milliseconds or 0 for no limit.
+	 */
+	public void setFileTimeout(long millis)
+	{
+		fileTimeout = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+	
+	/**
+	 * Returns the files that were left unchanged because a time limit was exceeded since the last reset.
+	 * 
+	 * @return the files.
+	 */
+	public List<File> getTimedOutFiles()
+	{
+		synchronized(timedOutFiles)
+		{
+			return new ArrayList<File>(timedOutFiles);
+		}
+	}
+	
 	/**
 	 * Handles a source code file.
 	 * 
@@ -62,6 +156,11 @@ public class Replace extends MultiExtensionSupportFileHandler
 	@Override
 	public void handleFile(File f)
 	{
+		Rules current = rules.get();
+		if(current.filter!=null&&!current.filter.canContain(f))
+		{
+			return;
+		}
 		try
 		{
 			// Reads the whole file.
@@ -76,10 +175,10 @@ public class Replace extends MultiExtensionSupportFileHandler
 			}
 			reader.close();
 			// Replaces all strings.
-			String endResult = builder.toString();
-			for(Map.Entry<String, String> ent : replaceStrings.entrySet())
+			String endResult = replaceAll(current, f, builder.toString());
+			if(endResult==null)
 			{
-				endResult = endResult.replaceAll(ent.getKey(), ent.getValue());
+				return;
 			}
 			BufferedWriter writer = new BufferedWriter(new FileWriter(f));
 			writer.write(endResult);
@@ -91,14 +190,152 @@ public class Replace extends MultiExtensionSupportFileHandler
 		}
 	}
 
+	/**
+	 * Replaces strings in the content of a source code file without writing it.
+	 * 
+	 * @param f the source code file.
+	 * @param content the content of the file.
+	 * @return the content after replacing or null if a time limit was exceeded.
+	 */
+	@Override
+	public CharSequence transform(File f, CharSequence content)
+	{
+		Rules current = rules.get();
+		if(current.filter!=null&&!current.filter.canContain(f))
+		{
+			return content;
+		}
+		return replaceAll(current, f, content.toString());
+	}
+	
+	/**
+	 * Applies all regular expressions to a text one after another. If a time limit is exceeded, the file is reported.
+	 * 
+	 * @param current the compiled mapping.
+	 * @param f the file containing the text.
+	 * @param text the text.
+	 * @return the text after replacing or null if a time limit was exceeded.
+	 */
+	private String replaceAll(Rules current, File f, String text)
+	{
+		Pattern[] patterns = current.patterns;
+		String[] replacements = current.replacements;
+		String endResult = text;
+		long fileDeadline = System.nanoTime()+fileTimeout;
+		for(int i=0; i<patterns.length; i++)
+		{
+			if(ruleTimeout==0&&fileTimeout==0)
+			{
+				endResult = patterns[i].matcher(endResult).replaceAll(replacements[i]);
+				continue;
+			}
+			long deadline = ruleTimeout==0 ? fileDeadline : System.nanoTime()+ruleTimeout;
+			if(fileTimeout!=0&&deadline-fileDeadline>0)
+			{
+				deadline = fileDeadline;
+			}
+			Matcher m = patterns[i].matcher(new DeadlineCharSequence(endResult, deadline));
+			try
+			{
+				endResult = m.replaceAll(replacements[i]);
+			}
+			catch(RegexTimeoutException e)
+			{
+				timedOutFiles.add(f);
+				return null;
+			}
+		}
+		return endResult;
+	}
+
+	/**
+	 * Resets the list of files skipped because of a time limit.
+	 */
 	@Override
 	public void reset()
 	{
+		timedOutFiles.clear();
+	}
+	
+	/**
+	 * Creates a copy with its own list of skipped files and its own mapping. The copies of all instances sharing them
+	 * share new ones.
+	 * 
+	 * @param copies maps the shared lists to the first copy using a new list.
+	 * @return the copy.
+	 */
+	@Override
+	public Replace copy(Map<Object, Object> copies)
+	{
+		Replace copy = new Replace(this);
+		Replace first = (Replace)copies.get(timedOutFiles);
+		if(first==null)
+		{
+			copy.timedOutFiles = Collections.synchronizedList(new ArrayList<File>());
+			copy.rules = new AtomicReference<Rules>(rules.get());
+			copies.put(timedOutFiles, copy);
+		}
+		else
+		{
+			copy.timedOutFiles = first.timedOutFiles;
+			copy.rules = first.rules;
+		}
+		return copy;
 	}
 	
 	@Override
 	public Replace clone()
 	{
-		return new Replace(replaceStrings);
+		return new Replace(this);
+	}
+
+	/**
+	 * A compiled mapping with the filter for an index. Instances are immutable, so clones running in parallel can
+	 * use them without locking.
+	 */
+	private static final class Rules
+	{
+		/**
+		 * Stores a copy of the mapping between the strings to be replaced and the strings to be inserted.
+		 */
+		private final Map<String, String> mapping;
+		/**
+		 * Stores the compiled regular expressions in the order of the mapping.
+		 */
+		private final Pattern[] patterns;
+		/**
+		 * Stores the strings to be inserted in the order of the mapping.
+		 */
+		private final String[] replacements;
+		/**
+		 * Saves the index for the filter or null.
+		 */
+		private final TrigramIndex index;
+		/**
+		 * Saves the filter for skipping files without matches or null if every file is read.
+		 */
+		private final IndexFilter filter;
+
+		/**
+		 * Copies and compiles a mapping.
+		 * 
+		 * @param mapping the mapping between the strings to be replaced and the strings to be inserted.
+		 * @param index the index for the filter or null.
+		 */
+		Rules(Map<String, String> mapping, TrigramIndex index)
+		{
+			this.mapping = Collections.unmodifiableMap(new LinkedHashMap<String, String>(mapping));
+			this.index = index;
+			patterns = new Pattern[mapping.size()];
+			replacements = new String[patterns.length];
+			int i = 0;
+			for(Map.Entry<String, String> ent : this.mapping.entrySet())
+			{
+				patterns[i] = Pattern.compile(ent.getKey());
+				replacements[i] = ent.getValue();
+				i++;
+			}
+			filter = index==null ? null : new IndexFilter(index, this.mapping.keySet(), true);
+		}
 	}
 }
\ No newline at end of file
@@ -26,21 +26,32 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
-import marm.src.ana.SrcFileHandler;
+import marm.src.ana.index.IndexFilter;
+import marm.src.ana.index.TrigramIndex;
+import marm.src.ana.SrcTransformer;
+import org.ahocorasick.trie.Emit;
 import org.ahocorasick.trie.Token;
 import org.ahocorasick.trie.Trie;
 
 /**
  * Replaces strings in a java source code file with other strings.
  * This class uses the Aho-Corasick algorithm for replacing.
+ * Optionally, the replacing can be restricted to some kinds of tokens, for example only identifiers. Then the source
+ * code is split into tokens by a JavaLexer and only matches inside a token of a selected kind are replaced. For
+ * identifiers, a match must be the whole identifier.
  * 
  * @author Martin Armbruster
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
-public class ReplaceJava2 implements SrcFileHandler
+public class ReplaceJava2 implements SrcTransformer
 {
 	/**
 	 * Stores the trie with the strings to be replaced used later for the Aho-Corasick algorithm.
@@ -50,6 +61,19 @@ public class ReplaceJava2 implements SrcFileHandler
 	 * Stores the mapping between the strings to be replaced and the strings to be inserted.
 	 */
 	private Map<String, String> replaceStrings;
+	/**
+	 * Saves the filter for skipping files without matches or null if every file is read.
+	 */
+	private IndexFilter filter;
+	/**
+	 * Saves the kinds of tokens in which strings are replaced or null if they're replaced everywhere.
+	 */
+	private EnumSet<JavaLexer.TokenKind> scope;
+	/**
+	 * Stores the trie reporting all matches including overlapping ones. It's used if the replacing is restricted to
+	 * some kinds of tokens.
+	 */
+	private Trie scopedKeys;
 	
 	/**
 	 * Creates a new instance.
@@ -62,6 +86,37 @@ public class ReplaceJava2 implements SrcFileHandler
 		keys = Trie.builder().ignoreOverlaps().addKeywords(stringReplaceMapping.keySet()).build();
 	}
 	
+	/**
+	 * Sets a trigram index used to skip files that can't contain any of the strings to be replaced.
+	 * 
+	 * @param index the index or null to read every file.
+	 */
+	public void setIndex(TrigramIndex index)
+	{
+		filter = index==null ? null : new IndexFilter(index, replaceStrings.keySet(), false);
+	}
+	
+	/**
+	 * Restricts the replacing to some kinds of tokens.
+	 * 
+	 * @param kinds the kinds of tokens in which strings are replaced. If no kind is given, strings are replaced
+	 *              everywhere.
+	 */
+	public void setScope(JavaLexer.TokenKind... kinds)
+	{
+		if(kinds.length==0)
+		{
+			scope = null;
+			return;
+		}
+		scope = EnumSet.noneOf(JavaLexer.TokenKind.class);
+		Collections.addAll(scope, kinds);
+		if(scopedKeys==null)
+		{
+			scopedKeys = Trie.builder().addKeywords(replaceStrings.keySet()).build();
+		}
+	}
+	
 	/**
 	 * Returns the extension for identifying java source code files.
 	 * 
@@ -86,6 +141,10 @@ public class ReplaceJava2 implements SrcFileHandler
 	 */
 	public void handleFile(File f)
 	{
+		if(filter!=null&&!filter.canContain(f))
+		{
+			return;
+		}
 		try
 		{
 			BufferedReader reader = new BufferedReader(new FileReader(f));
@@ -98,21 +157,9 @@ public class ReplaceJava2 implements SrcFileHandler
 				line = reader.readLine();
 			}
 			reader.close();
-			Collection<Token> tokens = keys.tokenize(builder.toString());
-			builder.delete(0, builder.length());
-			for(Token token : tokens)
-			{
-				if(token.isMatch())
-				{
-					builder.append(replaceStrings.get(token.getFragment()));
-				}
-				else
-				{
-					builder.append(token.getFragment());
-				}
-			}
+			CharSequence result = transform(f, builder.toString());
 			BufferedWriter writer = new BufferedWriter(new FileWriter(f));
-			writer.write(builder.toString());
+			writer.append(result);
 			writer.close();
 		}
 		catch(IOException e)
@@ -120,4 +167,97 @@ public class ReplaceJava2 implements SrcFileHandler
 			e.printStackTrace();
 		}
 	}
+	
+	/**
+	 * Replaces strings in the content of a java source code file without writing it.
+	 * 
+	 * @param f the java source code file.
+	 * @param content the content of the file.
+	 * @return the content after replacing.
+	 */
+	@Override
+	public CharSequence transform(File f, CharSequence content)
+	{
+		if(filter!=null&&!filter.canContain(f))
+		{
+			return content;
+		}
+		String text = content.toString();
+		return scope==null ? replace(text) : replaceScoped(text);
+	}
+	
+	/**
+	 * Replaces all strings in a text.
+	 * 
+	 * @param text the text.
+	 * @return the text after replacing.
+	 */
+	private String replace(String text)
+	{
+		Collection<Token> tokens = keys.tokenize(text);
+		StringBuilder builder = new StringBuilder(text.length());
+		for(Token token : tokens)
+		{
+			if(token.isMatch())
+			{
+				builder.append(replaceStrings.get(token.getFragment()));
+			}
+			else
+			{
+				builder.append(token.getFragment());
+			}
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Replaces the strings inside tokens of the selected kinds in a text. Overlapping matches are resolved from left
+	 * to right, preferring the longest match.
+	 * 
+	 * @param text the text.
+	 * @return the text after replacing.
+	 */
+	private String replaceScoped(String text)
+	{
+		List<Emit> emits = new ArrayList<Emit>(scopedKeys.parseText(text));
+		if(emits.isEmpty())
+		{
+			return text;
+		}
+		Collections.sort(emits, new Comparator<Emit>()
+		{
+			@Override
+			public int compare(Emit e1, Emit e2)
+			{
+				int result = Integer.compare(e1.getStart(), e2.getStart());
+				return result!=0 ? result : Integer.compare(e2.getEnd(), e1.getEnd());
+			}
+		});
+		JavaLexer lexer = new JavaLexer();
+		lexer.tokenize(text);
+		StringBuilder builder = new StringBuilder(text.length());
+		int pos = 0;
+		int token = 0;
+		for(Emit emit : emits)
+		{
+			if(emit.getStart()<pos)
+			{
+				continue;
+			}
+			token = lexer.findToken(emit.getStart(), token);
+			JavaLexer.TokenKind kind = lexer.getKind(token);
+			int end = emit.getEnd()+1;
+			if(!scope.contains(kind)||end>lexer.getEnd(token)
+					||kind==JavaLexer.TokenKind.IDENTIFIER&&(emit.getStart()!=lexer.getStart(token)
+					||end!=lexer.getEnd(token)))
+			{
+				continue;
+			}
+			builder.append(text, pos, emit.getStart());
+			builder.append(replaceStrings.get(emit.getKeyword()));
+			pos = end;
+		}
+		builder.append(text, pos, text.length());
+		return builder.toString();
+	}
 }
\ No newline at end of file
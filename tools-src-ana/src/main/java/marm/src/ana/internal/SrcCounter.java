@@ -24,38 +24,90 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import marm.src.ana.MetricHandler;
 import marm.src.ana.MultiExtensionSupportFileHandler;
+import marm.src.ana.SrcContentHandler;
 
 /**
  * A file handler that counts lines of code for source code files.
  * It provides an interface to use the counter for any files and to analyze every line separately.
  * Besides, an instance of this class can be used for counting all lines of code in source code files.
+ * The content of a file can also be passed directly, e. g. as the last stage of a HandlerChain.
+ * Optionally, files larger than a threshold are memory-mapped, split into chunks at line breaks and counted in
+ * parallel by clones of the counter. The results are merged via the metric values. Subclasses with a state reaching
+ * from one line to the next expose it via getCarryState and setCarryState, so chunks starting in the wrong state are
+ * counted again. The getters of the counts return truncated ints, and their Long variants return the exact values.
+ * The values for the last file are the differences to the values before it, unless a subclass overrides
+ * getFileMetricValues for metrics that aren't sums.
  * 
  * @author Martin Armbruster
- * @version 1.1
+ * @version 1.6
  * @since 1.1
  */
-public class SrcCounter extends MultiExtensionSupportFileHandler
+public class SrcCounter extends MultiExtensionSupportFileHandler implements SrcContentHandler, MetricHandler
 {
 	/**
 	 * Number of total scanned files.
 	 */
-	private int scannedFiles;
+	private long scannedFiles;
 	/**
 	 * Number of total digits in all scanned files.
 	 */
-	private int digitCounter;
+	private long digitCounter;
 	/**
 	 * Number of lines of code in all scanned files.
 	 */
-	private int completeLineCounter;
+	private long completeLineCounter;
+	/**
+	 * Saves the size in bytes from which files are counted in parallel chunks or 0 if files are always read
+	 * sequentially.
+	 */
+	private long parallelThreshold;
+	/**
+	 * Saves the approximate size of a chunk in bytes.
+	 */
+	private int chunkSize = 8*1024*1024;
+	/**
+	 * Saves the metric values before the last file or null if no file was scanned.
+	 */
+	private long[] fileStart;
+	
+	/**
+	 * Sets the size from which files are counted in parallel chunks. By default, files are always read sequentially.
+	 * 
+	 * @param bytes the size in bytes or 0 to always read files sequentially.
+	 */
+	public void setParallelThreshold(long bytes)
+	{
+		parallelThreshold = bytes;
+	}
+	
+	/**
+	 * Sets the approximate size of the chunks of large files. A chunk always ends at a line break.
+	 * 
+	 * @param bytes the size in bytes.
+	 */
+	public void setChunkSize(int bytes)
+	{
+		chunkSize = bytes;
+	}
 	
 	/**
 	 * Returns the number of total scanned files by this instance.
 	 * 
-	 * @return the number of total scanned files.
+	 * @return the number of total scanned files, truncated to an int.
 	 */
 	public int getScannedFiles()
+	{
+		return (int)scannedFiles;
+	}
+	
+	/**
+	 * Returns the number of total scanned files by this instance without truncation.
+	 * 
+	 * @return the number of total scanned files.
+	 */
+	public long getScannedFilesLong()
 	{
 		return scannedFiles;
 	}
@@ -63,9 +115,19 @@ public class SrcCounter extends MultiExtensionSupportFileHandler
 	/**
 	 * Returns the number of digits in all scanned files.
 	 * 
-	 * @return the number of digits in all scanned files.
+	 * @return the number of digits in all scanned files, truncated to an int.
 	 */
 	public int getDigitCount()
+	{
+		return (int)digitCounter;
+	}
+	
+	/**
+	 * Returns the number of digits in all scanned files without truncation.
+	 * 
+	 * @return the number of digits in all scanned files.
+	 */
+	public long getDigitCountLong()
 	{
 		return digitCounter;
 	}
@@ -73,9 +135,19 @@ public class SrcCounter extends MultiExtensionSupportFileHandler
 	/**
 	 * Returns the number of total lines of code in all scanned files.
 	 * 
-	 * @return the number of total lines of code in all scanned files.
+	 * @return the number of total lines of code in all scanned files, truncated to an int.
 	 */
 	public int getCompleteSrcLines()
+	{
+		return (int)completeLineCounter;
+	}
+	
+	/**
+	 * Returns the number of total lines of code in all scanned files without truncation.
+	 * 
+	 * @return the number of total lines of code in all scanned files.
+	 */
+	public long getCompleteSrcLinesLong()
 	{
 		return completeLineCounter;
 	}
@@ -99,16 +171,19 @@ public class SrcCounter extends MultiExtensionSupportFileHandler
 	@Override
 	public void handleFile(File f)
 	{
+		fileStart = getMetricValues();
 		scannedFiles++;
+		if(parallelThreshold>0&&f.length()>=parallelThreshold&&ChunkedCounting.count(this, f, chunkSize))
+		{
+			return;
+		}
 		try
 		{
 			BufferedReader reader = new BufferedReader(new FileReader(f));
 			String line = reader.readLine();
 			while(line!=null)
 			{ 
-				completeLineCounter++;
-				digitCounter += line.length();
-				handleLine(line);
+				countLine(line);
 				line = reader.readLine();
 			}
 			reader.close();
@@ -119,6 +194,62 @@ public class SrcCounter extends MultiExtensionSupportFileHandler
 		}
 	}
 	
+	/**
+	 * Analyzes the content of a source code file. The lines are separated like BufferedReader.readLine() does.
+	 * 
+	 * @param f the file.
+	 * @param content the content of the file.
+	 */
+	@Override
+	public void handleContent(File f, CharSequence content)
+	{
+		fileStart = getMetricValues();
+		scannedFiles++;
+		countLines(content);
+	}
+	
+	/**
+	 * Counts all lines of a text. The lines are separated like BufferedReader.readLine() does.
+	 * 
+	 * @param content the text.
+	 */
+	void countLines(CharSequence content)
+	{
+		int length = content.length();
+		int start = 0;
+		int i = 0;
+		while(i<length)
+		{
+			char c = content.charAt(i);
+			i++;
+			if(c=='\n'||c=='\r')
+			{
+				countLine(content.subSequence(start, i-1).toString());
+				if(c=='\r'&&i<length&&content.charAt(i)=='\n')
+				{
+					i++;
+				}
+				start = i;
+			}
+		}
+		if(start<length)
+		{
+			countLine(content.subSequence(start, length).toString());
+		}
+	}
+	
+	/**
+	 * Counts a line and passes it to handleLine.
+	 * 
+	 * @param line the line.
+	 */
+	private void countLine(String line)
+	{
+		completeLineCounter++;
+		digitCounter += line.length();
+		handleLine(line);
+	}
+	
 	/**
 	 * Handles a line of a source code file.
 	 * Subclasses should override this method to perform a separate action on every line, e. g. counting special lines.
@@ -129,9 +260,126 @@ public class SrcCounter extends MultiExtensionSupportFileHandler
 	{
 	}
 	
+	/**
+	 * Returns the names of all counted metrics. Subclasses append their own metrics.
+	 * 
+	 * @return the names in the order of the values.
+	 */
+	@Override
+	public String[] getMetricNames()
+	{
+		return new String[] {"files", "lines", "digits"};
+	}
+	
+	/**
+	 * Returns the values of all counted metrics.
+	 * 
+	 * @return the values in the order of the names.
+	 */
+	@Override
+	public long[] getMetricValues()
+	{
+		long[] values = new long[getMetricNames().length];
+		values[0] = scannedFiles;
+		values[1] = completeLineCounter;
+		values[2] = digitCounter;
+		return values;
+	}
+	
+	/**
+	 * Returns the values of all counted metrics for the last scanned file.
+	 * 
+	 * @return the values in the order of the names.
+	 */
+	@Override
+	public long[] getFileMetricValues()
+	{
+		long[] values = getMetricValues();
+		for(int m=0; fileStart!=null&&m<values.length; m++)
+		{
+			values[m] -= fileStart[m];
+		}
+		return values;
+	}
+	
+	/**
+	 * Indicates if a metric is additive. All metrics of this class are.
+	 * 
+	 * @param metric the index of the metric in the order of the names.
+	 * @return true if the metric is additive. false otherwise.
+	 */
+	@Override
+	public boolean isAdditive(int metric)
+	{
+		return true;
+	}
+	
+	/**
+	 * Adds metric values to the values of this instance, e. g. to merge the results of several instances.
+	 * Subclasses with own metrics have to override this method.
+	 * 
+	 * @param values the values in the order of the names.
+	 */
+	@Override
+	public void addMetricValues(long[] values)
+	{
+		scannedFiles += values[0];
+		completeLineCounter += values[1];
+		digitCounter += values[2];
+	}
+	
+	/**
+	 * Joins the results of a clone that counted the next chunk of the current file. The number of scanned files isn't
+	 * changed and the state at the end of the chunk is taken over.
+	 * 
+	 * @param chunk the clone.
+	 */
+	void joinChunk(SrcCounter chunk)
+	{
+		long[] values = chunk.getMetricValues();
+		values[0] = 0;
+		addMetricValues(values);
+		setCarryState(chunk.getCarryState());
+	}
+	
+	/**
+	 * Returns the state that is carried from one line to the next one.
+	 * Subclasses with such a state have to override this method and setCarryState.
+	 * 
+	 * @return the state or null if there is none. States are compared with equals.
+	 */
+	protected Object getCarryState()
+	{
+		return null;
+	}
+	
+	/**
+	 * Sets the state that is carried from one line to the next one.
+	 * 
+	 * @param state the state returned by getCarryState.
+	 */
+	protected void setCarryState(Object state)
+	{
+	}
+	
+	/**
+	 * Copies the settings of this instance, e. g. the parallel threshold and the chunk size, to a clone.
+	 * Subclasses have to pass their clones to this method.
+	 *
+	 * @param copy the clone.
+	 * @param <T> the type of the clone.
+	 * @return the clone.
+	 */
+	protected <T extends SrcCounter> T copySettings(T copy)
+	{
+		copy.setParallelThreshold(parallelThreshold);
+		copy.setChunkSize(chunkSize);
+		return copy;
+	}
+
 	@Override
 	public SrcCounter clone()
 	{
-		return new SrcCounter();
+		return copySettings(new SrcCounter());
 	}
 }
\ No newline at end of file
@@ -30,7 +30,7 @@ import java.util.regex.Pattern;
  * (.java), C (.c), C++ (.cpp), C# (.cs) and Headerfiles (.h). 
  * 
  * @author Martin Armbruster
- * @version 1.3
+ * @version 1.6
  * @since 1.0
  */
 public class SrcCounterJC extends SrcCounter
@@ -38,7 +38,7 @@ public class SrcCounterJC extends SrcCounter
 	/**
 	 * Number of actual lines of code in all scanned files.
 	 */
-	private int lineCounter;
+	private long lineCounter;
 	/**
 	 * Pattern to identify lines containing whitespaces or braces only.
 	 */
@@ -66,9 +66,19 @@ public class SrcCounterJC extends SrcCounter
 	/**
 	 * Returns the number of actual lines of code in all scanned files.
 	 *  
-	 * @return the number of actual lindes of code in all scanned files.
+	 * @return the number of actual lindes of code in all scanned files, truncated to an int.
 	 */
 	public int getSrcLines()
+	{
+		return (int)lineCounter;
+	}
+	
+	/**
+	 * Returns the number of actual lines of code in all scanned files without truncation.
+	 *  
+	 * @return the number of actual lines of code in all scanned files.
+	 */
+	public long getSrcLinesLong()
 	{
 		return lineCounter;
 	}
@@ -80,6 +90,27 @@ public class SrcCounterJC extends SrcCounter
 		lineCounter = 0;
 	}
 
+	@Override
+	public String[] getMetricNames()
+	{
+		return new String[] {"files", "lines", "digits", "srcLines"};
+	}
+	
+	@Override
+	public long[] getMetricValues()
+	{
+		long[] values = super.getMetricValues();
+		values[3] = lineCounter;
+		return values;
+	}
+	
+	@Override
+	public void addMetricValues(long[] values)
+	{
+		super.addMetricValues(values);
+		lineCounter += values[3];
+	}
+
 	@Override
 	public void handleLine(String line)
 	{
@@ -93,6 +124,6 @@ public class SrcCounterJC extends SrcCounter
 	@Override
 	public SrcCounterJC clone()
 	{
-		return new SrcCounterJC();
+		return copySettings(new SrcCounterJC());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,256 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.io.File;
+
+/**
+ * A file handler that counts code, comment and blank lines for any language described by a LanguageDescriptor.
+ * Code lines contain at least one character outside of comments, including characters of strings. Comment lines
+ * contain comments only, and blank lines contain whitespaces only.
+ * The handler is registered for the extensions of its language, e. g.:
+ * analyzer.addSrcFileHandler(new SrcCounterLang(LanguageDescriptor.PYTHON), LanguageDescriptor.PYTHON.getExtensions()).
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public class SrcCounterLang extends SrcCounter
+{
+	/**
+	 * Saves the descriptor of the language.
+	 */
+	private final LanguageDescriptor language;
+	/**
+	 * Saves the scanner classifying the lines.
+	 */
+	private final LanguageScanner scanner;
+	/**
+	 * Number of code lines in all scanned files.
+	 */
+	private long lineCounter;
+	/**
+	 * Number of comment lines in all scanned files.
+	 */
+	private long commentCounter;
+	/**
+	 * Number of blank lines in all scanned files.
+	 */
+	private long blankCounter;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param language the descriptor of the counted language.
+	 */
+	public SrcCounterLang(LanguageDescriptor language)
+	{
+		this.language = language;
+		scanner = new LanguageScanner(language);
+		reset();
+	}
+
+	/**
+	 * Returns the descriptor of the counted language.
+	 *
+	 * @return the descriptor.
+	 */
+	public LanguageDescriptor getLanguage()
+	{
+		return language;
+	}
+
+	/**
+	 * Returns the number of code lines in all scanned files.
+	 *
+	 * @return the number of code lines, truncated to an int.
+	 */
+	public int getSrcLines()
+	{
+		return (int)lineCounter;
+	}
+
+	/**
+	 * Returns the number of code lines in all scanned files without truncation.
+	 *
+	 * @return the number of code lines.
+	 */
+	public long getSrcLinesLong()
+	{
+		return lineCounter;
+	}
+
+	/**
+	 * Returns the number of comment lines in all scanned files.
+	 *
+	 * @return the number of comment lines, truncated to an int.
+	 */
+	public int getCommentLines()
+	{
+		return (int)commentCounter;
+	}
+
+	/**
+	 * Returns the number of comment lines in all scanned files without truncation.
+	 *
+	 * @return the number of comment lines.
+	 */
+	public long getCommentLinesLong()
+	{
+		return commentCounter;
+	}
+
+	/**
+	 * Returns the number of blank lines in all scanned files.
+	 *
+	 * @return the number of blank lines, truncated to an int.
+	 */
+	public int getBlankLines()
+	{
+		return (int)blankCounter;
+	}
+
+	/**
+	 * Returns the number of blank lines in all scanned files without truncation.
+	 *
+	 * @return the number of blank lines.
+	 */
+	public long getBlankLinesLong()
+	{
+		return blankCounter;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		lineCounter = 0;
+		commentCounter = 0;
+		blankCounter = 0;
+		scanner.reset();
+	}
+
+	@Override
+	public String[] getMetricNames()
+	{
+		return new String[] {"files", "lines", "digits", "srcLines", "commentLines", "blankLines"};
+	}
+
+	@Override
+	public long[] getMetricValues()
+	{
+		long[] values = super.getMetricValues();
+		values[3] = lineCounter;
+		values[4] = commentCounter;
+		values[5] = blankCounter;
+		return values;
+	}
+
+	@Override
+	public void addMetricValues(long[] values)
+	{
+		super.addMetricValues(values);
+		lineCounter += values[3];
+		commentCounter += values[4];
+		blankCounter += values[5];
+	}
+
+	@Override
+	protected Object getCarryState()
+	{
+		return scanner.getState();
+	}
+
+	@Override
+	protected void setCarryState(Object state)
+	{
+		scanner.setState(state);
+	}
+
+	/**
+	 * Analyzes a source code file. Every file starts outside of comments and strings.
+	 *
+	 * @param f the file.
+	 */
+	@Override
+	public void handleFile(File f)
+	{
+		scanner.reset();
+		super.handleFile(f);
+	}
+
+	/**
+	 * Analyzes the content of a source code file. Every file starts outside of comments and strings.
+	 *
+	 * @param f the file.
+	 * @param content the content of the file.
+	 */
+	@Override
+	public void handleContent(File f, CharSequence content)
+	{
+		scanner.reset();
+		super.handleContent(f, content);
+	}
+
+	/**
+	 * Returns the scanner classifying the lines.
+	 *
+	 * @return the scanner.
+	 */
+	LanguageScanner getScanner()
+	{
+		return scanner;
+	}
+
+	/**
+	 * Called after a line was scanned and counted. Subclasses can override it to evaluate the line further.
+	 *
+	 * @param flags the flags of the line.
+	 */
+	void lineScanned(int flags)
+	{
+	}
+
+	@Override
+	protected void handleLine(String line)
+	{
+		int flags = scanner.scanLine(line);
+		if((flags&LanguageScanner.CODE)!=0)
+		{
+			lineCounter++;
+		}
+		else if(flags!=0)
+		{
+			commentCounter++;
+		}
+		else
+		{
+			blankCounter++;
+		}
+		lineScanned(flags);
+	}
+
+	@Override
+	public SrcCounterLang clone()
+	{
+		return copySettings(new SrcCounterLang(language));
+	}
+}
\ No newline at end of file
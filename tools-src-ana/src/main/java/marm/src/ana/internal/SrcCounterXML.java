@@ -27,7 +27,7 @@ import java.util.regex.Pattern;
  * Actual lines of code follow this definition: these are lines not containing whitespaces or commentaries only.
  * 
  * @author Martin Armbruster
- * @version 1.0
+ * @version 1.3
  * @since 2.0
  */
 public class SrcCounterXML extends SrcCounter
@@ -35,7 +35,7 @@ public class SrcCounterXML extends SrcCounter
 	/**
 	 * Number of actual lines of code in all scanned files.
 	 */
-	private int lineCounter;
+	private long lineCounter;
 	/**
 	 * Pattern to identify lines containing whitespaces only.
 	 */
@@ -73,9 +73,19 @@ public class SrcCounterXML extends SrcCounter
 	/**
 	 * Returns the number of actual lines of code in all scanned files.
 	 *  
-	 * @return the number of actual lindes of code in all scanned files.
+	 * @return the number of actual lindes of code in all scanned files, truncated to an int.
 	 */
 	public int getSrcLines()
+	{
+		return (int)lineCounter;
+	}
+	
+	/**
+	 * Returns the number of actual lines of code in all scanned files without truncation.
+	 *  
+	 * @return the number of actual lines of code in all scanned files.
+	 */
+	public long getSrcLinesLong()
 	{
 		return lineCounter;
 	}
@@ -88,6 +98,39 @@ public class SrcCounterXML extends SrcCounter
 		inComment = false;
 	}
 
+	@Override
+	public String[] getMetricNames()
+	{
+		return new String[] {"files", "lines", "digits", "srcLines"};
+	}
+	
+	@Override
+	public long[] getMetricValues()
+	{
+		long[] values = super.getMetricValues();
+		values[3] = lineCounter;
+		return values;
+	}
+	
+	@Override
+	public void addMetricValues(long[] values)
+	{
+		super.addMetricValues(values);
+		lineCounter += values[3];
+	}
+	
+	@Override
+	protected Object getCarryState()
+	{
+		return inComment;
+	}
+	
+	@Override
+	protected void setCarryState(Object state)
+	{
+		inComment = (Boolean)state;
+	}
+
 	@Override
 	public void handleLine(String line)
 	{
@@ -108,6 +151,6 @@ public class SrcCounterXML extends SrcCounter
 	@Override
 	public SrcCounterXML clone()
 	{
-		return new SrcCounterXML();
+		return copySettings(new SrcCounterXML());
 	}
 }
\ No newline at end of file
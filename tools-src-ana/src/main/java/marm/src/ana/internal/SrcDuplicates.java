@@ -0,0 +1,296 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+import marm.src.ana.MultiExtensionSupportFileHandler;
+
+/**
+ * A file handler that finds duplicated code blocks in all handled files.
+ * Every line is normalized by removing whitespaces and comments with the scanner of a LanguageDescriptor. Empty lines
+ * and lines consisting of braces only are skipped. A Rabin-Karp rolling hash is computed over every window of a fixed
+ * number of normalized lines and collected with its location. The collected hashes are spilled to disk when the buffer
+ * is full, so the heap usage stays bounded. After the analysis, {@link #report(DuplicateSink)} reports every group of
+ * windows with equal hashes. A duplicated block longer than the window is reported as several overlapping groups.
+ * The windows of a file are passed to the collector in batches of a fixed size, so a large file doesn't need a large
+ * buffer. All instances created for multiple extensions share the collected hashes. Copies for another analysis get
+ * their own collector.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public class SrcDuplicates extends MultiExtensionSupportFileHandler
+{
+	/**
+	 * Base of the rolling hash.
+	 */
+	private static final long BASE = 0x100000001b3L;
+	/**
+	 * Number of windows of a file passed to the collector at once.
+	 */
+	private static final int BATCH = 4096;
+	/**
+	 * Saves the descriptor of the language.
+	 */
+	private final LanguageDescriptor language;
+	/**
+	 * Saves the number of normalized lines in a window.
+	 */
+	private final int window;
+	/**
+	 * Saves the collector shared by all clones.
+	 */
+	private final DuplicateCollector collector;
+	/**
+	 * Saves BASE to the power of window minus one.
+	 */
+	private final long outFactor;
+	/**
+	 * Saves the scanner normalizing the lines.
+	 */
+	private final LanguageScanner scanner;
+	/**
+	 * Saves the normalized content of the current line.
+	 */
+	private final StringBuilder normalized;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param language the descriptor of the language used to remove comments.
+	 * @param window the number of normalized lines a duplicated block has at least.
+	 * @param workDir the directory for temporary files or null for the default temporary directory.
+	 * @throws IllegalArgumentException if the window isn't positive.
+	 */
+	public SrcDuplicates(LanguageDescriptor language, int window, File workDir)
+	{
+		this(language, window, new DuplicateCollector(workDir));
+	}
+
+	/**
+	 * Creates a new instance sharing a collector.
+	 *
+	 * @param language the descriptor of the language used to remove comments.
+	 * @param window the number of normalized lines in a window.
+	 * @param collector the collector.
+	 * @throws IllegalArgumentException if the window isn't positive.
+	 */
+	private SrcDuplicates(LanguageDescriptor language, int window, DuplicateCollector collector)
+	{
+		if(window<=0)
+		{
+			throw new IllegalArgumentException("The window of duplicated lines has to be positive, but it's "+window);
+		}
+		this.language = language;
+		this.window = window;
+		this.collector = collector;
+		long factor = 1;
+		for(int i=1; i<window; i++)
+		{
+			factor *= BASE;
+		}
+		outFactor = factor;
+		normalized = new StringBuilder();
+		scanner = new LanguageScanner(language);
+		scanner.setListener(new LanguageScanner.SegmentListener()
+		{
+			@Override
+			public void segment(CharSequence line, int start, int end, int kind)
+			{
+				if(kind!=LanguageScanner.COMMENT)
+				{
+					for(int i=start; i<end; i++)
+					{
+						char c = line.charAt(i);
+						if(!Character.isWhitespace(c))
+						{
+							normalized.append(c);
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sets the number of windows buffered in memory before they're spilled to disk. Every window needs 20 bytes.
+	 *
+	 * @param windows the number of windows.
+	 */
+	public void setBufferSize(int windows)
+	{
+		collector.setBufferSize(windows);
+	}
+
+	/**
+	 * Reports all groups of duplicated blocks found since the last reset. Afterwards, the collected blocks are
+	 * discarded.
+	 *
+	 * @param sink the sink receiving the groups.
+	 * @throws IOException if the temporary files can't be written or read.
+	 */
+	public void report(DuplicateSink sink) throws IOException
+	{
+		collector.report(sink);
+	}
+
+	/**
+	 * Computes the window hashes of a file.
+	 *
+	 * @param f the file.
+	 */
+	@Override
+	public void handleFile(File f)
+	{
+		long[] lineHashes = new long[window];
+		int[] lineNumbers = new int[window];
+		long[] windowHashes = new long[BATCH];
+		int[] starts = new int[BATCH];
+		int[] lasts = new int[BATCH];
+		int fileId = -1;
+		int windows = 0;
+		int lines = 0;
+		long hash = 0;
+		scanner.reset();
+		try
+		{
+			BufferedReader reader = new BufferedReader(new FileReader(f));
+			int lineNumber = 0;
+			String line = reader.readLine();
+			while(line!=null)
+			{
+				lineNumber++;
+				long lineHash = normalize(line);
+				if(lineHash!=0)
+				{
+					int slot = lines%window;
+					hash = (lines>=window ? hash-lineHashes[slot]*outFactor : hash)*BASE+lineHash;
+					lineHashes[slot] = lineHash;
+					lineNumbers[slot] = lineNumber;
+					lines++;
+					if(lines>=window)
+					{
+						if(windows==BATCH)
+						{
+							fileId = fileId<0 ? collector.addFile(f) : fileId;
+							collector.add(fileId, windowHashes, starts, lasts, windows);
+							windows = 0;
+						}
+						windowHashes[windows] = hash;
+						starts[windows] = lineNumbers[lines%window];
+						lasts[windows] = lineNumber;
+						windows++;
+					}
+				}
+				line = reader.readLine();
+			}
+			reader.close();
+			if(windows>0)
+			{
+				collector.add(fileId<0 ? collector.addFile(f) : fileId, windowHashes, starts, lasts, windows);
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Normalizes a line and hashes it.
+	 *
+	 * @param line the line.
+	 * @return the FNV-1a hash of the normalized line or 0 if the line is skipped.
+	 */
+	private long normalize(String line)
+	{
+		normalized.setLength(0);
+		scanner.scanLine(line);
+		if(normalized.length()==0||normalized.length()<=2&&isBraces(normalized))
+		{
+			return 0;
+		}
+		long h = 0xcbf29ce484222325L;
+		for(int i=0; i<normalized.length(); i++)
+		{
+			h ^= normalized.charAt(i);
+			h *= BASE;
+		}
+		return h==0 ? 1 : h;
+	}
+
+	/**
+	 * Checks if a text consists of braces and semicolons only.
+	 *
+	 * @param text the text.
+	 * @return true if it does.
+	 */
+	private static boolean isBraces(CharSequence text)
+	{
+		for(int i=0; i<text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if(c!='{'&&c!='}'&&c!=';')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Discards all collected blocks.
+	 */
+	@Override
+	public void reset()
+	{
+		collector.clear();
+	}
+
+	/**
+	 * Creates a copy with its own collector. The copies of all instances sharing a collector share a new one.
+	 *
+	 * @param copies maps the shared collectors to the collectors of the copies.
+	 * @return the copy.
+	 */
+	@Override
+	public SrcDuplicates copy(Map<Object, Object> copies)
+	{
+		DuplicateCollector copied = (DuplicateCollector)copies.get(collector);
+		if(copied==null)
+		{
+			copied = collector.copySettings();
+			copies.put(collector, copied);
+		}
+		return new SrcDuplicates(language, window, copied);
+	}
+
+	@Override
+	public SrcDuplicates clone()
+	{
+		return new SrcDuplicates(language, window, collector);
+	}
+}
\ No newline at end of file
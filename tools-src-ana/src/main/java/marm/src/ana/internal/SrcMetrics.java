@@ -0,0 +1,257 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A file handler computing several metrics with one scan per file.
+ * Like SrcCounterLang, it counts code, comment and blank lines. Additionally, every line is split into code, comment
+ * and string segments by the shared scanner and passed to pluggable Metric visitors, e. g. for the cyclomatic
+ * complexity, the number of tokens or the maximum nesting depth.
+ * The values of metrics that aren't additive are taken from the metrics themselves for the last file.
+ *
+ * @author Martin Armbruster
+ * @version 1.3
+ * @since 2.1
+ */
+public class SrcMetrics extends SrcCounterLang
+{
+	/**
+	 * Saves the metrics.
+	 */
+	private final Metric[] metrics;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param language the descriptor of the scanned language.
+	 * @param metrics the metrics computed in addition to the line counts.
+	 */
+	public SrcMetrics(LanguageDescriptor language, Metric... metrics)
+	{
+		super(language);
+		this.metrics = metrics.clone();
+		getScanner().setListener(new LanguageScanner.SegmentListener()
+		{
+			@Override
+			public void segment(CharSequence line, int start, int end, int kind)
+			{
+				for(Metric m : SrcMetrics.this.metrics)
+				{
+					m.segment(line, start, end, kind);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates the default metrics: the cyclomatic complexity, the number of tokens and the maximum nesting depth.
+	 *
+	 * @return new instances of the default metrics.
+	 */
+	public static Metric[] defaultMetrics()
+	{
+		return new Metric[] {new ComplexityMetric(), new TokenMetric(), new NestingMetric()};
+	}
+
+	/**
+	 * Returns the metrics.
+	 *
+	 * @return the metrics.
+	 */
+	public Metric[] getMetrics()
+	{
+		return metrics.clone();
+	}
+
+	/**
+	 * Returns the ratio of comment lines to code and comment lines in all scanned files.
+	 *
+	 * @return the ratio between 0 and 1.
+	 */
+	public double getCommentDensity()
+	{
+		long lines = getSrcLinesLong()+getCommentLinesLong();
+		return lines==0 ? 0 : getCommentLinesLong()/(double)lines;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		if(metrics!=null)
+		{
+			for(Metric m : metrics)
+			{
+				m.reset();
+			}
+		}
+	}
+
+	/**
+	 * Analyzes a source code file.
+	 *
+	 * @param f the file.
+	 */
+	@Override
+	public void handleFile(File f)
+	{
+		for(Metric m : metrics)
+		{
+			m.beginFile();
+		}
+		super.handleFile(f);
+	}
+
+	/**
+	 * Analyzes the content of a source code file.
+	 *
+	 * @param f the file.
+	 * @param content the content of the file.
+	 */
+	@Override
+	public void handleContent(File f, CharSequence content)
+	{
+		for(Metric m : metrics)
+		{
+			m.beginFile();
+		}
+		super.handleContent(f, content);
+	}
+
+	@Override
+	void lineScanned(int flags)
+	{
+		for(Metric m : metrics)
+		{
+			m.endLine(flags);
+		}
+	}
+
+	@Override
+	public String[] getMetricNames()
+	{
+		String[] names = super.getMetricNames();
+		int base = names.length;
+		names = Arrays.copyOf(names, base+metrics.length);
+		for(int i=0; i<metrics.length; i++)
+		{
+			names[base+i] = metrics[i].getName();
+		}
+		return names;
+	}
+
+	@Override
+	public long[] getMetricValues()
+	{
+		long[] values = super.getMetricValues();
+		int base = values.length-metrics.length;
+		for(int i=0; i<metrics.length; i++)
+		{
+			values[base+i] = metrics[i].getValue();
+		}
+		return values;
+	}
+
+	@Override
+	public void addMetricValues(long[] values)
+	{
+		super.addMetricValues(values);
+		int base = values.length-metrics.length;
+		for(int i=0; i<metrics.length; i++)
+		{
+			metrics[i].addValue(values[base+i]);
+		}
+	}
+
+	@Override
+	public long[] getFileMetricValues()
+	{
+		long[] values = super.getFileMetricValues();
+		int base = values.length-metrics.length;
+		for(int i=0; i<metrics.length; i++)
+		{
+			if(!metrics[i].isAdditive())
+			{
+				values[base+i] = metrics[i].getFileValue();
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public boolean isAdditive(int metric)
+	{
+		int base = super.getMetricNames().length;
+		return metric<base||metrics[metric-base].isAdditive();
+	}
+
+	@Override
+	void joinChunk(SrcCounter chunk)
+	{
+		long[] values = chunk.getMetricValues();
+		values[0] = 0;
+		super.addMetricValues(values);
+		Metric[] others = ((SrcMetrics)chunk).metrics;
+		for(int i=0; i<metrics.length; i++)
+		{
+			metrics[i].join(others[i]);
+		}
+		setCarryState(chunk.getCarryState());
+	}
+
+	@Override
+	protected Object getCarryState()
+	{
+		ArrayList<Object> state = new ArrayList<Object>();
+		state.add(super.getCarryState());
+		for(Metric m : metrics)
+		{
+			state.add(m.getState());
+		}
+		return state;
+	}
+
+	@Override
+	protected void setCarryState(Object state)
+	{
+		ArrayList<?> list = (ArrayList<?>)state;
+		super.setCarryState(list.get(0));
+		for(int i=0; i<metrics.length; i++)
+		{
+			metrics[i].setState(list.get(i+1));
+		}
+	}
+
+	@Override
+	public SrcMetrics clone()
+	{
+		Metric[] copies = new Metric[metrics.length];
+		for(int i=0; i<copies.length; i++)
+		{
+			copies[i] = metrics[i].copy();
+		}
+		return copySettings(new SrcMetrics(getLanguage(), copies));
+	}
+}
\ No newline at end of file
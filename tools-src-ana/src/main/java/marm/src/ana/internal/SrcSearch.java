@@ -0,0 +1,460 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import marm.src.ana.index.IndexFilter;
+import marm.src.ana.index.TrigramIndex;
+import marm.src.ana.MultiExtensionSupportFileHandler;
+
+/**
+ * A read-only file handler that searches source code files for literals or regular expressions.
+ * Every match is passed with its position to a SearchSink as soon as it's found, so no results are collected.
+ * Literals are searched on the raw bytes of a file with one Aho-Corasick automaton for all literals and UTF-8 encoded.
+ * Regular expressions are applied to the content decoded with the default charset like the other handlers read it,
+ * or with another charset set before. Their matches are reported in the order of their positions, and columns are
+ * still counted in bytes. The number of reported matches can be limited per file and in total. When the total limit
+ * is reached, all following files are skipped without reading them.
+ * The limit is counted by all clones together. A copy for an independent analysis counts on its own, but it passes
+ * its matches to the same sink.
+ *
+ * @author Martin Armbruster
+ * @version 1.3
+ * @since 2.1
+ */
+public class SrcSearch extends MultiExtensionSupportFileHandler
+{
+	/**
+	 * Saves the literals or regular expressions.
+	 */
+	private final String[] keys;
+	/**
+	 * Saves the automaton for the literals or null if regular expressions are searched.
+	 */
+	private final ByteAutomaton automaton;
+	/**
+	 * Saves the compiled regular expressions or null if literals are searched.
+	 */
+	private final Pattern[] patterns;
+	/**
+	 * Saves the sink receiving all matches.
+	 */
+	private final SearchSink sink;
+	/**
+	 * Saves the number of reported matches. It's shared by all clones.
+	 */
+	private final AtomicLong matchCounter;
+	/**
+	 * Saves the maximum number of reported matches per file or 0 if it's unlimited.
+	 */
+	private int maxFileMatches;
+	/**
+	 * Saves the maximum number of reported matches in total or 0 if it's unlimited.
+	 */
+	private long maxMatches;
+	/**
+	 * Saves the filter for skipping files without matches or null if every file is read.
+	 */
+	private IndexFilter filter;
+	/**
+	 * Saves the charset for decoding files searched with regular expressions.
+	 */
+	private Charset charset;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param keys the literals or regular expressions to search for.
+	 * @param regex true if the keys are regular expressions. false if they are literals.
+	 * @param sink the sink receiving all matches.
+	 */
+	public SrcSearch(Collection<String> keys, boolean regex, SearchSink sink)
+	{
+		this.keys = keys.toArray(new String[keys.size()]);
+		this.sink = sink;
+		matchCounter = new AtomicLong();
+		charset = Charset.defaultCharset();
+		if(regex)
+		{
+			automaton = null;
+			patterns = new Pattern[this.keys.length];
+			for(int i=0; i<patterns.length; i++)
+			{
+				patterns[i] = Pattern.compile(this.keys[i]);
+			}
+		}
+		else
+		{
+			patterns = null;
+			byte[][] encoded = new byte[this.keys.length][];
+			for(int i=0; i<encoded.length; i++)
+			{
+				encoded[i] = this.keys[i].getBytes(StandardCharsets.UTF_8);
+			}
+			automaton = new ByteAutomaton(encoded);
+		}
+	}
+
+	/**
+	 * Creates a new instance sharing the configuration of another instance.
+	 *
+	 * @param other the other instance.
+	 * @param matchCounter the counter of the reported matches.
+	 */
+	private SrcSearch(SrcSearch other, AtomicLong matchCounter)
+	{
+		keys = other.keys;
+		automaton = other.automaton;
+		patterns = other.patterns;
+		sink = other.sink;
+		this.matchCounter = matchCounter;
+		maxFileMatches = other.maxFileMatches;
+		maxMatches = other.maxMatches;
+		filter = other.filter;
+		charset = other.charset;
+	}
+
+	/**
+	 * Sets the maximum number of matches reported per file.
+	 *
+	 * @param max the maximum number or 0 for no limit.
+	 */
+	public void setMaxFileMatches(int max)
+	{
+		maxFileMatches = max;
+	}
+
+	/**
+	 * Sets the maximum number of matches reported in total by this instance and all its clones.
+	 *
+	 * @param max the maximum number or 0 for no limit.
+	 */
+	public void setMaxMatches(long max)
+	{
+		maxMatches = max;
+	}
+
+	/**
+	 * Sets the charset for decoding files searched with regular expressions. Default is the default charset.
+	 *
+	 * @param charset the charset.
+	 */
+	public void setCharset(Charset charset)
+	{
+		this.charset = charset;
+	}
+
+	/**
+	 * Sets a trigram index used to skip files that can't contain any key.
+	 *
+	 * @param index the index or null to read every file.
+	 */
+	public void setIndex(TrigramIndex index)
+	{
+		filter = index==null ? null : new IndexFilter(index, Arrays.asList(keys), patterns!=null);
+	}
+
+	/**
+	 * Returns the number of matches reported by this instance and all its clones.
+	 *
+	 * @return the number of reported matches.
+	 */
+	public long getMatchCount()
+	{
+		return Math.min(matchCounter.get(), maxMatches>0 ? maxMatches : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Checks if the total limit of matches is reached.
+	 *
+	 * @return true if no more matches are reported. false otherwise.
+	 */
+	public boolean isLimitReached()
+	{
+		return maxMatches>0&&matchCounter.get()>=maxMatches;
+	}
+
+	/**
+	 * Resets the number of reported matches.
+	 */
+	@Override
+	public void reset()
+	{
+		matchCounter.set(0);
+	}
+
+	/**
+	 * Searches a source code file.
+	 *
+	 * @param f the source code file.
+	 */
+	@Override
+	public void handleFile(File f)
+	{
+		if(isLimitReached()||filter!=null&&!filter.canContain(f))
+		{
+			return;
+		}
+		byte[] content;
+		try
+		{
+			content = Files.readAllBytes(f.toPath());
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+		Positions positions = new Positions(f, content);
+		if(automaton!=null)
+		{
+			searchLiterals(content, positions);
+		}
+		else
+		{
+			searchPatterns(content, positions);
+		}
+	}
+
+	/**
+	 * Searches all literals in the content of a file.
+	 *
+	 * @param content the content.
+	 * @param positions the positions for reporting matches.
+	 */
+	private void searchLiterals(byte[] content, Positions positions)
+	{
+		int state = 0;
+		for(int i=0; i<content.length; i++)
+		{
+			state = automaton.next(state, content[i]);
+			int[] found = automaton.matches(state);
+			if(found!=null)
+			{
+				for(int key : found)
+				{
+					if(!positions.report(i-automaton.length(key)+1, key))
+					{
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches all regular expressions in the content of a file and reports the matches in position order. Every
+	 * expression has its own matcher, and the match with the smallest start is reported next, so the search stops as
+	 * soon as a limit is reached.
+	 *
+	 * @param content the content.
+	 * @param positions the positions for reporting matches.
+	 */
+	private void searchPatterns(byte[] content, Positions positions)
+	{
+		CharBuffer text = CharBuffer.allocate((int)(content.length*(double)charset.newDecoder().maxCharsPerByte())+16);
+		int[] offsets = decode(content, text);
+		Matcher[] matchers = new Matcher[patterns.length];
+		int[] starts = new int[patterns.length];
+		for(int key=0; key<patterns.length; key++)
+		{
+			matchers[key] = patterns[key].matcher(text);
+			starts[key] = matchers[key].find() ? matchers[key].start() : -1;
+		}
+		while(true)
+		{
+			int next = -1;
+			for(int key=0; key<starts.length; key++)
+			{
+				if(starts[key]>=0&&(next<0||starts[key]<starts[next]))
+				{
+					next = key;
+				}
+			}
+			if(next<0||!positions.report(offsets[starts[next]], next))
+			{
+				return;
+			}
+			starts[next] = matchers[next].find() ? matchers[next].start() : -1;
+		}
+	}
+
+	/**
+	 * Decodes the content of a file with the charset and records the offset of the first byte of every character.
+	 * The bytes are passed to the decoder one by one, so malformed input replaced by a character keeps the offsets of
+	 * the following characters.
+	 *
+	 * @param content the content.
+	 * @param text the buffer receiving the characters. Afterwards, it's flipped.
+	 * @return the byte offset of every character and the length of the content after the last character.
+	 */
+	private int[] decode(byte[] content, CharBuffer text)
+	{
+		CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		int[] offsets = new int[text.capacity()+1];
+		ByteBuffer in = ByteBuffer.wrap(content);
+		for(int end=0; end<=content.length; end++)
+		{
+			in.limit(end);
+			int from = in.position();
+			int chars = text.position();
+			boolean last = end==content.length;
+			decoder.decode(in, text, last);
+			if(last)
+			{
+				decoder.flush(text);
+			}
+			Arrays.fill(offsets, chars, text.position(), from);
+		}
+		offsets[text.position()] = content.length;
+		text.flip();
+		return offsets;
+	}
+
+	/**
+	 * Creates a copy with its own match counter. The copies of all instances sharing a counter share a new one.
+	 *
+	 * @param copies maps the shared counters to the counters of the copies.
+	 * @return the copy.
+	 */
+	@Override
+	public SrcSearch copy(Map<Object, Object> copies)
+	{
+		AtomicLong copied = (AtomicLong)copies.get(matchCounter);
+		if(copied==null)
+		{
+			copied = new AtomicLong();
+			copies.put(matchCounter, copied);
+		}
+		return new SrcSearch(this, copied);
+	}
+
+	@Override
+	public SrcSearch clone()
+	{
+		return new SrcSearch(this, matchCounter);
+	}
+
+	/**
+	 * Converts byte offsets of one file into lines and columns and reports the matches.
+	 */
+	private final class Positions
+	{
+		/**
+		 * Saves the searched file.
+		 */
+		private final File file;
+		/**
+		 * Saves the content of the file.
+		 */
+		private final byte[] content;
+		/**
+		 * Saves the offsets of all line starts. They're computed with the first match.
+		 */
+		private int[] lineStarts;
+		/**
+		 * Saves the number of matches reported for the file.
+		 */
+		private int fileMatches;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param file the searched file.
+		 * @param content the content of the file.
+		 */
+		Positions(File file, byte[] content)
+		{
+			this.file = file;
+			this.content = content;
+		}
+
+		/**
+		 * Reports a match if no limit is reached.
+		 *
+		 * @param offset the offset of the first matched byte.
+		 * @param key the index of the matched key.
+		 * @return true if the search in the file continues. false if a limit is reached.
+		 */
+		boolean report(int offset, int key)
+		{
+			long total = matchCounter.incrementAndGet();
+			if(maxMatches>0&&total>maxMatches)
+			{
+				return false;
+			}
+			if(lineStarts==null)
+			{
+				lineStarts = computeLineStarts();
+			}
+			int line = Arrays.binarySearch(lineStarts, offset);
+			if(line<0)
+			{
+				line = -line-2;
+			}
+			sink.match(file, line+1, offset-lineStarts[line]+1, keys[key]);
+			fileMatches++;
+			return (maxFileMatches==0||fileMatches<maxFileMatches)&&(maxMatches==0||total<maxMatches);
+		}
+
+		/**
+		 * Computes the offsets of all line starts.
+		 *
+		 * @return the offsets.
+		 */
+		private int[] computeLineStarts()
+		{
+			int lines = 1;
+			for(byte b : content)
+			{
+				if(b=='\n')
+				{
+					lines++;
+				}
+			}
+			int[] starts = new int[lines];
+			int line = 1;
+			for(int i=0; i<content.length; i++)
+			{
+				if(content[i]=='\n')
+				{
+					starts[line++] = i+1;
+				}
+			}
+			return starts;
+		}
+	}
+}
\ No newline at end of file
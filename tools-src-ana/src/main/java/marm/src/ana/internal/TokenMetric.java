@@ -0,0 +1,121 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.internal;
+
+/**
+ * Counts the tokens outside of comments.
+ * Identifiers, keywords and numbers count as one token each, every other visible character counts as one token, and
+ * a string counts as one token even if it spans several lines.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public class TokenMetric extends Metric
+{
+	/**
+	 * Saves the number of tokens in all scanned files.
+	 */
+	private long tokens;
+	/**
+	 * Indicates if the last segment was a string, so a following string segment continues it.
+	 */
+	private boolean inString;
+
+	@Override
+	public String getName()
+	{
+		return "tokens";
+	}
+
+	@Override
+	public void beginFile()
+	{
+		inString = false;
+	}
+
+	@Override
+	public void segment(CharSequence line, int start, int end, int kind)
+	{
+		if(kind==STRING)
+		{
+			if(!inString)
+			{
+				tokens++;
+			}
+			inString = true;
+			return;
+		}
+		if(kind==COMMENT)
+		{
+			return;
+		}
+		inString = false;
+		boolean inWord = false;
+		for(int i=start; i<end; i++)
+		{
+			char c = line.charAt(i);
+			boolean word = Character.isLetterOrDigit(c)||c=='_'||c=='$';
+			if(word&&!inWord||!word&&!Character.isWhitespace(c))
+			{
+				tokens++;
+			}
+			inWord = word;
+		}
+	}
+
+	@Override
+	public long getValue()
+	{
+		return tokens;
+	}
+
+	@Override
+	public void addValue(long value)
+	{
+		tokens += value;
+	}
+
+	@Override
+	public void reset()
+	{
+		tokens = 0;
+		inString = false;
+	}
+
+	@Override
+	public Object getState()
+	{
+		return inString;
+	}
+
+	@Override
+	public void setState(Object state)
+	{
+		inString = (Boolean)state;
+	}
+
+	@Override
+	public TokenMetric copy()
+	{
+		return new TokenMetric();
+	}
+}
\ No newline at end of file
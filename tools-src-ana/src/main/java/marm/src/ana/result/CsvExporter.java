@@ -0,0 +1,165 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.result;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import marm.src.ana.FileResultListener;
+import marm.src.ana.SrcFileHandler;
+
+/**
+ * Exports the results of single files as CSV while the directory is traversed.
+ * The first line is a header. Every following line is the record of one file and one handler with the path,
+ * extension and handler, the size in bytes, the duration in nanoseconds and one column per selected metric. Columns of
+ * metrics the handler doesn't provide are empty. Records are written through a fixed buffer, so the memory use
+ * doesn't depend on the number of files. The exporter has to be closed after the analysis.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public final class CsvExporter implements FileResultListener, Closeable
+{
+	/**
+	 * Saves the writer for the records.
+	 */
+	private final RecordWriter out;
+	/**
+	 * Saves the names of the metric columns.
+	 */
+	private final String[] columns;
+	/**
+	 * Saves the names of all handler types.
+	 */
+	private final HashMap<Class<?>, String> handlerNames;
+	/**
+	 * Saves for all handler types the index of the handler metric of every column or -1.
+	 */
+	private final HashMap<Class<?>, int[]> columnMappings;
+
+	/**
+	 * Creates a new exporter, truncates the file and writes the header.
+	 *
+	 * @param f the file.
+	 * @param gzip true if the file is gzip-compressed.
+	 * @param metricNames the names of the metric columns.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public CsvExporter(File f, boolean gzip, String... metricNames) throws IOException
+	{
+		out = new RecordWriter(f, gzip);
+		columns = metricNames.clone();
+		handlerNames = new HashMap<Class<?>, String>();
+		columnMappings = new HashMap<Class<?>, int[]>();
+		out.writeAscii("path,extension,handler,bytes,nanos");
+		for(String column : columns)
+		{
+			out.writeByte(',');
+			out.writeCsv(column, 0, column.length());
+		}
+		out.writeByte('\n');
+	}
+
+	/**
+	 * Writes the record of a file.
+	 *
+	 * @param path the path of the file.
+	 * @param handler the handler that analyzed the file.
+	 * @param metricNames the names of the metrics.
+	 * @param values the metric values.
+	 * @param size the size of the file in bytes.
+	 * @param duration the duration of the analysis in nanoseconds.
+	 */
+	@Override
+	public synchronized void fileHandled(String path, SrcFileHandler handler, String[] metricNames, long[] values,
+			long size, long duration)
+	{
+		try
+		{
+			out.writeCsv(path, 0, path.length());
+			out.writeByte(',');
+			out.writeCsv(path, JsonLinesExporter.extensionStart(path), path.length());
+			out.writeByte(',');
+			String name = JsonLinesExporter.handlerName(handlerNames, handler);
+			out.writeCsv(name, 0, name.length());
+			out.writeByte(',');
+			out.writeLong(size);
+			out.writeByte(',');
+			out.writeLong(duration);
+			int[] mapping = mapping(handler, metricNames);
+			for(int c=0; c<mapping.length; c++)
+			{
+				out.writeByte(',');
+				if(mapping[c]>=0)
+				{
+					out.writeLong(values[mapping[c]]);
+				}
+			}
+			out.writeByte('\n');
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes all buffered records and closes the file.
+	 *
+	 * @throws IOException if the file cannot be written.
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		out.close();
+	}
+
+	/**
+	 * Returns the index of the handler metric of every column. The mapping is computed once per handler type.
+	 *
+	 * @param handler the handler.
+	 * @param metricNames the names of the handler metrics.
+	 * @return the indices or -1 for columns without metric.
+	 */
+	private int[] mapping(SrcFileHandler handler, String[] metricNames)
+	{
+		int[] mapping = columnMappings.get(handler.getClass());
+		if(mapping==null)
+		{
+			mapping = new int[columns.length];
+			for(int c=0; c<columns.length; c++)
+			{
+				mapping[c] = -1;
+				for(int m=0; m<metricNames.length; m++)
+				{
+					if(metricNames[m].equals(columns[c]))
+					{
+						mapping[c] = m;
+					}
+				}
+			}
+			columnMappings.put(handler.getClass(), mapping);
+		}
+		return mapping;
+	}
+}
\ No newline at end of file
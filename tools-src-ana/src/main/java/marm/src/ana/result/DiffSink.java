@@ -0,0 +1,58 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.result;
+
+/**
+ * Receives the differences between two snapshots in path order.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public interface DiffSink
+{
+	/**
+	 * Receives a file only contained in the newer snapshot.
+	 *
+	 * @param path the path of the file.
+	 * @param index the index of the file in the newer snapshot.
+	 */
+	void added(String path, int index);
+
+	/**
+	 * Receives a file only contained in the older snapshot.
+	 *
+	 * @param path the path of the file.
+	 * @param index the index of the file in the older snapshot.
+	 */
+	void removed(String path, int index);
+
+	/**
+	 * Receives a file contained in both snapshots with at least one changed metric value.
+	 *
+	 * @param path the path of the file.
+	 * @param oldIndex the index of the file in the older snapshot.
+	 * @param newIndex the index of the file in the newer snapshot.
+	 * @param deltas the changes of all metric values in the order of the metric names of the diff. The array is reused
+	 * for the next file.
+	 */
+	void changed(String path, int oldIndex, int newIndex, long[] deltas);
+}
\ No newline at end of file
@@ -0,0 +1,150 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.result;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import marm.src.ana.FileResultListener;
+import marm.src.ana.SrcFileHandler;
+
+/**
+ * Exports the results of single files as JSON Lines while the directory is traversed.
+ * Every record is one JSON object in one line with the path, extension and handler, the size in bytes, the duration
+ * in nanoseconds and an object with all metric values of the handler. Records are written through a fixed buffer,
+ * so the memory use doesn't depend on the number of files. The exporter has to be closed after the analysis.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public final class JsonLinesExporter implements FileResultListener, Closeable
+{
+	/**
+	 * Saves the writer for the records.
+	 */
+	private final RecordWriter out;
+	/**
+	 * Saves the names of all handler types.
+	 */
+	private final HashMap<Class<?>, String> handlerNames;
+
+	/**
+	 * Creates a new exporter and truncates the file.
+	 *
+	 * @param f the file.
+	 * @param gzip true if the file is gzip-compressed.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public JsonLinesExporter(File f, boolean gzip) throws IOException
+	{
+		out = new RecordWriter(f, gzip);
+		handlerNames = new HashMap<Class<?>, String>();
+	}
+
+	/**
+	 * Writes the record of a file.
+	 *
+	 * @param path the path of the file.
+	 * @param handler the handler that analyzed the file.
+	 * @param metricNames the names of the metrics.
+	 * @param values the metric values.
+	 * @param size the size of the file in bytes.
+	 * @param duration the duration of the analysis in nanoseconds.
+	 */
+	@Override
+	public synchronized void fileHandled(String path, SrcFileHandler handler, String[] metricNames, long[] values,
+			long size, long duration)
+	{
+		try
+		{
+			out.writeAscii("{\"path\":");
+			out.writeJson(path, 0, path.length());
+			out.writeAscii(",\"extension\":");
+			out.writeJson(path, extensionStart(path), path.length());
+			out.writeAscii(",\"handler\":");
+			String name = handlerName(handlerNames, handler);
+			out.writeJson(name, 0, name.length());
+			out.writeAscii(",\"bytes\":");
+			out.writeLong(size);
+			out.writeAscii(",\"nanos\":");
+			out.writeLong(duration);
+			out.writeAscii(",\"metrics\":{");
+			for(int m=0; m<metricNames.length; m++)
+			{
+				if(m>0)
+				{
+					out.writeByte(',');
+				}
+				out.writeJson(metricNames[m], 0, metricNames[m].length());
+				out.writeByte(':');
+				out.writeLong(values[m]);
+			}
+			out.writeAscii("}}\n");
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes all buffered records and closes the file.
+	 *
+	 * @throws IOException if the file cannot be written.
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		out.close();
+	}
+
+	/**
+	 * Returns the start of the extension of a path. The extension starts with the last '.' of the file name.
+	 *
+	 * @param path the path.
+	 * @return the index of the '.' or the length of the path if the file name has no extension.
+	 */
+	static int extensionStart(String path)
+	{
+		int dot = path.lastIndexOf('.');
+		return dot>path.lastIndexOf('/') ? dot : path.length();
+	}
+
+	/**
+	 * Returns the simple class name of a handler. The names are computed once per type.
+	 *
+	 * @param names the names computed so far.
+	 * @param handler the handler.
+	 * @return the name.
+	 */
+	static String handlerName(HashMap<Class<?>, String> names, SrcFileHandler handler)
+	{
+		String name = names.get(handler.getClass());
+		if(name==null)
+		{
+			name = handler.getClass().getSimpleName();
+			names.put(handler.getClass(), name);
+		}
+		return name;
+	}
+}
\ No newline at end of file
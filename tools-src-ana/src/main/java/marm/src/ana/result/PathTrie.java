@@ -0,0 +1,353 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.result;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Interns paths separated by '/' as nodes of a trie, so common directories are stored only once.
+ * Every node is a path segment with a parent node. Equal segment names are interned, and the children of all nodes are
+ * found via one open-addressing hash table keyed by parent and segment, so no object is created per node.
+ * A parent is always created before its children and has a smaller index. Node 0 is the root with the empty path.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class PathTrie
+{
+	/**
+	 * Saves all distinct segment names.
+	 */
+	private final ArrayList<String> segments;
+	/**
+	 * Saves the ids of all segment names.
+	 */
+	private final HashMap<String, Integer> segmentIds;
+	/**
+	 * Saves the parent of every node.
+	 */
+	private int[] parents;
+	/**
+	 * Saves the segment id of every node.
+	 */
+	private int[] names;
+	/**
+	 * Saves the depth of every node. The root has depth 0.
+	 */
+	private int[] depths;
+	/**
+	 * Saves the keys of the child table. A key combines the parent node and the segment id.
+	 */
+	private long[] keys;
+	/**
+	 * Saves the child nodes plus 1 of the child table. 0 marks an empty slot.
+	 */
+	private int[] children;
+	/**
+	 * Saves the number of nodes.
+	 */
+	private int count;
+
+	/**
+	 * Creates a new trie containing only the root.
+	 */
+	PathTrie()
+	{
+		segments = new ArrayList<String>();
+		segmentIds = new HashMap<String, Integer>();
+		parents = new int[64];
+		names = new int[64];
+		depths = new int[64];
+		keys = new long[128];
+		children = new int[128];
+		parents[0] = -1;
+		names[0] = -1;
+		count = 1;
+	}
+
+	/**
+	 * Returns the node of a path and creates it and its missing ancestors if necessary.
+	 *
+	 * @param path the path with segments separated by '/'.
+	 * @return the node.
+	 */
+	int intern(String path)
+	{
+		int node = 0;
+		int start = 0;
+		while(start<path.length())
+		{
+			int end = path.indexOf('/', start);
+			if(end<0)
+			{
+				end = path.length();
+			}
+			if(end>start)
+			{
+				node = child(node, segmentId(path.substring(start, end), true), true);
+			}
+			start = end+1;
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the node of a path without creating it.
+	 *
+	 * @param path the path with segments separated by '/'.
+	 * @return the node or -1 if the path isn't contained.
+	 */
+	int find(String path)
+	{
+		int node = 0;
+		int start = 0;
+		while(start<path.length()&&node>=0)
+		{
+			int end = path.indexOf('/', start);
+			if(end<0)
+			{
+				end = path.length();
+			}
+			if(end>start)
+			{
+				int id = segmentId(path.substring(start, end), false);
+				node = id<0 ? -1 : child(node, id, false);
+			}
+			start = end+1;
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the number of nodes including the root.
+	 *
+	 * @return the number of nodes.
+	 */
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the parent of a node.
+	 *
+	 * @param node the node.
+	 * @return the parent or -1 for the root.
+	 */
+	int getParent(int node)
+	{
+		return parents[node];
+	}
+
+	/**
+	 * Returns the depth of a node, i. e. the number of its segments.
+	 *
+	 * @param node the node.
+	 * @return the depth.
+	 */
+	int getDepth(int node)
+	{
+		return depths[node];
+	}
+
+	/**
+	 * Returns the segment id of a node.
+	 *
+	 * @param node the node.
+	 * @return the segment id or -1 for the root.
+	 */
+	int getSegmentId(int node)
+	{
+		return names[node];
+	}
+
+	/**
+	 * Returns the name of a segment.
+	 *
+	 * @param id the segment id.
+	 * @return the name.
+	 */
+	String getSegment(int id)
+	{
+		return segments.get(id);
+	}
+
+	/**
+	 * Returns the number of distinct segment names.
+	 *
+	 * @return the number of segment names.
+	 */
+	int getSegmentCount()
+	{
+		return segments.size();
+	}
+
+	/**
+	 * Returns the ancestor of a node at a depth.
+	 *
+	 * @param node the node.
+	 * @param depth the depth of the ancestor. If it's at least the depth of the node, the node itself is returned.
+	 * @return the ancestor.
+	 */
+	int getAncestor(int node, int depth)
+	{
+		int n = node;
+		while(depths[n]>depth)
+		{
+			n = parents[n];
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the complete path of a node.
+	 *
+	 * @param node the node.
+	 * @return the path with segments separated by '/'.
+	 */
+	String getPath(int node)
+	{
+		String[] parts = new String[depths[node]];
+		int n = node;
+		for(int i=parts.length-1; i>=0; i--)
+		{
+			parts[i] = segments.get(names[n]);
+			n = parents[n];
+		}
+		StringBuilder path = new StringBuilder();
+		for(int i=0; i<parts.length; i++)
+		{
+			if(i>0)
+			{
+				path.append('/');
+			}
+			path.append(parts[i]);
+		}
+		return path.toString();
+	}
+
+	/**
+	 * Returns the id of a segment name.
+	 *
+	 * @param segment the name.
+	 * @param create true if an unknown name gets a new id.
+	 * @return the id or -1 if the name is unknown and not created.
+	 */
+	private int segmentId(String segment, boolean create)
+	{
+		Integer id = segmentIds.get(segment);
+		if(id!=null)
+		{
+			return id;
+		}
+		if(!create)
+		{
+			return -1;
+		}
+		segmentIds.put(segment, segments.size());
+		segments.add(segment);
+		return segments.size()-1;
+	}
+
+	/**
+	 * Returns the child of a node for a segment.
+	 *
+	 * @param parent the parent node.
+	 * @param segment the segment id.
+	 * @param create true if a missing child is created.
+	 * @return the child or -1 if it's missing and not created.
+	 */
+	private int child(int parent, int segment, boolean create)
+	{
+		long key = (long)parent<<32|segment;
+		int mask = keys.length-1;
+		int slot = hash(key)&mask;
+		while(children[slot]!=0)
+		{
+			if(keys[slot]==key)
+			{
+				return children[slot]-1;
+			}
+			slot = slot+1&mask;
+		}
+		if(!create)
+		{
+			return -1;
+		}
+		if(count==parents.length)
+		{
+			parents = Arrays.copyOf(parents, count*2);
+			names = Arrays.copyOf(names, count*2);
+			depths = Arrays.copyOf(depths, count*2);
+		}
+		parents[count] = parent;
+		names[count] = segment;
+		depths[count] = depths[parent]+1;
+		keys[slot] = key;
+		children[slot] = count+1;
+		count++;
+		if(count*2>keys.length)
+		{
+			rehash();
+		}
+		return count-1;
+	}
+
+	/**
+	 * Doubles the size of the child table.
+	 */
+	private void rehash()
+	{
+		long[] oldKeys = keys;
+		int[] oldChildren = children;
+		keys = new long[oldKeys.length*2];
+		children = new int[oldKeys.length*2];
+		int mask = keys.length-1;
+		for(int i=0; i<oldKeys.length; i++)
+		{
+			if(oldChildren[i]!=0)
+			{
+				int slot = hash(oldKeys[i])&mask;
+				while(children[slot]!=0)
+				{
+					slot = slot+1&mask;
+				}
+				keys[slot] = oldKeys[i];
+				children[slot] = oldChildren[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of a key.
+	 *
+	 * @param key the key.
+	 * @return the hash.
+	 */
+	private static int hash(long key)
+	{
+		long h = key*0x9E3779B97F4A7C15L;
+		return (int)(h>>>32);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,318 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.result;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes text records through a fixed buffer to a channel, optionally gzip-compressed.
+ * Strings are encoded to UTF-8 and numbers are converted to digits directly into the buffer, so writing a record
+ * creates no objects. The buffer is written when it's full, so the memory use doesn't depend on the number of records.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+final class RecordWriter implements Closeable
+{
+	/**
+	 * Size of the buffer in bytes.
+	 */
+	private static final int BUFFER_SIZE = 1<<16;
+	/**
+	 * Hexadecimal digits for escaped characters.
+	 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	/**
+	 * Saves the channel of the file.
+	 */
+	private final WritableByteChannel channel;
+	/**
+	 * Saves the content of the buffer.
+	 */
+	private final byte[] bytes;
+	/**
+	 * Saves the buffer wrapping the bytes for writing them to the channel.
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * Saves the number of used bytes.
+	 */
+	private int count;
+
+	/**
+	 * Creates a new writer and truncates the file.
+	 *
+	 * @param f the file.
+	 * @param gzip true if the file is gzip-compressed.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	RecordWriter(File f, boolean gzip) throws IOException
+	{
+		if(gzip)
+		{
+			channel = Channels.newChannel(new GZIPOutputStream(new FileOutputStream(f), BUFFER_SIZE));
+		}
+		else
+		{
+			channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+		bytes = new byte[BUFFER_SIZE];
+		buffer = ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * Writes a string of ASCII characters without escaping, e. g. field names and separators.
+	 *
+	 * @param ascii the string.
+	 * @throws IOException if the file cannot be written.
+	 */
+	void writeAscii(String ascii) throws IOException
+	{
+		for(int i=0; i<ascii.length(); i++)
+		{
+			writeByte(ascii.charAt(i));
+		}
+	}
+
+	/**
+	 * Writes a number as decimal digits.
+	 *
+	 * @param value the number.
+	 * @throws IOException if the file cannot be written.
+	 */
+	void writeLong(long value) throws IOException
+	{
+		if(value==Long.MIN_VALUE)
+		{
+			writeAscii("-9223372036854775808");
+			return;
+		}
+		ensure(20);
+		long v = value;
+		if(v<0)
+		{
+			bytes[count++] = '-';
+			v = -v;
+		}
+		int end = count+digits(v);
+		for(int i=end-1; i>=count; i--)
+		{
+			bytes[i] = (byte)('0'+v%10);
+			v /= 10;
+		}
+		count = end;
+	}
+
+	/**
+	 * Writes a part of a string as JSON string literal with quotes.
+	 *
+	 * @param s the string.
+	 * @param start the index of the first character.
+	 * @param end the index after the last character.
+	 * @throws IOException if the file cannot be written.
+	 */
+	void writeJson(CharSequence s, int start, int end) throws IOException
+	{
+		writeByte('"');
+		for(int i=start; i<end; i++)
+		{
+			char c = s.charAt(i);
+			if(c=='"'||c=='\\')
+			{
+				writeByte('\\');
+				writeByte(c);
+			}
+			else if(c<0x20)
+			{
+				writeAscii("\\u00");
+				writeByte(HEX[c>>4]);
+				writeByte(HEX[c&0xf]);
+			}
+			else
+			{
+				i = writeChar(s, i);
+			}
+		}
+		writeByte('"');
+	}
+
+	/**
+	 * Writes a part of a string as CSV field. The field is quoted if it contains a separator, a quote or a line break.
+	 *
+	 * @param s the string.
+	 * @param start the index of the first character.
+	 * @param end the index after the last character.
+	 * @throws IOException if the file cannot be written.
+	 */
+	void writeCsv(CharSequence s, int start, int end) throws IOException
+	{
+		boolean quoted = false;
+		for(int i=start; i<end&&!quoted; i++)
+		{
+			char c = s.charAt(i);
+			quoted = c==','||c=='"'||c=='\n'||c=='\r';
+		}
+		if(quoted)
+		{
+			writeByte('"');
+		}
+		for(int i=start; i<end; i++)
+		{
+			if(s.charAt(i)=='"')
+			{
+				writeByte('"');
+			}
+			i = writeChar(s, i);
+		}
+		if(quoted)
+		{
+			writeByte('"');
+		}
+	}
+
+	/**
+	 * Writes one character encoded to UTF-8. A surrogate pair is written as one code point.
+	 *
+	 * @param s the string.
+	 * @param index the index of the character.
+	 * @return the index of the last written character.
+	 * @throws IOException if the file cannot be written.
+	 */
+	private int writeChar(CharSequence s, int index) throws IOException
+	{
+		char c = s.charAt(index);
+		ensure(4);
+		if(c<0x80)
+		{
+			bytes[count++] = (byte)c;
+		}
+		else if(c<0x800)
+		{
+			bytes[count++] = (byte)(0xc0|c>>6);
+			bytes[count++] = (byte)(0x80|c&0x3f);
+		}
+		else if(Character.isHighSurrogate(c)&&index+1<s.length()&&Character.isLowSurrogate(s.charAt(index+1)))
+		{
+			int cp = Character.toCodePoint(c, s.charAt(index+1));
+			bytes[count++] = (byte)(0xf0|cp>>18);
+			bytes[count++] = (byte)(0x80|cp>>12&0x3f);
+			bytes[count++] = (byte)(0x80|cp>>6&0x3f);
+			bytes[count++] = (byte)(0x80|cp&0x3f);
+			return index+1;
+		}
+		else
+		{
+			bytes[count++] = (byte)(0xe0|c>>12);
+			bytes[count++] = (byte)(0x80|c>>6&0x3f);
+			bytes[count++] = (byte)(0x80|c&0x3f);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes one ASCII character.
+	 *
+	 * @param c the character.
+	 * @throws IOException if the file cannot be written.
+	 */
+	void writeByte(char c) throws IOException
+	{
+		ensure(1);
+		bytes[count++] = (byte)c;
+	}
+
+	/**
+	 * Returns the number of decimal digits of a number.
+	 *
+	 * @param value the non-negative number.
+	 * @return the number of digits.
+	 */
+	private static int digits(long value)
+	{
+		int n = 1;
+		long v = value;
+		while(v>=10)
+		{
+			v /= 10;
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Writes the buffer if it has less free space than needed.
+	 *
+	 * @param n the needed space.
+	 * @throws IOException if the file cannot be written.
+	 */
+	private void ensure(int n) throws IOException
+	{
+		if(count+n>bytes.length)
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffer to the channel.
+	 *
+	 * @throws IOException if the file cannot be written.
+	 */
+	void flush() throws IOException
+	{
+		buffer.clear();
+		buffer.limit(count);
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		count = 0;
+	}
+
+	/**
+	 * Writes the remaining bytes and closes the file.
+	 *
+	 * @throws IOException if the file cannot be written.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+}
\ No newline at end of file
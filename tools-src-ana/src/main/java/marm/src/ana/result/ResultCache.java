@@ -0,0 +1,185 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.result;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe in-memory cache for the metric values of single files, e. g. for a long-running process analyzing the
+ * same directories repeatedly. An entry is valid as long as size and modification time of the file are unchanged.
+ * Analyses with differently configured handlers, e. g. several sessions of a daemon, can share a cache.
+ *
+ * @author Martin Armbruster
+ * @version 1.1
+ * @since 2.1
+ */
+public final class ResultCache
+{
+	/**
+	 * Saves the entries by file and handler.
+	 */
+	private final ConcurrentHashMap<String, Entry> entries;
+	/**
+	 * Saves the number of valid entries found.
+	 */
+	private final AtomicLong hits;
+	/**
+	 * Saves the number of missing or outdated entries.
+	 */
+	private final AtomicLong misses;
+
+	/**
+	 * Creates a new empty cache.
+	 */
+	public ResultCache()
+	{
+		entries = new ConcurrentHashMap<String, Entry>();
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+	}
+
+	/**
+	 * Creates the key of an entry. The metric names are part of the key, so handlers of the same type configured with
+	 * different metrics don't get each other's values.
+	 *
+	 * @param path the absolute path of the file.
+	 * @param handlerType the name of the handler type.
+	 * @param extension the extension of the handler.
+	 * @param metrics the names of the metrics of the handler.
+	 * @return the key.
+	 */
+	public static String key(String path, String handlerType, String extension, String[] metrics)
+	{
+		StringBuilder key = new StringBuilder(path).append('\0').append(handlerType).append('\0').append(extension);
+		for(String metric : metrics)
+		{
+			key.append('\0').append(metric);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the cached metric values if the file is unchanged.
+	 *
+	 * @param key the key of the entry.
+	 * @param size the current size of the file.
+	 * @param modified the current modification time of the file.
+	 * @return the metric values, which must not be changed, or null if there is no valid entry.
+	 */
+	public long[] get(String key, long size, long modified)
+	{
+		Entry entry = entries.get(key);
+		if(entry==null||entry.size!=size||entry.modified!=modified)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.values;
+	}
+
+	/**
+	 * Saves the metric values of a file.
+	 *
+	 * @param key the key of the entry.
+	 * @param size the size of the file.
+	 * @param modified the modification time of the file.
+	 * @param values the metric values. They must not be changed afterwards.
+	 */
+	public void put(String key, long size, long modified, long[] values)
+	{
+		entries.put(key, new Entry(size, modified, values));
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return the number of entries.
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of valid entries found since the last clearing.
+	 *
+	 * @return the number of hits.
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of missing or outdated entries since the last clearing.
+	 *
+	 * @return the number of misses.
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Removes all entries and resets the statistics.
+	 */
+	public void clear()
+	{
+		entries.clear();
+		hits.set(0);
+		misses.set(0);
+	}
+
+	/**
+	 * The cached metric values of a file with the file state they're valid for.
+	 */
+	private static final class Entry
+	{
+		/**
+		 * Saves the size of the file.
+		 */
+		private final long size;
+		/**
+		 * Saves the modification time of the file.
+		 */
+		private final long modified;
+		/**
+		 * Saves the metric values.
+		 */
+		private final long[] values;
+
+		/**
+		 * Creates a new entry.
+		 *
+		 * @param size the size of the file.
+		 * @param modified the modification time of the file.
+		 * @param values the metric values.
+		 */
+		Entry(long size, long modified, long[] values)
+		{
+			this.size = size;
+			this.modified = modified;
+			this.values = values;
+		}
+	}
+}
\ No newline at end of file
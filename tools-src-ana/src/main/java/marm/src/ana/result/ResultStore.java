@@ -0,0 +1,521 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.result;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A compact store for metric values of single files, e. g. for millions of files.
+ * The paths are interned in a trie, so common directories are stored only once, and every metric is saved as a column
+ * of primitive values. Every file is a row. The columns are kept on the heap or optionally off-heap in direct buffers,
+ * so they don't count towards the heap size and aren't traversed by the garbage collector.
+ * Directories and extensions are rolled up and the rows with the largest or smallest values are selected without
+ * creating an object per file. Metrics that aren't additive, e. g. a maximum nesting depth, are rolled up by the
+ * value with the largest magnitude instead of their sum. That's the maximum of non-negative values, and for the
+ * differences of two versions, a large decrease isn't hidden by a small increase.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public final class ResultStore
+{
+	/**
+	 * Saves the names of the metrics.
+	 */
+	private final String[] metricNames;
+	/**
+	 * Indicates for every metric if it's rolled up by its maximum.
+	 */
+	private final boolean[] maxima;
+	/**
+	 * Indicates if the columns are saved in direct buffers.
+	 */
+	private final boolean offHeap;
+	/**
+	 * Saves the interned paths.
+	 */
+	private final PathTrie trie;
+	/**
+	 * Saves the values of every metric.
+	 */
+	private LongBuffer[] columns;
+	/**
+	 * Saves the trie node of every row.
+	 */
+	private int[] rowNodes;
+	/**
+	 * Saves the row plus 1 of every trie node. 0 marks a directory.
+	 */
+	private int[] nodeRows;
+	/**
+	 * Saves the number of rows.
+	 */
+	private int rows;
+
+	/**
+	 * Creates a new store with the columns on the heap.
+	 *
+	 * @param metricNames the names of the metrics.
+	 */
+	public ResultStore(String... metricNames)
+	{
+		this(false, metricNames);
+	}
+
+	/**
+	 * Creates a new store.
+	 *
+	 * @param offHeap true if the columns are saved in direct buffers. false if they're saved on the heap.
+	 * @param metricNames the names of the metrics.
+	 */
+	public ResultStore(boolean offHeap, String... metricNames)
+	{
+		this.metricNames = metricNames.clone();
+		this.offHeap = offHeap;
+		maxima = new boolean[metricNames.length];
+		trie = new PathTrie();
+		columns = new LongBuffer[metricNames.length];
+		for(int m=0; m<columns.length; m++)
+		{
+			columns[m] = allocate(1024);
+		}
+		rowNodes = new int[1024];
+		nodeRows = new int[1024];
+	}
+
+	/**
+	 * Returns the names of the metrics.
+	 *
+	 * @return the names in column order.
+	 */
+	public String[] getMetricNames()
+	{
+		return metricNames.clone();
+	}
+
+	/**
+	 * Returns the column of a metric.
+	 *
+	 * @param metric the name of the metric.
+	 * @return the column or -1 if the store doesn't contain the metric.
+	 */
+	public int indexOf(String metric)
+	{
+		for(int m=0; m<metricNames.length; m++)
+		{
+			if(metricNames[m].equals(metric))
+			{
+				return m;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Rolls a metric up by the value with the largest magnitude instead of its sum, e. g. because it isn't additive.
+	 *
+	 * @param metric the column of the metric.
+	 */
+	public void setMaximum(int metric)
+	{
+		maxima[metric] = true;
+	}
+
+	/**
+	 * Returns the row of a file and adds it with all values 0 if it isn't contained.
+	 *
+	 * @param path the path of the file with segments separated by '/', usually relative to the analyzed directory.
+	 * @return the row.
+	 */
+	public int add(String path)
+	{
+		int node = trie.intern(path);
+		if(node>=nodeRows.length)
+		{
+			nodeRows = Arrays.copyOf(nodeRows, Math.max(node+1, nodeRows.length*2));
+		}
+		if(nodeRows[node]>0)
+		{
+			return nodeRows[node]-1;
+		}
+		if(rows==rowNodes.length)
+		{
+			rowNodes = Arrays.copyOf(rowNodes, rows*2);
+			for(int m=0; m<columns.length; m++)
+			{
+				LongBuffer old = columns[m];
+				columns[m] = allocate(rows*2);
+				old.clear();
+				columns[m].put(old);
+				columns[m].clear();
+			}
+		}
+		rowNodes[rows] = node;
+		nodeRows[node] = rows+1;
+		return rows++;
+	}
+
+	/**
+	 * Adds a value to a metric of a file.
+	 *
+	 * @param row the row of the file.
+	 * @param metric the column of the metric.
+	 * @param value the value to add.
+	 */
+	public void addValue(int row, int metric, long value)
+	{
+		columns[metric].put(row, columns[metric].get(row)+value);
+	}
+
+	/**
+	 * Raises a metric of a file to a value if the value is larger, e. g. to keep the maximum of several handlers.
+	 *
+	 * @param row the row of the file.
+	 * @param metric the column of the metric.
+	 * @param value the value.
+	 */
+	public void maxValue(int row, int metric, long value)
+	{
+		columns[metric].put(row, Math.max(columns[metric].get(row), value));
+	}
+
+	/**
+	 * Returns the number of files.
+	 *
+	 * @return the number of rows.
+	 */
+	public int getRowCount()
+	{
+		return rows;
+	}
+
+	/**
+	 * Returns the row of a file.
+	 *
+	 * @param path the path of the file with segments separated by '/'.
+	 * @return the row or -1 if the file isn't contained.
+	 */
+	public int find(String path)
+	{
+		int node = trie.find(path);
+		return node<0||node>=nodeRows.length ? -1 : nodeRows[node]-1;
+	}
+
+	/**
+	 * Returns the path of a file.
+	 *
+	 * @param row the row of the file.
+	 * @return the path with segments separated by '/'.
+	 */
+	public String getPath(int row)
+	{
+		return trie.getPath(rowNodes[row]);
+	}
+
+	/**
+	 * Returns a metric value of a file.
+	 *
+	 * @param row the row of the file.
+	 * @param metric the column of the metric.
+	 * @return the value.
+	 */
+	public long getValue(int row, int metric)
+	{
+		return columns[metric].get(row);
+	}
+
+	/**
+	 * Sums the metric values of all files in a directory and its subdirectories.
+	 *
+	 * @param directory the path of the directory with segments separated by '/'. The empty path sums all files.
+	 * @return the sums in column order. All sums are 0 if the directory isn't contained.
+	 */
+	public long[] rollup(String directory)
+	{
+		long[] sums = new long[metricNames.length];
+		int dir = trie.find(directory);
+		if(dir<0)
+		{
+			return sums;
+		}
+		int depth = trie.getDepth(dir);
+		for(int row=0; row<rows; row++)
+		{
+			if(trie.getAncestor(rowNodes[row], depth)==dir&&rowNodes[row]!=dir)
+			{
+				addRow(sums, 0, row);
+			}
+		}
+		return sums;
+	}
+
+	/**
+	 * Sums the metric values of all files by directory. Every file is assigned to its directory, or to the ancestor
+	 * of its directory at the given depth if the directory is deeper.
+	 *
+	 * @param depth the maximum depth of the directories. 0 sums all files.
+	 * @return the sums in column order by directory path, in the order the directories were added.
+	 */
+	public Map<String, long[]> rollupByDirectory(int depth)
+	{
+		int m = metricNames.length;
+		long[] sums = new long[trie.size()*m];
+		boolean[] used = new boolean[trie.size()];
+		for(int row=0; row<rows; row++)
+		{
+			int dir = trie.getAncestor(trie.getParent(rowNodes[row]), depth);
+			used[dir] = true;
+			addRow(sums, dir*m, row);
+		}
+		Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+		for(int node=0; node<used.length; node++)
+		{
+			if(used[node])
+			{
+				result.put(trie.getPath(node), Arrays.copyOfRange(sums, node*m, node*m+m));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sums the metric values of all files by extension. The extension of a file starts with its last '.'. Files
+	 * without a '.' in their names are summed with the empty extension.
+	 *
+	 * @return the sums in column order by extension, in the order the extensions were added.
+	 */
+	public Map<String, long[]> rollupByExtension()
+	{
+		int[] extensionOfSegment = new int[trie.getSegmentCount()];
+		Arrays.fill(extensionOfSegment, -1);
+		Map<String, Integer> extensionIds = new LinkedHashMap<String, Integer>();
+		int m = metricNames.length;
+		long[] sums = new long[0];
+		for(int row=0; row<rows; row++)
+		{
+			int segment = trie.getSegmentId(rowNodes[row]);
+			if(extensionOfSegment[segment]<0)
+			{
+				String name = trie.getSegment(segment);
+				String extension = name.lastIndexOf('.')<0 ? "" : name.substring(name.lastIndexOf('.'));
+				Integer id = extensionIds.get(extension);
+				if(id==null)
+				{
+					id = extensionIds.size();
+					extensionIds.put(extension, id);
+					sums = Arrays.copyOf(sums, extensionIds.size()*m);
+				}
+				extensionOfSegment[segment] = id;
+			}
+			addRow(sums, extensionOfSegment[segment]*m, row);
+		}
+		Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+		for(Map.Entry<String, Integer> e : extensionIds.entrySet())
+		{
+			result.put(e.getKey(), Arrays.copyOfRange(sums, e.getValue()*m, e.getValue()*m+m));
+		}
+		return result;
+	}
+
+	/**
+	 * Selects the files with the largest or smallest values of a metric, e. g. the largest files.
+	 *
+	 * @param metric the column of the metric.
+	 * @param n the maximum number of selected files.
+	 * @param largest true if the largest values are selected. false if the smallest values are selected.
+	 * @return the rows of the selected files, ordered from the most extreme value on.
+	 */
+	public int[] top(int metric, int n, boolean largest)
+	{
+		return select(metric, -1, n, largest);
+	}
+
+	/**
+	 * Selects the files with the largest or smallest ratio of two metrics, e. g. the files with the fewest comment
+	 * lines per line. Files with a denominator of 0 are skipped.
+	 *
+	 * @param numerator the column of the numerator.
+	 * @param denominator the column of the denominator.
+	 * @param n the maximum number of selected files.
+	 * @param largest true if the largest ratios are selected. false if the smallest ratios are selected.
+	 * @return the rows of the selected files, ordered from the most extreme ratio on.
+	 */
+	public int[] topRatio(int numerator, int denominator, int n, boolean largest)
+	{
+		return select(numerator, denominator, n, largest);
+	}
+
+	/**
+	 * Selects the files with the most extreme scores with a bounded binary heap. The heap root is the least extreme
+	 * selected score, so it's replaced when a more extreme score is found.
+	 *
+	 * @param metric the column of the value or numerator.
+	 * @param denominator the column of the denominator or -1 if the values are compared.
+	 * @param n the maximum number of selected files.
+	 * @param largest true if the largest scores are selected.
+	 * @return the selected rows, ordered from the most extreme score on.
+	 */
+	private int[] select(int metric, int denominator, int n, boolean largest)
+	{
+		int[] heap = new int[Math.max(0, Math.min(n, rows))];
+		double[] scores = new double[heap.length];
+		int size = 0;
+		double sign = largest ? 1 : -1;
+		for(int row=0; row<rows&&heap.length>0; row++)
+		{
+			double score;
+			if(denominator<0)
+			{
+				score = sign*getValue(row, metric);
+			}
+			else if(getValue(row, denominator)!=0)
+			{
+				score = sign*getValue(row, metric)/getValue(row, denominator);
+			}
+			else
+			{
+				continue;
+			}
+			if(size<heap.length)
+			{
+				heap[size] = row;
+				scores[size] = score;
+				siftUp(heap, scores, size++);
+			}
+			else if(score>scores[0])
+			{
+				heap[0] = row;
+				scores[0] = score;
+				siftDown(heap, scores, 0, size);
+			}
+		}
+		int[] result = new int[size];
+		for(int i=size-1; i>=0; i--)
+		{
+			result[i] = heap[0];
+			heap[0] = heap[i];
+			scores[0] = scores[i];
+			siftDown(heap, scores, 0, i);
+		}
+		return result;
+	}
+
+	/**
+	 * Moves an entry of a min-heap up to its position.
+	 *
+	 * @param heap the rows.
+	 * @param scores the scores.
+	 * @param index the index of the entry.
+	 */
+	private static void siftUp(int[] heap, double[] scores, int index)
+	{
+		int i = index;
+		while(i>0&&scores[(i-1)/2]>scores[i])
+		{
+			swap(heap, scores, i, (i-1)/2);
+			i = (i-1)/2;
+		}
+	}
+
+	/**
+	 * Moves an entry of a min-heap down to its position.
+	 *
+	 * @param heap the rows.
+	 * @param scores the scores.
+	 * @param index the index of the entry.
+	 * @param size the size of the heap.
+	 */
+	private static void siftDown(int[] heap, double[] scores, int index, int size)
+	{
+		int i = index;
+		while(2*i+1<size)
+		{
+			int child = 2*i+1;
+			if(child+1<size&&scores[child+1]<scores[child])
+			{
+				child++;
+			}
+			if(scores[i]<=scores[child])
+			{
+				return;
+			}
+			swap(heap, scores, i, child);
+			i = child;
+		}
+	}
+
+	/**
+	 * Swaps two entries of a heap.
+	 *
+	 * @param heap the rows.
+	 * @param scores the scores.
+	 * @param i the first index.
+	 * @param j the second index.
+	 */
+	private static void swap(int[] heap, double[] scores, int i, int j)
+	{
+		int row = heap[i];
+		heap[i] = heap[j];
+		heap[j] = row;
+		double score = scores[i];
+		scores[i] = scores[j];
+		scores[j] = score;
+	}
+
+	/**
+	 * Adds the values of a row to sums or takes the value with the larger magnitude for metrics rolled up by it.
+	 *
+	 * @param sums the sums.
+	 * @param offset the index of the sum of the first metric.
+	 * @param row the row.
+	 */
+	private void addRow(long[] sums, int offset, int row)
+	{
+		for(int m=0; m<columns.length; m++)
+		{
+			long value = columns[m].get(row);
+			if(!maxima[m])
+			{
+				sums[offset+m] += value;
+			}
+			else if(Math.abs(value)>Math.abs(sums[offset+m]))
+			{
+				sums[offset+m] = value;
+			}
+		}
+	}
+
+	/**
+	 * Allocates a column.
+	 *
+	 * @param capacity the number of values.
+	 * @return the column with all values 0.
+	 */
+	private LongBuffer allocate(int capacity)
+	{
+		return offHeap ? ByteBuffer.allocateDirect(capacity*8).asLongBuffer() : LongBuffer.allocate(capacity);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,575 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana.result;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+
+/**
+ * A persistent, read-only snapshot of the results of single files, e. g. for comparing two releases.
+ * The snapshot file is memory-mapped and not parsed when it's opened. It consists of a header, the metric names, the
+ * offsets of all paths, the paths as UTF-8 bytes sorted by their bytes, and one column of values per metric.
+ * Because the paths are sorted, files are found by binary search, and two snapshots are compared by one merge-join
+ * over the raw path bytes. A snapshot file is limited to 2 GB.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public final class Snapshot implements Closeable
+{
+	/**
+	 * Magic number at the beginning of every snapshot file.
+	 */
+	static final int MAGIC = 0x53524553;
+	/**
+	 * Version of the snapshot file format.
+	 */
+	static final int VERSION = 1;
+	/**
+	 * Size of the file header in bytes.
+	 */
+	static final int HEADER_SIZE = 16;
+	/**
+	 * Saves the mapped file or null after closing.
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Saves the names of the metrics.
+	 */
+	private final String[] metricNames;
+	/**
+	 * Saves the number of files.
+	 */
+	private final int fileCount;
+	/**
+	 * Saves the position of the path offsets.
+	 */
+	private final int offsetTable;
+	/**
+	 * Saves the position of the path bytes.
+	 */
+	private final int pathTable;
+	/**
+	 * Saves the position of the first metric column.
+	 */
+	private final int columnTable;
+
+	/**
+	 * Creates a new instance for a mapped file.
+	 *
+	 * @param buffer the mapped file.
+	 * @throws IOException if the file is not a valid snapshot.
+	 */
+	private Snapshot(ByteBuffer buffer) throws IOException
+	{
+		this.buffer = buffer;
+		if(buffer.capacity()<HEADER_SIZE||buffer.getInt(0)!=MAGIC||buffer.getInt(4)!=VERSION)
+		{
+			throw new IOException("Not a snapshot or an unsupported version.");
+		}
+		metricNames = new String[buffer.getInt(8)];
+		fileCount = buffer.getInt(12);
+		int position = HEADER_SIZE;
+		for(int m=0; m<metricNames.length; m++)
+		{
+			byte[] name = new byte[buffer.getInt(position)];
+			ByteBuffer view = buffer.duplicate();
+			view.position(position+4);
+			view.get(name);
+			metricNames[m] = new String(name, StandardCharsets.UTF_8);
+			position += 4+name.length;
+		}
+		offsetTable = position;
+		pathTable = offsetTable+4*(fileCount+1);
+		columnTable = pathTable+buffer.getInt(offsetTable+4*fileCount);
+	}
+
+	/**
+	 * Opens a snapshot file.
+	 *
+	 * @param snapshotFile the snapshot file.
+	 * @return the opened snapshot.
+	 * @throws IOException if the file cannot be read or is not a valid snapshot.
+	 */
+	public static Snapshot open(File snapshotFile) throws IOException
+	{
+		FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ);
+		try
+		{
+			if(channel.size()>Integer.MAX_VALUE)
+			{
+				throw new IOException("The snapshot is larger than 2 GB.");
+			}
+			return new Snapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes all files of a result store to a snapshot file. An existing file is replaced.
+	 *
+	 * @param store the result store.
+	 * @param snapshotFile the snapshot file.
+	 * @throws IOException if the file cannot be written or the snapshot would be larger than 2 GB.
+	 */
+	public static void write(ResultStore store, File snapshotFile) throws IOException
+	{
+		int rows = store.getRowCount();
+		final byte[][] paths = new byte[rows][];
+		Integer[] order = new Integer[rows];
+		long size = HEADER_SIZE+4L*(rows+1);
+		for(int row=0; row<rows; row++)
+		{
+			paths[row] = store.getPath(row).getBytes(StandardCharsets.UTF_8);
+			order[row] = row;
+			size += paths[row].length+8L*store.getMetricNames().length;
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return comparePaths(paths[a], paths[b]);
+			}
+		});
+		String[] names = store.getMetricNames();
+		byte[][] encodedNames = new byte[names.length][];
+		for(int m=0; m<names.length; m++)
+		{
+			encodedNames[m] = names[m].getBytes(StandardCharsets.UTF_8);
+			size += 4+encodedNames[m].length;
+		}
+		if(size>Integer.MAX_VALUE)
+		{
+			throw new IOException("The snapshot would be larger than 2 GB.");
+		}
+		SnapshotWriter out = new SnapshotWriter(snapshotFile);
+		try
+		{
+			out.putInt(MAGIC).putInt(VERSION).putInt(names.length).putInt(rows);
+			for(byte[] name : encodedNames)
+			{
+				out.putInt(name.length).put(name);
+			}
+			int offset = 0;
+			for(int i=0; i<rows; i++)
+			{
+				out.putInt(offset);
+				offset += paths[order[i]].length;
+			}
+			out.putInt(offset);
+			for(int i=0; i<rows; i++)
+			{
+				out.put(paths[order[i]]);
+			}
+			for(int m=0; m<names.length; m++)
+			{
+				for(int i=0; i<rows; i++)
+				{
+					out.putLong(store.getValue(order[i], m));
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the names of the metrics.
+	 *
+	 * @return the names in column order.
+	 */
+	public String[] getMetricNames()
+	{
+		return metricNames.clone();
+	}
+
+	/**
+	 * Returns the column of a metric.
+	 *
+	 * @param metric the name of the metric.
+	 * @return the column or -1 if the snapshot doesn't contain the metric.
+	 */
+	public int indexOf(String metric)
+	{
+		return Arrays.asList(metricNames).indexOf(metric);
+	}
+
+	/**
+	 * Returns the number of files.
+	 *
+	 * @return the number of files.
+	 */
+	public int getFileCount()
+	{
+		return fileCount;
+	}
+
+	/**
+	 * Returns the path of a file.
+	 *
+	 * @param index the index of the file. The files are sorted by path.
+	 * @return the path.
+	 */
+	public String getPath(int index)
+	{
+		byte[] path = new byte[pathLength(index)];
+		ByteBuffer view = buffer.duplicate();
+		view.position(pathStart(index));
+		view.get(path);
+		return new String(path, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns a metric value of a file.
+	 *
+	 * @param index the index of the file.
+	 * @param metric the column of the metric.
+	 * @return the value.
+	 */
+	public long getValue(int index, int metric)
+	{
+		return buffer.getLong((int)(columnTable+8L*((long)metric*fileCount+index)));
+	}
+
+	/**
+	 * Searches a file by binary search.
+	 *
+	 * @param path the path of the file.
+	 * @return the index of the file or -1 if the snapshot doesn't contain it.
+	 */
+	public int find(String path)
+	{
+		byte[] key = path.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = fileCount-1;
+		while(low<=high)
+		{
+			int mid = low+high>>>1;
+			int c = compareTo(mid, key);
+			if(c<0)
+			{
+				low = mid+1;
+			}
+			else if(c>0)
+			{
+				high = mid-1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares this snapshot as the older one with a newer snapshot by merging the sorted paths.
+	 * The metrics are matched by name. A metric contained in only one snapshot has the value 0 in the other one.
+	 *
+	 * @param newer the newer snapshot.
+	 * @param sink the sink receiving all differences.
+	 * @return the names of all compared metrics in the order of the deltas passed to the sink.
+	 */
+	public String[] diff(Snapshot newer, DiffSink sink)
+	{
+		LinkedHashSet<String> union = new LinkedHashSet<String>(Arrays.asList(metricNames));
+		union.addAll(Arrays.asList(newer.metricNames));
+		String[] names = union.toArray(new String[union.size()]);
+		int[] oldColumns = new int[names.length];
+		int[] newColumns = new int[names.length];
+		for(int m=0; m<names.length; m++)
+		{
+			oldColumns[m] = indexOf(names[m]);
+			newColumns[m] = newer.indexOf(names[m]);
+		}
+		long[] deltas = new long[names.length];
+		int i = 0;
+		int j = 0;
+		while(i<fileCount||j<newer.fileCount)
+		{
+			int c = i==fileCount ? 1 : j==newer.fileCount ? -1 : comparePaths(i, newer, j);
+			if(c<0)
+			{
+				sink.removed(getPath(i), i);
+				i++;
+			}
+			else if(c>0)
+			{
+				sink.added(newer.getPath(j), j);
+				j++;
+			}
+			else
+			{
+				boolean changed = false;
+				for(int m=0; m<names.length; m++)
+				{
+					long before = oldColumns[m]<0 ? 0 : getValue(i, oldColumns[m]);
+					long after = newColumns[m]<0 ? 0 : newer.getValue(j, newColumns[m]);
+					deltas[m] = after-before;
+					changed |= deltas[m]!=0;
+				}
+				if(changed)
+				{
+					sink.changed(getPath(i), i, j, deltas);
+				}
+				i++;
+				j++;
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Releases the mapped file. The buffer is unmapped by the garbage collector.
+	 */
+	@Override
+	public void close()
+	{
+		buffer = null;
+	}
+
+	/**
+	 * Returns the position of the first byte of a path.
+	 *
+	 * @param index the index of the file.
+	 * @return the position.
+	 */
+	private int pathStart(int index)
+	{
+		return pathTable+buffer.getInt(offsetTable+4*index);
+	}
+
+	/**
+	 * Returns the length of a path in bytes.
+	 *
+	 * @param index the index of the file.
+	 * @return the length.
+	 */
+	private int pathLength(int index)
+	{
+		return buffer.getInt(offsetTable+4*index+4)-buffer.getInt(offsetTable+4*index);
+	}
+
+	/**
+	 * Compares the path of a file with a path of another snapshot without decoding them.
+	 *
+	 * @param index the index of the file.
+	 * @param other the other snapshot.
+	 * @param otherIndex the index of the file in the other snapshot.
+	 * @return a negative number, 0 or a positive number if the path is less than, equal to or greater than the other.
+	 */
+	private int comparePaths(int index, Snapshot other, int otherIndex)
+	{
+		int start = pathStart(index);
+		int length = pathLength(index);
+		int otherStart = other.pathStart(otherIndex);
+		int otherLength = other.pathLength(otherIndex);
+		for(int k=0; k<length&&k<otherLength; k++)
+		{
+			int c = (buffer.get(start+k)&0xff)-(other.buffer.get(otherStart+k)&0xff);
+			if(c!=0)
+			{
+				return c;
+			}
+		}
+		return length-otherLength;
+	}
+
+	/**
+	 * Compares the path of a file with a path.
+	 *
+	 * @param index the index of the file.
+	 * @param key the other path as UTF-8 bytes.
+	 * @return a negative number, 0 or a positive number if the path is less than, equal to or greater than the key.
+	 */
+	private int compareTo(int index, byte[] key)
+	{
+		int start = pathStart(index);
+		int length = pathLength(index);
+		for(int k=0; k<length&&k<key.length; k++)
+		{
+			int c = (buffer.get(start+k)&0xff)-(key[k]&0xff);
+			if(c!=0)
+			{
+				return c;
+			}
+		}
+		return length-key.length;
+	}
+
+	/**
+	 * Compares two paths by their unsigned bytes.
+	 *
+	 * @param a the first path.
+	 * @param b the second path.
+	 * @return a negative number, 0 or a positive number if the first path is less than, equal to or greater than the
+	 * second one.
+	 */
+	static int comparePaths(byte[] a, byte[] b)
+	{
+		for(int k=0; k<a.length&&k<b.length; k++)
+		{
+			int c = (a[k]&0xff)-(b[k]&0xff);
+			if(c!=0)
+			{
+				return c;
+			}
+		}
+		return a.length-b.length;
+	}
+
+	/**
+	 * Writes a snapshot file through a direct buffer.
+	 */
+	private static final class SnapshotWriter
+	{
+		/**
+		 * Saves the channel of the file.
+		 */
+		private final FileChannel channel;
+		/**
+		 * Saves the buffer for the next bytes.
+		 */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Creates a new writer and truncates the file.
+		 *
+		 * @param f the file.
+		 * @throws IOException if the file cannot be opened.
+		 */
+		SnapshotWriter(File f) throws IOException
+		{
+			channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			buffer = ByteBuffer.allocateDirect(1<<16);
+		}
+
+		/**
+		 * Writes an int.
+		 *
+		 * @param value the value.
+		 * @return this writer.
+		 * @throws IOException if the file cannot be written.
+		 */
+		SnapshotWriter putInt(int value) throws IOException
+		{
+			ensure(4);
+			buffer.putInt(value);
+			return this;
+		}
+
+		/**
+		 * Writes a long.
+		 *
+		 * @param value the value.
+		 * @return this writer.
+		 * @throws IOException if the file cannot be written.
+		 */
+		SnapshotWriter putLong(long value) throws IOException
+		{
+			ensure(8);
+			buffer.putLong(value);
+			return this;
+		}
+
+		/**
+		 * Writes bytes.
+		 *
+		 * @param bytes the bytes.
+		 * @return this writer.
+		 * @throws IOException if the file cannot be written.
+		 */
+		SnapshotWriter put(byte[] bytes) throws IOException
+		{
+			int written = 0;
+			while(written<bytes.length)
+			{
+				ensure(1);
+				int n = Math.min(buffer.remaining(), bytes.length-written);
+				buffer.put(bytes, written, n);
+				written += n;
+			}
+			return this;
+		}
+
+		/**
+		 * Flushes the buffer if it has less free space than needed.
+		 *
+		 * @param bytes the needed space.
+		 * @throws IOException if the file cannot be written.
+		 */
+		private void ensure(int bytes) throws IOException
+		{
+			if(buffer.remaining()<bytes)
+			{
+				flush();
+			}
+		}
+
+		/**
+		 * Writes the buffer to the file.
+		 *
+		 * @throws IOException if the file cannot be written.
+		 */
+		private void flush() throws IOException
+		{
+			buffer.flip();
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Writes the remaining bytes and closes the file.
+		 *
+		 * @throws IOException if the file cannot be written.
+		 */
+		void close() throws IOException
+		{
+			try
+			{
+				flush();
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,162 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import marm.src.ana.internal.SrcCounter;
+import marm.src.ana.result.CsvExporter;
+import marm.src.ana.result.JsonLinesExporter;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the JsonLinesExporter and CsvExporter classes.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public class ExporterTest
+{
+	/**
+	 * Temporary directory for the exported files.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	/**
+	 * Tests exporting the results of an analysis.
+	 *
+	 * @throws IOException if the files can't be written or read.
+	 */
+	@Test
+	public void testExport() throws IOException
+	{
+		File json = tmp.newFile("results.jsonl");
+		File csv = tmp.newFile("results.csv.gz");
+		JsonLinesExporter jsonExporter = new JsonLinesExporter(json, false);
+		CsvExporter csvExporter = new CsvExporter(csv, true, "lines", "comments");
+		SourceAnalyzer ana = new SourceAnalyzer();
+		ana.addFileResultListener(jsonExporter);
+		ana.addFileResultListener(csvExporter);
+		ana.addSrcFileHandler(new SrcCounter(), "");
+		ana.analyze(new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter"));
+		jsonExporter.close();
+		csvExporter.close();
+		List<String> records = read(new FileInputStream(json));
+		assertEquals(7, records.size());
+		String java = find(records, "{\"path\":\"HelloWorldJava.java\"");
+		assertTrue(java.startsWith("{\"path\":\"HelloWorldJava.java\",\"extension\":\".java\","
+				+"\"handler\":\"SrcCounter\",\"bytes\":1601,\"nanos\":"));
+		assertTrue(java.contains(",\"metrics\":{\"files\":1,\"lines\":46,\"digits\":"));
+		assertTrue(java.endsWith("}}"));
+		records = read(new GZIPInputStream(new FileInputStream(csv)));
+		assertEquals(8, records.size());
+		assertEquals("path,extension,handler,bytes,nanos,lines,comments", records.get(0));
+		String xml = find(records, "HelloWorldXML.xml,");
+		assertTrue(xml.startsWith("HelloWorldXML.xml,.xml,SrcCounter,169,"));
+		assertTrue(xml.endsWith(",10,"));
+	}
+
+	/**
+	 * Tests escaping special characters.
+	 *
+	 * @throws IOException if the files can't be written or read.
+	 */
+	@Test
+	public void testEscaping() throws IOException
+	{
+		File json = tmp.newFile("results.jsonl");
+		File csv = tmp.newFile("results.csv");
+		JsonLinesExporter jsonExporter = new JsonLinesExporter(json, false);
+		CsvExporter csvExporter = new CsvExporter(csv, false, "lines");
+		String path = "dir.d/a,\"b\"\t\u00fc\uD83D\uDE00";
+		SrcCounter handler = new SrcCounter();
+		jsonExporter.fileHandled(path, handler, new String[] {"lines"}, new long[] {-12}, 0, Long.MAX_VALUE);
+		csvExporter.fileHandled(path, handler, new String[] {"files"}, new long[] {1}, 5, 7);
+		jsonExporter.close();
+		csvExporter.close();
+		assertEquals("{\"path\":\"dir.d/a,\\\"b\\\"\\u0009\u00fc\uD83D\uDE00\",\"extension\":\"\","
+				+"\"handler\":\"SrcCounter\",\"bytes\":0,\"nanos\":9223372036854775807,\"metrics\":{\"lines\":-12}}",
+				read(new FileInputStream(json)).get(0));
+		assertEquals("\"dir.d/a,\"\"b\"\"\t\u00fc\uD83D\uDE00\",,SrcCounter,5,7,",
+				read(new FileInputStream(csv)).get(1));
+	}
+
+	/**
+	 * Reads all lines of a stream as UTF-8.
+	 *
+	 * @param in the stream.
+	 * @return the lines.
+	 * @throws IOException if the stream can't be read.
+	 */
+	private static List<String> read(InputStream in) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		try
+		{
+			List<String> lines = new ArrayList<String>();
+			String line = reader.readLine();
+			while(line!=null)
+			{
+				lines.add(line);
+				line = reader.readLine();
+			}
+			return lines;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the first line starting with a prefix.
+	 *
+	 * @param lines the lines.
+	 * @param prefix the prefix.
+	 * @return the line or null if no line starts with the prefix.
+	 */
+	private static String find(List<String> lines, String prefix)
+	{
+		for(String line : lines)
+		{
+			if(line.startsWith(prefix))
+			{
+				return line;
+			}
+		}
+		return null;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,185 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import marm.src.ana.internal.Replace;
+import marm.src.ana.internal.SrcCounter;
+import marm.src.ana.internal.SrcCounterJC;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class for the HandlerChain class.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public class HandlerChainTest
+{
+	/**
+	 * Temporary directory for the test files.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	/**
+	 * Test instance of the SourceAnalyzer.
+	 */
+	private SourceAnalyzer ana;
+	/**
+	 * Saves the contents received by the last stage.
+	 */
+	private ArrayList<String> contents;
+	/**
+	 * Stage collecting the received contents.
+	 */
+	private SrcContentHandler collector;
+
+	/**
+	 * Sets up everything for testing.
+	 */
+	@Before
+	public void setUp()
+	{
+		ana = new SourceAnalyzer();
+		contents = new ArrayList<String>();
+		collector = new SrcContentHandler()
+		{
+			@Override
+			public String getExtension()
+			{
+				return "";
+			}
+
+			@Override
+			public void reset()
+			{
+				contents.clear();
+			}
+
+			@Override
+			public void handleFile(File f)
+			{
+			}
+
+			@Override
+			public void handleContent(File f, CharSequence content)
+			{
+				contents.add(content.toString());
+			}
+		};
+	}
+
+	/**
+	 * Tests that a counter in a chain counts the same lines as a counter reading the files.
+	 */
+	@Test
+	public void testCounterStage()
+	{
+		SrcCounter counter = new SrcCounter();
+		ana.addSrcFileHandler(new HandlerChain(false).addContentHandler(counter), "");
+		ana.analyze(new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter"));
+		assertEquals(46+35+32+38+39+53+10, counter.getCompleteSrcLines());
+		assertEquals(7, counter.getScannedFiles());
+	}
+
+	/**
+	 * Tests that the stages cloned for the threads of a parallel analysis are added to the shared stage.
+	 *
+	 * @throws IOException if a test file can't be written.
+	 */
+	@Test
+	public void testParallelStage() throws IOException
+	{
+		for(int i = 0; i<400; i++)
+		{
+			Files.write(tmp.newFile("F"+i+(i%2==0 ? ".java" : ".c")).toPath(),
+				"int a;\nint b;\n".getBytes(StandardCharsets.UTF_8));
+		}
+		SrcCounter counter = new SrcCounter();
+		HandlerChain chain = new HandlerChain(false).addContentHandler(counter).addContentHandler(collector);
+		HandlerChain clone = chain.cloneStages(new IdentityHashMap<Object, Object>());
+		assertNotSame(counter, clone.getContentHandlers().get(0));
+		assertSame(collector, clone.getContentHandlers().get(1));
+		ana.addSrcFileHandler(chain, ".java", ".c");
+		ana.setParallelism(4);
+		ana.analyze(tmp.getRoot());
+		assertEquals(800, counter.getCompleteSrcLines());
+		assertEquals(400, counter.getScannedFiles());
+		assertEquals(400, contents.size());
+	}
+
+	/**
+	 * Tests replacing and counting in one pass with and without writing the result.
+	 *
+	 * @throws IOException if the test file can't be written or read.
+	 */
+	@Test
+	public void testTransformThenCount() throws IOException
+	{
+		File file = tmp.newFile("Test.java");
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		bw.write("// Copyright 2017\r\nclass Test\r\n{\r\n}");
+		bw.close();
+		HashMap<String, String> replacements = new HashMap<String, String>();
+		replacements.put("2017", "2018");
+		SrcCounterJC counter = new SrcCounterJC();
+		HandlerChain chain = new HandlerChain(false).addTransformer(new Replace(replacements));
+		chain.addContentHandler(counter).addContentHandler(collector);
+		ana.addSrcFileHandler(chain, ".java");
+		ana.analyze(tmp.getRoot());
+		assertEquals(4, counter.getCompleteSrcLines());
+		assertEquals(1, counter.getSrcLines());
+		assertEquals("// Copyright 2018\r\nclass Test\r\n{\r\n}", contents.get(0));
+		assertEquals("// Copyright 2017\r\nclass Test\r\n{\r\n}", read(file));
+		ana = new SourceAnalyzer();
+		ana.addSrcFileHandler(new HandlerChain(true).addTransformer(new Replace(replacements)), ".java");
+		ana.analyze(tmp.getRoot());
+		assertEquals("// Copyright 2018\r\nclass Test\r\n{\r\n}", read(file));
+	}
+
+	/**
+	 * Reads the content of a file.
+	 *
+	 * @param f the file.
+	 * @return the content.
+	 * @throws IOException if the file can't be read.
+	 */
+	private static String read(File f) throws IOException
+	{
+		return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+	}
+}
\ No newline at end of file
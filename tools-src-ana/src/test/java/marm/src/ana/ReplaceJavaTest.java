@@ -26,11 +26,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import marm.src.ana.internal.JavaLexer;
 import marm.src.ana.internal.Replace;
 import marm.src.ana.internal.ReplaceJava2;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -39,11 +43,16 @@ import static org.junit.Assert.assertEquals;
  * Test class for the ReplaceJava classes.
  * 
  * @author Martin Armbruster
- * @version 1.1
+ * @version 1.4
  * @since 1.0
  */
 public class ReplaceJavaTest
 {
+	/**
+	 * Temporary directory for the scope tests.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
 	/**
 	 * Saves the used SourceAnalyzer instance.
 	 */
@@ -129,13 +138,82 @@ public class ReplaceJavaTest
 		replacements.put("throw new RuntimeException(\"Not implemented!\");", "print(\"Ah\");");
 		analyzer.addSrcFileHandler(new ReplaceJava2(replacements));
 		long time = System.nanoTime();
-		analyzer.analyze(new File("target\\test-classes\\replaceTest2"));
+		analyzer.analyze(new File(testDir, "replaceTest2"));
 		System.out.println("Time for the replacing using the Aho-Corasick algorithm: "+(System.nanoTime()-time));
 		assertEquals(readFile(testDir.getPath()+File.separator+"expectedResults"+File.separator
 				+"TestClassAfterReplacing.java"), readFile(testDir.getPath()+File.separator+"replaceTest2"
 				+File.separator+"TestClass.java"));
 	}
 	
+	/**
+	 * Tests the ReplaceJava2 class restricted to some kinds of tokens.
+	 * 
+	 * @throws IOException if the test file can't be written.
+	 */
+	@Test
+	public void testReplace2WithScope() throws IOException
+	{
+		String source = "/** Uses oldName. */\nclass A\n{\n\tint oldName = 1; // oldName\n"
+				+"\tint oldNameX = oldName+'o';\n\tString s = \"oldName \\\" oldName\";\n}\n";
+		HashMap<String, String> replacements = new HashMap<String, String>();
+		replacements.put("oldName", "newName");
+		ReplaceJava2 replace = new ReplaceJava2(replacements);
+		replace.setScope(JavaLexer.TokenKind.IDENTIFIER);
+		assertEquals("/** Uses oldName. */\nclass A\n{\n\tint newName = 1; // oldName\n"
+				+"\tint oldNameX = newName+'o';\n\tString s = \"oldName \\\" oldName\";\n}\n",
+				replaceInFile(replace, source));
+		replace.setScope(JavaLexer.TokenKind.COMMENT);
+		assertEquals("/** Uses newName. */\nclass A\n{\n\tint oldName = 1; // newName\n"
+				+"\tint oldNameX = oldName+'o';\n\tString s = \"oldName \\\" oldName\";\n}\n",
+				replaceInFile(replace, source));
+		replace.setScope(JavaLexer.TokenKind.STRING);
+		assertEquals("/** Uses oldName. */\nclass A\n{\n\tint oldName = 1; // oldName\n"
+				+"\tint oldNameX = oldName+'o';\n\tString s = \"newName \\\" newName\";\n}\n",
+				replaceInFile(replace, source));
+	}
+	
+	/**
+	 * Tests that the Replace class skips a file when a regular expression exceeds its time limit and that a new
+	 * mapping applies to its clones, while changes of the passed map don't.
+	 * 
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test(timeout = 10000)
+	public void testReplaceTimeout() throws IOException
+	{
+		HashMap<String, String> replacements = new HashMap<String, String>();
+		replacements.put("(.*a){12}b", "c");
+		Replace replace = new Replace(replacements);
+		replace.setRuleTimeout(100);
+		File slow = tmp.newFile();
+		File fast = tmp.newFile();
+		StringBuilder builder = new StringBuilder();
+		for(int i=0; i<40; i++)
+		{
+			builder.append('a');
+		}
+		BufferedWriter bw = new BufferedWriter(new FileWriter(slow));
+		bw.write(builder.toString());
+		bw.close();
+		bw = new BufferedWriter(new FileWriter(fast));
+		bw.write("aaaaaaaaaaaab");
+		bw.close();
+		replace.handleFile(slow);
+		replace.handleFile(fast);
+		assertEquals(builder.toString()+"\n", readFile(slow.getPath()));
+		assertEquals("c\n", readFile(fast.getPath()));
+		assertEquals(Arrays.asList(slow), replace.getTimedOutFiles());
+		replace.reset();
+		assertEquals(0, replace.getTimedOutFiles().size());
+		Replace clone = replace.clone();
+		replacements.put("c", "d");
+		replace.handleFile(fast);
+		assertEquals("c\n", readFile(fast.getPath()));
+		replace.setMapping(replacements);
+		clone.handleFile(fast);
+		assertEquals("d\n", readFile(fast.getPath()));
+	}
+	
 	/**
 	 * Measures time for the ReplaceJava class with a huge file content.
 	 */
@@ -183,6 +261,24 @@ public class ReplaceJavaTest
 				+(System.nanoTime()-time));
 	}
 	
+	/**
+	 * Writes a java source code file, runs a ReplaceJava2 instance on it and reads the result.
+	 * 
+	 * @param replace the ReplaceJava2 instance.
+	 * @param source the source code.
+	 * @return the source code after replacing.
+	 * @throws IOException if the file can't be written.
+	 */
+	private String replaceInFile(ReplaceJava2 replace, String source) throws IOException
+	{
+		File file = tmp.newFile();
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		bw.write(source);
+		bw.close();
+		replace.handleFile(file);
+		return readFile(file.getPath());
+	}
+	
 	/**
 	 * Reads the content of a file.
 	 * 
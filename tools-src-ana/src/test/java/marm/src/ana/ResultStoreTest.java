@@ -0,0 +1,93 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.util.Map;
+import marm.src.ana.internal.SrcCounter;
+import marm.src.ana.result.ResultStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for the ResultStore class.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public class ResultStoreTest
+{
+	/**
+	 * Tests collecting the results of single files during an analysis.
+	 */
+	@Test
+	public void testAnalyze()
+	{
+		SourceAnalyzer ana = new SourceAnalyzer();
+		ResultStore store = new ResultStore("files", "lines");
+		ana.setResultStore(store);
+		ana.addSrcFileHandler(new SrcCounter(), "");
+		ana.analyze(new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter"));
+		assertEquals(7, store.getRowCount());
+		assertEquals(46, store.getValue(store.find("HelloWorldJava.java"), 1));
+		assertEquals(35+39, store.rollupByExtension().get(".h")[1]);
+		assertArrayEquals(new long[] {7, 46+35+32+38+39+53+10}, store.rollupByDirectory(0).get(""));
+		int[] top = store.top(1, 2, true);
+		assertEquals("HelloWorldCpp.cpp", store.getPath(top[0]));
+		assertEquals("HelloWorldJava.java", store.getPath(top[1]));
+		assertEquals("HelloWorldXML.xml", store.getPath(store.top(1, 1, false)[0]));
+	}
+
+	/**
+	 * Tests the rollups and selections for many files in directories.
+	 */
+	@Test
+	public void testRollups()
+	{
+		ResultStore store = new ResultStore(true, "lines", "comments");
+		for(int i=0; i<3000; i++)
+		{
+			int row = store.add("src/"+(i%2==0 ? "main" : "test")+"/p"+i%10+"/F"+i+(i%3==0 ? ".c" : ".java"));
+			store.addValue(row, 0, i+1);
+			store.addValue(row, 1, i%100);
+		}
+		store.addValue(store.add("src/main/p0/F0.c"), 0, 1);
+		assertEquals(3000, store.getRowCount());
+		assertEquals(-1, store.find("src/main/p1/F0.c"));
+		assertEquals("src/test/p9/F2999.java", store.getPath(store.find("src/test/p9/F2999.java")));
+		assertEquals(2, store.getValue(store.find("src/main/p0/F0.c"), 0));
+		assertEquals(1500*1500+1, store.rollup("src/main")[0]);
+		assertEquals(1500*1501, store.rollup("src/test/")[0]);
+		Map<String, long[]> dirs = store.rollupByDirectory(2);
+		assertEquals(2, dirs.size());
+		assertEquals(1500*1500+1, dirs.get("src/main")[0]);
+		assertEquals(10, store.rollupByDirectory(3).size());
+		assertEquals(1000*(1+2998)/2+1, store.rollupByExtension().get(".c")[0]);
+		assertArrayEquals(new int[] {2999, 2998, 2997}, store.top(0, 3, true));
+		int[] commentFree = store.topRatio(1, 0, 2, false);
+		assertEquals(2, commentFree.length);
+		assertEquals(0, store.getValue(commentFree[0], 1));
+		assertEquals(0, store.getValue(commentFree[1], 1));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,185 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import marm.src.ana.result.DiffSink;
+import marm.src.ana.result.ResultStore;
+import marm.src.ana.result.Snapshot;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for the Snapshot class.
+ *
+ * @author Martin Armbruster
+ * @version 1.0
+ * @since 2.1
+ */
+public class SnapshotTest
+{
+	/**
+	 * Temporary directory for the snapshot files.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	/**
+	 * Tests writing and reading a snapshot.
+	 *
+	 * @throws IOException if the snapshot can't be written or read.
+	 */
+	@Test
+	public void testWriteAndOpen() throws IOException
+	{
+		ResultStore store = new ResultStore("lines", "comments");
+		add(store, "src/b/Z.java", 10, 1);
+		add(store, "src/a/Y.java", 20, 2);
+		add(store, "src/\u00e4/X.java", 30, 3);
+		add(store, "README", 5, 0);
+		File f = tmp.newFile("old.snapshot");
+		Snapshot.write(store, f);
+		Snapshot snapshot = Snapshot.open(f);
+		try
+		{
+			assertArrayEquals(new String[] {"lines", "comments"}, snapshot.getMetricNames());
+			assertEquals(4, snapshot.getFileCount());
+			assertEquals("README", snapshot.getPath(0));
+			assertEquals("src/a/Y.java", snapshot.getPath(1));
+			assertEquals("src/\u00e4/X.java", snapshot.getPath(3));
+			int index = snapshot.find("src/b/Z.java");
+			assertEquals(2, index);
+			assertEquals(10, snapshot.getValue(index, 0));
+			assertEquals(1, snapshot.getValue(index, snapshot.indexOf("comments")));
+			assertEquals(-1, snapshot.find("src/c/Z.java"));
+		}
+		finally
+		{
+			snapshot.close();
+		}
+	}
+
+	/**
+	 * Tests comparing two snapshots.
+	 *
+	 * @throws IOException if the snapshots can't be written or read.
+	 */
+	@Test
+	public void testDiff() throws IOException
+	{
+		ResultStore older = new ResultStore("lines", "comments");
+		ResultStore newer = new ResultStore("lines", "tokens");
+		for(int i=0; i<2000; i++)
+		{
+			if(i%500!=0)
+			{
+				add(older, "p"+i%7+"/F"+i+".java", i, 1);
+			}
+			if(i%700!=1)
+			{
+				add(newer, "p"+i%7+"/F"+i+".java", i==42 ? 50 : i, 0);
+			}
+		}
+		File oldFile = tmp.newFile("old.snapshot");
+		File newFile = tmp.newFile("new.snapshot");
+		Snapshot.write(older, oldFile);
+		Snapshot.write(newer, newFile);
+		final ArrayList<String> events = new ArrayList<String>();
+		Snapshot a = Snapshot.open(oldFile);
+		Snapshot b = Snapshot.open(newFile);
+		String[] names = a.diff(b, new DiffSink()
+		{
+			@Override
+			public void added(String path, int index)
+			{
+				events.add("+"+path);
+			}
+
+			@Override
+			public void removed(String path, int index)
+			{
+				events.add("-"+path);
+			}
+
+			@Override
+			public void changed(String path, int oldIndex, int newIndex, long[] deltas)
+			{
+				if(deltas[0]!=0)
+				{
+					events.add("~"+path+Arrays.toString(deltas));
+				}
+			}
+		});
+		a.close();
+		b.close();
+		assertArrayEquals(new String[] {"lines", "comments", "tokens"}, names);
+		assertEquals(Arrays.asList("+p0/F0.java", "-p1/F1.java", "-p1/F1401.java", "-p1/F701.java",
+				"+p2/F1500.java", "+p3/F500.java", "+p6/F1000.java", "~p0/F42.java[8, -1, 0]"), sorted(events));
+	}
+
+	/**
+	 * Adds a file to a result store.
+	 *
+	 * @param store the result store.
+	 * @param path the path of the file.
+	 * @param first the value of the first metric.
+	 * @param second the value of the second metric.
+	 */
+	private static void add(ResultStore store, String path, long first, long second)
+	{
+		int row = store.add(path);
+		store.addValue(row, 0, first);
+		store.addValue(row, 1, second);
+	}
+
+	/**
+	 * Sorts the events by kind with added and removed files first, then by path.
+	 *
+	 * @param events the events.
+	 * @return the sorted events.
+	 */
+	private static ArrayList<String> sorted(ArrayList<String> events)
+	{
+		ArrayList<String> result = new ArrayList<String>();
+		for(String e : events)
+		{
+			if(!e.startsWith("~"))
+			{
+				result.add(e);
+			}
+		}
+		for(String e : events)
+		{
+			if(e.startsWith("~"))
+			{
+				result.add(e);
+			}
+		}
+		return result;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,955 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import marm.src.ana.index.TrigramIndexer;
+import marm.src.ana.internal.LanguageDescriptor;
+import marm.src.ana.internal.NestingMetric;
+import marm.src.ana.internal.ReplaceJava2;
+import marm.src.ana.internal.SearchSink;
+import marm.src.ana.internal.SrcCounter;
+import marm.src.ana.internal.SrcMetrics;
+import marm.src.ana.internal.SrcSearch;
+import marm.src.ana.internal.TokenMetric;
+import marm.src.ana.result.ResultCache;
+import marm.src.ana.result.ResultStore;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the SourceAnalyzer class.
+ *
+ * @author Martin Armbruster
+ * @version 1.22
+ * @since 2.1
+ */
+public class SourceAnalyzerTest
+{
+	/**
+	 * Temporary directory for the test files.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	/**
+	 * Test instance of the SourceAnalyzer.
+	 */
+	private SourceAnalyzer ana;
+
+	/**
+	 * Sets up everything for testing.
+	 */
+	@Before
+	public void setUp()
+	{
+		ana = new SourceAnalyzer();
+	}
+
+	/**
+	 * Tests the detection of files with equal content and counting them only once. Empty files aren't grouped.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testDuplicateFiles() throws IOException
+	{
+		byte[] content = new byte[10000];
+		for(int i=0; i<content.length; i++)
+		{
+			content[i] = (byte)(i%100==99 ? '\n' : 'a'+i%26);
+		}
+		File original = write("a/X.java", content);
+		File copy = write("b/X.java", content);
+		content[content.length-2] = 'z';
+		write("c/Y.java", content);
+		write("d/Z.java", new byte[] {'x', '\n'});
+		write("e/Small.java", new byte[] {'x', '\n'});
+		write("f/Other.java", new byte[] {'y', '\n'});
+		write("g/Empty.java", new byte[0]);
+		write("h/Empty.java", new byte[0]);
+		SrcCounter counter = new SrcCounter();
+		ana.addSrcFileHandler(counter, ".java");
+		ana.skipDuplicates(SrcCounter.class);
+		ana.analyze(tmp.getRoot());
+		List<List<File>> groups = ana.getDuplicateGroups();
+		assertEquals(2, groups.size());
+		assertEquals(Arrays.asList(original, copy), sortedByPath(groups.get(0)));
+		assertEquals(2, groups.get(1).size());
+		assertEquals(8, ana.getCounter());
+		counter = (SrcCounter)ana.getFileHandler(".java");
+		assertEquals(6, counter.getScannedFiles());
+		assertEquals(100+100+1+1, counter.getCompleteSrcLines());
+		ana.reset();
+		assertEquals(0, ana.getDuplicateGroups().size());
+	}
+
+	/**
+	 * Tests that files with equal sizes and colliding hashes aren't considered equal.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testDuplicateHashCollision() throws IOException
+	{
+		long prime = 0x9e3779b97f4a7c15L;
+		long second = Long.rotateLeft((16^0L)*prime, 31)^Long.rotateLeft((16^1L)*prime, 31);
+		ByteBuffer colliding = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(1).putLong(second);
+		write("a/X.java", new byte[16]);
+		write("b/X.java", colliding.array());
+		ana.addSrcFileHandler(new SrcCounter(), ".java");
+		ana.skipDuplicates(SrcCounter.class);
+		ana.analyze(tmp.getRoot());
+		assertEquals(0, ana.getDuplicateGroups().size());
+	}
+
+	/**
+	 * Tests estimating the metric totals from a sample of the files.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testEstimate() throws IOException
+	{
+		Random random = new Random(7);
+		long lines = 0;
+		for(int i=0; i<600; i++)
+		{
+			int n = 20+random.nextInt(200);
+			byte[] content = new byte[n*10];
+			for(int j=0; j<content.length; j++)
+			{
+				content[j] = (byte)(j%10==9 ? '\n' : 'a'+j%10);
+			}
+			write("d"+i%7+"/F"+i+".java", content);
+			lines += n;
+		}
+		write("README.txt", new byte[] {'x', '\n'});
+		ana.addSrcFileHandler(new SrcCounter(), ".java");
+		Map<MetricHandler, List<Estimate>> estimates = ana.estimate(tmp.getRoot(), 0.05, 0.95, 42);
+		assertEquals(601, ana.getCounter());
+		List<Estimate> list = estimates.get(ana.getFileHandler(".java"));
+		assertEquals("files", list.get(0).getMetric());
+		assertEquals(600, list.get(0).getValue(), 1e-6);
+		Estimate estimate = list.get(1);
+		assertEquals("lines", estimate.getMetric());
+		assertEquals(600, estimate.getTotalFiles());
+		assertTrue(estimate.getSampledFiles()<600);
+		assertTrue(estimate.getUpper()-estimate.getValue()<=0.05*estimate.getValue());
+		assertTrue(estimate.getLower()<=lines&&lines<=estimate.getUpper());
+		SrcCounter counter = (SrcCounter)ana.getFileHandler(".java");
+		assertEquals(estimate.getSampledFiles(), counter.getScannedFiles());
+	}
+
+	/**
+	 * Tests that sampled files are handled like analyzed files and that maxima aren't extrapolated.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testEstimateLikeAnalysis() throws IOException
+	{
+		for(int i=0; i<4; i++)
+		{
+			write("s"+i+"/A.java", ("class A\n{\n\tvoid a()\n\t{\n\t\tint a = "+i+";\n\t}\n}\n").getBytes("UTF-8"));
+			write("s"+i+"/Build", "class B\n{\n}\n".getBytes("UTF-8"));
+			write("s"+i+"/Data.java", new byte[] {'c', 0, 0, 1, '\n'});
+		}
+		SourceAnalyzer[] analyzers = new SourceAnalyzer[2];
+		for(int i=0; i<2; i++)
+		{
+			LanguageDetector detector = new LanguageDetector();
+			detector.addFileName("Build", ".java");
+			analyzers[i] = new SourceAnalyzer();
+			analyzers[i].setLanguageDetector(detector);
+			analyzers[i].setShard(new Shard(0, 2));
+			analyzers[i].addSrcFileHandler(new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric()), ".java");
+		}
+		analyzers[0].analyze(tmp.getRoot());
+		Map<MetricHandler, List<Estimate>> all = analyzers[1].estimate(tmp.getRoot(), 0.05, 0.95, 42);
+		List<Estimate> estimates = all.get(analyzers[1].getFileHandler(".java"));
+		long[] expected = ((MetricHandler)analyzers[0].getFileHandler(".java")).getMetricValues();
+		assertEquals(4, expected[0]);
+		for(int m=0; m<expected.length; m++)
+		{
+			assertEquals(estimates.get(m).getMetric(), expected[m], estimates.get(m).getValue(), 1e-6);
+		}
+	}
+
+	/**
+	 * Tests analyzing files with several threads.
+	 */
+	@Test
+	public void testParallelism()
+	{
+		ResultStore store = new ResultStore("lines");
+		ana.setResultStore(store);
+		ana.setParallelism(4);
+		ana.addSrcFileHandler(new SrcCounter(), ".h", ".c", ".cpp", ".java", ".cs", ".xml");
+		ana.analyze(new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter"));
+		assertEquals(7, ana.getCounter());
+		assertEquals(7, store.getRowCount());
+		assertEquals(46+35+32+38+39+53+10, store.rollup("")[0]);
+		assertEquals(35+39, ((SrcCounter)ana.getFileHandler(".h")).getCompleteSrcLines());
+		assertEquals(2, ((SrcCounter)ana.getFileHandler(".h")).getScannedFiles());
+		assertEquals(46, ((SrcCounter)ana.getFileHandler(".java")).getCompleteSrcLines());
+	}
+
+	/**
+	 * Tests concurrent sessions of one configuration.
+	 *
+	 * @throws Exception if a session fails.
+	 */
+	@Test
+	public void testSessions() throws Exception
+	{
+		ana.addSrcFileHandler(new SrcCounter(), ".h", ".c", ".java");
+		final AnalyzerConfiguration configuration = new AnalyzerConfiguration(ana);
+		ana.addIgnoreFile("\\.java");
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<AnalysisSession>> results = new ArrayList<Future<AnalysisSession>>();
+		for(int i=0; i<8; i++)
+		{
+			results.add(pool.submit(new Callable<AnalysisSession>()
+			{
+				@Override
+				public AnalysisSession call()
+				{
+					AnalysisSession session = configuration.newSession();
+					session.analyze(new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter"));
+					return session;
+				}
+			}));
+		}
+		pool.shutdown();
+		for(Future<AnalysisSession> result : results)
+		{
+			AnalysisSession session = result.get();
+			assertEquals(7, session.getCounter());
+			assertEquals(35+39, ((SrcCounter)session.getFileHandler(".h")).getCompleteSrcLines());
+			assertEquals(46, ((SrcCounter)session.getFileHandler(".java")).getCompleteSrcLines());
+		}
+		assertEquals(0, ((SrcCounter)ana.getFileHandler(".java")).getScannedFiles());
+		ana.addSrcFileHandler(new SrcFileHandler()
+		{
+			@Override
+			public String getExtension()
+			{
+				return ".txt";
+			}
+
+			@Override
+			public void reset()
+			{
+			}
+
+			@Override
+			public void handleFile(File f)
+			{
+			}
+		});
+		try
+		{
+			new AnalyzerConfiguration(ana);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage().contains("anonymous class marm.src.ana.SourceAnalyzerTest$"));
+		}
+	}
+
+	/**
+	 * Tests that two concurrent sessions don't share the stages of a HandlerChain or the match counter of a
+	 * SrcSearch, and that handlers which can't be copied are rejected.
+	 *
+	 * @throws Exception if a session fails.
+	 */
+	@Test
+	public void testConcurrentSessions() throws Exception
+	{
+		final AtomicInteger sunk = new AtomicInteger();
+		SrcCounter stage = new SrcCounter();
+		ana.addSrcFileHandler(new HandlerChain(false).addContentHandler(stage), ".h", ".c", ".java");
+		ana.addSrcFileHandler(new SrcSearch(Arrays.asList("printf"), false, new SearchSink()
+		{
+			@Override
+			public void match(File f, int line, int column, String key)
+			{
+				sunk.incrementAndGet();
+			}
+		}), ".c", ".cpp");
+		final AnalyzerConfiguration configuration = new AnalyzerConfiguration(ana);
+		final CountDownLatch start = new CountDownLatch(2);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		List<Future<AnalysisSession>> results = new ArrayList<Future<AnalysisSession>>();
+		for(int i=0; i<2; i++)
+		{
+			results.add(pool.submit(new Callable<AnalysisSession>()
+			{
+				@Override
+				public AnalysisSession call() throws InterruptedException
+				{
+					AnalysisSession session = configuration.newSession();
+					start.countDown();
+					start.await();
+					session.analyze(new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter"));
+					return session;
+				}
+			}));
+		}
+		pool.shutdown();
+		List<SrcCounter> copies = new ArrayList<SrcCounter>();
+		for(Future<AnalysisSession> result : results)
+		{
+			AnalysisSession session = result.get();
+			SrcCounter copy = (SrcCounter)((HandlerChain)session.getFileHandler(".h")).getContentHandlers().get(0);
+			assertTrue(copy==((HandlerChain)session.getFileHandler(".java")).getContentHandlers().get(0));
+			assertEquals(4, copy.getScannedFiles());
+			assertEquals(2, ((SrcSearch)session.getFileHandler(".cpp")).getMatchCount());
+			copies.add(copy);
+		}
+		assertTrue(copies.get(0)!=copies.get(1));
+		assertEquals(4, sunk.get());
+		assertEquals(0, stage.getScannedFiles());
+		ana.analyze(new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter"));
+		assertEquals(stage.getCompleteSrcLines(), copies.get(0).getCompleteSrcLines());
+		assertEquals(stage.getCompleteSrcLines(), copies.get(1).getCompleteSrcLines());
+		assertRejected(new TrigramIndexer(new File(tmp.getRoot(), "index")), "same index file");
+		assertRejected(new HandlerChain(false).addTransformer(new ReplaceJava2(new HashMap<String, String>())),
+				"isn't a MultiExtensionSupportFileHandler with a copy: marm.src.ana.internal.ReplaceJava2");
+		ana = new SourceAnalyzer();
+		ana.setShard(new Shard(0, 2, tmp.getRoot()));
+		AnalyzerConfiguration claiming = new AnalyzerConfiguration(ana);
+		claiming.newSession();
+		try
+		{
+			claiming.newSession();
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+			assertTrue(e.getMessage().contains("only one session"));
+		}
+	}
+
+	/**
+	 * Tests analyzing nested, duplicate and separate directories in one pass with one and several threads and
+	 * directories whose deepest common directory may be the root of the file system.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testRoots() throws IOException
+	{
+		write("a/x.c", "int x;\n".getBytes());
+		write("a/b/y.c", "int y;\nint z;\n".getBytes());
+		write("c/z.c", "int z;\n".getBytes());
+		Path base = tmp.getRoot().toPath();
+		List<Path> roots = Arrays.asList(base.resolve("a"), base.resolve("a/b"), base.resolve("c"),
+				base.resolve("a/b/.."), base.resolve("missing"));
+		Path real = base.toRealPath();
+		ana.addSrcFileHandler(new SrcCounter(), ".c");
+		for(int threads=1; threads<=2; threads++)
+		{
+			ResultStore store = new ResultStore("lines");
+			ana.reset();
+			ana.setParallelism(threads);
+			ana.setResultStore(store);
+			ana.analyze(roots);
+			assertEquals(3, ana.getCounter());
+			assertEquals(4, ((SrcCounter)ana.getFileHandler(".c")).getCompleteSrcLines());
+			assertEquals(Arrays.asList(real.resolve("a"), real.resolve("a/b"), real.resolve("c")),
+					new ArrayList<Path>(ana.getRootCounters().keySet()));
+			assertEquals(Integer.valueOf(2), ana.getRootCounters().get(real.resolve("a")));
+			assertEquals(Integer.valueOf(1), ana.getRootCounters().get(real.resolve("a/b")));
+			assertEquals(3, store.rollup("a")[0]);
+			assertEquals(2, store.rollup("a/b")[0]);
+			assertEquals(1, store.rollup("c")[0]);
+			assertEquals(threads>1, ana.getScheduleStatistics()!=null);
+		}
+		ana.reset();
+		assertNull(ana.getScheduleStatistics());
+		Path other = new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter").toPath()
+				.toRealPath();
+		Path common = real;
+		while(!other.startsWith(common))
+		{
+			common = common.getParent();
+		}
+		ResultStore store = new ResultStore("lines");
+		ana.setResultStore(store);
+		ana.analyze(Arrays.asList(real.resolve("c"), other));
+		String relative = common.relativize(real.resolve("c/z.c")).toString().replace(File.separatorChar, '/');
+		assertEquals(1, store.getValue(store.find(relative), 0));
+	}
+
+	/**
+	 * Tests comparing two versions of a directory.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testCompare() throws IOException
+	{
+		write("old/same.c", "int a;\n".getBytes()).setLastModified(1000000000000L);
+		write("new/same.c", "int a;\n".getBytes()).setLastModified(1000000000000L);
+		write("old/touched.c", "int b;\n".getBytes());
+		write("new/touched.c", "int b;\n".getBytes()).setLastModified(1000000000000L);
+		write("old/src/changed.c", "int c;\n".getBytes());
+		write("new/src/changed.c", "int c;\nint d;\nint e;\n".getBytes());
+		write("old/src/removed.c", "int f;\nint g;\n".getBytes());
+		write("new/src/added/x.c", "int h;\n".getBytes());
+		write("new/build/ignored.c", "int i;\n".getBytes());
+		ResultStore store = new ResultStore("lines");
+		ana.setResultStore(store);
+		ana.addIgnoreFile("build");
+		ana.addSrcFileHandler(new SrcCounter(), ".c");
+		assertEquals(2, ana.compare(new File(tmp.getRoot(), "old"), new File(tmp.getRoot(), "new")));
+		assertEquals(4, ana.getCounter());
+		assertEquals(3, store.getRowCount());
+		assertEquals(2, store.getValue(store.find("src/changed.c"), 0));
+		assertEquals(-2, store.getValue(store.find("src/removed.c"), 0));
+		assertEquals(1, store.getValue(store.find("src/added/x.c"), 0));
+		assertEquals(1, store.rollup("src")[0]);
+		assertEquals(-1, store.find("same.c"));
+		assertEquals(-1, store.find("touched.c"));
+	}
+
+	/**
+	 * Tests all scheduling policies of parallel analyses. One thread is blocked by its first file until the other
+	 * thread has analyzed all other files, so the order of the other thread is the dispatch order.
+	 */
+	@Test
+	public void testScheduling()
+	{
+		File dir = new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter");
+		String[] extensions = {".h", ".c", ".cpp", ".java", ".cs", ".xml"};
+		List<File> traversal = new ArrayList<File>();
+		ana.addSrcFileHandler(new RecordingHandler(traversal, 0), extensions);
+		ana.analyze(dir);
+		for(Scheduling scheduling : Scheduling.values())
+		{
+			ana = new SourceAnalyzer();
+			ana.setParallelism(2);
+			ana.setScheduling(scheduling);
+			ana.addSrcFileHandler(new SrcCounter(), extensions);
+			List<File> order = new ArrayList<File>();
+			ana.addSrcFileHandler(new RecordingHandler(order, traversal.size()-1), extensions);
+			ana.analyze(dir);
+			assertEquals(scheduling.name(), 7, ana.getCounter());
+			assertEquals(35+39, ((SrcCounter)ana.getFileHandler(".h")).getCompleteSrcLines());
+			assertEquals(53, ((SrcCounter)ana.getFileHandler(".cpp")).getCompleteSrcLines());
+			assertEquals(6, order.size());
+			if(scheduling==Scheduling.TRAVERSAL_ORDER)
+			{
+				List<File> expected = new ArrayList<File>(traversal);
+				expected.retainAll(order);
+				assertEquals(expected, order);
+			}
+			else if(scheduling==Scheduling.LARGEST_FIRST)
+			{
+				for(int i=1; i<order.size(); i++)
+				{
+					assertTrue(order.get(i-1).length()>=order.get(i).length());
+				}
+			}
+			ScheduleStatistics statistics = ana.getScheduleStatistics();
+			assertEquals(2, statistics.getThreads());
+			assertTrue(statistics.getMakespanNanos()>0);
+			assertTrue(statistics.getIdleNanos()>=0);
+			assertTrue(statistics.getTailNanos()>=0&&statistics.getTailNanos()<=statistics.getMakespanNanos());
+		}
+	}
+
+	/**
+	 * Tests reading files in the order of their inode numbers.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testPhysicalOrder() throws IOException
+	{
+		for(int i=0; i<20; i++)
+		{
+			write(tmp.newFile("f"+i+".c"), "int f"+i+";\n");
+		}
+		final List<Long> inodes = new ArrayList<Long>();
+		ana.addSrcFileHandler(new SrcCounter(), ".c");
+		ana.addFileResultListener(new FileResultListener()
+		{
+			@Override
+			public void fileHandled(String path, SrcFileHandler handler, String[] metricNames, long[] values, long size,
+					long duration)
+			{
+				try
+				{
+					inodes.add(((Number)Files.getAttribute(new File(tmp.getRoot(), path).toPath(), "unix:ino"))
+							.longValue());
+				}
+				catch(IOException|UnsupportedOperationException e)
+				{
+					inodes.add(0L);
+				}
+			}
+		});
+		ana.setPhysicalOrder(8);
+		ana.analyze(tmp.getRoot());
+		assertEquals(20, ana.getCounter());
+		assertEquals(20, ((SrcCounter)ana.getFileHandler(".c")).getCompleteSrcLines());
+		assertEquals(20, inodes.size());
+		for(int i=1; i<inodes.size(); i++)
+		{
+			assertTrue(i%8==0||inodes.get(i-1)<=inodes.get(i));
+		}
+	}
+
+	/**
+	 * Tests reading files ahead with small, large and more files than buffers. The handlers get the content read ahead.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testPrefetch() throws IOException
+	{
+		StringBuilder large = new StringBuilder();
+		for(int i=0; i<30000; i++)
+		{
+			large.append("int v").append(i).append(";\n");
+		}
+		write(tmp.newFile("large.c"), large.toString());
+		for(int i=0; i<10; i++)
+		{
+			write(tmp.newFile("f"+i+".c"), "int f"+i+";\n// comment\n");
+		}
+		write(tmp.newFile("notes.txt"), "not analyzed\n");
+		ana.addSrcFileHandler(new SrcCounter(), ".c");
+		ana.analyze(tmp.getRoot());
+		SrcCounter counter = (SrcCounter)ana.getFileHandler(".c");
+		int lines = counter.getCompleteSrcLines();
+		int digits = counter.getDigitCount();
+		ana.reset();
+		ana.setPrefetch(4, 2);
+		final int[] calls = new int[2];
+		ana.addSrcFileHandler(new SrcContentHandler()
+		{
+			@Override
+			public String getExtension()
+			{
+				return ".c";
+			}
+
+			@Override
+			public void reset()
+			{
+			}
+
+			@Override
+			public void handleFile(File f)
+			{
+				calls[0]++;
+			}
+
+			@Override
+			public void handleContent(File f, CharSequence content)
+			{
+				calls[1]++;
+			}
+		});
+		ana.analyze(tmp.getRoot());
+		assertEquals(0, calls[0]);
+		assertEquals(11, calls[1]);
+		assertEquals(12, ana.getCounter());
+		assertEquals(11, counter.getScannedFiles());
+		assertEquals(lines, counter.getCompleteSrcLines());
+		assertEquals(digits, counter.getDigitCount());
+		assertTrue(lines>30000);
+	}
+
+	/**
+	 * Tests reusing the results of unchanged files from a cache.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testResultCache() throws IOException
+	{
+		File a = tmp.newFile("a.c");
+		File b = tmp.newFile("b.c");
+		write(a, "int a;\nint b;\n");
+		write(b, "int c;\n");
+		ResultCache cache = new ResultCache();
+		ana.setResultCache(cache);
+		ana.addSrcFileHandler(new SrcCounter(), ".c");
+		SrcCounter counter = (SrcCounter)ana.getFileHandler(".c");
+		ana.analyze(tmp.getRoot());
+		assertEquals(3, counter.getCompleteSrcLines());
+		assertEquals(2, cache.size());
+		assertEquals(0, cache.getHits());
+		ana.reset();
+		ana.analyze(tmp.getRoot());
+		assertEquals(3, counter.getCompleteSrcLines());
+		assertEquals(2, counter.getScannedFiles());
+		assertEquals(2, cache.getHits());
+		write(b, "int c;\nint d;\nint e;\n");
+		ana.reset();
+		ana.analyze(tmp.getRoot());
+		assertEquals(5, counter.getCompleteSrcLines());
+		assertEquals(3, cache.getHits());
+		assertEquals(3, cache.getMisses());
+	}
+
+	/**
+	 * Tests that handlers of the same type configured with different metrics don't share cached values.
+	 *
+	 * @throws IOException if the test file can't be written.
+	 */
+	@Test
+	public void testResultCacheConfigurations() throws IOException
+	{
+		write(tmp.newFile("A.java"), "class A\n{\n\tvoid a()\n\t{\n\t\tint a;\n\t}\n}\n");
+		ResultCache cache = new ResultCache();
+		ana.setResultCache(cache);
+		ana.addSrcFileHandler(new SrcMetrics(LanguageDescriptor.JAVA, new TokenMetric()), ".java");
+		ana.analyze(tmp.getRoot());
+		SrcMetrics nesting = new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric());
+		SourceAnalyzer other = new SourceAnalyzer();
+		other.setResultCache(cache);
+		other.addSrcFileHandler(nesting, ".java");
+		other.analyze(tmp.getRoot());
+		SrcMetrics expected = new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric());
+		SourceAnalyzer uncached = new SourceAnalyzer();
+		uncached.addSrcFileHandler(expected, ".java");
+		uncached.analyze(tmp.getRoot());
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.size());
+		assertArrayEquals(expected.getMetricValues(), nesting.getMetricValues());
+	}
+
+	/**
+	 * Tests analyzing shards and merging their results.
+	 *
+	 * @throws IOException if a result file can't be written or read.
+	 */
+	@Test
+	public void testShards() throws IOException
+	{
+		File dir = new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter");
+		ana.addSrcFileHandler(new SrcCounter(), ".h", ".java");
+		for(int i=0; i<3; i++)
+		{
+			SourceAnalyzer shard = new SourceAnalyzer();
+			shard.addSrcFileHandler(new SrcCounter(), ".h", ".java");
+			shard.setShard(new Shard(i, 3));
+			shard.analyze(dir);
+			File result = tmp.newFile("shard"+i);
+			shard.writeResult(result);
+			ana.mergeResult(result);
+		}
+		assertEquals(7, ana.getCounter());
+		assertEquals(35+39, ((SrcCounter)ana.getFileHandler(".h")).getCompleteSrcLines());
+		assertEquals(46, ((SrcCounter)ana.getFileHandler(".java")).getCompleteSrcLines());
+		File claims = tmp.newFolder("claims");
+		SourceAnalyzer first = new SourceAnalyzer();
+		first.setShard(new Shard(1, 2, claims));
+		first.analyze(dir);
+		assertEquals(7, first.getCounter());
+		SourceAnalyzer second = new SourceAnalyzer();
+		second.setShard(new Shard(0, 2, claims));
+		second.analyze(dir);
+		assertEquals(0, second.getCounter());
+		File missing = new File(tmp.getRoot(), "missing");
+		int files = 0;
+		for(int i=0; i<2; i++)
+		{
+			SourceAnalyzer unclaimed = new SourceAnalyzer();
+			unclaimed.setShard(new Shard(i, 2, missing));
+			unclaimed.analyze(dir);
+			files += unclaimed.getCounter();
+		}
+		assertEquals(7, files);
+		try
+		{
+			first.mergeResult(tmp.getRoot().toPath().resolve("shard0").toFile());
+			fail("The result of other handlers was merged.");
+		}
+		catch(IOException e)
+		{
+			assertTrue(e.getMessage().startsWith("The result doesn't match"));
+		}
+	}
+
+	/**
+	 * Tests passing binary files only to BinaryFileHandlers.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testBinaryFiles() throws IOException
+	{
+		write(tmp.newFile("text.txt"), "a\nb\n");
+		write(tmp.newFile("image.png"), "\u0089PNG\r\n\u001a\n\u0000\u0000\u0000\rIHDR");
+		FileOutputStream out = new FileOutputStream(tmp.newFile("latin1.txt"));
+		out.write(new byte[] {'G', 'r', (byte)0xfc, 'n', '\n', 'B', 'l', (byte)0xe4, 'u', '\n'});
+		out.close();
+		final List<String> binaryFiles = new ArrayList<String>();
+		ana.addSrcFileHandler(new SrcCounter(), "");
+		ana.addSrcFileHandler(new BinaryFileHandler()
+		{
+			@Override
+			public String getExtension()
+			{
+				return ".png";
+			}
+
+			@Override
+			public void reset()
+			{
+				binaryFiles.clear();
+			}
+
+			@Override
+			public void handleFile(File f)
+			{
+				binaryFiles.add(f.getName());
+			}
+		});
+		ana.analyze(tmp.getRoot());
+		assertEquals(3, ana.getCounter());
+		assertEquals(1, ana.getBinaryCounter());
+		assertEquals(2, ((SrcCounter)ana.getFileHandler("")).getScannedFiles());
+		assertEquals(Arrays.asList("image.png"), binaryFiles);
+		assertTrue(ContentSniffer.isBinary(new byte[] {(byte)0xff, (byte)0xfe, 1, 2, 'a'}));
+		assertTrue(!ContentSniffer.isBinary("caf\u00e9 \u20ac".getBytes("UTF-8")));
+		assertTrue(!ContentSniffer.isBinary(new byte[] {'a', (byte)0xe2, (byte)0x82}));
+	}
+
+	/**
+	 * Tests selecting handlers by the detected languages of files.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testLanguageDetector() throws IOException
+	{
+		write(tmp.newFile("script"), "#!/usr/bin/env python3\nprint(1)\n");
+		write(tmp.newFile("tool"), "# vim: set ft=ruby:\nputs 1\n");
+		write(tmp.newFile("Makefile"), "all:\n\tcc a.c\n");
+		write(tmp.newFile("a.h"), "class A\n{\npublic:\n\tA();\n};\n");
+		write(tmp.newFile("b.h"), "int b();\n");
+		LanguageDetector detector = new LanguageDetector();
+		ana.setLanguageDetector(detector);
+		ana.addSrcFileHandler(new SrcCounter(), ".py", ".rb", ".mk", ".hpp", ".h");
+		ana.analyze(tmp.getRoot());
+		for(String extension : new String[] {".py", ".rb", ".mk", ".hpp", ".h"})
+		{
+			assertEquals(extension, 1, ((SrcCounter)ana.getFileHandler(extension)).getScannedFiles());
+		}
+		assertEquals(".sh", detector.detect("run", "#!/usr/bin/env -S bash -e\n".getBytes("UTF-8")));
+		assertEquals(".py", detector.detect("x", "# -*- mode: python -*-\n".getBytes("UTF-8")));
+		assertEquals(null, detector.detect("x", "#!/opt/unknown\n".getBytes("UTF-8")));
+		assertEquals(null, detector.detect("X.java", "#!/bin/sh\n".getBytes("UTF-8")));
+		File resources = new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter");
+		assertEquals(".hpp", detector.detect("HelloWorldCppHeader.h",
+				ContentSniffer.readBlock(new File(resources, "HelloWorldCppHeader.h"))));
+		assertEquals(null, detector.detect("HelloWorldCHeader.h",
+				ContentSniffer.readBlock(new File(resources, "HelloWorldCHeader.h"))));
+		assertEquals(".hpp", detector.lookup(new File(tmp.getRoot(), "a.h").getAbsolutePath(),
+				new File(tmp.getRoot(), "a.h").lastModified()));
+	}
+
+	/**
+	 * Writes a file into the temporary directory.
+	 *
+	 * @param path the relative path of the file.
+	 * @param content the content.
+	 * @return the file.
+	 * @throws IOException if the file can't be written.
+	 */
+	private File write(String path, byte[] content) throws IOException
+	{
+		File f = new File(tmp.getRoot(), path);
+		f.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(content);
+		out.close();
+		return f;
+	}
+
+	/**
+	 * Sorts a list of files by their paths.
+	 *
+	 * @param files the files.
+	 * @return a sorted copy.
+	 */
+	private static List<File> sortedByPath(List<File> files)
+	{
+		File[] sorted = files.toArray(new File[files.size()]);
+		Arrays.sort(sorted);
+		return Arrays.asList(sorted);
+	}
+
+	/**
+	 * Registers a handler and asserts that a configuration is rejected.
+	 *
+	 * @param handler the handler.
+	 * @param message a part of the expected message.
+	 */
+	private void assertRejected(MultiExtensionSupportFileHandler handler, String message)
+	{
+		ana = new SourceAnalyzer();
+		ana.addSrcFileHandler(handler, ".c");
+		try
+		{
+			new AnalyzerConfiguration(ana);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	/**
+	 * Writes a test file.
+	 *
+	 * @param f the file.
+	 * @param content the content.
+	 * @throws IOException if the file can't be written.
+	 */
+	private static void write(File f, String content) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(f);
+		try
+		{
+			out.write(content.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * A handler recording the analyzed files. The first file of an analysis blocks its thread until a number of other
+	 * files were analyzed, and it isn't recorded. All clones share the record.
+	 */
+	private static final class RecordingHandler extends MultiExtensionSupportFileHandler
+	{
+		/**
+		 * Saves the recorded files.
+		 */
+		private final List<File> files;
+		/**
+		 * Indicates if the first file was handled.
+		 */
+		private final AtomicBoolean started;
+		/**
+		 * Counts the files the first file waits for.
+		 */
+		private final CountDownLatch others;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param files the list for the recorded files.
+		 * @param others the number of files the first file waits for or 0 if all files are recorded.
+		 */
+		RecordingHandler(List<File> files, int others)
+		{
+			this(files, new AtomicBoolean(others==0), new CountDownLatch(others));
+		}
+
+		/**
+		 * Creates a new instance sharing the record.
+		 *
+		 * @param files the list for the recorded files.
+		 * @param started indicates if the first file was handled.
+		 * @param others counts the files the first file waits for.
+		 */
+		private RecordingHandler(List<File> files, AtomicBoolean started, CountDownLatch others)
+		{
+			this.files = files;
+			this.started = started;
+			this.others = others;
+		}
+
+		@Override
+		public void reset()
+		{
+		}
+
+		@Override
+		public void handleFile(File f)
+		{
+			if(started.compareAndSet(false, true))
+			{
+				try
+				{
+					others.await(10, TimeUnit.SECONDS);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				return;
+			}
+			synchronized(files)
+			{
+				files.add(f);
+			}
+			others.countDown();
+		}
+
+		@Override
+		public RecordingHandler clone()
+		{
+			return new RecordingHandler(files, started, others);
+		}
+	}
+}
\ No newline at end of file
@@ -20,24 +20,41 @@
 
 package marm.src.ana;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import marm.src.ana.internal.LanguageDescriptor;
+import marm.src.ana.internal.NestingMetric;
 import marm.src.ana.internal.SrcCounter;
 import marm.src.ana.internal.SrcCounterJC;
+import marm.src.ana.internal.SrcCounterLang;
 import marm.src.ana.internal.SrcCounterXML;
+import marm.src.ana.internal.SrcMetrics;
+import marm.src.ana.result.ResultStore;
 import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
  * Test class for the source counters.
  * 
  * @author Martin Armbruster
- * @version 1.0
+ * @version 1.3
  * @since 2.0
  */
 public class SrcCounterTest
 {
+	/**
+	 * Temporary directory for generated files.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
 	/**
 	 * Test instance of the SourceAnalyzer.
 	 */
@@ -103,4 +120,170 @@ public class SrcCounterTest
 		assertEquals(10, xml.getCompleteSrcLines());
 		assertEquals(6, xml.getSrcLines());
 	}
+	
+	/**
+	 * Tests that counting a file in parallel chunks gives the same results as counting it sequentially.
+	 * 
+	 * @throws IOException if the test file can't be written.
+	 */
+	@Test
+	public void testParallelCounting() throws IOException
+	{
+		File file = tmp.newFile("Large.xml");
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		for(int i=0; i<500; i++)
+		{
+			bw.write("<a>\n<!-- comment\nstill comment\r\n\n");
+			bw.write(i%7==0 ? "end -->\n" : "-->  <b/>\n");
+			bw.write("\t<c>"+i+"</c>\r\n");
+		}
+		bw.write("<last/>");
+		bw.close();
+		SrcCounterXML sequential = new SrcCounterXML();
+		sequential.setParallelThreshold(0);
+		sequential.handleFile(file);
+		SrcCounterXML parallel = new SrcCounterXML();
+		parallel.setParallelThreshold(1);
+		parallel.setChunkSize(100);
+		parallel.handleFile(file);
+		assertArrayEquals(sequential.getMetricValues(), parallel.getMetricValues());
+		assertEquals(3001, parallel.getCompleteSrcLines());
+	}
+	
+	/**
+	 * Tests the SrcCounterLang class with the built-in descriptors for Python, Rust and SQL.
+	 * 
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testSrcCounterLang() throws IOException
+	{
+		write("a.py", "#!/usr/bin/env python\n\ndef f():\n    \"\"\"Doc\n\n    # no comment\"\"\"\n"
+				+"    return '#' # comment\n  \t\n");
+		write("b.rs", "/* outer /* inner */ still\ncomment */ fn main() {}\n// line\nlet s = \"/*\nx\";\n");
+		write("c.sql", "-- comment\nSELECT 'it''s -- no comment'\n/* block\n*/\nFROM t; /* x */\n");
+		for(LanguageDescriptor d : LanguageDescriptor.getBuiltIns())
+		{
+			ana.addSrcFileHandler(new SrcCounterLang(d), d.getExtensions());
+		}
+		ana.analyze(tmp.getRoot());
+		assertArrayEquals(new long[] {1, 8, 85, 4, 1, 3}, metrics(".py"));
+		assertArrayEquals(new long[] {1, 5, 70, 3, 2, 0}, metrics(".rs"));
+		assertArrayEquals(new long[] {1, 5, 63, 2, 3, 0}, metrics(".sql"));
+	}
+	
+	/**
+	 * Tests the SrcMetrics class with the default metrics sequentially and in parallel chunks.
+	 * 
+	 * @throws IOException if the test file can't be written.
+	 */
+	@Test
+	public void testSrcMetrics() throws IOException
+	{
+		String source = "/* header if while */\nclass A\n{\n\tvoid f(int a)\n\t{\n\t\tif(a>0&&a<5) // if\n\t\t{\n"
+				+"\t\t\tString s = \"for while\";\n\t\t}\n\t}\n}\n";
+		write("A.java", source);
+		SrcMetrics metrics = new SrcMetrics(LanguageDescriptor.JAVA, SrcMetrics.defaultMetrics());
+		ana.addSrcFileHandler(metrics, ".java");
+		ana.analyze(tmp.getRoot());
+		metrics = (SrcMetrics)ana.getFileHandler(".java");
+		assertArrayEquals(new String[] {"files", "lines", "digits", "srcLines", "commentLines", "blankLines",
+			"complexity", "tokens", "maxNesting"}, metrics.getMetricNames());
+		long[] values = metrics.getMetricValues();
+		assertArrayEquals(new long[] {10, 1, 0, 3, 30, 3}, Arrays.copyOfRange(values, 3, 9));
+		assertEquals(1/11.0, metrics.getCommentDensity(), 1e-9);
+		StringBuilder large = new StringBuilder();
+		for(int i=0; i<50; i++)
+		{
+			large.append(source);
+		}
+		write("B.java", large.toString());
+		SrcMetrics sequential = new SrcMetrics(LanguageDescriptor.JAVA, SrcMetrics.defaultMetrics());
+		sequential.setParallelThreshold(0);
+		sequential.handleFile(new File(tmp.getRoot(), "B.java"));
+		SrcMetrics parallel = new SrcMetrics(LanguageDescriptor.JAVA, SrcMetrics.defaultMetrics());
+		parallel.setParallelThreshold(1);
+		parallel.setChunkSize(64);
+		parallel.handleFile(new File(tmp.getRoot(), "B.java"));
+		assertArrayEquals(sequential.getMetricValues(), parallel.getMetricValues());
+		assertEquals(101, parallel.getMetricValues()[6]);
+	}
+	
+	/**
+	 * Tests that the nesting depth is shifted when chunks are joined and recorded per file instead of as a difference.
+	 * 
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testNestingMetric() throws IOException
+	{
+		StringBuilder deep = new StringBuilder("}\n}\n");
+		for(int i=0; i<100; i++)
+		{
+			deep.append("{ // {\n");
+		}
+		for(int i=0; i<100; i++)
+		{
+			deep.append("}\n}\n");
+		}
+		write("Deep.java", deep.append("{\n").toString());
+		SrcMetrics sequential = new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric());
+		sequential.setParallelThreshold(0);
+		sequential.handleFile(new File(tmp.getRoot(), "Deep.java"));
+		SrcMetrics parallel = new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric());
+		parallel.setParallelThreshold(1);
+		parallel.setChunkSize(64);
+		parallel.handleFile(new File(tmp.getRoot(), "Deep.java"));
+		assertArrayEquals(sequential.getMetricValues(), parallel.getMetricValues());
+		assertEquals(100, parallel.getMetricValues()[6]);
+		assertEquals(100, parallel.getFileMetricValues()[6]);
+		write("Flat.java", "class A\n{\n}\n");
+		ResultStore store = new ResultStore("lines", "maxNesting");
+		ana.setResultStore(store);
+		ana.addSrcFileHandler(new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric()), ".java");
+		ana.addSrcFileHandler(new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric()), ".java");
+		ana.analyze(tmp.getRoot());
+		assertEquals(1, store.getValue(store.find("Flat.java"), 1));
+		assertEquals(100, store.getValue(store.find("Deep.java"), 1));
+		assertArrayEquals(new long[] {2*(303+3), 100}, store.rollup(""));
+		tmp.newFolder("old");
+		tmp.newFolder("new");
+		write("old/Deep.java", deep.toString());
+		write("new/Deep.java", "class A\n{\n}\n");
+		write("new/Added.java", "{\n{\n}\n}\n");
+		store = new ResultStore("lines", "maxNesting");
+		ana = new SourceAnalyzer();
+		ana.setResultStore(store);
+		ana.addSrcFileHandler(new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric()), ".java");
+		ana.addSrcFileHandler(new SrcMetrics(LanguageDescriptor.JAVA, new NestingMetric()), ".java");
+		ana.compare(new File(tmp.getRoot(), "old"), new File(tmp.getRoot(), "new"));
+		assertEquals(1-100, store.getValue(store.find("Deep.java"), 1));
+		assertEquals(2, store.getValue(store.find("Added.java"), 1));
+		assertEquals(1-100, store.rollup("")[1]);
+	}
+	
+	/**
+	 * Writes a file into the temporary directory.
+	 * 
+	 * @param name the name of the file.
+	 * @param content the content.
+	 * @throws IOException if the file can't be written.
+	 */
+	private void write(String name, String content) throws IOException
+	{
+		BufferedWriter bw = new BufferedWriter(new FileWriter(tmp.newFile(name)));
+		bw.write(content);
+		bw.close();
+	}
+	
+	/**
+	 * Returns the metric values of the SrcCounterLang instance registered for an extension.
+	 * 
+	 * @param extension the extension.
+	 * @return the metric values.
+	 */
+	private long[] metrics(String extension)
+	{
+		return ((SrcCounter)ana.getFileHandler(extension)).getMetricValues();
+	}
 }
\ No newline at end of file
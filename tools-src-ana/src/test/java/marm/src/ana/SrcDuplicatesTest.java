@@ -0,0 +1,175 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import marm.src.ana.internal.DuplicateSink;
+import marm.src.ana.internal.LanguageDescriptor;
+import marm.src.ana.internal.SrcDuplicates;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the SrcDuplicates class.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public class SrcDuplicatesTest
+{
+	/**
+	 * Temporary directory for the test files.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	/**
+	 * Tests finding a block duplicated with other whitespaces and comments while the hashes are spilled to disk.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testDuplicates() throws IOException
+	{
+		write("A.java", "class A\n{\n\tint a = 1;\n\tint b = 2;\n\n\tint c = a+b;\n\tint d = c*2; // double\n"
+				+"\tint e = d-a;\n}\n");
+		write("B.java", "class B {\n  int a=1; /* one */\n  int b=2;\n  int c = a + b;\n\n\n  int d = c * 2;\n"
+				+"  int e = d - a;\n  int f = 0;\n}\n");
+		SourceAnalyzer ana = new SourceAnalyzer();
+		SrcDuplicates duplicates = new SrcDuplicates(LanguageDescriptor.JAVA, 4, tmp.getRoot());
+		duplicates.setBufferSize(3);
+		ana.addSrcFileHandler(duplicates, ".java");
+		ana.analyze(tmp.getRoot());
+		final ArrayList<String> groups = new ArrayList<String>();
+		duplicates.report(new DuplicateSink()
+		{
+			@Override
+			public void cloneGroup(File[] files, int[] startLines, int[] endLines)
+			{
+				ArrayList<String> locations = new ArrayList<String>();
+				for(int i=0; i<files.length; i++)
+				{
+					locations.add(files[i].getName()+":"+startLines[i]+"-"+endLines[i]);
+				}
+				Collections.sort(locations);
+				groups.add(locations.toString());
+			}
+		});
+		Collections.sort(groups);
+		assertEquals("[[A.java:3-7, B.java:2-7], [A.java:4-8, B.java:3-8]]", groups.toString());
+		assertEquals(2, tmp.getRoot().listFiles().length);
+	}
+
+	/**
+	 * Tests that the windows of a large file are collected in batches and that every session has its own collector,
+	 * which is shared by the handlers of all extensions.
+	 *
+	 * @throws IOException if the test files can't be written.
+	 */
+	@Test
+	public void testBatchesAndSessions() throws IOException
+	{
+		StringBuilder large = new StringBuilder();
+		for(int i=0; i<5000; i++)
+		{
+			large.append("int a").append(i).append(" = ").append(i).append(";\n");
+		}
+		tmp.newFolder("one");
+		tmp.newFolder("two");
+		write("one/A.java", large.toString());
+		write("one/B.txt", large.toString());
+		write("two/C.java", large.toString());
+		SourceAnalyzer template = new SourceAnalyzer();
+		SrcDuplicates duplicates = new SrcDuplicates(LanguageDescriptor.JAVA, 4, tmp.getRoot());
+		template.addSrcFileHandler(duplicates, ".java", ".txt");
+		AnalyzerConfiguration config = new AnalyzerConfiguration(template);
+		AnalysisSession first = config.newSession();
+		AnalysisSession second = config.newSession();
+		first.analyze(new File(tmp.getRoot(), "one"));
+		second.analyze(new File(tmp.getRoot(), "two"));
+		assertEquals(4997, groups((SrcDuplicates)first.getFileHandler(".txt")).size());
+		assertEquals(0, groups((SrcDuplicates)second.getFileHandler(".java")).size());
+		assertEquals(0, groups(duplicates).size());
+	}
+
+	/**
+	 * Tests that a window without lines is rejected.
+	 */
+	@Test
+	public void testInvalidWindow()
+	{
+		try
+		{
+			new SrcDuplicates(LanguageDescriptor.JAVA, 0, tmp.getRoot());
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage().contains("positive"));
+		}
+	}
+
+	/**
+	 * Reports the groups of duplicated blocks.
+	 *
+	 * @param duplicates the handler.
+	 * @return the number of blocks of every group.
+	 * @throws IOException if the collected blocks can't be read.
+	 */
+	private static ArrayList<Integer> groups(SrcDuplicates duplicates) throws IOException
+	{
+		final ArrayList<Integer> groups = new ArrayList<Integer>();
+		duplicates.report(new DuplicateSink()
+		{
+			@Override
+			public void cloneGroup(File[] files, int[] startLines, int[] endLines)
+			{
+				groups.add(files.length);
+			}
+		});
+		return groups;
+	}
+
+	/**
+	 * Writes a file into the temporary directory.
+	 *
+	 * @param name the name of the file.
+	 * @param content the content.
+	 * @throws IOException if the file can't be written.
+	 */
+	private void write(String name, String content) throws IOException
+	{
+		BufferedWriter bw = new BufferedWriter(new FileWriter(tmp.newFile(name)));
+		bw.write(content);
+		bw.close();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,200 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import marm.src.ana.internal.SearchSink;
+import marm.src.ana.internal.SrcSearch;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the SrcSearch class.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public class SrcSearchTest
+{
+	/**
+	 * Temporary directory for files with non-ASCII content.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	/**
+	 * Test instance of the SourceAnalyzer.
+	 */
+	private SourceAnalyzer ana;
+	/**
+	 * Saves all reported matches as "file:line:column:key".
+	 */
+	private ArrayList<String> matches;
+	/**
+	 * Sink collecting all reported matches.
+	 */
+	private SearchSink sink;
+
+	/**
+	 * Sets up everything for testing.
+	 */
+	@Before
+	public void setUp()
+	{
+		ana = new SourceAnalyzer();
+		matches = new ArrayList<String>();
+		sink = new SearchSink()
+		{
+			@Override
+			public void match(File f, int line, int column, String key)
+			{
+				matches.add(f.getName()+":"+line+":"+column+":"+key);
+			}
+		};
+	}
+
+	/**
+	 * Tests searching literals.
+	 */
+	@Test
+	public void testLiterals()
+	{
+		ana.addSrcFileHandler(new SrcSearch(Arrays.asList("printf", "Hello, World!", "World"), false, sink), "");
+		analyze();
+		Collections.sort(matches);
+		assertTrue(matches.contains("HelloWorldC.c:32:2:printf"));
+		assertTrue(matches.contains("HelloWorldC.c:32:10:Hello, World!"));
+		assertTrue(matches.contains("HelloWorldC.c:32:17:World"));
+		assertTrue(matches.contains("HelloWorldXML.xml:3:9:Hello, World!"));
+		assertEquals(2, count("Cpp.cpp:46:"));
+		assertEquals(2, count(":printf"));
+		assertEquals(4, count(":Hello, World!"));
+	}
+
+	/**
+	 * Tests searching regular expressions.
+	 */
+	@Test
+	public void testRegex()
+	{
+		ana.addSrcFileHandler(new SrcSearch(Arrays.asList("print(f|ln)\\(\""), true, sink), ".c", ".cpp", ".java");
+		analyze();
+		Collections.sort(matches);
+		assertEquals(Arrays.asList("HelloWorldC.c:32:2:print(f|ln)\\(\"", "HelloWorldCpp.cpp:46:2:print(f|ln)\\(\"",
+				"HelloWorldJava.java:31:14:print(f|ln)\\(\""), matches);
+	}
+
+	/**
+	 * Tests regular expressions with non-ASCII characters and the per-file limit in position order.
+	 *
+	 * @throws IOException if the test file can't be written.
+	 */
+	@Test
+	public void testRegexCharset() throws IOException
+	{
+		String word = "Gr\u00fc\u00dfe";
+		String content = "x = \""+word+"\";\n// "+word+"\n";
+		Files.write(tmp.newFile("a.txt").toPath(), content.getBytes(StandardCharsets.UTF_8));
+		SrcSearch search = new SrcSearch(Arrays.asList(word, "x"), true, sink);
+		search.setCharset(StandardCharsets.UTF_8);
+		search.setMaxFileMatches(2);
+		ana.addSrcFileHandler(search, "");
+		ana.analyze(tmp.getRoot());
+		assertEquals(Arrays.asList("a.txt:1:1:x", "a.txt:1:6:"+word), matches);
+	}
+
+	/**
+	 * Tests that malformed input replaced while decoding doesn't shift the byte columns of the following matches.
+	 *
+	 * @throws IOException if the test file can't be written.
+	 */
+	@Test
+	public void testRegexMalformed() throws IOException
+	{
+		byte[] content = {'a', (byte)0xff, (byte)0xfe, 'b', '\n', (byte)0xc3, 'c', 'd', 'b'};
+		Files.write(tmp.newFile("a.txt").toPath(), content);
+		SrcSearch search = new SrcSearch(Arrays.asList("d", "b"), true, sink);
+		search.setCharset(StandardCharsets.UTF_8);
+		ana.addSrcFileHandler(search, "");
+		ana.analyze(tmp.getRoot());
+		assertEquals(Arrays.asList("a.txt:1:4:b", "a.txt:2:3:d", "a.txt:2:4:b"), matches);
+	}
+
+	/**
+	 * Tests the limits for the number of reported matches.
+	 */
+	@Test
+	public void testLimits()
+	{
+		SrcSearch search = new SrcSearch(Arrays.asList("Hello", "World"), false, sink);
+		search.setMaxFileMatches(1);
+		ana.addSrcFileHandler(search, "");
+		analyze();
+		assertEquals(7, matches.size());
+		matches.clear();
+		ana = new SourceAnalyzer();
+		search.reset();
+		search.setMaxMatches(3);
+		ana.addSrcFileHandler(search, "");
+		analyze();
+		assertEquals(3, matches.size());
+		assertEquals(3, search.getMatchCount());
+		assertTrue(search.isLimitReached());
+	}
+
+	/**
+	 * Analyzes the directory with the source code files for the counter tests.
+	 */
+	private void analyze()
+	{
+		ana.analyze(new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter"));
+	}
+
+	/**
+	 * Counts the matches containing a string.
+	 *
+	 * @param part the string.
+	 * @return the number of matches containing it.
+	 */
+	private int count(String part)
+	{
+		int n = 0;
+		for(String m : matches)
+		{
+			if(m.contains(part))
+			{
+				n++;
+			}
+		}
+		return n;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+/* #######################################################
+ * #####    Source Code Analyzer - The MIT-License    ####
+ * #######################################################
+ *
+ * Copyright (C) 2017, Martin Armbruster
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package marm.src.ana;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import marm.src.ana.index.TrigramIndex;
+import marm.src.ana.index.TrigramIndexer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the trigram index.
+ *
+ * @author Martin Armbruster
+ * @version 1.2
+ * @since 2.1
+ */
+public class TrigramIndexTest
+{
+	/**
+	 * Number of pairs buffered in memory while building an index.
+	 */
+	private static final int BUFFER_SIZE = 1<<16;
+	/**
+	 * Temporary directory for the copied source code files and the index.
+	 */
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	/**
+	 * Saves the directory with the copied source code files.
+	 */
+	private File srcDir;
+	/**
+	 * Saves the index file.
+	 */
+	private File indexFile;
+
+	/**
+	 * Copies the source code files for the counter tests into a temporary directory.
+	 *
+	 * @throws IOException if the files cannot be copied.
+	 */
+	@Before
+	public void setUp() throws IOException
+	{
+		srcDir = tmp.newFolder("src");
+		File[] files = new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter").listFiles();
+		for(File f : files)
+		{
+			Files.copy(f.toPath(), new File(srcDir, f.getName()).toPath());
+		}
+		indexFile = new File(tmp.getRoot(), "src.idx");
+	}
+
+	/**
+	 * Tests building an index and searching literals and regular expressions.
+	 *
+	 * @throws IOException if the index cannot be built.
+	 */
+	@Test
+	public void testBuildAndSearch() throws IOException
+	{
+		buildIndex(4);
+		TrigramIndex index = TrigramIndex.open(indexFile);
+		try
+		{
+			assertEquals(7, index.getFileCount());
+			Collection<File> found = index.getCandidates("Console.Out");
+			assertEquals(1, found.size());
+			assertEquals("HelloWorldCS.cs", found.iterator().next().getName());
+			assertEquals(0, index.getCandidates("doesNotOccurAnywhere").size());
+			assertEquals(7, index.getCandidates("ab").size());
+			assertEquals(2, index.getRegexCandidates("#include\\s+\"HelloWorldC(pp)?Header\\.h\"").size());
+			assertEquals(7, index.getRegexCandidates("Hello|World").size());
+			assertTrue(index.findFile(new File(srcDir, "HelloWorldC.c").getAbsolutePath())>=0);
+			assertEquals(-1, index.findFile(new File(srcDir, "Unknown.c").getAbsolutePath()));
+		}
+		finally
+		{
+			index.close();
+		}
+	}
+
+	/**
+	 * Tests building an index with several threads and a file handled for several extensions.
+	 *
+	 * @throws IOException if the index cannot be built.
+	 */
+	@Test
+	public void testParallelBuild() throws IOException
+	{
+		for(int i=0; i<50; i++)
+		{
+			File dir = tmp.newFolder("src", "copy"+i);
+			for(File f : new File("target"+File.separator+"test-classes"+File.separator+"testSrcCounter").listFiles())
+			{
+				Files.copy(f.toPath(), new File(dir, f.getName()).toPath());
+			}
+		}
+		SourceAnalyzer analyzer = new SourceAnalyzer();
+		analyzer.setParallelism(4);
+		TrigramIndexer indexer = new TrigramIndexer(indexFile);
+		indexer.setBufferSize(BUFFER_SIZE);
+		analyzer.addSrcFileHandler(indexer, "", ".c", ".cs");
+		analyzer.analyze(srcDir);
+		indexer.write();
+		TrigramIndex index = TrigramIndex.open(indexFile);
+		try
+		{
+			assertEquals(7*51, index.getFileCount());
+			assertEquals(51, index.getCandidates("Console.Out").size());
+			assertEquals(7*51, index.getRegexCandidates("Hello|World").size());
+		}
+		finally
+		{
+			index.close();
+		}
+	}
+
+	/**
+	 * Tests that escape sequences with several characters aren't taken for required literals.
+	 *
+	 * @throws IOException if the index cannot be built.
+	 */
+	@Test
+	public void testRegexEscapes() throws IOException
+	{
+		buildIndex(BUFFER_SIZE);
+		TrigramIndex index = TrigramIndex.open(indexFile);
+		try
+		{
+			int expected = index.getRegexCandidates("Hello, World").size();
+			assertTrue(expected>0);
+			assertEquals(expected, index.getRegexCandidates("\\x48ello, World").size());
+			assertEquals(expected, index.getRegexCandidates("\\x{48}ello, World").size());
+			assertEquals(expected, index.getRegexCandidates("\\u0048ello, World").size());
+			assertEquals(expected, index.getRegexCandidates("\\0110ello, World").size());
+			assertEquals(expected, index.getRegexCandidates("\\p{Lu}ello, World").size());
+			assertEquals(expected, index.getRegexCandidates("\\pLello, World").size());
+			assertEquals(expected, index.getRegexCandidates("\\cHello, World").size());
+			assertEquals(expected, index.getRegexCandidates("(H)e(l)\\2o, World").size());
+			assertEquals(expected, index.getRegexCandidates("(?<l>l)\\k<l>o, World").size());
+		}
+		finally
+		{
+			index.close();
+		}
+	}
+
+	/**
+	 * Tests the incremental update of an index after changing, adding and removing files.
+	 *
+	 * @throws IOException if the index cannot be built.
+	 */
+	@Test
+	public void testIncrementalUpdate() throws IOException
+	{
+		buildIndex(BUFFER_SIZE);
+		File changed = new File(srcDir, "HelloWorldC.c");
+		FileWriter writer = new FileWriter(changed, true);
+		writer.write("int incrementallyIndexed;\n");
+		writer.close();
+		changed.setLastModified(changed.lastModified()+2000);
+		File added = new File(srcDir, "Added.java");
+		writer = new FileWriter(added);
+		writer.write("class Added { String s = \"Console.Out\"; }\n");
+		writer.close();
+		assertTrue(new File(srcDir, "HelloWorldCS.cs").delete());
+		buildIndex(BUFFER_SIZE);
+		TrigramIndex index = TrigramIndex.open(indexFile);
+		try
+		{
+			assertEquals(7, index.getFileCount());
+			assertEquals(1, index.getCandidates("incrementallyIndexed").size());
+			Collection<File> found = index.getCandidates("Console.Out");
+			assertEquals(1, found.size());
+			assertEquals("Added.java", found.iterator().next().getName());
+			assertEquals(2, index.getCandidates("HelloWorldCppHeader").size());
+			assertTrue(index.isUpToDate(changed));
+			assertFalse(index.isUpToDate(new File(srcDir, "HelloWorldCS.cs")));
+		}
+		finally
+		{
+			index.close();
+		}
+	}
+
+	/**
+	 * Builds or updates the index for the copied files.
+	 *
+	 * @param bufferSize the number of pairs buffered in memory.
+	 * @throws IOException if the index cannot be written.
+	 */
+	private void buildIndex(int bufferSize) throws IOException
+	{
+		SourceAnalyzer analyzer = new SourceAnalyzer();
+		TrigramIndexer indexer = new TrigramIndexer(indexFile);
+		indexer.setBufferSize(bufferSize);
+		analyzer.addSrcFileHandler(indexer, "");
+		analyzer.analyze(srcDir);
+		indexer.write();
+	}
+}
\ No newline at end of file